@@ -0,0 +1,141 @@
+package com.inersion.tripex;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Fills TripExContentProvider with realistic trips for tests and benchmarks.
+ * The same seed always produces the same trips, and only the trips this
+ * generator inserted are deleted afterwards.
+ */
+class TripDataGenerator {
+    static final long DEFAULT_SEED = 20170601L;
+
+    /**
+     * A selection matching only the trips inserted by this generator, for
+     * use with {@link #insertedSelectionArgs()}.
+     */
+    static final String INSERTED_SELECTION = Trip._ID + " >= ?";
+
+    // trips per bulkInsert call, each of which is one transaction
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String[] CITIES = {"Amsterdam", "Atlanta",
+            "Austin", "Bangkok", "Barcelona", "Beijing", "Berlin", "Boston",
+            "Chicago", "Denver", "Dubai", "Dublin", "Edinburgh", "Hong Kong",
+            "Istanbul", "Lisbon", "London", "Los Angeles", "Madrid", "Miami",
+            "Montreal", "Mumbai", "Munich", "New York", "Orlando", "Paris",
+            "Prague", "Rome", "San Francisco", "Seattle", "Singapore",
+            "Sydney", "Tokyo", "Toronto", "Vancouver", "Vienna", "Zurich"};
+
+    private static final String[] PURPOSES = {"Conference", "Vacation",
+            "Client Visit", "Wedding", "Family Reunion", "Offsite",
+            "Trade Show", "Weekend Getaway", "Ski Trip", "Honeymoon"};
+
+    private final ContentResolver contentResolver;
+    private final Random random;
+    private long firstId = -1; // lowest row id this generator inserted
+
+    TripDataGenerator(ContentResolver contentResolver, long seed) {
+        this.contentResolver = contentResolver;
+        this.random = new Random(seed);
+    }
+
+    /** Inserts count trips; successive calls continue the same sequence. */
+    void insert(int count) {
+        if (firstId < 0)
+            firstId = maxTripId() + 1;
+
+        for (int inserted = 0; inserted < count; inserted += BATCH_SIZE) {
+            ContentValues[] batch =
+                    new ContentValues[Math.min(BATCH_SIZE, count - inserted)];
+            for (int i = 0; i < batch.length; ++i)
+                batch[i] = nextTrip();
+            contentResolver.bulkInsert(Trip.CONTENT_URI, batch);
+        }
+    }
+
+    /** The arguments of {@link #INSERTED_SELECTION}. */
+    String[] insertedSelectionArgs() {
+        if (firstId < 0)
+            throw new IllegalStateException("No trips inserted");
+        return new String[] {String.valueOf(firstId)};
+    }
+
+    /** Deletes every trip inserted by this generator. */
+    void deleteInserted() {
+        if (firstId >= 0) {
+            contentResolver.delete(Trip.CONTENT_URI, INSERTED_SELECTION,
+                    insertedSelectionArgs());
+            firstId = -1;
+        }
+    }
+
+    private long maxTripId() {
+        Cursor cursor = contentResolver.query(Trip.CONTENT_URI,
+                new String[] {Trip._ID}, null, null, Trip._ID + " DESC");
+        try {
+            return (cursor != null && cursor.moveToFirst()) ?
+                    cursor.getLong(0) : 0;
+        }
+        finally {
+            if (cursor != null)
+                cursor.close();
+        }
+    }
+
+    // a trip between two different cities lasting 1 to 21 days sometime in
+    // 2014 to 2018, with the costs mostly filled in
+    private ContentValues nextTrip() {
+        String from = pick(CITIES);
+        String to = pick(CITIES);
+        while (to.equals(from))
+            to = pick(CITIES);
+
+        int year = 2014 + random.nextInt(5);
+        int dayOfYear = random.nextInt(340);
+        int days = 1 + random.nextInt(21);
+
+        ContentValues values = new ContentValues();
+        values.put(Trip.COLUMN_NAME,
+                to + " " + pick(PURPOSES) + " " + year);
+        values.put(Trip.COLUMN_FROM, from);
+        values.put(Trip.COLUMN_TO, to);
+        values.put(Trip.COLUMN_DEPART, date(year, dayOfYear));
+        values.put(Trip.COLUMN_RETURN, date(year, dayOfYear + days));
+        values.put(Trip.COLUMN_AIRFARE, cost(150, 1800, 0.95));
+        values.put(Trip.COLUMN_HOTEL, cost(80 * days, 350 * days, 0.85));
+        values.put(Trip.COLUMN_RENTAL, cost(30 * days, 90 * days, 0.4));
+        return values;
+    }
+
+    private String pick(String[] choices) {
+        return choices[random.nextInt(choices.length)];
+    }
+
+    // yyyy-MM-dd, approximating months as 30 days and wrapping into
+    // December's last days rather than the next year
+    private static String date(int year, int dayOfYear) {
+        int month = Math.min(dayOfYear / 30, 11);
+        int day = Math.min(dayOfYear - month * 30, 30);
+        return String.format(Locale.US, "%04d-%02d-%02d",
+                year, month + 1, day + 1);
+    }
+
+    // a cost between min and max, with cents half of the time, or empty
+    // if the expense didn't occur
+    private String cost(int min, int max, double probability) {
+        if (random.nextDouble() >= probability)
+            return "";
+
+        int dollars = min + random.nextInt(max - min + 1);
+        return random.nextBoolean() ? String.valueOf(dollars) :
+                String.format(Locale.US, "%d.%02d", dollars, random.nextInt(100));
+    }
+}
@@ -0,0 +1,380 @@
+package com.inersion.tripex;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.v4.app.Fragment;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.widget.TextView;
+
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures list load time, scrolling frame times, detail open latency and
+ * save latency with 1k, 10k and 100k generated trips, and compares each
+ * metric with the baselines in assets/benchmark_baselines.properties.
+ *
+ * Results are logged, sent as instrumentation status and written to
+ * benchmark_results.properties in the app's external files directory, from
+ * where they can be pulled to refresh the baselines.
+ */
+@RunWith(Parameterized.class)
+public class TripListBenchmark {
+    private static final String TAG = "TripListBenchmark";
+    private static final String BASELINES = "benchmark_baselines.properties";
+    private static final String RESULTS = "benchmark_results.properties";
+
+    // a metric regresses when it exceeds its baseline by more than this
+    private static final double TOLERANCE = 0.3;
+
+    private static final int REPETITIONS = 5; // median of this many runs
+    private static final int FLINGS = 5; // scrolls measured per run
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Parameterized.Parameters(name = "{0} trips")
+    public static Collection<Object[]> sizes() {
+        return Arrays.asList(new Object[][] {{1000}, {10000}, {100000}});
+    }
+
+    @Rule
+    public ActivityTestRule<MainActivity> activityRule =
+            new ActivityTestRule<MainActivity>(MainActivity.class, false, false);
+
+    private final int size;
+    private TripDataGenerator generator;
+
+    public TripListBenchmark(int size) {
+        this.size = size;
+    }
+
+    @Before
+    public void generateTrips() {
+        generator = new TripDataGenerator(
+                getTargetContext().getContentResolver(),
+                TripDataGenerator.DEFAULT_SEED);
+        generator.insert(size);
+    }
+
+    @After
+    public void deleteTrips() {
+        generator.deleteInserted();
+    }
+
+    private static Context getTargetContext() {
+        return InstrumentationRegistry.getTargetContext();
+    }
+
+    @Test
+    public void benchmark() throws Exception {
+        Properties results = new Properties();
+        results.setProperty("list_load_ms", String.valueOf(measureListLoad()));
+
+        MainActivity activity = activityRule.launchActivity(null);
+        tripexFragment tripsFragment =
+                TripListFrameMetricsTest.findTripsFragment(activity);
+        RecyclerView recyclerView = (RecyclerView)
+                tripsFragment.getView().findViewById(R.id.recyclerView);
+        TripListFrameMetricsTest.waitForItems(recyclerView);
+
+        FrameMetricsCollector.Report frames =
+                measureScrolling(tripsFragment, recyclerView);
+        results.setProperty("scroll_p90_frame_ms",
+                String.valueOf(frames.p90FrameMillis));
+        results.setProperty("scroll_janky_percent", String.valueOf(
+                frames.frames == 0 ? 0 : 100 * frames.jankyFrames / frames.frames));
+        results.setProperty("detail_open_ms",
+                String.valueOf(measureDetailOpen(activity)));
+        results.setProperty("save_ms", String.valueOf(measureSave()));
+
+        report(results);
+        compareWithBaselines(results);
+    }
+
+    // runs the list's Loader off the main thread, as LoaderManager would:
+    // the query plus the snapshot, diff, section and first-rows work
+    private long measureListLoad() {
+        long[] millis = new long[REPETITIONS];
+        for (int i = 0; i < REPETITIONS; ++i) {
+            TripListLoader loader = new TripListLoader(getTargetContext(),
+                    Trip.CONTENT_URI, Trip.LIST_COLUMNS, null, null,
+                    Trip.SORT_BY_NAME,
+                    Trip.SECTION_BY_LETTER);
+
+            long start = SystemClock.elapsedRealtime();
+            Cursor cursor = loader.loadInBackground();
+            millis[i] = SystemClock.elapsedRealtime() - start;
+
+            assertTrue(cursor.getCount() >= size);
+            cursor.close();
+        }
+        return median(millis);
+    }
+
+    // flings the list down repeatedly and reports its frame times
+    private FrameMetricsCollector.Report measureScrolling(
+            tripexFragment tripsFragment, final RecyclerView recyclerView)
+            throws InterruptedException {
+        final FrameMetricsCollector frameMetrics =
+                tripsFragment.getFrameMetrics();
+        assertNotNull("frame metrics are only collected in debug builds",
+                frameMetrics);
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        frameMetrics.reset();
+                    }
+                });
+
+        for (int i = 0; i < FLINGS; ++i) {
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            recyclerView.fling(0,
+                                    recyclerView.getMaxFlingVelocity());
+                        }
+                    });
+            TripListFrameMetricsTest.waitForIdle(recyclerView);
+        }
+
+        final FrameMetricsCollector.Report[] report =
+                new FrameMetricsCollector.Report[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        report[0] = frameMetrics.getReport();
+                    }
+                });
+        return report[0];
+    }
+
+    // time from selecting a trip in the middle of the list until its name
+    // is displayed, including the fragment transaction and any query
+    private long measureDetailOpen(final MainActivity activity)
+            throws InterruptedException {
+        List<String> names = new ArrayList<String>();
+        final List<Uri> uris = tripsAt(size / 2, REPETITIONS, names);
+
+        long[] millis = new long[REPETITIONS];
+        for (int i = 0; i < REPETITIONS; ++i) {
+            final Uri tripUri = uris.get(i);
+
+            long start = SystemClock.elapsedRealtime();
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            activity.onTripSelected(tripUri);
+                        }
+                    });
+            waitForDetail(activity, names.get(i));
+            millis[i] = SystemClock.elapsedRealtime() - start;
+
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            activity.getSupportFragmentManager()
+                                    .popBackStackImmediate();
+                        }
+                    });
+        }
+        return median(millis);
+    }
+
+    // polls the displayed DetailFragment until it shows the named trip
+    private static void waitForDetail(final MainActivity activity,
+                                      final String name)
+            throws InterruptedException {
+        final boolean[] shown = new boolean[1];
+        long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+
+        while (!shown[0]) {
+            assertTrue("trip not displayed: " + name,
+                    SystemClock.elapsedRealtime() < deadline);
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            Fragment detail = activity
+                                    .getSupportFragmentManager()
+                                    .findFragmentById(
+                                            activity.findViewById(
+                                                    R.id.fragmentContainer) != null ?
+                                                    R.id.fragmentContainer :
+                                                    R.id.rightPaneContainer);
+                            if (detail instanceof DetailFragment &&
+                                    detail.getView() != null) {
+                                TextView nameTextView = (TextView) detail
+                                        .getView().findViewById(R.id.nameTextView);
+                                shown[0] = name.equals(
+                                        nameTextView.getText().toString());
+                            }
+                        }
+                    });
+            if (!shown[0])
+                Thread.sleep(2);
+        }
+    }
+
+    // time from TripWriter.update until its callback runs on the main
+    // thread, including TripWriter's batching delay
+    private long measureSave() throws InterruptedException {
+        List<Uri> uris = tripsAt(size / 3, REPETITIONS, null);
+        TripWriter writer = TripWriter.getInstance(getTargetContext());
+
+        long[] millis = new long[REPETITIONS];
+        for (int i = 0; i < REPETITIONS; ++i) {
+            final CountDownLatch saved = new CountDownLatch(1);
+            final boolean[] success = new boolean[1];
+            ContentValues values = new ContentValues();
+            values.put(Trip.COLUMN_HOTEL, String.valueOf(100 + i));
+
+            long start = SystemClock.elapsedRealtime();
+            writer.update(uris.get(i), values, new TripWriter.Callback() {
+                @Override
+                public void onWriteCompleted(Uri tripUri, boolean succeeded) {
+                    success[0] = succeeded;
+                    saved.countDown();
+                }
+            });
+            assertTrue("save timed out",
+                    saved.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            millis[i] = SystemClock.elapsedRealtime() - start;
+            assertTrue("save failed", success[0]);
+        }
+        return median(millis);
+    }
+
+    // Uris (and optionally names) of count generated trips starting at the
+    // given position of the list's order; trips the benchmark didn't
+    // insert are never picked, so saving can't overwrite real ones
+    private List<Uri> tripsAt(int position, int count, List<String> names) {
+        Cursor cursor = getTargetContext().getContentResolver().query(
+                Trip.CONTENT_URI, new String[] {Trip._ID, Trip.COLUMN_NAME},
+                TripDataGenerator.INSERTED_SELECTION,
+                generator.insertedSelectionArgs(), Trip.SORT_BY_NAME);
+        assertNotNull(cursor);
+
+        try {
+            List<Uri> uris = new ArrayList<Uri>(count);
+            for (int i = 0; i < count && cursor.moveToPosition(position + i);
+                 ++i) {
+                uris.add(ContentUris.withAppendedId(Trip.CONTENT_URI,
+                        cursor.getLong(0)));
+                if (names != null)
+                    names.add(cursor.getString(1));
+            }
+            assertEquals(count, uris.size());
+            return uris;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    // logs the results, sends them as instrumentation status and appends
+    // them to the results file, keyed like the baselines
+    private void report(Properties results) throws IOException {
+        Properties all = new Properties();
+        File file = new File(getTargetContext().getExternalFilesDir(null),
+                RESULTS);
+        if (file.exists()) {
+            InputStream in = new FileInputStream(file);
+            try {
+                all.load(in);
+            }
+            finally {
+                in.close();
+            }
+        }
+
+        Bundle status = new Bundle();
+        for (String metric : results.stringPropertyNames()) {
+            String key = metric + "." + size;
+            String value = results.getProperty(metric);
+            Log.i(TAG, key + " = " + value);
+            status.putString(key, value);
+            all.setProperty(key, value);
+        }
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, status);
+
+        OutputStream out = new FileOutputStream(file);
+        try {
+            all.store(out, "TripListBenchmark results");
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    // fails if any metric exceeds its baseline by more than TOLERANCE;
+    // metrics without a baseline are only reported
+    private void compareWithBaselines(Properties results) throws IOException {
+        Properties baselines = new Properties();
+        InputStream in = InstrumentationRegistry.getContext().getAssets()
+                .open(BASELINES);
+        try {
+            baselines.load(in);
+        }
+        finally {
+            in.close();
+        }
+
+        StringBuilder regressions = new StringBuilder();
+        for (String metric : results.stringPropertyNames()) {
+            String key = metric + "." + size;
+            String baseline = baselines.getProperty(key);
+            if (baseline == null)
+                continue;
+
+            double value = Double.parseDouble(results.getProperty(metric));
+            double limit = Double.parseDouble(baseline) * (1 + TOLERANCE);
+            if (value > limit)
+                regressions.append("\n").append(key).append(": ")
+                        .append(results.getProperty(metric))
+                        .append(" exceeds baseline ").append(baseline);
+        }
+
+        assertTrue("regressions:" + regressions, regressions.length() == 0);
+    }
+}
@@ -0,0 +1,149 @@
+package com.inersion.tripex;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Scrolls the trip list and reports the frame metrics collected while
+ * scrolling; the report is logged and sent as instrumentation status.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TripListFrameMetricsTest {
+    private static final int TRIP_COUNT = 500;
+    private static final String NAME_PREFIX = "FrameMetricsTest ";
+
+    @Rule
+    public ActivityTestRule<MainActivity> activityRule =
+            new ActivityTestRule<MainActivity>(MainActivity.class, false, false);
+
+    @Before
+    public void insertTrips() {
+        ContentValues[] trips = new ContentValues[TRIP_COUNT];
+        for (int i = 0; i < TRIP_COUNT; ++i) {
+            trips[i] = new ContentValues();
+            trips[i].put(Trip.COLUMN_NAME, NAME_PREFIX + i);
+            trips[i].put(Trip.COLUMN_FROM, "Boston");
+            trips[i].put(Trip.COLUMN_TO, "Paris");
+            trips[i].put(Trip.COLUMN_DEPART, "2017-06-01");
+            trips[i].put(Trip.COLUMN_RETURN, "2017-06-10");
+            trips[i].put(Trip.COLUMN_AIRFARE, "850");
+            trips[i].put(Trip.COLUMN_HOTEL, "1200");
+            trips[i].put(Trip.COLUMN_RENTAL, "300");
+        }
+        getContentResolver().bulkInsert(Trip.CONTENT_URI, trips);
+    }
+
+    // deletes the inserted trips one by one, since the trips Uri only
+    // takes a selection for queries
+    @After
+    public void deleteTrips() {
+        Cursor cursor = getContentResolver().query(Trip.CONTENT_URI,
+                new String[] {Trip._ID}, Trip.COLUMN_NAME + " LIKE ?",
+                new String[] {NAME_PREFIX + "%"}, null);
+        assertNotNull(cursor);
+        try {
+            while (cursor.moveToNext())
+                getContentResolver().delete(
+                        Trip.buildTripUri(cursor.getLong(0)), null, null);
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    private static ContentResolver getContentResolver() {
+        return InstrumentationRegistry.getTargetContext().getContentResolver();
+    }
+
+    @Test
+    public void scrollTripList_reportsFrames() throws Exception {
+        MainActivity activity = activityRule.launchActivity(null);
+        final tripexFragment fragment = findTripsFragment(activity);
+        final FrameMetricsCollector frameMetrics = fragment.getFrameMetrics();
+        assertNotNull("frame metrics are only collected in debug builds",
+                frameMetrics);
+
+        // wait for the list to load, then fling to the end and back
+        final RecyclerView recyclerView =
+                (RecyclerView) fragment.getView().findViewById(R.id.recyclerView);
+        waitForItems(recyclerView);
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                frameMetrics.reset();
+                recyclerView.smoothScrollToPosition(
+                        recyclerView.getAdapter().getItemCount() - 1);
+            }
+        });
+        waitForIdle(recyclerView);
+
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                recyclerView.smoothScrollToPosition(0);
+            }
+        });
+        waitForIdle(recyclerView);
+
+        final FrameMetricsCollector.Report[] report =
+                new FrameMetricsCollector.Report[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                report[0] = frameMetrics.getReport();
+            }
+        });
+
+        Bundle results = new Bundle();
+        results.putString("frame_report", report[0].toString());
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, results);
+
+        assertTrue("no frames recorded while scrolling", report[0].frames > 0);
+        assertTrue("no rows bound while scrolling", report[0].binds > 0);
+    }
+
+    // the list fragment is in fragmentContainer on phones and is the
+    // static tripsFragment on tablets
+    static tripexFragment findTripsFragment(MainActivity activity) {
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        Object fragment = activity.getSupportFragmentManager()
+                .findFragmentById(R.id.fragmentContainer);
+        if (fragment == null)
+            fragment = activity.getSupportFragmentManager()
+                    .findFragmentById(R.id.tripsFragment);
+        return (tripexFragment) fragment;
+    }
+
+    static void waitForItems(RecyclerView recyclerView)
+            throws InterruptedException {
+        // a list of 100k trips can take several seconds to load
+        for (int i = 0; i < 600 && recyclerView.getAdapter().getItemCount() == 0; ++i)
+            Thread.sleep(50);
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+    }
+
+    static void waitForIdle(RecyclerView recyclerView)
+            throws InterruptedException {
+        do {
+            Thread.sleep(100);
+            InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        } while (recyclerView.getScrollState() != RecyclerView.SCROLL_STATE_IDLE);
+    }
+}
@@ -2,19 +2,16 @@
 // Fragment for adding a new trip or editing an existing one
 package com.inersion.tripex;
 
-import android.content.ContentValues;
+import android.content.ContentUris;
 import android.content.Context;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.design.widget.CoordinatorLayout;
 import android.support.design.widget.FloatingActionButton;
 import android.support.design.widget.Snackbar;
 import android.support.design.widget.TextInputLayout;
 import android.support.v4.app.Fragment;
-import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
-import android.support.v4.content.Loader;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.view.LayoutInflater;
@@ -22,10 +19,15 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.view.inputmethod.InputMethodManager;
 
+import com.inersion.tripex.core.Money;
+import com.inersion.tripex.core.Trip;
+import com.inersion.tripex.core.TripDate;
 import com.inersion.tripex.sampledata.DatabaseDescription;
 
-public class AddEditFragment extends Fragment
-   implements LoaderManager.LoaderCallbacks<Cursor> {
+import java.util.Locale;
+import java.util.concurrent.Future;
+
+public class AddEditFragment extends Fragment {
 
    // defines callback method implemented by MainActivity
    public interface AddEditFragmentListener {
@@ -33,13 +35,27 @@ public class AddEditFragment extends Fragment
       void onAddEditCompleted(Uri tripUri);
    }
 
-   // constant used to identify the Loader
-   private static final int TRIP_LOADER = 0;
+   // key for whether the fields have been filled, in the saved state
+   private static final String FIELDS_LOADED = "fields_loaded";
+
+   // how long typing must pause before the draft is saved
+   private static final long DRAFT_SAVE_DELAY_MILLIS = 1500;
 
    private AddEditFragmentListener listener; // MainActivity
    private Uri tripUri; // Uri of selected trip
    private boolean addingNewTrip = true; // adding (true) or editing
 
+   // id of the trip the draft belongs to (Draft.NEW_TRIP_ID when adding)
+   private long draftTripId = DatabaseDescription.Draft.NEW_TRIP_ID;
+   private boolean draftRestored = false; // fields were filled from a draft
+   private boolean draftDirty = false; // fields changed since last draft save
+   private boolean fillingFields = false; // a read is filling the fields
+   private boolean fieldsLoaded = false; // the draft or trip has been read
+   private boolean saving = false; // saveTrip's write hasn't completed
+   private Future<TripDraft> draftRequest; // pending read of the draft
+   private Future<Trip> tripRequest; // pending read of the saved trip
+   private final Handler draftHandler = new Handler(); // debounces saves
+
    // EditTexts for trip information
    private TextInputLayout nameTextInputLayout;
    private TextInputLayout fromTextInputLayout;
@@ -54,11 +70,15 @@ public class AddEditFragment extends Fragment
 
    private CoordinatorLayout coordinatorLayout; // used with SnackBars
 
+   // kept so writes can still be queued once the fragment is detached
+   private TripRepository repository;
+
    // set AddEditFragmentListener when Fragment attached
    @Override
    public void onAttach(Context context) {
       super.onAttach(context);
       listener = (AddEditFragmentListener) context;
+      repository = TripRepository.getInstance(context);
    }
 
    // remove AddEditFragmentListener when Fragment detached
@@ -98,6 +118,13 @@ public class AddEditFragment extends Fragment
       rentalTextInputLayout =
               (TextInputLayout) view.findViewById(R.id.rentalTextInputLayout);
 
+      // save a draft whenever any field changes
+      TextInputLayout[] fields = {nameTextInputLayout, fromTextInputLayout,
+         toTextInputLayout, departTextInputLayout, returnTextInputLayout,
+         airfareTextInputLayout, hotelTextInputLayout, rentalTextInputLayout};
+      for (TextInputLayout field : fields)
+         field.getEditText().addTextChangedListener(draftChangedListener);
+
       // set FloatingActionButton's event listener
       saveTripFAB = (FloatingActionButton) view.findViewById(
          R.id.saveFloatingActionButton);
@@ -115,13 +142,83 @@ public class AddEditFragment extends Fragment
          tripUri = arguments.getParcelable(MainActivity.TRIP_URI);
       }
 
-      // if editing an existing trip, create Loader to get the trip
       if (tripUri != null)
-         getLoaderManager().initLoader(TRIP_LOADER, null, this);
+         draftTripId = ContentUris.parseId(tripUri);
+
+      // once filled, the EditTexts keep their text across configuration
+      // changes, so only a fresh fragment reads the trip and its draft
+      if (savedInstanceState != null)
+         fieldsLoaded = savedInstanceState.getBoolean(FIELDS_LOADED);
+
+      if (!fieldsLoaded) {
+         // load any draft left by an earlier session or by process death
+         draftRequest = repository.getDraft(draftTripId, draftLoaded);
+
+         // if editing an existing trip, get the trip
+         if (tripUri != null)
+            tripRequest = repository.getTrip(draftTripId, tripLoaded);
+      }
 
       return view;
    }
 
+   @Override
+   public void onSaveInstanceState(Bundle outState) {
+      super.onSaveInstanceState(outState);
+      outState.putBoolean(FIELDS_LOADED, fieldsLoaded);
+   }
+
+   // drop reads that haven't been delivered when the view goes away
+   @Override
+   public void onDestroyView() {
+      super.onDestroyView();
+
+      if (draftRequest != null) {
+         draftRequest.cancel(false);
+         draftRequest = null;
+      }
+      if (tripRequest != null) {
+         tripRequest.cancel(false);
+         tripRequest = null;
+      }
+   }
+
+   // fills the fields from a restored draft; getDraft only returns one
+   // that's newer than the saved trip, so it wins no matter which read
+   // finishes first
+   private final TripRepository.Callback<TripDraft> draftLoaded =
+      new TripRepository.Callback<TripDraft>() {
+         @Override
+         public void onResult(TripDraft draft) {
+            draftRequest = null;
+
+            if (draft != null) {
+               draftRestored = true;
+               if (tripRequest != null) {
+                  tripRequest.cancel(false);
+                  tripRequest = null;
+               }
+               fillFields(draft);
+            }
+
+            fieldsLoaded = (tripRequest == null);
+         }
+      };
+
+   // fills the fields from the saved trip unless a draft was restored
+   private final TripRepository.Callback<Trip> tripLoaded =
+      new TripRepository.Callback<Trip>() {
+         @Override
+         public void onResult(Trip trip) {
+            tripRequest = null;
+
+            if (trip != null && !draftRestored)
+               fillFields(TripDraft.of(trip, Locale.getDefault()));
+
+            fieldsLoaded = (draftRequest == null);
+         }
+      };
+
    // detects when the text in the nameTextInputLayout's EditText changes
    // to hide or show saveButtonFAB
    private final TextWatcher nameChangedListener = new TextWatcher() {
@@ -140,6 +237,59 @@ public class AddEditFragment extends Fragment
       public void afterTextChanged(Editable s) { }
    };
 
+   // schedules a draft save once the user pauses typing in any field
+   private final TextWatcher draftChangedListener = new TextWatcher() {
+      @Override
+      public void beforeTextChanged(CharSequence s, int start, int count,
+                                    int after) {}
+
+      @Override
+      public void onTextChanged(CharSequence s, int start, int before,
+                                int count) {}
+
+      // called after the text in any field changes
+      @Override
+      public void afterTextChanged(Editable s) {
+         if (fillingFields)
+            return; // the text came from the database, not the user
+
+         draftDirty = true;
+         draftHandler.removeCallbacks(saveDraft);
+         draftHandler.postDelayed(saveDraft, DRAFT_SAVE_DELAY_MILLIS);
+      }
+   };
+
+   // hands the current field values to TripRepository, which writes
+   // them on TripWriter's background thread
+   private final Runnable saveDraft = new Runnable() {
+      @Override
+      public void run() {
+         if (draftDirty) {
+            draftDirty = false;
+            repository.saveDraft(draftTripId, getDraft());
+         }
+      }
+   };
+
+   // when the user leaves the screen: if they backed out without saving,
+   // the draft is discarded; otherwise, e.g. they switched apps and the
+   // process may die, an unsaved draft is saved right away. A save still
+   // being written discards the draft itself once it succeeds
+   @Override
+   public void onPause() {
+      super.onPause();
+      draftHandler.removeCallbacks(saveDraft);
+
+      if (isRemoving() || getActivity().isFinishing()) {
+         draftDirty = false;
+         if (!saving)
+            repository.discardDraft(draftTripId);
+      }
+      else {
+         saveDraft.run();
+      }
+   }
+
    // shows saveButtonFAB only if the name is not empty
    private void updateSaveButtonFAB() {
       String input =
@@ -157,6 +307,15 @@ public class AddEditFragment extends Fragment
            new View.OnClickListener() {
               @Override
               public void onClick(View v) {
+                 // dates and costs that can't be read are marked, not
+                 // saved as typed or as zero
+                 boolean datesValid = validateDates();
+                 if (!validateCosts() || !datesValid)
+                    return;
+
+                 // ignore further taps until this save has completed
+                 saveTripFAB.setEnabled(false);
+
                  // hide the virtual keyboard
                  ((InputMethodManager) getActivity().getSystemService(
                          Context.INPUT_METHOD_SERVICE)).hideSoftInputFromWindow(
@@ -165,119 +324,135 @@ public class AddEditFragment extends Fragment
               }
            };
 
-   // saves trip information to the database
-   private void saveTrip() {
-      // create ContentValues object containing trip's key-value pairs
-      ContentValues contentValues = new ContentValues();
-      contentValues.put(DatabaseDescription.Trip.COLUMN_NAME,
-              nameTextInputLayout.getEditText().getText().toString());
-      contentValues.put(DatabaseDescription.Trip.COLUMN_FROM,
-              fromTextInputLayout.getEditText().getText().toString());
-      contentValues.put(DatabaseDescription.Trip.COLUMN_TO,
-              toTextInputLayout.getEditText().getText().toString());
-      contentValues.put(DatabaseDescription.Trip.COLUMN_DEPART,
-              departTextInputLayout.getEditText().getText().toString());
-      contentValues.put(DatabaseDescription.Trip.COLUMN_RETURN,
-              returnTextInputLayout.getEditText().getText().toString());
-      contentValues.put(DatabaseDescription.Trip.COLUMN_AIRFARE,
-              airfareTextInputLayout.getEditText().getText().toString());
-      contentValues.put(DatabaseDescription.Trip.COLUMN_HOTEL,
-              hotelTextInputLayout.getEditText().getText().toString());
-      contentValues.put(DatabaseDescription.Trip.COLUMN_RENTAL,
-              rentalTextInputLayout.getEditText().getText().toString());
-
-
-      if (addingNewTrip) {
-         // use Activity's ContentResolver to invoke
-         // insert on the TripExContentProvider
-         Uri newTripUri = getActivity().getContentResolver().insert(
-                 DatabaseDescription.Trip.CONTENT_URI, contentValues);
-
-         if (newTripUri != null) {
-            Snackbar.make(coordinatorLayout,
-                    R.string.trip_added, Snackbar.LENGTH_LONG).show();
-            listener.onAddEditCompleted(newTripUri);
+   // shows an error on each cost field whose text isn't an amount in the
+   // current locale; returns true if every cost can be read
+   private boolean validateCosts() {
+      TextInputLayout[] costs = {airfareTextInputLayout,
+         hotelTextInputLayout, rentalTextInputLayout};
+      boolean valid = true;
+
+      for (TextInputLayout cost : costs) {
+         try {
+            Money.parse(textOf(cost), Locale.getDefault());
+            cost.setError(null);
          }
-         else {
-            Snackbar.make(coordinatorLayout,
-                    R.string.trip_not_added, Snackbar.LENGTH_LONG).show();
+         catch (NumberFormatException e) {
+            cost.setError(getString(R.string.invalid_cost));
+            valid = false;
          }
       }
-      else {
-         // use Activity's ContentResolver to invoke
-         // insert on the TripExContentProvider
-         int updatedRows = getActivity().getContentResolver().update(
-                 tripUri, contentValues, null, null);
-
-         if (updatedRows > 0) {
-            listener.onAddEditCompleted(tripUri);
-            Snackbar.make(coordinatorLayout,
-                    R.string.trip_updated, Snackbar.LENGTH_LONG).show();
+      return valid;
+   }
+
+   // shows an error on each date field whose text isn't a date in the
+   // current locale or yyyy-MM-dd, which budgets and the summary widget
+   // group trips by; returns true if every date can be read
+   private boolean validateDates() {
+      TextInputLayout[] dates = {departTextInputLayout,
+         returnTextInputLayout};
+      boolean valid = true;
+
+      for (TextInputLayout date : dates) {
+         try {
+            TripDate.parse(textOf(date), Locale.getDefault());
+            date.setError(null);
          }
-         else {
-            Snackbar.make(coordinatorLayout,
-                    R.string.trip_not_updated, Snackbar.LENGTH_LONG).show();
+         catch (IllegalArgumentException e) {
+            date.setError(getString(R.string.invalid_date));
+            valid = false;
          }
       }
+      return valid;
    }
 
-   // called by LoaderManager to create a Loader
-   @Override
-   public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-      // create an appropriate CursorLoader based on the id argument;
-      // only one Loader in this fragment, so the switch is unnecessary
-      switch (id) {
-         case TRIP_LOADER:
-            return new CursorLoader(getActivity(),
-               tripUri, // Uri of trip to display
-               null, // null projection returns all columns
-               null, // null selection returns all rows
-               null, // no selection arguments
-               null); // sort order
-         default:
-            return null;
-      }
+   // saves trip information to the database
+   private void saveTrip() {
+      // the trip itself is about to be saved, so drop any pending draft
+      draftHandler.removeCallbacks(saveDraft);
+      draftDirty = false;
+      saving = true;
+
+      // the write runs on TripWriter's background thread and the
+      // result is reported to tripSaved on the main thread
+      // the dates and costs were validated in the same locale, so they
+      // parse
+      Locale locale = Locale.getDefault();
+      if (addingNewTrip)
+         repository.insert(getDraft().toTrip(Trip.NO_ID, locale), tripSaved);
+      else
+         repository.update(getDraft().toTrip(draftTripId, locale), tripSaved);
    }
 
-   // called by LoaderManager when loading completes
-   @Override
-   public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-      // if the trip exists in the database, display its data
-      if (data != null && data.moveToFirst()) {
-         // get the column index for each data item
-         int nameIndex = data.getColumnIndex(DatabaseDescription.Trip.COLUMN_NAME);
-         int fromIndex = data.getColumnIndex(DatabaseDescription.Trip.COLUMN_FROM);
-         int toIndex = data.getColumnIndex(DatabaseDescription.Trip.COLUMN_TO);
-         int departIndex = data.getColumnIndex(DatabaseDescription.Trip.COLUMN_DEPART);
-         int returnIndex = data.getColumnIndex(DatabaseDescription.Trip.COLUMN_RETURN);
-         int airfareIndex = data.getColumnIndex(DatabaseDescription.Trip.COLUMN_AIRFARE);
-         int hotelIndex = data.getColumnIndex(DatabaseDescription.Trip.COLUMN_HOTEL);
-         int rentalIndex = data.getColumnIndex(DatabaseDescription.Trip.COLUMN_RENTAL);
-
-
-         // fill EditTexts with the retrieved data
-         nameTextInputLayout.getEditText().setText(
-            data.getString(nameIndex));
-         fromTextInputLayout.getEditText().setText(
-            data.getString(fromIndex));
-         toTextInputLayout.getEditText().setText(
-            data.getString(toIndex));
-         departTextInputLayout.getEditText().setText(
-            data.getString(departIndex));
-         returnTextInputLayout.getEditText().setText(
-                 data.getString(returnIndex));
-         airfareTextInputLayout.getEditText().setText(
-                 data.getString(airfareIndex));
-         hotelTextInputLayout.getEditText().setText(
-                 data.getString(hotelIndex));
-         rentalTextInputLayout.getEditText().setText(
-                 data.getString(rentalIndex));
+   // returns the EditTexts' contents exactly as typed
+   private TripDraft getDraft() {
+      return new TripDraft(
+         textOf(nameTextInputLayout),
+         textOf(fromTextInputLayout),
+         textOf(toTextInputLayout),
+         textOf(departTextInputLayout),
+         textOf(returnTextInputLayout),
+         textOf(airfareTextInputLayout),
+         textOf(hotelTextInputLayout),
+         textOf(rentalTextInputLayout));
+   }
 
-         updateSaveButtonFAB();
-      }
+   private static String textOf(TextInputLayout layout) {
+      return layout.getEditText().getText().toString();
    }
 
-   // called by LoaderManager when the Loader is being reset
-   @Override
-   public void onLoaderReset(Loader<Cursor> loader) { }
-}
+   // fills the EditTexts without treating the text as a user edit
+   private void fillFields(TripDraft draft) {
+      fillingFields = true;
+      nameTextInputLayout.getEditText().setText(draft.name);
+      fromTextInputLayout.getEditText().setText(draft.from);
+      toTextInputLayout.getEditText().setText(draft.to);
+      departTextInputLayout.getEditText().setText(draft.depart);
+      returnTextInputLayout.getEditText().setText(draft.returnDate);
+      airfareTextInputLayout.getEditText().setText(draft.airfare);
+      hotelTextInputLayout.getEditText().setText(draft.hotel);
+      rentalTextInputLayout.getEditText().setText(draft.rental);
+      fillingFields = false;
+      updateSaveButtonFAB();
+   }
+
+   // reports the result of saveTrip once the write has completed
+   private final TripWriter.Callback tripSaved = new TripWriter.Callback() {
+      @Override
+      public void onWriteCompleted(Uri savedTripUri, boolean success) {
+         saving = false;
+
+         // the draft has been saved for real, so it's no longer needed,
+         // even if the user has left this fragment while the write ran
+         if (success)
+            repository.discardDraft(draftTripId);
+
+         if (listener == null)
+            return;
+
+         saveTripFAB.setEnabled(true);
+
+         if (addingNewTrip) {
+            if (success) {
+               Snackbar.make(coordinatorLayout,
+                       R.string.trip_added, Snackbar.LENGTH_LONG).show();
+               listener.onAddEditCompleted(savedTripUri);
+            }
+            else {
+               Snackbar.make(coordinatorLayout,
+                       R.string.trip_not_added, Snackbar.LENGTH_LONG).show();
+            }
+         }
+         else {
+            if (success) {
+               listener.onAddEditCompleted(savedTripUri);
+               Snackbar.make(coordinatorLayout,
+                       R.string.trip_updated, Snackbar.LENGTH_LONG).show();
+            }
+            else {
+               Snackbar.make(coordinatorLayout,
+                       R.string.trip_not_updated, Snackbar.LENGTH_LONG).show();
+            }
+         }
+      }
+   };
+}
\ No newline at end of file
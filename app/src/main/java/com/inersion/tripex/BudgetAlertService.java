@@ -0,0 +1,96 @@
+// BudgetAlertService.java
+// Posts a notification for a budget whose spending reached its alert
+// threshold. The provider starts it once the write that crossed the
+// threshold is done; since that write may have been rolled back or
+// undone since, the budget is read again and only alerted on if it's
+// still over its threshold
+package com.inersion.tripex;
+
+import android.app.IntentService;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.support.v4.app.NotificationCompat;
+
+import com.inersion.tripex.core.Money;
+import com.inersion.tripex.sampledata.DatabaseDescription.Budget;
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+public class BudgetAlertService extends IntentService {
+    private static final String[] BUDGET_COLUMNS = {Budget.COLUMN_TRIP_ID,
+            Budget.COLUMN_PERIOD, Budget.COLUMN_LIMIT_CENTS,
+            Budget.COLUMN_ALERT_PERCENT, Budget.COLUMN_SPENT_CENTS};
+
+    public BudgetAlertService() {
+        super("BudgetAlertService");
+    }
+
+    // runs on the service's worker thread, one alert at a time
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (intent == null ||
+                !Budget.ACTION_THRESHOLD_REACHED.equals(intent.getAction()))
+            return;
+
+        long id = intent.getLongExtra(Budget.EXTRA_BUDGET_ID, -1);
+        Cursor cursor = getContentResolver().query(
+                Budget.buildBudgetUri(id), BUDGET_COLUMNS, null, null, null);
+        if (cursor == null)
+            return;
+
+        try {
+            if (!cursor.moveToFirst())
+                return; // deleted since
+
+            long limitCents = cursor.getLong(2);
+            long spentCents = cursor.getLong(4);
+            if (spentCents < limitCents * cursor.getInt(3) / 100)
+                return; // back under its threshold
+
+            String covers = cursor.isNull(0) ? cursor.getString(1) :
+                    readTripName(cursor.getLong(0));
+            if (covers == null)
+                return; // its trip was deleted since
+
+            notify(id, covers, spentCents, limitCents);
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    // posts the alert, replacing an earlier one for the same budget
+    private void notify(long id, String covers, long spentCents,
+                        long limitCents) {
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(this)
+                .setSmallIcon(R.drawable.ic_notification_budget)
+                .setContentTitle(getString(R.string.budget_alert_title, covers))
+                .setContentText(getString(R.string.budget_alert_text,
+                        Money.ofCents(spentCents).toString(),
+                        Money.ofCents(limitCents).toString()))
+                .setAutoCancel(true)
+                .setContentIntent(PendingIntent.getActivity(this, 0,
+                        new Intent(this, MainActivity.class), 0));
+
+        NotificationManager notificationManager = (NotificationManager)
+                getSystemService(Context.NOTIFICATION_SERVICE);
+        notificationManager.notify((int) id, builder.build());
+    }
+
+    // the name of the trip with the given id, or null if there's none
+    private String readTripName(long tripId) {
+        Cursor cursor = getContentResolver().query(Trip.buildTripUri(tripId),
+                new String[] {Trip.COLUMN_NAME}, null, null, null);
+        if (cursor == null)
+            return null;
+
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+// ChangeWindow.java
+// Merges the change notifications that arrive within a window into one,
+// so a burst of edits triggers a single reload at the end of the window
+// rather than one per edit
+package com.inersion.tripex;
+
+import android.os.Handler;
+import android.os.Looper;
+
+// only used on the main thread
+final class ChangeWindow {
+    // long enough to cover a burst of TripWriter batches, short enough
+    // that a single edit still shows up promptly
+    static final long DEFAULT_MILLIS = 200;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable action; // run once per window of changes
+    private long windowMillis;
+    private boolean pending = false; // action is scheduled
+
+    private final Runnable fire = new Runnable() {
+        @Override
+        public void run() {
+            pending = false;
+            action.run();
+        }
+    };
+
+    ChangeWindow(long windowMillis, Runnable action) {
+        this.windowMillis = windowMillis;
+        this.action = action;
+    }
+
+    // notes a change; the first one opens a window that the changes after
+    // it join, and action runs once when the window closes
+    void notifyChange() {
+        if (pending)
+            return;
+
+        pending = true;
+        handler.postDelayed(fire, windowMillis);
+    }
+
+    // drops the changes of the open window, if any
+    void cancel() {
+        pending = false;
+        handler.removeCallbacks(fire);
+    }
+
+    // applies from the next window on
+    void setWindowMillis(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+}
@@ -4,16 +4,15 @@ package com.inersion.tripex;
 
 import android.app.AlertDialog;
 import android.app.Dialog;
+import android.content.ContentUris;
 import android.content.Context;
 import android.content.DialogInterface;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.support.design.widget.Snackbar;
 import android.support.v4.app.DialogFragment;
 import android.support.v4.app.Fragment;
-import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
-import android.support.v4.content.Loader;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -22,10 +21,9 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
-import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+import com.inersion.tripex.core.Trip;
 
-public class DetailFragment extends Fragment
-   implements LoaderManager.LoaderCallbacks<Cursor> {
+public class DetailFragment extends Fragment {
 
    // callback methods implemented by MainActivity
    public interface DetailFragmentListener {
@@ -35,7 +33,9 @@ public class DetailFragment extends Fragment
       void onEditTrip(Uri tripUri);
    }
 
-   private static final int TRIP_LOADER = 0; // identifies the Loader
+   // a trip that isn't cached is only observed once the selection has
+   // stayed put this long, so flicking through trips doesn't queue loads
+   private static final long LOAD_DELAY_MILLIS = 120;
 
    private DetailFragmentListener listener; // MainActivity
    private Uri tripURI; // Uri of selected trip
@@ -50,6 +50,18 @@ public class DetailFragment extends Fragment
    private TextView rentalTextView; // displays trip's rental cost
    private TextView totalcostTextView; // displays trip's total cost
 
+   // the displayed trip, kept current as it changes; a burst of changes
+   // brings a single reload
+   private TripQuery<Trip> tripQuery;
+
+   // starts the delayed observing of a trip that wasn't cached
+   private final Handler handler = new Handler();
+   private final Runnable observeTrip = new Runnable() {
+      @Override
+      public void run() {
+         observeTrip(false);
+      }
+   };
 
    // set DetailFragmentListener when fragment attached
    @Override
@@ -73,10 +85,13 @@ public class DetailFragment extends Fragment
       super.onCreateView(inflater, container, savedInstanceState);
       setHasOptionsMenu(true); // this fragment has menu items to display
 
-      // get Bundle of arguments then extract the trip's Uri
+      // get the trip's Uri, which showTrip may have changed since the
+      // arguments were set
       Bundle arguments = getArguments();
 
-      if (arguments != null)
+      if (savedInstanceState != null)
+         tripURI = savedInstanceState.getParcelable(MainActivity.TRIP_URI);
+      else if (arguments != null)
          tripURI = arguments.getParcelable(MainActivity.TRIP_URI);
 
       // inflate DetailFragment's layout
@@ -94,11 +109,91 @@ public class DetailFragment extends Fragment
       rentalTextView = (TextView) view.findViewById(R.id.rentalTextView);
       totalcostTextView = (TextView) view.findViewById(R.id.totalcostTextView);
 
-      // load the trip
-      getLoaderManager().initLoader(TRIP_LOADER, null, this);
+      // display the trip at once if its details were prefetched; the
+      // query then only reloads it once it changes
+      TripDetails details = TripDetailPrefetcher.getInstance(getActivity())
+         .get(ContentUris.parseId(tripURI));
+
+      if (details != null)
+         displayTrip(details);
+      observeTrip(details != null);
+
       return view;
    }
 
+   // remember the displayed trip, which may differ from the arguments'
+   @Override
+   public void onSaveInstanceState(Bundle outState) {
+      super.onSaveInstanceState(outState);
+      outState.putParcelable(MainActivity.TRIP_URI, tripURI);
+   }
+
+   // switches this fragment to another trip, reusing its views; used by
+   // the two-pane layout instead of replacing the fragment on every tap
+   public void showTrip(Uri tripUri) {
+      if (tripUri.equals(tripURI))
+         return;
+
+      tripURI = tripUri;
+      stopObserving();
+
+      TripDetails details = TripDetailPrefetcher.getInstance(getActivity())
+         .get(ContentUris.parseId(tripURI));
+
+      if (details != null) {
+         displayTrip(details);
+         observeTrip(true);
+      }
+      else {
+         // blank the previous trip rather than show it under this Uri
+         clearTrip();
+         handler.postDelayed(observeTrip, LOAD_DELAY_MILLIS);
+      }
+   }
+
+   // subscribes to the trip's TripQuery; tripChanged displays it. The
+   // prefetcher drops a trip's details when it changes, so cached details
+   // are current and the trip needn't be loaded until it changes again
+   private void observeTrip(boolean cached) {
+      stopObserving();
+      tripQuery = TripRepository.getInstance(getActivity()).queryTrip(
+         ContentUris.parseId(tripURI));
+      if (cached)
+         tripQuery.subscribeToChanges(tripChanged);
+      else
+         tripQuery.subscribe(tripChanged);
+   }
+
+   // drops a scheduled or current subscription to the trip
+   private void stopObserving() {
+      handler.removeCallbacks(observeTrip);
+      if (tripQuery != null) {
+         tripQuery.unsubscribe(tripChanged);
+         tripQuery = null;
+      }
+   }
+
+   // caches and displays the newest version of the trip
+   private final TripQuery.Observer<Trip> tripChanged =
+      new TripQuery.Observer<Trip>() {
+         @Override
+         public void onChanged(Trip trip) {
+            // the trip may have been deleted meanwhile
+            if (trip != null) {
+               TripDetails details = TripDetails.from(getResources(), trip);
+               TripDetailPrefetcher.getInstance(getActivity()).put(details);
+               displayTrip(details);
+            }
+         }
+      };
+
+   // stop observing the trip when the view is destroyed
+   @Override
+   public void onDestroyView() {
+      super.onDestroyView();
+      stopObserving();
+   }
+
    // display this fragment's menu items
    @Override
    public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
@@ -147,11 +242,11 @@ public class DetailFragment extends Fragment
                             public void onClick(
                                     DialogInterface dialog, int button) {
 
-                               // use Activity's ContentResolver to invoke
-                               // delete on the TripExContentProvider
-                               getActivity().getContentResolver().delete(
-                                       tripURI, null, null);
-                               listener.onTripDeleted(); // notify listener
+                               // delete the trip on TripWriter's background
+                               // thread; tripDeleted runs when it's done
+                               TripRepository.getInstance(getActivity()).delete(
+                                       ContentUris.parseId(tripURI),
+                                       tripDeleted);
                             }
                          }
                  );
@@ -161,82 +256,48 @@ public class DetailFragment extends Fragment
               }
            };
 
-   // called by LoaderManager to create a Loader
-   @Override
-   public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-      // create an appropriate CursorLoader based on the id argument;
-      // only one Loader in this fragment, so the switch is unnecessary
-      CursorLoader cursorLoader;
-
-      switch (id) {
-         case TRIP_LOADER:
-            cursorLoader = new CursorLoader(getActivity(),
-                    tripURI, // Uri of trip to display
-                    null, // null projection returns all columns
-                    null, // null selection returns all rows
-                    null, // no selection arguments
-                    null); // sort order
-            break;
-         default:
-            cursorLoader = null;
-            break;
+   // notifies the listener once the trip has been deleted, or tells the
+   // user it couldn't be and keeps showing it
+   private final TripWriter.Callback tripDeleted = new TripWriter.Callback() {
+      @Override
+      public void onWriteCompleted(Uri tripUri, boolean success) {
+         // the user may have left this fragment while the delete ran
+         if (listener == null)
+            return;
+
+         if (success)
+            listener.onTripDeleted(); // notify listener
+         else if (getView() != null)
+            Snackbar.make(getView(), R.string.trip_not_deleted,
+                    Snackbar.LENGTH_LONG).show();
       }
-
-      return cursorLoader;
+   };
+
+   // fill TextViews with the trip's formatted data
+   private void displayTrip(TripDetails details) {
+      nameTextView.setText(details.name);
+      fromTextView.setText(details.from);
+      toTextView.setText(details.to);
+      departTextView.setText(details.depart);
+      returnTextView.setText(details.returnDate);
+      airfareTextView.setText(details.airfare);
+      hotelTextView.setText(details.hotel);
+      rentalTextView.setText(details.rental);
+
+      //display total cost of trip
+      totalcostTextView.setText(details.totalCost);
    }
 
-   // called by LoaderManager when loading completes
-   @Override
-   public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-      // if the trip exists in the database, display its data
-      if (data != null && data.moveToFirst()) {
-         // get the column index for each data item
-
-         int nameIndex = data.getColumnIndex(Trip.COLUMN_NAME);
-         int fromIndex = data.getColumnIndex(Trip.COLUMN_FROM);
-         int toIndex = data.getColumnIndex(Trip.COLUMN_TO);
-         int departIndex = data.getColumnIndex(Trip.COLUMN_DEPART);
-         int returnIndex = data.getColumnIndex(Trip.COLUMN_RETURN);
-         int airfareIndex = data.getColumnIndex(Trip.COLUMN_AIRFARE);
-         int hotelIndex = data.getColumnIndex(Trip.COLUMN_HOTEL);
-         int rentalIndex = data.getColumnIndex(Trip.COLUMN_RENTAL);
-
-
-         // fill TextViews with the retrieved data
-         nameTextView.setText(data.getString(nameIndex));
-         fromTextView.setText(data.getString(fromIndex));
-         toTextView.setText(data.getString(toIndex));
-         departTextView.setText(data.getString(departIndex));
-         returnTextView.setText(data.getString(returnIndex));
-         airfareTextView.setText("(USD)$" + data.getString(airfareIndex));
-         hotelTextView.setText("(USD)$" + data.getString(hotelIndex));
-         rentalTextView.setText("(USD)$" + data.getString(rentalIndex));
-
-         //parse the cost elements if not null
-         double airfare = 0.0;
-         double hotel = 0.0;
-         double rental = 0.0;
-         double total_cost = 0.0;
-
-         if (!(data.getString(airfareIndex).isEmpty())){
-         airfare = Double.parseDouble((data.getString(airfareIndex)));}
-
-         if (!(data.getString(hotelIndex).isEmpty())){
-         hotel = Double.parseDouble((data.getString(hotelIndex)));}
-
-         if (!(data.getString(rentalIndex)).isEmpty()){
-         rental = Double.parseDouble((data.getString(rentalIndex)));}
-
-         //calculate total cost of trip
-         total_cost = airfare + hotel + rental;
-
-         //display total cost of trip
-         totalcostTextView.setText("(USD)$" + total_cost);
-      }
-   }
-
-   // called by LoaderManager when the Loader is being reset
-   @Override
-   public void onLoaderReset(Loader<Cursor> loader) {
+   // empty the TextViews while a trip loads
+   private void clearTrip() {
+      nameTextView.setText(null);
+      fromTextView.setText(null);
+      toTextView.setText(null);
+      departTextView.setText(null);
+      returnTextView.setText(null);
+      airfareTextView.setText(null);
+      hotelTextView.setText(null);
+      rentalTextView.setText(null);
+      totalcostTextView.setText(null);
    }
 }
\ No newline at end of file
@@ -0,0 +1,183 @@
+// FrameMetricsCollector.java
+// Records frame durations with Choreographer frame callbacks, plus the
+// adapter's bind and inflate times, while the trip list is scrolling
+package com.inersion.tripex;
+
+import android.view.Choreographer;
+
+import java.util.Locale;
+
+public class FrameMetricsCollector implements Choreographer.FrameCallback {
+   // frame durations are histogrammed in 1ms buckets up to this; slower
+   // frames all land in the last bucket
+   private static final int MAX_FRAME_MILLIS = 250;
+
+   // summary of everything recorded since the last reset
+   public static final class Report {
+      public final long frames; // frames drawn while scrolling
+      public final long jankyFrames; // frames that missed one or more vsyncs
+      public final long droppedFrames; // vsyncs missed in total
+      public final double meanFrameMillis;
+      public final int p50FrameMillis;
+      public final int p90FrameMillis;
+      public final int p99FrameMillis;
+      public final double maxFrameMillis;
+      public final long binds; // onBindViewHolder calls
+      public final double meanBindMillis;
+      public final double maxBindMillis;
+      public final long inflates; // onCreateViewHolder calls
+      public final double meanInflateMillis;
+      public final double maxInflateMillis;
+
+      private Report(FrameMetricsCollector c) {
+         frames = c.frameCount;
+         jankyFrames = c.jankyFrameCount;
+         droppedFrames = c.droppedFrameCount;
+         meanFrameMillis = mean(c.totalFrameNanos, c.frameCount);
+         p50FrameMillis = c.percentile(50);
+         p90FrameMillis = c.percentile(90);
+         p99FrameMillis = c.percentile(99);
+         maxFrameMillis = c.maxFrameNanos / 1e6;
+         binds = c.bindCount;
+         meanBindMillis = mean(c.totalBindNanos, c.bindCount);
+         maxBindMillis = c.maxBindNanos / 1e6;
+         inflates = c.inflateCount;
+         meanInflateMillis = mean(c.totalInflateNanos, c.inflateCount);
+         maxInflateMillis = c.maxInflateNanos / 1e6;
+      }
+
+      private static double mean(long totalNanos, long count) {
+         return (count == 0) ? 0 : totalNanos / 1e6 / count;
+      }
+
+      // human-readable summary for the debug menu and test output
+      @Override
+      public String toString() {
+         return String.format(Locale.US,
+            "frames: %d (janky %d, %.1f%%; dropped vsyncs %d)\n" +
+            "frame ms: mean %.2f, p50 %d, p90 %d, p99 %d, max %.2f\n" +
+            "binds: %d (mean %.3f ms, max %.3f ms)\n" +
+            "inflates: %d (mean %.3f ms, max %.3f ms)",
+            frames, jankyFrames,
+            (frames == 0) ? 0.0 : 100.0 * jankyFrames / frames, droppedFrames,
+            meanFrameMillis, p50FrameMillis, p90FrameMillis, p99FrameMillis,
+            maxFrameMillis, binds, meanBindMillis, maxBindMillis,
+            inflates, meanInflateMillis, maxInflateMillis);
+      }
+   }
+
+   private final long frameIntervalNanos; // one vsync at the display's rate
+   private boolean running = false;
+   private long lastFrameTimeNanos = 0; // 0 until the first frame after start
+
+   // all fields below are only touched on the main thread
+   private final long[] frameHistogram = new long[MAX_FRAME_MILLIS + 1];
+   private long frameCount;
+   private long jankyFrameCount;
+   private long droppedFrameCount;
+   private long totalFrameNanos;
+   private long maxFrameNanos;
+   private long bindCount;
+   private long totalBindNanos;
+   private long maxBindNanos;
+   private long inflateCount;
+   private long totalInflateNanos;
+   private long maxInflateNanos;
+
+   // refreshRate is the display's refresh rate in frames per second
+   public FrameMetricsCollector(float refreshRate) {
+      frameIntervalNanos = (long) (1e9 / refreshRate);
+   }
+
+   // starts recording frames; called when the list starts scrolling
+   public void start() {
+      if (!running) {
+         running = true;
+         lastFrameTimeNanos = 0;
+         Choreographer.getInstance().postFrameCallback(this);
+      }
+   }
+
+   // stops recording frames; called when the list stops scrolling
+   public void stop() {
+      if (running) {
+         running = false;
+         Choreographer.getInstance().removeFrameCallback(this);
+      }
+   }
+
+   // called by Choreographer at the start of every frame
+   @Override
+   public void doFrame(long frameTimeNanos) {
+      if (!running)
+         return;
+
+      if (lastFrameTimeNanos != 0)
+         recordFrame(frameTimeNanos - lastFrameTimeNanos);
+      lastFrameTimeNanos = frameTimeNanos;
+
+      Choreographer.getInstance().postFrameCallback(this);
+   }
+
+   // records the time between the starts of two consecutive frames
+   private void recordFrame(long durationNanos) {
+      ++frameCount;
+      totalFrameNanos += durationNanos;
+      maxFrameNanos = Math.max(maxFrameNanos, durationNanos);
+      ++frameHistogram[(int) Math.min(durationNanos / 1000000,
+         MAX_FRAME_MILLIS)];
+
+      // a frame spanning n vsyncs missed n - 1 of them
+      long missed = Math.round((double) durationNanos / frameIntervalNanos) - 1;
+      if (missed > 0) {
+         ++jankyFrameCount;
+         droppedFrameCount += missed;
+      }
+   }
+
+   // records one onBindViewHolder call made while scrolling
+   public void recordBind(long durationNanos) {
+      if (running) {
+         ++bindCount;
+         totalBindNanos += durationNanos;
+         maxBindNanos = Math.max(maxBindNanos, durationNanos);
+      }
+   }
+
+   // records one onCreateViewHolder call made while scrolling
+   public void recordInflate(long durationNanos) {
+      if (running) {
+         ++inflateCount;
+         totalInflateNanos += durationNanos;
+         maxInflateNanos = Math.max(maxInflateNanos, durationNanos);
+      }
+   }
+
+   // upper bound, in whole milliseconds, of the given frame percentile
+   private int percentile(double percentile) {
+      long threshold = (long) Math.ceil(frameCount * percentile / 100.0);
+      long seen = 0;
+
+      for (int millis = 0; millis <= MAX_FRAME_MILLIS; ++millis) {
+         seen += frameHistogram[millis];
+         if (seen >= threshold && seen > 0)
+            return millis + 1;
+      }
+      return 0;
+   }
+
+   // returns a summary of everything recorded since the last reset
+   public Report getReport() {
+      return new Report(this);
+   }
+
+   // discards everything recorded so far
+   public void reset() {
+      for (int i = 0; i <= MAX_FRAME_MILLIS; ++i)
+         frameHistogram[i] = 0;
+      frameCount = jankyFrameCount = droppedFrameCount = 0;
+      totalFrameNanos = maxFrameNanos = 0;
+      bindCount = totalBindNanos = maxBindNanos = 0;
+      inflateCount = totalInflateNanos = maxInflateNanos = 0;
+   }
+}
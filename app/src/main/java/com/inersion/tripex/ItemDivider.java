@@ -1,6 +1,7 @@
 // ItemDivider.java
 // Class that defines dividers displayed between the RecyclerView items;
-// based on Google's sample implementation at bit.ly/DividerItemDecoration
+// based on Google's sample implementation at bit.ly/DividerItemDecoration;
+// no divider is drawn below a section's last item, where a header follows
 package com.inersion.tripex;
 
 import android.content.Context;
@@ -11,9 +12,11 @@ import android.view.View;
 
 class ItemDivider extends RecyclerView.ItemDecoration {
    private final Drawable divider;
+   private final tripexAdapter adapter; // supplies the section index
 
    // constructor loads built-in Android list item divider
-   public ItemDivider(Context context) {
+   public ItemDivider(Context context, tripexAdapter adapter) {
+      this.adapter = adapter;
       int[] attrs = {android.R.attr.listDivider};
       divider = context.obtainStyledAttributes(attrs).getDrawable(0);
    }
@@ -28,10 +31,18 @@ class ItemDivider extends RecyclerView.ItemDecoration {
       int left = parent.getPaddingLeft();
       int right = parent.getWidth() - parent.getPaddingRight();
 
+      TripSections sections = adapter.getSections();
+
       // for every item but the last, draw a line below it
       for (int i = 0; i < parent.getChildCount() - 1; ++i) {
          View item = parent.getChildAt(i); // get ith list item
 
+         // a section header separates the last item of a section instead
+         int position = parent.getChildAdapterPosition(item);
+         if (sections != null && position != RecyclerView.NO_POSITION &&
+            sections.isLastInSection(position))
+            continue;
+
          // calculate top/bottom y-coordinates for current divider
          int top = item.getBottom() + ((RecyclerView.LayoutParams)
             item.getLayoutParams()).bottomMargin;
@@ -7,9 +7,16 @@ package com.inersion.tripex;
 
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.StrictMode;
+import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentTransaction;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import com.inersion.tripex.sampledata.StartupTrace;
+import com.inersion.tripex.sampledata.TripExMaintenanceService;
 
 public class MainActivity extends AppCompatActivity
         implements tripexFragment.TripsFragmentListener,
@@ -24,6 +31,18 @@ public class MainActivity extends AppCompatActivity
     // display tripexFragment when MainActivity first loads
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTrace.beginSection("MainActivity.onCreate");
+
+        // in debug builds, log the slow calls noted on the main thread,
+        // such as a block of a long list read on demand
+        if (BuildConfig.DEBUG)
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder(
+                    StrictMode.getThreadPolicy()).detectCustomSlowCalls()
+                    .penaltyLog().build());
+
+        // the launch theme's window background stands in for the UI while
+        // the process starts; switch to the real theme before inflating
+        setTheme(R.style.AppTheme_NoActionBar);
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
@@ -48,6 +67,38 @@ public class MainActivity extends AppCompatActivity
                     (tripexFragment) getSupportFragmentManager().
                             findFragmentById(R.id.tripsFragment);
         }
+
+        StartupTrace.mark(StartupTrace.ACTIVITY_CREATED);
+        markFirstFrame();
+        StartupTrace.endSection();
+    }
+
+    // marks the first frame once the window's views are about to be drawn
+    private void markFirstFrame() {
+        final View decorView = getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        decorView.getViewTreeObserver()
+                                .removeOnPreDrawListener(this);
+                        StartupTrace.mark(StartupTrace.FIRST_FRAME);
+                        return true;
+                    }
+                });
+    }
+
+    // database maintenance gives way while the app is visible
+    @Override
+    protected void onStart() {
+        super.onStart();
+        TripExMaintenanceService.setAppInForeground(true);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        TripExMaintenanceService.setAppInForeground(false);
     }
 
 
@@ -57,6 +108,17 @@ public class MainActivity extends AppCompatActivity
         if (findViewById(R.id.fragmentContainer) != null) // phone
             displayTrip(tripUri, R.id.fragmentContainer);
         else { // tablet
+            // if the right pane already shows a trip, switch it to this
+            // one instead of replacing the fragment on every tap; run any
+            // pending pop first so a fragment on its way out isn't reused
+            getSupportFragmentManager().executePendingTransactions();
+            Fragment rightPane = getSupportFragmentManager()
+                    .findFragmentById(R.id.rightPaneContainer);
+            if (rightPane instanceof DetailFragment) {
+                ((DetailFragment) rightPane).showTrip(tripUri);
+                return;
+            }
+
             // removes top of back stack
             getSupportFragmentManager().popBackStack();
 
@@ -109,12 +171,12 @@ public class MainActivity extends AppCompatActivity
         transaction.commit(); // causes AddEditFragment to display
     }
 
-    // return to trip list when displayed trip deleted
+    // return to trip list when displayed trip deleted; the list refreshes
+    // itself when the TripExContentProvider reports the change
     @Override
     public void onTripDeleted() {
         // removes top of back stack
         getSupportFragmentManager().popBackStack();
-        tripsFragment.updateTripList(); // refresh trips
     }
 
     // display the AddEditFragment to edit an existing trip
@@ -131,7 +193,6 @@ public class MainActivity extends AppCompatActivity
     public void onAddEditCompleted(Uri tripUri) {
         // removes top of back stack
         getSupportFragmentManager().popBackStack();
-        tripsFragment.updateTripList(); // refresh trips
 
         if (findViewById(R.id.fragmentContainer) == null) { // tablet
             // removes top of back stack
@@ -0,0 +1,122 @@
+// SectionHeaderDecoration.java
+// Class that draws a header above the first item of each section of the
+// trip list, and keeps the current section's header pinned to the top
+package com.inersion.tripex;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.support.v4.content.ContextCompat;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+class SectionHeaderDecoration extends RecyclerView.ItemDecoration {
+   private final tripexAdapter adapter; // supplies the section index
+   private final int headerHeight;
+   private final int textPadding;
+   private final Paint backgroundPaint = new Paint();
+   private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+   // constructor loads the header's dimensions and colors
+   public SectionHeaderDecoration(Context context, tripexAdapter adapter) {
+      this.adapter = adapter;
+
+      Resources resources = context.getResources();
+      headerHeight =
+         resources.getDimensionPixelSize(R.dimen.section_header_height);
+      textPadding = resources.getDimensionPixelSize(
+         R.dimen.activity_horizontal_margin);
+
+      backgroundPaint.setColor(
+         ContextCompat.getColor(context, R.color.sectionHeaderBackground));
+      textPaint.setColor(ContextCompat.getColor(context, R.color.colorPrimary));
+      textPaint.setTextSize(
+         resources.getDimension(R.dimen.section_header_text_size));
+      textPaint.setFakeBoldText(true);
+   }
+
+   // leaves room for a header above the first item of each section
+   @Override
+   public void getItemOffsets(Rect outRect, View view, RecyclerView parent,
+                              RecyclerView.State state) {
+      TripSections sections = adapter.getSections();
+      int position = parent.getChildAdapterPosition(view);
+
+      if (sections != null && position != RecyclerView.NO_POSITION &&
+         sections.isFirstInSection(position))
+         outRect.set(0, headerHeight, 0, 0);
+      else
+         outRect.set(0, 0, 0, 0);
+   }
+
+   // draws the headers in the space left above section starts
+   @Override
+   public void onDraw(Canvas c, RecyclerView parent, RecyclerView.State state) {
+      super.onDraw(c, parent, state);
+      TripSections sections = adapter.getSections();
+      if (sections == null)
+         return;
+
+      for (int i = 0; i < parent.getChildCount(); ++i) {
+         View item = parent.getChildAt(i);
+         int position = parent.getChildAdapterPosition(item);
+
+         if (position != RecyclerView.NO_POSITION &&
+            sections.isFirstInSection(position)) {
+            drawHeader(c, parent, sections.getTitle(
+               sections.getSectionForPosition(position)),
+               item.getTop() - headerHeight);
+         }
+      }
+   }
+
+   // pins the header of the topmost item's section to the top of the
+   // list; the next section's header pushes it up as it arrives
+   @Override
+   public void onDrawOver(Canvas c, RecyclerView parent,
+                          RecyclerView.State state) {
+      super.onDrawOver(c, parent, state);
+      TripSections sections = adapter.getSections();
+      if (sections == null || parent.getChildCount() == 0)
+         return;
+
+      int top = parent.getPaddingTop();
+      int position =
+         parent.getChildAdapterPosition(parent.getChildAt(0));
+      if (position == RecyclerView.NO_POSITION)
+         return;
+
+      int section = sections.getSectionForPosition(position);
+
+      // find the next section's header and let it push this one
+      for (int i = 1; i < parent.getChildCount(); ++i) {
+         View item = parent.getChildAt(i);
+         int itemPosition = parent.getChildAdapterPosition(item);
+
+         if (itemPosition != RecyclerView.NO_POSITION &&
+            sections.isFirstInSection(itemPosition) &&
+            sections.getSectionForPosition(itemPosition) != section) {
+            int nextHeaderTop = item.getTop() - headerHeight;
+            top = Math.min(top, nextHeaderTop - headerHeight);
+            break;
+         }
+      }
+
+      drawHeader(c, parent, sections.getTitle(section), top);
+   }
+
+   // draws one header whose top edge is at y = top
+   private void drawHeader(Canvas c, RecyclerView parent, String title,
+                           int top) {
+      int left = parent.getPaddingLeft();
+      int right = parent.getWidth() - parent.getPaddingRight();
+      c.drawRect(left, top, right, top + headerHeight, backgroundPaint);
+
+      // center the text vertically in the header
+      float baseline = top + (headerHeight -
+         textPaint.ascent() - textPaint.descent()) / 2;
+      c.drawText(title, left + textPadding, baseline, textPaint);
+   }
+}
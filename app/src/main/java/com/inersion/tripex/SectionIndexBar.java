@@ -0,0 +1,98 @@
+// SectionIndexBar.java
+// Vertical strip of section titles beside the trip list; touching or
+// dragging over a title jumps the list straight to that section
+package com.inersion.tripex;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.v4.content.ContextCompat;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+public class SectionIndexBar extends View {
+    // interface implemented by tripexFragment to jump to a section
+    public interface OnSectionSelectedListener {
+        void onSectionSelected(int section);
+    }
+
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private String[] titles = new String[0];
+    private OnSectionSelectedListener listener;
+    private int selectedSection = -1; // section under the finger, if any
+
+    // constructor used when inflating from XML
+    public SectionIndexBar(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        textPaint.setColor(ContextCompat.getColor(context, R.color.colorPrimary));
+        textPaint.setTextSize(getResources().getDimension(
+                R.dimen.section_index_text_size));
+        textPaint.setTextAlign(Paint.Align.CENTER);
+    }
+
+    public void setOnSectionSelectedListener(OnSectionSelectedListener listener) {
+        this.listener = listener;
+    }
+
+    // displays the given section titles; the bar is hidden when there is
+    // nothing to jump between
+    public void setTitles(String[] titles) {
+        this.titles = titles;
+        setVisibility(titles.length > 1 ? VISIBLE : GONE);
+        invalidate();
+    }
+
+    // height of each title's touch target
+    private float getRowHeight() {
+        return (float) (getHeight() - getPaddingTop() - getPaddingBottom()) /
+                titles.length;
+    }
+
+    // draws the titles evenly spaced, skipping some if they don't all fit
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (titles.length == 0)
+            return;
+
+        float rowHeight = getRowHeight();
+        float textHeight = textPaint.descent() - textPaint.ascent();
+        int step = (int) Math.ceil(textHeight / rowHeight);
+        float x = getWidth() / 2f;
+
+        for (int i = 0; i < titles.length; i += step) {
+            float centerY = getPaddingTop() + (i + 0.5f) * rowHeight;
+            canvas.drawText(titles[i], x,
+                    centerY - (textPaint.ascent() + textPaint.descent()) / 2,
+                    textPaint);
+        }
+    }
+
+    // maps the touch position directly to a section, so a jump is O(1)
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (titles.length == 0)
+            return false;
+
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_MOVE:
+                int section = (int) ((event.getY() - getPaddingTop()) /
+                        getRowHeight());
+                section = Math.max(0, Math.min(section, titles.length - 1));
+
+                if (section != selectedSection && listener != null) {
+                    selectedSection = section;
+                    listener.onSectionSelected(section);
+                }
+                return true;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                selectedSection = -1;
+                return true;
+        }
+
+        return super.onTouchEvent(event);
+    }
+}
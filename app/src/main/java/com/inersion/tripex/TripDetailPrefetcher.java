@@ -0,0 +1,132 @@
+// TripDetailPrefetcher.java
+// Warms a cache of formatted trip details for the rows that are visible
+// or about to be tapped, so DetailFragment can render without a query
+package com.inersion.tripex;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.Resources;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.LruCache;
+
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class TripDetailPrefetcher {
+    private static final String TAG = "TripDetailPrefetcher";
+
+    // maximum number of trips whose details are kept in memory
+    private static final int CACHE_SIZE = 64;
+
+    private static TripDetailPrefetcher instance;
+
+    private final ContentResolver contentResolver;
+    private final Resources resources; // for formatting the details
+    private final Handler prefetchHandler; // runs on the prefetch thread
+    private final LruCache<Long, TripDetails> details =
+            new LruCache<Long, TripDetails>(CACHE_SIZE);
+
+    // returns the app-wide prefetcher, creating it on first use
+    static synchronized TripDetailPrefetcher getInstance(Context context) {
+        if (instance == null)
+            instance = new TripDetailPrefetcher(context.getApplicationContext());
+        return instance;
+    }
+
+    private TripDetailPrefetcher(Context context) {
+        contentResolver = context.getContentResolver();
+        resources = context.getResources();
+
+        HandlerThread thread = new HandlerThread(TAG,
+                Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        prefetchHandler = new Handler(thread.getLooper());
+
+        // drop cached details as soon as the trips change; this runs on
+        // the prefetch thread, after any load that may have read the old
+        // values, so stale details never outlive the eviction
+        contentResolver.registerContentObserver(Trip.CONTENT_URI, true,
+                new ContentObserver(prefetchHandler) {
+                    @Override
+                    public void onChange(boolean selfChange, Uri uri) {
+                        // a Uri for one trip evicts just that trip
+                        if (uri != null && uri.getPathSegments().size() == 2) {
+                            try {
+                                details.remove(Long.parseLong(
+                                        uri.getLastPathSegment()));
+                                return;
+                            }
+                            catch (NumberFormatException e) {
+                                // not a trip Uri; fall through
+                            }
+                        }
+                        details.evictAll();
+                    }
+                });
+    }
+
+    // the cached details of the trip with the given id, or null
+    TripDetails get(long id) {
+        return details.get(id);
+    }
+
+    // caches details DetailFragment got from observing its trip's TripQuery
+    void put(TripDetails tripDetails) {
+        details.put(tripDetails.id, tripDetails);
+    }
+
+    // loads the details of the trips with the given ids in the background;
+    // urgent requests, such as for a row being touched, jump the queue
+    void prefetch(long[] ids, boolean urgent) {
+        final List<Long> missing = new ArrayList<Long>(ids.length);
+        for (long id : ids)
+            if (details.get(id) == null)
+                missing.add(id);
+
+        if (missing.isEmpty())
+            return;
+
+        Runnable load = new Runnable() {
+            @Override
+            public void run() {
+                load(missing);
+            }
+        };
+
+        if (urgent)
+            prefetchHandler.postAtFrontOfQueue(load);
+        else
+            prefetchHandler.post(load);
+    }
+
+    // queries and formats the trips with the given ids
+    private void load(List<Long> ids) {
+        StringBuilder selection = new StringBuilder(Trip._ID + " IN (");
+        String[] selectionArgs = new String[ids.size()];
+        for (int i = 0; i < ids.size(); ++i) {
+            selection.append(i == 0 ? "?" : ",?");
+            selectionArgs[i] = String.valueOf(ids.get(i));
+        }
+        selection.append(')');
+
+        Cursor cursor = contentResolver.query(Trip.CONTENT_URI, null,
+                selection.toString(), selectionArgs, null);
+        if (cursor == null)
+            return;
+
+        try {
+            while (cursor.moveToNext())
+                put(TripDetails.from(resources, cursor));
+        }
+        finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+// TripDetails.java
+// The display strings for DetailFragment, formatted once so the detail
+// screen can be filled from a cache without touching the database
+package com.inersion.tripex;
+
+import android.content.res.Resources;
+import android.database.Cursor;
+
+import com.inersion.tripex.core.Money;
+import com.inersion.tripex.core.Trip;
+import com.inersion.tripex.sampledata.TripValues;
+
+final class TripDetails {
+    final long id; // trip's row ID
+    final String name;
+    final String from;
+    final String to;
+    final String depart;
+    final String returnDate;
+    final String airfare;
+    final String hotel;
+    final String rental;
+    final String totalCost;
+
+    private TripDetails(Resources resources, Trip trip) {
+        id = trip.getId();
+        name = trip.getName();
+        from = trip.getFrom();
+        to = trip.getTo();
+        depart = trip.getDepart();
+        returnDate = trip.getReturnDate();
+        airfare = cost(resources, trip.getAirfare());
+        hotel = cost(resources, trip.getHotel());
+        rental = cost(resources, trip.getRental());
+        totalCost = cost(resources, trip.getTotal());
+    }
+
+    static TripDetails from(Resources resources, Trip trip) {
+        return new TripDetails(resources, trip);
+    }
+
+    // formats the trip the cursor is positioned on
+    static TripDetails from(Resources resources, Cursor cursor) {
+        return new TripDetails(resources, TripValues.fromCursor(cursor));
+    }
+
+    // formats a cost the way the trip list does
+    private static String cost(Resources resources, Money money) {
+        return resources.getString(R.string.cost, money.toString());
+    }
+}
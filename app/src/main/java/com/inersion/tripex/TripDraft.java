@@ -0,0 +1,97 @@
+// TripDraft.java
+// The text of AddEditFragment's fields exactly as typed, which may not
+// parse yet (e.g., "12." mid-way through a cost); stored as drafts
+package com.inersion.tripex;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.inersion.tripex.core.Money;
+import com.inersion.tripex.core.Trip;
+import com.inersion.tripex.core.TripDate;
+import com.inersion.tripex.sampledata.DatabaseDescription;
+
+import java.util.Locale;
+
+public final class TripDraft {
+    public final String name;
+    public final String from;
+    public final String to;
+    public final String depart;
+    public final String returnDate;
+    public final String airfare;
+    public final String hotel;
+    public final String rental;
+
+    public TripDraft(String name, String from, String to, String depart,
+                     String returnDate, String airfare, String hotel,
+                     String rental) {
+        this.name = name;
+        this.from = from;
+        this.to = to;
+        this.depart = depart;
+        this.returnDate = returnDate;
+        this.airfare = airfare;
+        this.hotel = hotel;
+        this.rental = rental;
+    }
+
+    // the text a saved trip's fields start out with, with the locale's
+    // decimal separator; zero costs are left empty as they were when the
+    // trip was entered
+    static TripDraft of(Trip trip, Locale locale) {
+        return new TripDraft(trip.getName(), trip.getFrom(), trip.getTo(),
+                trip.getDepart(), trip.getReturnDate(),
+                costText(trip.getAirfare(), locale),
+                costText(trip.getHotel(), locale),
+                costText(trip.getRental(), locale));
+    }
+
+    private static String costText(Money cost, Locale locale) {
+        return cost.isZero() ? "" : cost.toString(locale);
+    }
+
+    // the trip the text describes, with dates and costs typed in the given
+    // locale; the dates are stored as yyyy-MM-dd. Throws
+    // IllegalArgumentException, e.g. NumberFormatException for a cost, if
+    // a date or cost can't be read
+    Trip toTrip(long id, Locale locale) {
+        return new Trip(id, name, from, to, TripDate.parse(depart, locale),
+                TripDate.parse(returnDate, locale),
+                Money.parse(airfare, locale), Money.parse(hotel, locale),
+                Money.parse(rental, locale));
+    }
+
+    // the draft the cursor is positioned on
+    static TripDraft fromCursor(Cursor cursor) {
+        return new TripDraft(
+                getString(cursor, DatabaseDescription.Trip.COLUMN_NAME),
+                getString(cursor, DatabaseDescription.Trip.COLUMN_FROM),
+                getString(cursor, DatabaseDescription.Trip.COLUMN_TO),
+                getString(cursor, DatabaseDescription.Trip.COLUMN_DEPART),
+                getString(cursor, DatabaseDescription.Trip.COLUMN_RETURN),
+                getString(cursor, DatabaseDescription.Trip.COLUMN_AIRFARE),
+                getString(cursor, DatabaseDescription.Trip.COLUMN_HOTEL),
+                getString(cursor, DatabaseDescription.Trip.COLUMN_RENTAL));
+    }
+
+    // the column's value, or "" if it is null
+    private static String getString(Cursor cursor, String column) {
+        String value = cursor.getString(cursor.getColumnIndex(column));
+        return (value != null) ? value : "";
+    }
+
+    // the draft's columns, for TripWriter.saveDraft
+    ContentValues toContentValues() {
+        ContentValues values = new ContentValues();
+        values.put(DatabaseDescription.Trip.COLUMN_NAME, name);
+        values.put(DatabaseDescription.Trip.COLUMN_FROM, from);
+        values.put(DatabaseDescription.Trip.COLUMN_TO, to);
+        values.put(DatabaseDescription.Trip.COLUMN_DEPART, depart);
+        values.put(DatabaseDescription.Trip.COLUMN_RETURN, returnDate);
+        values.put(DatabaseDescription.Trip.COLUMN_AIRFARE, airfare);
+        values.put(DatabaseDescription.Trip.COLUMN_HOTEL, hotel);
+        values.put(DatabaseDescription.Trip.COLUMN_RENTAL, rental);
+        return values;
+    }
+}
@@ -0,0 +1,222 @@
+// TripListDiff.java
+// Computes the item removals, moves, insertions and changes between two
+// versions of the trip list so the RecyclerView rebinds only what changed
+package com.inersion.tripex;
+
+import android.database.Cursor;
+import android.support.v7.widget.RecyclerView;
+
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+import java.util.Arrays;
+
+class TripListDiff {
+    // beyond this many operations a full refresh is cheaper than
+    // animating each item, and computing the diff would cost more too
+    private static final int MAX_OPERATIONS = 256;
+
+    // kinds of operation, stored as (type, first, second) triples
+    private static final int REMOVE = 0; // first = position
+    private static final int MOVE = 1; // first = from, second = to
+    private static final int INSERT = 2; // first = position
+    private static final int CHANGE = 3; // first = position
+
+    // row ids and content hashes of one version of the list, in order
+    static final class Snapshot {
+        final long[] ids;
+        final long[] hashes;
+
+        private Snapshot(long[] ids, long[] hashes) {
+            this.ids = ids;
+            this.hashes = hashes;
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        // the rows of this snapshot, which must be in id order, rearranged
+        // into the order of ids; an id without a row here is left out, and
+        // a row whose id isn't in order (e.g. a trip added since order was
+        // read) follows the others in id order
+        Snapshot inOrder(long[] order) {
+            long[] orderedIds = new long[size()];
+            long[] orderedHashes = new long[size()];
+            boolean[] placed = new boolean[size()];
+            int count = 0;
+
+            for (long id : order) {
+                int row = Arrays.binarySearch(ids, id);
+                if (row >= 0 && !placed[row]) {
+                    orderedIds[count] = id;
+                    orderedHashes[count] = hashes[row];
+                    placed[row] = true;
+                    ++count;
+                }
+            }
+
+            for (int row = 0; row < size(); ++row) {
+                if (!placed[row]) {
+                    orderedIds[count] = ids[row];
+                    orderedHashes[count] = hashes[row];
+                    ++count;
+                }
+            }
+
+            return new Snapshot(orderedIds, orderedHashes);
+        }
+    }
+
+    private final Snapshot from; // the version this diff applies to
+    private final int[] operations;
+    private final int operationCount; // number of triples in operations
+
+    private TripListDiff(Snapshot from, int[] operations, int operationCount) {
+        this.from = from;
+        this.operations = operations;
+        this.operationCount = operationCount;
+    }
+
+    // reads every row's id and a hash of its contents; call this
+    // off the main thread since it walks the whole cursor
+    static Snapshot snapshot(Cursor cursor) {
+        int count = cursor.getCount();
+        long[] ids = new long[count];
+        long[] hashes = new long[count];
+        int idIndex = cursor.getColumnIndex(Trip._ID);
+        int columnCount = cursor.getColumnCount();
+
+        for (int row = 0; cursor.moveToPosition(row); ++row) {
+            ids[row] = cursor.getLong(idIndex);
+
+            long hash = 17;
+            for (int column = 0; column < columnCount; ++column) {
+                String value = cursor.getString(column);
+                hash = 31 * hash + (value != null ? value.hashCode() : 0);
+            }
+            hashes[row] = hash;
+        }
+
+        return new Snapshot(ids, hashes);
+    }
+
+    // computes how to turn from into to, or returns null if the
+    // list should simply be refreshed in full
+    static TripListDiff compute(Snapshot from, Snapshot to) {
+        if (from == null)
+            return null;
+
+        // each row added or removed is an operation of its own
+        if (Math.abs(to.size() - from.size()) > MAX_OPERATIONS)
+            return null;
+
+        // the new ids, sorted for binary search; unlike a set of boxed
+        // ids this costs a single array however long the list is
+        long[] newIds = Arrays.copyOf(to.ids, to.size());
+        Arrays.sort(newIds);
+
+        // working copy of the list as the operations are applied to it
+        int capacity = from.size() + to.size();
+        long[] ids = Arrays.copyOf(from.ids, capacity);
+        long[] hashes = Arrays.copyOf(from.hashes, capacity);
+        int size = from.size();
+
+        int[] operations = new int[3 * 16];
+        int count = 0;
+
+        // remove rows that are gone, last first so positions stay valid
+        for (int i = size - 1; i >= 0; --i) {
+            if (Arrays.binarySearch(newIds, ids[i]) < 0) {
+                if (count == MAX_OPERATIONS)
+                    return null;
+                operations = add(operations, count++, REMOVE, i, 0);
+                System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+                System.arraycopy(hashes, i + 1, hashes, i, size - i - 1);
+                --size;
+            }
+        }
+
+        // then walk the new list, moving or inserting rows into place
+        for (int i = 0; i < to.size(); ++i) {
+            long id = to.ids[i];
+
+            if (i >= size || ids[i] != id) {
+                int j = indexOf(ids, id, i + 1, size);
+
+                if (count == MAX_OPERATIONS)
+                    return null;
+
+                if (j >= 0) { // the row moved up from position j
+                    long hash = hashes[j];
+                    System.arraycopy(ids, i, ids, i + 1, j - i);
+                    System.arraycopy(hashes, i, hashes, i + 1, j - i);
+                    ids[i] = id;
+                    hashes[i] = hash;
+                    operations = add(operations, count++, MOVE, j, i);
+                }
+                else { // the row is new
+                    System.arraycopy(ids, i, ids, i + 1, size - i);
+                    System.arraycopy(hashes, i, hashes, i + 1, size - i);
+                    ids[i] = id;
+                    hashes[i] = to.hashes[i];
+                    ++size;
+                    operations = add(operations, count++, INSERT, i, 0);
+                    continue;
+                }
+            }
+
+            if (hashes[i] != to.hashes[i]) {
+                if (count == MAX_OPERATIONS)
+                    return null;
+                operations = add(operations, count++, CHANGE, i, 0);
+            }
+        }
+
+        return new TripListDiff(from, operations, count);
+    }
+
+    // appends an operation, growing the array as needed
+    private static int[] add(int[] operations, int count, int type,
+                             int first, int second) {
+        if (3 * count + 3 > operations.length)
+            operations = Arrays.copyOf(operations, operations.length * 2);
+        operations[3 * count] = type;
+        operations[3 * count + 1] = first;
+        operations[3 * count + 2] = second;
+        return operations;
+    }
+
+    private static int indexOf(long[] ids, long id, int start, int end) {
+        for (int i = start; i < end; ++i)
+            if (ids[i] == id)
+                return i;
+        return -1;
+    }
+
+    // true if this diff was computed against the given snapshot
+    boolean appliesTo(Snapshot snapshot) {
+        return from == snapshot;
+    }
+
+    // issues the granular notifications to adapter
+    void dispatchTo(RecyclerView.Adapter<?> adapter) {
+        for (int i = 0; i < operationCount; ++i) {
+            int first = operations[3 * i + 1];
+
+            switch (operations[3 * i]) {
+                case REMOVE:
+                    adapter.notifyItemRemoved(first);
+                    break;
+                case MOVE:
+                    adapter.notifyItemMoved(first, operations[3 * i + 2]);
+                    break;
+                case INSERT:
+                    adapter.notifyItemInserted(first);
+                    break;
+                default:
+                    adapter.notifyItemChanged(first);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+// TripListIndex.java
+// App-wide TripIndex, built once from the provider on a background thread
+// and then kept current one trip at a time from the provider's change
+// notifications, so the trip list can be sorted in memory instead of by
+// an ORDER BY on every reload
+package com.inersion.tripex;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import com.inersion.tripex.core.TripIndex;
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+import com.inersion.tripex.sampledata.TripValues;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+final class TripListIndex {
+    private static final String TAG = "TripListIndex";
+
+    // the only columns the index holds
+    private static final String[] PROJECTION = {Trip._ID, Trip.COLUMN_TO,
+            Trip.COLUMN_DEPART, Trip.COLUMN_AIRFARE, Trip.COLUMN_HOTEL,
+            Trip.COLUMN_RENTAL};
+
+    private static TripListIndex instance;
+
+    private final ContentResolver contentResolver;
+    private final Handler indexHandler; // runs on the index thread
+
+    // null until built; only touched on the index thread
+    private TripIndex index;
+
+    // returns the app-wide index, creating it and starting its build on
+    // first use
+    static synchronized TripListIndex getInstance(Context context) {
+        if (instance == null)
+            instance = new TripListIndex(context.getApplicationContext());
+        return instance;
+    }
+
+    private TripListIndex(Context context) {
+        contentResolver = context.getContentResolver();
+
+        HandlerThread thread = new HandlerThread(TAG,
+                Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        indexHandler = new Handler(thread.getLooper());
+
+        // changes are applied on the index thread in the order they're
+        // sent; one registered before the build starts can't be missed
+        contentResolver.registerContentObserver(Trip.CONTENT_URI, true,
+                new ContentObserver(indexHandler) {
+                    @Override
+                    public void onChange(boolean selfChange, Uri uri) {
+                        long id = tripId(uri);
+                        if (id > 0)
+                            reindex(id);
+                        else
+                            rebuild();
+                    }
+                });
+
+        indexHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                rebuild();
+            }
+        });
+    }
+
+    // ids of the trips matching filter in the given order, or null if the
+    // trips couldn't be read. Runs on the index thread after the changes
+    // delivered so far; call it off the main thread, since it waits for
+    // the first build
+    long[] select(final TripIndex.Filter filter,
+                  final TripIndex.SortOrder order, final boolean descending) {
+        FutureTask<long[]> select = new FutureTask<long[]>(
+                new Callable<long[]>() {
+                    @Override
+                    public long[] call() {
+                        if (index == null)
+                            rebuild(); // the first build failed; try again
+                        return (index != null) ?
+                                index.select(filter, order, descending) : null;
+                    }
+                });
+        indexHandler.post(select);
+
+        try {
+            return select.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (ExecutionException e) {
+            Log.e(TAG, "Selecting trips failed", e.getCause());
+            return null;
+        }
+    }
+
+    // the trip id a change notification's Uri names, or -1 if it names
+    // the whole table (e.g., after a bulk insert or a sync)
+    private static long tripId(Uri uri) {
+        if (uri != null && uri.getPathSegments().size() == 2) {
+            try {
+                return Long.parseLong(uri.getLastPathSegment());
+            }
+            catch (NumberFormatException e) {
+                // not a trip Uri; fall through
+            }
+        }
+        return -1;
+    }
+
+    // reads every trip into a new index, then swaps it in
+    private void rebuild() {
+        Cursor cursor = contentResolver.query(Trip.CONTENT_URI, PROJECTION,
+                null, null, null);
+        if (cursor == null)
+            return;
+
+        TripIndex rebuilt = new TripIndex();
+        try {
+            while (cursor.moveToNext())
+                rebuilt.put(TripValues.fromCursor(cursor));
+        }
+        finally {
+            cursor.close();
+        }
+        index = rebuilt;
+    }
+
+    // reads the one trip that changed and updates or removes its entry
+    private void reindex(long id) {
+        if (index == null)
+            return; // the pending build will read it
+
+        Cursor cursor = contentResolver.query(Trip.buildTripUri(id),
+                PROJECTION, null, null, null);
+        if (cursor == null)
+            return;
+
+        try {
+            if (cursor.moveToFirst())
+                index.put(TripValues.fromCursor(cursor));
+            else
+                index.remove(id);
+        }
+        finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+// TripListLoader.java
+// CursorLoader for the trip list that also indexes its sections, diffs
+// each new result against the previous one and formats its first rows
+// on the loader's background thread; a burst of trip changes brings a
+// single reload. Lists too long to keep in memory, and lists sorted by
+// TripListIndex, are delivered through a TripWindowCursor
+package com.inersion.tripex;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+
+import com.inersion.tripex.core.TripIndex;
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+class TripListLoader extends CursorLoader {
+    // the trips Cursor together with its snapshot, the diff from the
+    // previously loaded snapshot (null if a full refresh is needed) and
+    // its section index (null if the list isn't sectioned)
+    static final class Result extends CursorWrapper {
+        final TripListDiff.Snapshot snapshot;
+        final TripListDiff diff;
+        final TripSections sections;
+
+        Result(Cursor cursor, TripListDiff.Snapshot snapshot,
+               TripListDiff diff, TripSections sections) {
+            super(cursor);
+            this.snapshot = snapshot;
+            this.diff = diff;
+            this.sections = sections;
+        }
+    }
+
+    // lists longer than this are read through a TripWindowCursor, which
+    // holds no more rows than this however long the list grows
+    private static final int WINDOW_THRESHOLD =
+            TripWindowCursor.BLOCK_SIZE * TripWindowCursor.MAX_BLOCKS;
+
+    // SQL expression naming each row's section, e.g. Trip.SECTION_BY_LETTER;
+    // the sort order must keep each section's rows together, and the
+    // expression's collation must order the sections as the sort does
+    private final String sectionExpression;
+
+    // the order TripListIndex sorts the list in, or null if the query's
+    // sort order is kept
+    private final TripIndex.SortOrder indexOrder;
+    private final boolean descending;
+
+    // snapshot of the last loaded result; only touched by loadInBackground
+    private TripListDiff.Snapshot previous;
+
+    // holds back the cursor's change notifications until their window
+    // closes; the reload that follows cancels one still running, so only
+    // the newest result is delivered, and a stopped loader just notes the
+    // change and reloads once started again
+    private final ChangeWindow changeWindow = new ChangeWindow(
+            ChangeWindow.DEFAULT_MILLIS, new Runnable() {
+                @Override
+                public void run() {
+                    reload();
+                }
+            });
+
+    TripListLoader(Context context, Uri uri, String[] projection,
+                   String selection, String[] selectionArgs, String sortOrder,
+                   String sectionExpression) {
+        this(context, uri, projection, selection, selectionArgs, sortOrder,
+                sectionExpression, null, false);
+    }
+
+    // a loader for every trip in an order TripListIndex sorts in memory;
+    // the rows are read in id order, which costs no sort and lets their
+    // snapshot be rearranged. Such a list has no sections
+    TripListLoader(Context context, String[] projection,
+                   TripIndex.SortOrder indexOrder, boolean descending) {
+        this(context, Trip.CONTENT_URI, projection, null, null, Trip._ID,
+                null, indexOrder, descending);
+    }
+
+    private TripListLoader(Context context, Uri uri, String[] projection,
+                           String selection, String[] selectionArgs,
+                           String sortOrder, String sectionExpression,
+                           TripIndex.SortOrder indexOrder, boolean descending) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+        this.sectionExpression = sectionExpression;
+        this.indexOrder = indexOrder;
+        this.descending = descending;
+    }
+
+    @Override
+    public void onContentChanged() {
+        changeWindow.notifyChange();
+    }
+
+    // reloads now, as CursorLoader does on every change
+    private void reload() {
+        super.onContentChanged();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        changeWindow.cancel();
+    }
+
+    // runs the query, then snapshots and diffs it off the main thread
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null)
+            return null;
+
+        TripSections sections = loadSections(cursor.getCount());
+        TripListDiff.Snapshot snapshot = TripListDiff.snapshot(cursor);
+
+        // rows rearranged into the index's order can only be shown by a
+        // window over their ids
+        if (indexOrder != null) {
+            long[] order = TripListIndex.getInstance(getContext()).select(
+                    new TripIndex.Filter(), indexOrder, descending);
+            if (order != null) {
+                snapshot = snapshot.inOrder(order);
+                cursor = toWindow(cursor, snapshot);
+            }
+        }
+
+        TripListDiff diff = TripListDiff.compute(previous, snapshot);
+        previous = snapshot;
+
+        // format the first screenful while the cursor is still ours
+        TripRowPrefetcher.getInstance(getContext()).formatRows(
+                cursor, snapshot, 0, TripRowPrefetcher.INITIAL_ROWS);
+
+        if (snapshot.size() > WINDOW_THRESHOLD &&
+                !(cursor instanceof TripWindowCursor))
+            cursor = toWindow(cursor, snapshot);
+        return new Result(cursor, snapshot, diff, sections);
+    }
+
+    // replaces the full cursor, and the CursorWindow it would keep
+    // refilling, with a window over the snapshot's rows that's notified
+    // of changes like the full cursor was
+    private Cursor toWindow(Cursor cursor, TripListDiff.Snapshot snapshot) {
+        Uri notificationUri = cursor.getNotificationUri();
+        TripWindowCursor window = new TripWindowCursor(
+                getContext().getContentResolver(), getUri(),
+                cursor.getColumnNames(), snapshot.ids);
+        cursor.close();
+
+        window.setNotificationUri(getContext().getContentResolver(),
+                (notificationUri != null) ? notificationUri : getUri());
+        window.registerContentObserver(new ForceLoadContentObserver());
+        return window;
+    }
+
+    // counts the rows in each section with a GROUP BY query; returns null
+    // if the trips changed between that query and the list query
+    private TripSections loadSections(int listCount) {
+        if (sectionExpression == null)
+            return null;
+
+        Cursor cursor = getContext().getContentResolver().query(
+                Trip.SECTIONS_URI,
+                new String[] {sectionExpression + " AS " + Trip.COLUMN_SECTION,
+                        "COUNT(*) AS " + Trip.COLUMN_SECTION_COUNT},
+                getSelection(), getSelectionArgs(), Trip.COLUMN_SECTION);
+        if (cursor == null)
+            return null;
+
+        try {
+            TripSections sections = TripSections.from(cursor,
+                    getContext().getString(R.string.section_other));
+            return (sections.getRowCount() == listCount) ? sections : null;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+// TripQuery.java
+// A query that keeps its observers up to date: its result is reloaded
+// when its Uri changes, the changes within a ChangeWindow cause a single
+// reload, and observers only ever receive the newest result
+package com.inersion.tripex;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+// subscribe and unsubscribe on the main thread; results are delivered
+// there too
+public abstract class TripQuery<T> {
+    private static final String TAG = "TripQuery";
+
+    public interface Observer<T> {
+        void onChanged(T result);
+    }
+
+    private final ContentResolver contentResolver;
+    private final Uri uri;
+    private final Executor executor;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Observer<T>> observers = new ArrayList<Observer<T>>();
+
+    private T latest; // the last result delivered
+    private boolean hasLatest = false;
+    private boolean loading = false; // a load is running on executor
+    private boolean stale = true; // changes happened since the last load
+
+    private final ChangeWindow changeWindow = new ChangeWindow(
+            ChangeWindow.DEFAULT_MILLIS, new Runnable() {
+                @Override
+                public void run() {
+                    refresh();
+                }
+            });
+
+    private final ContentObserver contentObserver =
+            new ContentObserver(handler) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    stale = true;
+                    changeWindow.notifyChange();
+                }
+            };
+
+    protected TripQuery(ContentResolver contentResolver, Uri uri,
+                        Executor executor) {
+        this.contentResolver = contentResolver;
+        this.uri = uri;
+        this.executor = executor;
+    }
+
+    // reads the result; runs on the executor, one load at a time
+    protected abstract T load();
+
+    // merges changes over windowMillis instead of ChangeWindow.DEFAULT_MILLIS
+    public void setWindowMillis(long windowMillis) {
+        changeWindow.setWindowMillis(windowMillis);
+    }
+
+    // delivers the newest result to observer, at once if there is one,
+    // and then whenever it changes
+    public void subscribe(Observer<T> observer) {
+        observers.add(observer);
+        if (observers.size() == 1)
+            contentResolver.registerContentObserver(uri, true, contentObserver);
+
+        if (hasLatest)
+            observer.onChanged(latest);
+        if (stale)
+            refresh();
+    }
+
+    // like subscribe, for an observer that already shows the current
+    // result, e.g. from a cache that's evicted when the Uri changes: if no
+    // one else observes, nothing is loaded or delivered until it changes
+    public void subscribeToChanges(Observer<T> observer) {
+        if (observers.isEmpty())
+            stale = false;
+        subscribe(observer);
+    }
+
+    // stops delivering to observer; once no one observes, changes are no
+    // longer watched and nothing is loaded
+    public void unsubscribe(Observer<T> observer) {
+        if (!observers.remove(observer) || !observers.isEmpty())
+            return;
+
+        contentResolver.unregisterContentObserver(contentObserver);
+        changeWindow.cancel();
+        stale = true; // changes from now on go unseen
+    }
+
+    // starts a load unless one is running; a change during that load
+    // leaves the query stale, so loaded schedules another
+    private void refresh() {
+        if (loading || observers.isEmpty())
+            return;
+
+        loading = true;
+        stale = false;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                T result = null;
+                boolean succeeded = false;
+                try {
+                    result = load();
+                    succeeded = true;
+                }
+                catch (RuntimeException e) {
+                    Log.e(TAG, "Loading " + uri + " failed", e);
+                }
+
+                final T loadedResult = result;
+                final boolean loadSucceeded = succeeded;
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        loaded(loadedResult, loadSucceeded);
+                    }
+                });
+            }
+        });
+    }
+
+    private void loaded(T result, boolean succeeded) {
+        loading = false;
+
+        // a result that arrives after everyone unsubscribed is dropped;
+        // the query is stale by then and reloads when observed again
+        if (observers.isEmpty())
+            return;
+
+        if (succeeded) {
+            latest = result;
+            hasLatest = true;
+            for (Observer<T> observer : new ArrayList<Observer<T>>(observers))
+                observer.onChanged(result);
+        }
+
+        if (stale)
+            changeWindow.notifyChange();
+    }
+}
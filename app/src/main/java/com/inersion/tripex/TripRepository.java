@@ -0,0 +1,394 @@
+// TripRepository.java
+// Typed, asynchronous access to trips and drafts: one-off reads (shared
+// while in flight) and TripQuery objects that follow changes run on a
+// shared executor, spend reports fan out over every core through
+// TripAnalytics, and every write goes through TripWriter's single
+// background thread
+package com.inersion.tripex;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.inersion.tripex.core.SpendReport;
+import com.inersion.tripex.core.Trip;
+import com.inersion.tripex.core.TripAnalytics;
+import com.inersion.tripex.sampledata.DatabaseDescription;
+import com.inersion.tripex.sampledata.TripValues;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+public final class TripRepository {
+    private static final String TAG = "TripRepository";
+
+    // threads reading from the provider; reads are short, so a couple of
+    // threads keep a slow query from holding up the rest
+    private static final int READ_THREADS = 2;
+
+    // receives the result of a read on the main thread
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    private static TripRepository instance;
+
+    private final ContentResolver contentResolver;
+    private final TripWriter tripWriter;
+    private final ExecutorService readExecutor;
+    private final TripAnalytics analytics = new TripAnalytics();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // reads still running, by what they read; guarded by itself
+    private final Map<String, Read<?>> reads = new HashMap<String, Read<?>>();
+
+    // returns the app-wide repository, creating it on first use
+    public static synchronized TripRepository getInstance(Context context) {
+        if (instance == null)
+            instance = new TripRepository(context.getApplicationContext());
+        return instance;
+    }
+
+    private TripRepository(Context context) {
+        contentResolver = context.getContentResolver();
+        tripWriter = TripWriter.getInstance(context);
+        readExecutor = Executors.newFixedThreadPool(READ_THREADS,
+                new ThreadFactory() {
+                    private int count = 0;
+
+                    @Override
+                    public synchronized Thread newThread(final Runnable r) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(
+                                        Process.THREAD_PRIORITY_BACKGROUND);
+                                r.run();
+                            }
+                        }, TAG + "-" + ++count);
+                    }
+                });
+
+        // once the trips change, a read already running may return the
+        // old values, so later requests must start a read of their own;
+        // without a Handler this runs as the change is dispatched, ahead
+        // of observers that post to the main thread
+        contentResolver.registerContentObserver(
+                DatabaseDescription.Trip.CONTENT_URI, true,
+                new ContentObserver(null) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        synchronized (reads) {
+                            reads.clear();
+                        }
+                    }
+                });
+    }
+
+    // reads the trip with the given id; callback receives null if there
+    // is no such trip
+    public Future<Trip> getTrip(final long id, Callback<Trip> callback) {
+        return read("trip/" + id, new Callable<Trip>() {
+            @Override
+            public Trip call() {
+                return readTrip(id);
+            }
+        }, callback);
+    }
+
+    // a query of the trip with the given id that its subscribers see
+    // every change of (null once the trip is deleted); unlike getTrip's
+    // result, it stays current until they unsubscribe
+    public TripQuery<Trip> queryTrip(final long id) {
+        return new TripQuery<Trip>(contentResolver, getTripUri(id),
+                readExecutor) {
+            @Override
+            protected Trip load() {
+                return readTrip(id);
+            }
+        };
+    }
+
+    private Trip readTrip(long id) {
+        Cursor cursor = contentResolver.query(getTripUri(id),
+                null, null, null, null);
+        if (cursor == null)
+            return null;
+
+        try {
+            return cursor.moveToFirst() ? TripValues.fromCursor(cursor) : null;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    // reads every trip and reports what they cost: percentiles, per
+    // destination distributions and month-over-month trends. Cancelling
+    // the returned Future (with interruption) stops the report's threads
+    public Future<SpendReport> getSpendReport(Callback<SpendReport> callback) {
+        return read("spend_report", new Callable<SpendReport>() {
+            @Override
+            public SpendReport call() throws InterruptedException {
+                return analytics.run(readAllTrips());
+            }
+        }, callback);
+    }
+
+    // every trip, in no particular order; stops early if interrupted
+    private List<Trip> readAllTrips() throws InterruptedException {
+        Cursor cursor = contentResolver.query(
+                DatabaseDescription.Trip.CONTENT_URI, null, null, null, null);
+        if (cursor == null)
+            return new ArrayList<Trip>();
+
+        try {
+            List<Trip> trips = new ArrayList<Trip>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                trips.add(TripValues.fromCursor(cursor));
+            }
+            return trips;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    // reads the draft of the trip with the given id (Draft.NEW_TRIP_ID for
+    // a trip being added); callback receives null if there is no draft.
+    // A draft of a trip that has changed since, e.g. by a sync, or that
+    // no longer exists is stale: it's discarded and null is returned
+    public Future<TripDraft> getDraft(final long tripId,
+                                      Callback<TripDraft> callback) {
+        return read("draft/" + tripId, new Callable<TripDraft>() {
+            @Override
+            public TripDraft call() {
+                Cursor cursor = contentResolver.query(
+                        DatabaseDescription.Draft.buildDraftUri(tripId),
+                        null, null, null, null);
+                if (cursor == null)
+                    return null;
+
+                TripDraft draft;
+                long updated;
+                try {
+                    if (!cursor.moveToFirst())
+                        return null;
+                    draft = TripDraft.fromCursor(cursor);
+                    updated = cursor.getLong(cursor.getColumnIndex(
+                            DatabaseDescription.Draft.COLUMN_UPDATED));
+                }
+                finally {
+                    cursor.close();
+                }
+
+                if (tripId != DatabaseDescription.Draft.NEW_TRIP_ID &&
+                        readModified(tripId) > updated) {
+                    tripWriter.discardDraft(tripId);
+                    return null;
+                }
+                return draft;
+            }
+        }, callback);
+    }
+
+    // when the trip with the given id last changed, in milliseconds since
+    // the epoch, or Long.MAX_VALUE if there is no such trip
+    private long readModified(long id) {
+        Cursor cursor = contentResolver.query(getTripUri(id),
+                new String[] {DatabaseDescription.Trip.COLUMN_MODIFIED},
+                null, null, null);
+        if (cursor == null)
+            return Long.MAX_VALUE;
+
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : Long.MAX_VALUE;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    // adds a trip; callback receives its new Uri
+    public void insert(Trip trip, TripWriter.Callback callback) {
+        tripWriter.insert(TripValues.toContentValues(trip), callback);
+    }
+
+    // replaces the stored trip with trip's id by trip
+    public void update(Trip trip, TripWriter.Callback callback) {
+        tripWriter.update(getTripUri(trip.getId()),
+                TripValues.toContentValues(trip), callback);
+    }
+
+    public void delete(long id, TripWriter.Callback callback) {
+        tripWriter.delete(getTripUri(id), callback);
+    }
+
+    public void saveDraft(long tripId, TripDraft draft) {
+        tripWriter.saveDraft(tripId, draft.toContentValues());
+    }
+
+    public void discardDraft(long tripId) {
+        tripWriter.discardDraft(tripId);
+    }
+
+    public static Uri getTripUri(long id) {
+        return ContentUris.withAppendedId(
+                DatabaseDescription.Trip.CONTENT_URI, id);
+    }
+
+    // runs callable for key, or joins the read of key already running
+    private <T> Future<T> read(String key, Callable<T> callable,
+                               Callback<T> callback) {
+        Read<T> read;
+        boolean start = false;
+
+        synchronized (reads) {
+            @SuppressWarnings("unchecked")
+            Read<T> running = (Read<T>) reads.get(key);
+            read = running;
+
+            if (read == null) {
+                read = new Read<T>(key, callable);
+                reads.put(key, read);
+                start = true;
+            }
+            read.callbacks.add(callback);
+        }
+
+        if (start)
+            readExecutor.execute(read);
+        return new Request<T>(read, callback);
+    }
+
+    // one read, shared by every caller that asked for it while it ran
+    private final class Read<T> extends FutureTask<T> {
+        final String key;
+        final List<Callback<T>> callbacks = new ArrayList<Callback<T>>();
+
+        Read(String key, Callable<T> callable) {
+            super(callable);
+            this.key = key;
+        }
+
+        // the read finished; later requests for key start a new read
+        @Override
+        protected void done() {
+            synchronized (reads) {
+                if (reads.get(key) == this)
+                    reads.remove(key);
+            }
+
+            if (isCancelled())
+                return;
+
+            T value = null;
+            try {
+                value = get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException e) {
+                // report the failure as "not found" rather than crash
+                Log.e(TAG, "Reading " + key + " failed", e.getCause());
+            }
+
+            final T result = value;
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    // callers that cancelled meanwhile have been removed
+                    List<Callback<T>> current;
+                    synchronized (reads) {
+                        current = new ArrayList<Callback<T>>(callbacks);
+                        callbacks.clear();
+                    }
+                    for (Callback<T> callback : current)
+                        callback.onResult(result);
+                }
+            });
+        }
+    }
+
+    // one caller's view of a possibly shared read: cancelling it only
+    // stops this caller's callback, and the read itself stops once no
+    // caller wants it
+    private final class Request<T> implements Future<T> {
+        private final Read<T> read;
+        private final Callback<T> callback;
+        private volatile boolean cancelled = false;
+
+        Request(Read<T> read, Callback<T> callback) {
+            this.read = read;
+            this.callback = callback;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean stopRead;
+            synchronized (reads) {
+                if (cancelled || !read.callbacks.remove(callback))
+                    return false; // already cancelled or delivered
+                cancelled = true;
+                stopRead = read.callbacks.isEmpty();
+
+                // a later request for the same key must not join a read
+                // that's about to be cancelled
+                if (stopRead && reads.get(read.key) == read)
+                    reads.remove(read.key);
+            }
+
+            if (stopRead)
+                read.cancel(mayInterruptIfRunning);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return cancelled || read.isDone();
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            if (cancelled)
+                throw new CancellationException();
+            return read.get();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException,
+                TimeoutException {
+            if (cancelled)
+                throw new CancellationException();
+            return read.get(timeout, unit);
+        }
+    }
+}
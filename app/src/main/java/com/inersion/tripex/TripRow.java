@@ -0,0 +1,55 @@
+// TripRow.java
+// The display strings for one row of the trip list, formatted ahead of
+// time so that tripexAdapter.onBindViewHolder only has to set them
+package com.inersion.tripex;
+
+import android.content.res.Resources;
+import android.database.Cursor;
+
+import com.inersion.tripex.core.Trip;
+import com.inersion.tripex.sampledata.TripValues;
+
+final class TripRow {
+    final long id; // trip's row ID
+    final long hash; // TripListDiff hash of the row these strings show
+    final String name;
+    final String route;
+    final String dates;
+    final String total;
+
+    private TripRow(long id, long hash, String name, String route,
+                    String dates, String total) {
+        this.id = id;
+        this.hash = hash;
+        this.name = name;
+        this.route = route;
+        this.dates = dates;
+        this.total = total;
+    }
+
+    // formats the row the cursor is positioned on
+    static TripRow format(Resources resources, Cursor cursor, long hash) {
+        Trip trip = TripValues.fromCursor(cursor);
+
+        return new TripRow(
+                trip.getId(),
+                hash,
+                trip.getName(),
+                join(resources, R.string.row_route, trip.getFrom(), trip.getTo()),
+                join(resources, R.string.row_dates, trip.getDepart(),
+                        trip.getReturnDate()),
+                resources.getString(R.string.cost,
+                        trip.getTotal().toString()));
+    }
+
+    // formats both values with the given pattern, or returns whichever
+    // one isn't empty
+    private static String join(Resources resources, int patternId,
+                               String first, String second) {
+        if (first.isEmpty())
+            return second;
+        if (second.isEmpty())
+            return first;
+        return resources.getString(patternId, first, second);
+    }
+}
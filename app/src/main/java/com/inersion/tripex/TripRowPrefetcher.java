@@ -0,0 +1,158 @@
+// TripRowPrefetcher.java
+// Formats trip list rows and measures their text on background threads
+// for the rows about to scroll into view, caching the results
+package com.inersion.tripex;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.text.TextPaint;
+import android.util.LruCache;
+
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+import java.util.HashMap;
+import java.util.Map;
+
+class TripRowPrefetcher {
+    private static final String TAG = "TripRowPrefetcher";
+
+    // rows formatted by TripListLoader along with each new result
+    static final int INITIAL_ROWS = 32;
+
+    // maximum number of formatted rows kept in memory
+    private static final int CACHE_SIZE = 512;
+
+    private static TripRowPrefetcher instance;
+
+    private final ContentResolver contentResolver;
+    private final Resources resources;
+    private final Handler prefetchHandler; // runs on the prefetch thread
+    private final LruCache<Long, TripRow> rows =
+            new LruCache<Long, TripRow>(CACHE_SIZE);
+
+    // copies of the row TextViews' paints; measuring text with them warms
+    // the platform's text layout cache so binding doesn't pay for it
+    private TextPaint primaryPaint; // guarded by this
+    private TextPaint secondaryPaint; // guarded by this
+
+    // returns the app-wide prefetcher, creating it on first use
+    static synchronized TripRowPrefetcher getInstance(Context context) {
+        if (instance == null)
+            instance = new TripRowPrefetcher(context.getApplicationContext());
+        return instance;
+    }
+
+    private TripRowPrefetcher(Context context) {
+        contentResolver = context.getContentResolver();
+        resources = context.getResources();
+
+        HandlerThread thread = new HandlerThread(TAG,
+                Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        prefetchHandler = new Handler(thread.getLooper());
+    }
+
+    // sets the paints used by the name/total and the secondary TextViews
+    synchronized void setPaints(TextPaint primary, TextPaint secondary) {
+        primaryPaint = new TextPaint(primary);
+        secondaryPaint = new TextPaint(secondary);
+    }
+
+    // the formatted row for the given id, or null if it hasn't been
+    // formatted yet or was formatted from different contents
+    TripRow get(long id, long hash) {
+        TripRow row = rows.get(id);
+        return (row != null && row.hash == hash) ? row : null;
+    }
+
+    // formats and caches the row cursor is positioned on; used when a
+    // row is needed before the prefetcher got to it
+    TripRow format(Cursor cursor, long hash) {
+        TripRow row = TripRow.format(resources, cursor, hash);
+        rows.put(row.id, row);
+        return row;
+    }
+
+    // formats rows [start, end) of a cursor owned by the calling thread
+    void formatRows(Cursor cursor, TripListDiff.Snapshot snapshot,
+                    int start, int end) {
+        end = Math.min(end, snapshot.size());
+
+        for (int position = start; position < end; ++position) {
+            if (get(snapshot.ids[position], snapshot.hashes[position]) == null &&
+                    cursor.moveToPosition(position))
+                measure(format(cursor, snapshot.hashes[position]));
+        }
+    }
+
+    // formats rows [start, end) of snapshot on the prefetch thread;
+    // requests still waiting when a newer one arrives are dropped
+    void prefetch(TripListDiff.Snapshot snapshot, int start, int end) {
+        start = Math.max(start, 0);
+        end = Math.min(end, snapshot.size());
+
+        // collect the rows that still need formatting
+        final Map<Long, Long> missing = new HashMap<Long, Long>();
+        for (int position = start; position < end; ++position) {
+            long id = snapshot.ids[position];
+            if (get(id, snapshot.hashes[position]) == null)
+                missing.put(id, snapshot.hashes[position]);
+        }
+
+        if (missing.isEmpty())
+            return;
+
+        prefetchHandler.removeCallbacksAndMessages(null);
+        prefetchHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                load(missing);
+            }
+        });
+    }
+
+    // queries, formats and measures the trips whose ids are the keys of missing
+    private void load(Map<Long, Long> missing) {
+        StringBuilder selection = new StringBuilder(Trip._ID + " IN (");
+        String[] selectionArgs = new String[missing.size()];
+        int i = 0;
+        for (Long id : missing.keySet()) {
+            selection.append(i == 0 ? "?" : ",?");
+            selectionArgs[i++] = String.valueOf(id);
+        }
+        selection.append(')');
+
+        Cursor cursor = contentResolver.query(Trip.CONTENT_URI,
+                Trip.LIST_COLUMNS, selection.toString(), selectionArgs, null);
+        if (cursor == null)
+            return;
+
+        try {
+            int idIndex = cursor.getColumnIndex(Trip._ID);
+            while (cursor.moveToNext()) {
+                Long hash = missing.get(cursor.getLong(idIndex));
+                if (hash != null)
+                    measure(format(cursor, hash));
+            }
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    // measures row's strings so their glyph layouts are cached
+    private synchronized void measure(TripRow row) {
+        if (primaryPaint == null)
+            return; // no row has been inflated yet
+
+        primaryPaint.measureText(row.name);
+        primaryPaint.measureText(row.total);
+        secondaryPaint.measureText(row.route);
+        secondaryPaint.measureText(row.dates);
+    }
+}
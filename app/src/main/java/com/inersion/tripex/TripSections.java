@@ -0,0 +1,85 @@
+// TripSections.java
+// Maps the trip list's sections (e.g., first letters) to list positions,
+// built from per-section row counts computed in SQL
+package com.inersion.tripex;
+
+import android.database.Cursor;
+
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+import java.util.Arrays;
+
+class TripSections {
+    private final String[] titles; // each section's header text
+    private final int[] starts; // list position of each section's first row
+    private final int rowCount; // rows in all sections together
+
+    private TripSections(String[] titles, int[] starts, int rowCount) {
+        this.titles = titles;
+        this.starts = starts;
+        this.rowCount = rowCount;
+    }
+
+    // builds the index from a Trip.SECTIONS_URI cursor, whose rows must
+    // be in the same order as the list; emptyTitle labels a blank section
+    static TripSections from(Cursor cursor, String emptyTitle) {
+        int count = cursor.getCount();
+        String[] titles = new String[count];
+        int[] starts = new int[count];
+        int sectionIndex = cursor.getColumnIndex(Trip.COLUMN_SECTION);
+        int countIndex = cursor.getColumnIndex(Trip.COLUMN_SECTION_COUNT);
+        int position = 0;
+
+        for (int i = 0; cursor.moveToPosition(i); ++i) {
+            String title = cursor.getString(sectionIndex);
+            titles[i] = (title == null || title.isEmpty()) ? emptyTitle : title;
+            starts[i] = position;
+            position += cursor.getInt(countIndex);
+        }
+
+        return new TripSections(titles, starts, position);
+    }
+
+    // number of list rows the sections cover; compare with the list
+    // Cursor's count to detect a write between the two queries
+    int getRowCount() {
+        return rowCount;
+    }
+
+    int getSectionCount() {
+        return titles.length;
+    }
+
+    String[] getTitles() {
+        return titles;
+    }
+
+    String getTitle(int section) {
+        return titles[section];
+    }
+
+    // list position of the section's first row, in O(1)
+    int getPositionForSection(int section) {
+        return starts[section];
+    }
+
+    // section containing the list position; a binary search over the
+    // sections, of which there are only a few dozen
+    int getSectionForPosition(int position) {
+        int section = Arrays.binarySearch(starts, position);
+
+        // a miss returns -(insertion point) - 1; the row belongs to the
+        // section before the insertion point
+        return (section >= 0) ? section : -section - 2;
+    }
+
+    // true if position holds the first row of its section
+    boolean isFirstInSection(int position) {
+        return Arrays.binarySearch(starts, position) >= 0;
+    }
+
+    // true if position holds the last row of its section
+    boolean isLastInSection(int position) {
+        return position == rowCount - 1 || isFirstInSection(position + 1);
+    }
+}
@@ -0,0 +1,170 @@
+// TripSummaryWidget.java
+// Home-screen widget showing the next upcoming trip and this year's
+// spending. It reads the provider's precomputed summary row, never the
+// trips table, and is redrawn only when that row's figures change
+package com.inersion.tripex;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.widget.RemoteViews;
+
+import com.inersion.tripex.core.Money;
+import com.inersion.tripex.sampledata.DatabaseDescription.Summary;
+
+import java.util.Calendar;
+
+public class TripSummaryWidget extends AppWidgetProvider {
+    // sent once a day, shortly after midnight, since a trip that departed
+    // stops being the next one and a new year starts with no spending
+    private static final String ACTION_NEW_DAY =
+            "com.inersion.tripex.action.WIDGET_NEW_DAY";
+
+    // the widgets were placed, restored or the device rebooted
+    @Override
+    public void onUpdate(Context context, AppWidgetManager appWidgetManager,
+                         int[] appWidgetIds) {
+        scheduleNewDay(context);
+        update(context, appWidgetIds);
+    }
+
+    @Override
+    public void onReceive(final Context context, Intent intent) {
+        String action = intent.getAction();
+
+        if (Summary.ACTION_CHANGED.equals(action)) {
+            // the provider only sends this when a shown figure changed
+            update(context, AppWidgetManager.getInstance(context)
+                    .getAppWidgetIds(new ComponentName(context,
+                            TripSummaryWidget.class)));
+        }
+        else if (ACTION_NEW_DAY.equals(action)) {
+            // reading the summary recomputes it for the new day; the
+            // provider sends ACTION_CHANGED if that changed what's shown
+            final PendingResult result = goAsync();
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Cursor cursor = querySummary(context);
+                        if (cursor != null)
+                            cursor.close();
+                    }
+                    finally {
+                        result.finish();
+                    }
+                }
+            }, "TripSummaryWidget").start();
+        }
+        else {
+            super.onReceive(context, intent);
+        }
+    }
+
+    // the last widget was removed
+    @Override
+    public void onDisabled(Context context) {
+        AlarmManager alarmManager =
+                (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.cancel(newDayIntent(context));
+    }
+
+    // redraws the given widgets from the summary row, reading it off the
+    // main thread
+    private void update(final Context context, final int[] appWidgetIds) {
+        if (appWidgetIds.length == 0)
+            return;
+
+        final PendingResult result = goAsync();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    AppWidgetManager.getInstance(context).updateAppWidget(
+                            appWidgetIds, buildViews(context));
+                }
+                finally {
+                    result.finish();
+                }
+            }
+        }, "TripSummaryWidget").start();
+    }
+
+    private static RemoteViews buildViews(Context context) {
+        RemoteViews views = new RemoteViews(context.getPackageName(),
+                R.layout.widget_trip_summary);
+
+        String nextName = null;
+        String nextDepart = null;
+        int year = Calendar.getInstance().get(Calendar.YEAR);
+        long spendCents = 0;
+
+        Cursor cursor = querySummary(context);
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst()) {
+                    nextName = cursor.getString(cursor.getColumnIndex(
+                            Summary.COLUMN_NEXT_NAME));
+                    nextDepart = cursor.getString(cursor.getColumnIndex(
+                            Summary.COLUMN_NEXT_DEPART));
+                    year = cursor.getInt(cursor.getColumnIndex(
+                            Summary.COLUMN_YEAR));
+                    spendCents = cursor.getLong(cursor.getColumnIndex(
+                            Summary.COLUMN_YEAR_SPEND_CENTS));
+                }
+            }
+            finally {
+                cursor.close();
+            }
+        }
+
+        views.setTextViewText(R.id.nextTripTextView, (nextName != null) ?
+                context.getString(R.string.widget_next_trip, nextName,
+                        nextDepart) :
+                context.getString(R.string.widget_no_trip));
+        views.setTextViewText(R.id.yearSpendTextView,
+                context.getString(R.string.widget_year_spend, year,
+                        context.getString(R.string.cost,
+                                Money.ofCents(spendCents).toString())));
+
+        // touching the widget opens the app
+        views.setOnClickPendingIntent(R.id.widgetLayout,
+                PendingIntent.getActivity(context, 0,
+                        new Intent(context, MainActivity.class), 0));
+        return views;
+    }
+
+    private static Cursor querySummary(Context context) {
+        return context.getContentResolver().query(Summary.CONTENT_URI,
+                null, null, null, null);
+    }
+
+    // sends ACTION_NEW_DAY every day after midnight, without waking the
+    // device for it; setting it again just replaces the previous alarm
+    private static void scheduleNewDay(Context context) {
+        Calendar midnight = Calendar.getInstance();
+        midnight.add(Calendar.DAY_OF_MONTH, 1);
+        midnight.set(Calendar.HOUR_OF_DAY, 0);
+        midnight.set(Calendar.MINUTE, 0);
+        midnight.set(Calendar.SECOND, 0);
+        midnight.set(Calendar.MILLISECOND, 0);
+
+        AlarmManager alarmManager =
+                (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.setInexactRepeating(AlarmManager.RTC,
+                midnight.getTimeInMillis(), AlarmManager.INTERVAL_DAY,
+                newDayIntent(context));
+    }
+
+    private static PendingIntent newDayIntent(Context context) {
+        Intent intent = new Intent(context, TripSummaryWidget.class)
+                .setAction(ACTION_NEW_DAY);
+        return PendingIntent.getBroadcast(context, 0, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+}
@@ -0,0 +1,265 @@
+// TripWindowCursor.java
+// Cursor over a long trip list that holds only a few blocks of rows in
+// memory: the block being read plus its neighbours, loaded ahead in the
+// background, while the blocks farthest away are evicted. A block that
+// isn't loaded in time is read on demand, which StrictMode reports
+package com.inersion.tripex;
+
+import android.content.ContentResolver;
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.StrictMode;
+import android.os.SystemClock;
+import android.util.LongSparseArray;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+class TripWindowCursor extends AbstractCursor {
+    private static final String TAG = "TripWindowCursor";
+
+    // rows per block; one block is one query by primary key
+    static final int BLOCK_SIZE = 64;
+
+    // blocks kept in memory, so at most BLOCK_SIZE * MAX_BLOCKS rows
+    static final int MAX_BLOCKS = 8;
+
+    // blocks loaded ahead in the direction the cursor is moving, and
+    // behind it, around the one being read
+    private static final int BLOCKS_AHEAD = 2;
+    private static final int BLOCKS_BEHIND = 1;
+
+    private static Handler loadHandler; // shared by all windows
+
+    private final ContentResolver contentResolver;
+    private final Uri uri;
+    private final String[] columns;
+    private final long[] ids; // every row's id, in list order
+    private final int idIndex; // index of Trip._ID in columns, or -1
+
+    // guarded by this
+    private final SparseArray<String[][]> blocks = new SparseArray<String[][]>();
+    private final SparseBooleanArray loading = new SparseBooleanArray();
+    private int centre = 0; // index of the block last read
+
+    // the block the cursor is positioned in; only touched by its reader
+    private String[][] current;
+    private int currentStart;
+
+    // a window over the rows with the given ids, in that order, reading
+    // columns from uri; ids come from a snapshot of the full query, so
+    // the window shows the same rows in the same order as the snapshot
+    TripWindowCursor(ContentResolver contentResolver, Uri uri,
+                     String[] columns, long[] ids) {
+        this.contentResolver = contentResolver;
+        this.uri = uri;
+        this.columns = columns;
+        this.ids = ids;
+
+        int index = -1;
+        for (int column = 0; column < columns.length; ++column) {
+            if (Trip._ID.equals(columns[column]))
+                index = column;
+        }
+        idIndex = index;
+    }
+
+    private static synchronized Handler getLoadHandler() {
+        if (loadHandler == null) {
+            HandlerThread thread = new HandlerThread(TAG,
+                    Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            loadHandler = new Handler(thread.getLooper());
+        }
+        return loadHandler;
+    }
+
+    @Override
+    public int getCount() {
+        return ids.length;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return columns;
+    }
+
+    // finds newPosition's block and has the blocks around it loaded in the
+    // background. A block that isn't in memory yet (e.g., after a jump or
+    // a fling that outran the loads) is read now; on the main thread that
+    // is noted as a slow call, so StrictMode logs it in debug builds
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        int block = newPosition / BLOCK_SIZE;
+        String[][] rows;
+
+        synchronized (this) {
+            centre = block;
+            rows = blocks.get(block);
+        }
+
+        if (rows == null) {
+            if (Looper.myLooper() == Looper.getMainLooper())
+                StrictMode.noteSlowCall(TAG + " read block " + block +
+                        " on the main thread");
+            rows = query(block);
+            store(block, rows);
+        }
+
+        current = rows;
+        currentStart = block * BLOCK_SIZE;
+        loadNeighbours(block, newPosition < oldPosition);
+        return true;
+    }
+
+    // queues background loads of the blocks around block that are
+    // neither in memory nor already queued, more of them ahead of the
+    // cursor than behind it
+    private void loadNeighbours(int block, boolean movingUp) {
+        int last = (ids.length - 1) / BLOCK_SIZE;
+        int first = block - (movingUp ? BLOCKS_AHEAD : BLOCKS_BEHIND);
+        int end = block + (movingUp ? BLOCKS_BEHIND : BLOCKS_AHEAD);
+
+        for (int neighbour = Math.max(first, 0);
+             neighbour <= Math.min(end, last); ++neighbour) {
+            final int index = neighbour;
+            synchronized (this) {
+                if (blocks.get(index) != null || loading.get(index))
+                    continue;
+                loading.put(index, true);
+            }
+
+            // the token lets close() drop loads that haven't started
+            getLoadHandler().postAtTime(new Runnable() {
+                @Override
+                public void run() {
+                    if (isClosed())
+                        return;
+                    String[][] rows = query(index);
+                    if (!isClosed())
+                        store(index, rows);
+                }
+            }, this, SystemClock.uptimeMillis());
+        }
+    }
+
+    // keeps block's rows, then evicts the blocks farthest from the one
+    // last read until no more than MAX_BLOCKS remain
+    private synchronized void store(int block, String[][] rows) {
+        loading.delete(block);
+        blocks.put(block, rows);
+
+        while (blocks.size() > MAX_BLOCKS) {
+            int farthest = 0;
+            for (int i = 1; i < blocks.size(); ++i) {
+                if (Math.abs(blocks.keyAt(i) - centre) >
+                        Math.abs(blocks.keyAt(farthest) - centre))
+                    farthest = i;
+            }
+            blocks.removeAt(farthest);
+        }
+    }
+
+    // reads block's rows by id and puts them in list order; a row deleted
+    // since the snapshot reads as all nulls until the list reloads
+    private String[][] query(int block) {
+        int start = block * BLOCK_SIZE;
+        int end = Math.min(start + BLOCK_SIZE, ids.length);
+        String[][] rows = new String[end - start][];
+
+        StringBuilder selection = new StringBuilder(Trip._ID + " IN (");
+        String[] selectionArgs = new String[end - start];
+        LongSparseArray<Integer> offsets = new LongSparseArray<Integer>(end - start);
+        for (int position = start; position < end; ++position) {
+            selection.append(position == start ? "?" : ",?");
+            selectionArgs[position - start] = String.valueOf(ids[position]);
+            offsets.put(ids[position], position - start);
+        }
+        selection.append(')');
+
+        Cursor cursor = contentResolver.query(uri, columns,
+                selection.toString(), selectionArgs, null);
+        if (cursor != null) {
+            try {
+                int idColumn = cursor.getColumnIndex(Trip._ID);
+                while (cursor.moveToNext()) {
+                    Integer offset = offsets.get(cursor.getLong(idColumn));
+                    if (offset == null)
+                        continue;
+
+                    String[] values = new String[columns.length];
+                    for (int column = 0; column < columns.length; ++column)
+                        values[column] = cursor.getString(column);
+                    rows[offset] = values;
+                }
+            }
+            finally {
+                cursor.close();
+            }
+        }
+
+        for (int offset = 0; offset < rows.length; ++offset) {
+            if (rows[offset] == null)
+                rows[offset] = new String[columns.length];
+        }
+        return rows;
+    }
+
+    @Override
+    public String getString(int column) {
+        return current[getPosition() - currentStart][column];
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public long getLong(int column) {
+        if (column == idIndex)
+            return ids[getPosition()]; // known even for a deleted row
+
+        String value = getString(column);
+        return (value != null) ? Long.parseLong(value) : 0;
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        String value = getString(column);
+        return (value != null) ? Double.parseDouble(value) : 0;
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return getString(column) == null;
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        getLoadHandler().removeCallbacksAndMessages(this);
+
+        synchronized (this) {
+            blocks.clear();
+            loading.clear();
+        }
+        current = null;
+    }
+}
@@ -0,0 +1,291 @@
+// TripWriter.java
+// Performs trip inserts, updates and deletes on a single background
+// thread, coalescing rapid writes to the same trip into one transaction;
+// a write that fails doesn't fail the unrelated writes flushed with it
+package com.inersion.tripex;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.inersion.tripex.sampledata.DatabaseDescription;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TripWriter {
+   private static final String TAG = "TripWriter";
+
+   // how long a write waits for further writes to the same trip
+   private static final long COALESCE_DELAY_MILLIS = 100;
+
+   // kinds of pending write
+   private static final int INSERT = 0;
+   private static final int UPDATE = 1;
+   private static final int DELETE = 2;
+   private static final int SAVE_DRAFT = 3;
+
+   // receives the outcome of a write on the main thread
+   public interface Callback {
+      // tripUri is the new trip's Uri for inserts (null on failure)
+      // and the written trip's Uri for updates and deletes
+      void onWriteCompleted(Uri tripUri, boolean success);
+   }
+
+   // one queued write plus the callbacks of every request merged into it
+   private static final class PendingWrite {
+      int type;
+      final Uri uri;
+      final ContentValues values;
+      final List<Callback> callbacks = new ArrayList<Callback>();
+
+      PendingWrite(int type, Uri uri, ContentValues values) {
+         this.type = type;
+         this.uri = uri;
+         this.values = values;
+      }
+   }
+
+   private static TripWriter instance;
+
+   private final ContentResolver contentResolver;
+   private final Handler writerHandler; // runs on the writer thread
+   private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+   // queued writes keyed by trip Uri; inserts get a key of their own
+   private final Map<Object, PendingWrite> pending =
+      new LinkedHashMap<Object, PendingWrite>();
+   private boolean flushScheduled = false; // guarded by pending
+
+   // returns the app-wide writer, creating it on first use
+   public static synchronized TripWriter getInstance(Context context) {
+      if (instance == null)
+         instance = new TripWriter(context.getApplicationContext());
+      return instance;
+   }
+
+   private TripWriter(Context context) {
+      contentResolver = context.getContentResolver();
+
+      HandlerThread thread = new HandlerThread(TAG,
+         Process.THREAD_PRIORITY_BACKGROUND);
+      thread.start();
+      writerHandler = new Handler(thread.getLooper());
+   }
+
+   // queues a new trip for insertion
+   public void insert(ContentValues values, Callback callback) {
+      synchronized (pending) {
+         PendingWrite write = new PendingWrite(INSERT,
+            DatabaseDescription.Trip.CONTENT_URI, new ContentValues(values));
+         addCallback(write, callback);
+         pending.put(new Object(), write);
+         scheduleFlush();
+      }
+   }
+
+   // queues an update; it is merged into an update of the same trip
+   // that hasn't been written yet, with later values winning
+   public void update(Uri tripUri, ContentValues values, Callback callback) {
+      synchronized (pending) {
+         PendingWrite write = pending.get(tripUri);
+
+         if (write == null) {
+            write = new PendingWrite(UPDATE, tripUri, new ContentValues(values));
+            pending.put(tripUri, write);
+         }
+         else if (write.type == UPDATE) {
+            write.values.putAll(values);
+         }
+         else { // the trip is about to be deleted, so the update would fail
+            postResult(callback, tripUri, false);
+            return;
+         }
+
+         addCallback(write, callback);
+         scheduleFlush();
+      }
+   }
+
+   // queues a save of AddEditFragment's draft for the trip with tripId
+   // (Draft.NEW_TRIP_ID when adding); saves that haven't been written yet
+   // are merged, so typing produces at most one draft write per flush
+   public void saveDraft(long tripId, ContentValues values) {
+      Uri draftUri = DatabaseDescription.Draft.buildDraftUri(tripId);
+
+      synchronized (pending) {
+         PendingWrite write = pending.get(draftUri);
+
+         if (write == null || write.type != SAVE_DRAFT) {
+            write = new PendingWrite(SAVE_DRAFT,
+               DatabaseDescription.Draft.CONTENT_URI, new ContentValues());
+            pending.remove(draftUri); // a newer draft replaces a discard
+            pending.put(draftUri, write);
+         }
+
+         write.values.putAll(values);
+         write.values.put(DatabaseDescription.Draft.COLUMN_TRIP_ID, tripId);
+         write.values.put(DatabaseDescription.Draft.COLUMN_UPDATED,
+            System.currentTimeMillis());
+         scheduleFlush();
+      }
+   }
+
+   // queues removal of the draft for the trip with tripId
+   public void discardDraft(long tripId) {
+      delete(DatabaseDescription.Draft.buildDraftUri(tripId), null);
+   }
+
+   // queues a delete; it supersedes any unwritten update or draft save
+   public void delete(Uri tripUri, Callback callback) {
+      synchronized (pending) {
+         PendingWrite write = pending.get(tripUri);
+
+         if (write != null && write.type == SAVE_DRAFT) {
+            pending.remove(tripUri); // the draft is never written
+            write = null;
+         }
+
+         if (write != null && write.type == UPDATE) {
+            // the superseded update is never written
+            for (Callback updateCallback : write.callbacks)
+               postResult(updateCallback, tripUri, false);
+            write.callbacks.clear();
+            write.type = DELETE;
+         }
+         else if (write == null) {
+            write = new PendingWrite(DELETE, tripUri, null);
+            pending.put(tripUri, write);
+         }
+
+         addCallback(write, callback);
+         scheduleFlush();
+      }
+   }
+
+   private static void addCallback(PendingWrite write, Callback callback) {
+      if (callback != null)
+         write.callbacks.add(callback);
+   }
+
+   // called with pending locked
+   private void scheduleFlush() {
+      if (!flushScheduled) {
+         flushScheduled = true;
+         writerHandler.postDelayed(flush, COALESCE_DELAY_MILLIS);
+      }
+   }
+
+   // writes everything queued so far as one batch on the writer thread.
+   // If the batch fails, e.g. because one of its writes breaks a
+   // constraint, each write is retried on its own, so only the writes
+   // that fail by themselves are reported as failed
+   private final Runnable flush = new Runnable() {
+      @Override
+      public void run() {
+         List<PendingWrite> writes;
+         synchronized (pending) {
+            writes = new ArrayList<PendingWrite>(pending.values());
+            pending.clear();
+            flushScheduled = false;
+         }
+
+         if (writes.isEmpty())
+            return;
+
+         ContentProviderResult[] results = apply(writes);
+         if (results != null || writes.size() == 1) {
+            postResults(writes, results);
+            return;
+         }
+
+         for (PendingWrite write : writes) {
+            List<PendingWrite> single = Collections.singletonList(write);
+            postResults(single, apply(single));
+         }
+      }
+   };
+
+   // applies writes as one transaction; returns their results, or null
+   // if the transaction failed and none of them took effect
+   private ContentProviderResult[] apply(List<PendingWrite> writes) {
+      ArrayList<ContentProviderOperation> operations =
+         new ArrayList<ContentProviderOperation>(writes.size());
+      for (PendingWrite write : writes) {
+         switch (write.type) {
+            case INSERT:
+            case SAVE_DRAFT:
+               operations.add(ContentProviderOperation
+                  .newInsert(write.uri).withValues(write.values).build());
+               break;
+            case UPDATE:
+               operations.add(ContentProviderOperation
+                  .newUpdate(write.uri).withValues(write.values).build());
+               break;
+            default:
+               operations.add(
+                  ContentProviderOperation.newDelete(write.uri).build());
+               break;
+         }
+      }
+
+      try {
+         return contentResolver.applyBatch(
+            DatabaseDescription.AUTHORITY, operations);
+      }
+      catch (Exception e) {
+         Log.e(TAG, "Writing " + writes.size() + " trip change(s) failed", e);
+         return null;
+      }
+   }
+
+   // reports each write's outcome to its callbacks; results is null if
+   // the writes failed
+   private void postResults(List<PendingWrite> writes,
+      ContentProviderResult[] results) {
+      for (int i = 0; i < writes.size(); ++i) {
+         PendingWrite write = writes.get(i);
+         boolean inserted = write.type == INSERT || write.type == SAVE_DRAFT;
+         Uri uri = inserted ? null : write.uri;
+         boolean success = false;
+
+         if (results != null) {
+            if (inserted) {
+               uri = results[i].uri;
+               success = uri != null;
+            }
+            else {
+               success = results[i].count != null && results[i].count > 0;
+            }
+         }
+
+         for (Callback callback : write.callbacks)
+            postResult(callback, uri, success);
+      }
+   }
+
+   // delivers a result to callback on the main thread
+   private void postResult(final Callback callback, final Uri tripUri,
+      final boolean success) {
+      if (callback == null)
+         return;
+
+      mainHandler.post(new Runnable() {
+         @Override
+         public void run() {
+            callback.onWriteCompleted(tripUri, success);
+         }
+      });
+   }
+}
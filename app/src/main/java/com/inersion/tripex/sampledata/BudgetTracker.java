@@ -0,0 +1,397 @@
+// BudgetTracker.java
+// Keeps each budget's spending current as trips are written. Every
+// trip write passes the trip's spending before and after, and the
+// difference is added to the budgets covering that trip and its
+// departure month and year. The provider makes that change in the same
+// transaction as the write itself. Only those few budgets are read
+// back, so a write costs the same however many trips exist. A budget
+// whose spending reaches its alert threshold is handed to the alert
+// service once the write is done
+package com.inersion.tripex.sampledata;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.inersion.tripex.core.Money;
+import com.inersion.tripex.core.TripDate;
+import com.inersion.tripex.sampledata.DatabaseDescription.Budget;
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// thread safe: the database serializes the writes, and the alerts
+// waiting to be sent are guarded by pendingAlerts
+final class BudgetTracker {
+    // the columns a trip's spending depends on
+    private static final String[] SPEND_COLUMNS = {Trip.COLUMN_DEPART,
+            Trip.COLUMN_AIRFARE, Trip.COLUMN_HOTEL, Trip.COLUMN_RENTAL};
+
+    private static final String[] THRESHOLD_COLUMNS = {Budget._ID,
+            Budget.COLUMN_SPENT_CENTS, Budget.COLUMN_LIMIT_CENTS,
+            Budget.COLUMN_ALERT_PERCENT};
+
+    // what one trip adds to the budgets that cover it
+    static final class Spend {
+        final long cents;
+        final String month; // yyyy-MM, or null without a yyyy-MM-dd date
+        final String year; // yyyy, or null
+
+        private Spend(long cents, String depart) {
+            this.cents = cents;
+            if (TripDate.isValid(depart)) {
+                month = depart.substring(0, 7);
+                year = depart.substring(0, 4);
+            }
+            else {
+                month = null;
+                year = null;
+            }
+        }
+    }
+
+    private final Context context;
+
+    // budgets that reached their threshold in writes not yet finished
+    private final List<Long> pendingAlerts = new ArrayList<Long>();
+
+    BudgetTracker(Context context) {
+        this.context = context;
+    }
+
+    // the spending of a trip about to be inserted with values
+    static Spend spendOf(ContentValues values) {
+        return new Spend(cents(values.getAsString(Trip.COLUMN_AIRFARE)) +
+                cents(values.getAsString(Trip.COLUMN_HOTEL)) +
+                cents(values.getAsString(Trip.COLUMN_RENTAL)),
+                values.getAsString(Trip.COLUMN_DEPART));
+    }
+
+    // the stored trip's spending, or null if there's no such trip
+    static Spend readSpend(SQLiteDatabase db, long tripId) {
+        Cursor cursor = db.query(Trip.TABLE_NAME, SPEND_COLUMNS,
+                Trip._ID + "=" + tripId, null, null, null, null);
+        try {
+            return cursor.moveToFirst() ? spendOf(cursor) : null;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    // the spending of the trip cursor is positioned on, which must
+    // include SPEND_COLUMNS
+    static Spend spendOf(Cursor cursor) {
+        return new Spend(
+                cents(cursor.getString(cursor.getColumnIndex(Trip.COLUMN_AIRFARE))) +
+                        cents(cursor.getString(cursor.getColumnIndex(Trip.COLUMN_HOTEL))) +
+                        cents(cursor.getString(cursor.getColumnIndex(Trip.COLUMN_RENTAL))),
+                cursor.getString(cursor.getColumnIndex(Trip.COLUMN_DEPART)));
+    }
+
+    // the spending of every trip matching selection; used before a bulk
+    // delete to take each one out of its budgets
+    static List<Spend> readSpends(SQLiteDatabase db, String selection,
+                                  String[] selectionArgs) {
+        Cursor cursor = db.query(Trip.TABLE_NAME, SPEND_COLUMNS, selection,
+                selectionArgs, null, null, null);
+        try {
+            List<Spend> spends = new ArrayList<Spend>(cursor.getCount());
+            while (cursor.moveToNext())
+                spends.add(spendOf(cursor));
+            return spends;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    // moves a trip's spending from before to after (either null if the
+    // trip didn't or doesn't exist); call within the write's transaction.
+    // Returns true if a budget changed
+    boolean onTripChanged(SQLiteDatabase db, long tripId, Spend before,
+                          Spend after) {
+        long beforeCents = (before != null) ? before.cents : 0;
+        long afterCents = (after != null) ? after.cents : 0;
+        boolean changed = false;
+
+        if (tripId > 0)
+            changed |= add(db, Budget.COLUMN_TRIP_ID, String.valueOf(tripId),
+                    afterCents - beforeCents);
+
+        String beforeMonth = (before != null) ? before.month : null;
+        String afterMonth = (after != null) ? after.month : null;
+        String beforeYear = (before != null) ? before.year : null;
+        String afterYear = (after != null) ? after.year : null;
+        changed |= move(db, beforeMonth, afterMonth, beforeCents, afterCents);
+        changed |= move(db, beforeYear, afterYear, beforeCents, afterCents);
+        return changed;
+    }
+
+    // takes beforeCents out of period before and puts afterCents into
+    // period after
+    private boolean move(SQLiteDatabase db, String before, String after,
+                         long beforeCents, long afterCents) {
+        if (before != null && before.equals(after))
+            return add(db, Budget.COLUMN_PERIOD, before, afterCents - beforeCents);
+
+        boolean changed = false;
+        if (before != null)
+            changed |= add(db, Budget.COLUMN_PERIOD, before, -beforeCents);
+        if (after != null)
+            changed |= add(db, Budget.COLUMN_PERIOD, after, afterCents);
+        return changed;
+    }
+
+    // adds cents to the budgets whose column is value, and queues an
+    // alert for each that reached its threshold; returns true if there
+    // were any such budgets
+    private boolean add(SQLiteDatabase db, String column, String value,
+                        long cents) {
+        if (cents == 0)
+            return false;
+
+        String[] args = {value};
+        db.execSQL("UPDATE " + Budget.TABLE_NAME + " SET " +
+                Budget.COLUMN_SPENT_CENTS + "=" + Budget.COLUMN_SPENT_CENTS +
+                "+" + cents + " WHERE " + column + "=?", args);
+
+        // the budgets just updated, looked up by the same index
+        Cursor cursor = db.query(Budget.TABLE_NAME, THRESHOLD_COLUMNS,
+                column + "=?", args, null, null, null);
+        try {
+            boolean any = false;
+            while (cursor.moveToNext()) {
+                any = true;
+                long spent = cursor.getLong(1);
+                long threshold = threshold(cursor.getLong(2), cursor.getInt(3));
+                if (spent - cents < threshold && spent >= threshold)
+                    queueAlert(cursor.getLong(0));
+            }
+            return any;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    // adds a budget, starting it off with what its trip or period has
+    // already spent; a budget needs a limit and must cover exactly one of
+    // the two
+    long insertBudget(SQLiteDatabase db, ContentValues values) {
+        Long limit = values.getAsLong(Budget.COLUMN_LIMIT_CENTS);
+        if (limit == null)
+            throw new IllegalArgumentException(
+                    "A budget needs a limit: " + values);
+
+        ContentValues budget = new ContentValues();
+        budget.put(Budget.COLUMN_LIMIT_CENTS, limit);
+        Integer percent = values.getAsInteger(Budget.COLUMN_ALERT_PERCENT);
+        budget.put(Budget.COLUMN_ALERT_PERCENT, (percent != null) ?
+                percent : Budget.DEFAULT_ALERT_PERCENT);
+
+        Long tripId = values.getAsLong(Budget.COLUMN_TRIP_ID);
+        String period = values.getAsString(Budget.COLUMN_PERIOD);
+        long spent;
+        if (tripId != null && period == null) {
+            budget.put(Budget.COLUMN_TRIP_ID, tripId);
+            Spend spend = readSpend(db, tripId);
+            spent = (spend != null) ? spend.cents : 0;
+        }
+        else if (tripId == null && isPeriod(period)) {
+            budget.put(Budget.COLUMN_PERIOD, period);
+            spent = periodSpend(db, period);
+        }
+        else {
+            throw new IllegalArgumentException(
+                    "A budget needs a trip id or a period: " + values);
+        }
+        budget.put(Budget.COLUMN_SPENT_CENTS, spent);
+
+        long id = db.insert(Budget.TABLE_NAME, null, budget);
+        if (id > 0 && spent >= threshold(budget.getAsLong(
+                Budget.COLUMN_LIMIT_CENTS), budget.getAsInteger(
+                Budget.COLUMN_ALERT_PERCENT)))
+            queueAlert(id);
+        return id;
+    }
+
+    // changes a budget's limit or alert percentage; alerts if that brings
+    // the threshold down to what the budget has already spent
+    int updateBudget(SQLiteDatabase db, long id, ContentValues values) {
+        ContentValues budget = new ContentValues();
+        if (values.containsKey(Budget.COLUMN_LIMIT_CENTS))
+            budget.put(Budget.COLUMN_LIMIT_CENTS,
+                    values.getAsLong(Budget.COLUMN_LIMIT_CENTS));
+        if (values.containsKey(Budget.COLUMN_ALERT_PERCENT))
+            budget.put(Budget.COLUMN_ALERT_PERCENT,
+                    values.getAsInteger(Budget.COLUMN_ALERT_PERCENT));
+        if (budget.size() == 0)
+            return 0;
+
+        long before = readThreshold(db, id);
+        int updated = db.update(Budget.TABLE_NAME, budget,
+                Budget._ID + "=" + id, null);
+        if (updated == 0)
+            return 0;
+
+        Cursor cursor = db.query(Budget.TABLE_NAME, THRESHOLD_COLUMNS,
+                Budget._ID + "=" + id, null, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                long spent = cursor.getLong(1);
+                if (spent < before && spent >= threshold(cursor.getLong(2),
+                        cursor.getInt(3)))
+                    queueAlert(id);
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        return updated;
+    }
+
+    // the budget's current threshold, or Long.MAX_VALUE if there's no
+    // such budget
+    private static long readThreshold(SQLiteDatabase db, long id) {
+        Cursor cursor = db.query(Budget.TABLE_NAME, THRESHOLD_COLUMNS,
+                Budget._ID + "=" + id, null, null, null, null);
+        try {
+            return cursor.moveToFirst() ?
+                    threshold(cursor.getLong(2), cursor.getInt(3)) :
+                    Long.MAX_VALUE;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    // sets every budget's spending from the trips it covers, e.g. after
+    // a restore replaced them all, and alerts for those that reached
+    // their threshold; call within the write's transaction. Each budget
+    // reads its trip or its period's trips through an index
+    void recomputeAll(SQLiteDatabase db) {
+        Cursor cursor = db.query(Budget.TABLE_NAME, new String[] {Budget._ID,
+                Budget.COLUMN_TRIP_ID, Budget.COLUMN_PERIOD,
+                Budget.COLUMN_SPENT_CENTS, Budget.COLUMN_LIMIT_CENTS,
+                Budget.COLUMN_ALERT_PERCENT}, null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                long spent;
+                if (!cursor.isNull(1)) {
+                    Spend spend = readSpend(db, cursor.getLong(1));
+                    spent = (spend != null) ? spend.cents : 0;
+                }
+                else {
+                    spent = periodSpend(db, cursor.getString(2));
+                }
+
+                long before = cursor.getLong(3);
+                if (spent == before)
+                    continue;
+
+                ContentValues values = new ContentValues();
+                values.put(Budget.COLUMN_SPENT_CENTS, spent);
+                db.update(Budget.TABLE_NAME, values,
+                        Budget._ID + "=" + cursor.getLong(0), null);
+
+                long threshold = threshold(cursor.getLong(4), cursor.getInt(5));
+                if (before < threshold && spent >= threshold)
+                    queueAlert(cursor.getLong(0));
+            }
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    // the budgets of a deleted trip go with it; returns true if it had any
+    static boolean deleteTripBudgets(SQLiteDatabase db, long tripId) {
+        return db.delete(Budget.TABLE_NAME,
+                Budget.COLUMN_TRIP_ID + "=" + tripId, null) > 0;
+    }
+
+    // removes the budgets of trips that no longer exist, after a delete
+    // of many trips; returns true if there were any. Period budgets have
+    // no trip id, and NULL NOT IN an empty table is true, so they're
+    // excluded explicitly
+    static boolean deleteOrphanedTripBudgets(SQLiteDatabase db) {
+        return db.delete(Budget.TABLE_NAME, Budget.COLUMN_TRIP_ID +
+                " IS NOT NULL AND " + Budget.COLUMN_TRIP_ID +
+                " NOT IN (SELECT " + Trip._ID + " FROM " + Trip.TABLE_NAME +
+                ")", null) > 0;
+    }
+
+    // what every trip departing in period spent; read once, when a budget
+    // for period is added, through the departure date index
+    private static long periodSpend(SQLiteDatabase db, String period) {
+        Cursor cursor = db.query(Trip.TABLE_NAME, SPEND_COLUMNS,
+                Trip.COLUMN_DEPART + ">=? AND " + Trip.COLUMN_DEPART + "<?",
+                new String[] {period, period + '\uffff'}, null, null, null);
+        try {
+            long cents = 0;
+            while (cursor.moveToNext()) {
+                Spend spend = spendOf(cursor);
+                if (period.equals(spend.month) || period.equals(spend.year))
+                    cents += spend.cents;
+            }
+            return cents;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    // sends the alerts queued by writes that have finished; the alert
+    // service checks each budget again, so an alert queued by a write
+    // that was rolled back is dropped there
+    void sendAlerts() {
+        List<Long> alerts;
+        synchronized (pendingAlerts) {
+            if (pendingAlerts.isEmpty())
+                return;
+            alerts = new ArrayList<Long>(pendingAlerts);
+            pendingAlerts.clear();
+        }
+
+        for (long id : alerts) {
+            Intent intent = new Intent(Budget.ACTION_THRESHOLD_REACHED);
+            intent.setPackage(context.getPackageName());
+            intent.putExtra(Budget.EXTRA_BUDGET_ID, id);
+            context.startService(intent);
+        }
+    }
+
+    private void queueAlert(long id) {
+        synchronized (pendingAlerts) {
+            pendingAlerts.add(id);
+        }
+    }
+
+    // the spending at which a budget alerts
+    static long threshold(long limitCents, int alertPercent) {
+        return limitCents * alertPercent / 100;
+    }
+
+    private static long cents(String cost) {
+        return Money.parseOrZero(cost).getCents();
+    }
+
+    // whether period is yyyy-MM or yyyy
+    private static boolean isPeriod(String period) {
+        if (period == null ||
+                (period.length() != 4 && period.length() != 7) ||
+                (period.length() == 7 && period.charAt(4) != '-'))
+            return false;
+
+        for (int i = 0; i < period.length(); ++i) {
+            char c = period.charAt(i);
+            if (i != 4 && (c < '0' || c > '9'))
+                return false;
+        }
+        return true;
+    }
+}
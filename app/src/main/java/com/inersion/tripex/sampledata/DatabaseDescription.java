@@ -33,9 +33,255 @@ public class DatabaseDescription {
       public static final String COLUMN_HOTEL = "hotel";
       public static final String COLUMN_RENTAL = "rental";
 
+      // column names for the sync state the provider keeps with each trip
+      // (see Sync); callers normally leave them alone
+      public static final String COLUMN_SYNC_ID = "sync_id"; // same on every device
+      public static final String COLUMN_REVISION = "revision"; // server's, or 0
+      public static final String COLUMN_MODIFIED = "modified"; // ms since the epoch
+      public static final String COLUMN_DIRTY = "dirty"; // 1 until sent
+
+      // projection of the columns the trip list shows, leaving out the
+      // sync state so that a sync doesn't make every row look changed
+      public static final String[] LIST_COLUMNS = {_ID, COLUMN_NAME,
+         COLUMN_FROM, COLUMN_TO, COLUMN_DEPART, COLUMN_RETURN,
+         COLUMN_AIRFARE, COLUMN_HOTEL, COLUMN_RENTAL};
+
+      // Uri for per-section row counts of the trips table; query it with
+      // a projection of a section expression aliased to COLUMN_SECTION
+      // and COUNT(*) aliased to COLUMN_SECTION_COUNT
+      public static final Uri SECTIONS_URI =
+         CONTENT_URI.buildUpon().appendPath("sections").build();
+
+      // column names for the rows returned by SECTIONS_URI
+      public static final String COLUMN_SECTION = "section";
+      public static final String COLUMN_SECTION_COUNT = "section_count";
+
+      // sort order of the trip list: by name, ignoring case
+      public static final String SORT_BY_NAME =
+         COLUMN_NAME + " COLLATE NOCASE ASC";
+
+      // section expression for a list in SORT_BY_NAME order: the first
+      // letter, collated like the sort so that the sections are ordered
+      // as their rows are in the list (e.g. "_" before "A")
+      public static final String SECTION_BY_LETTER =
+         "upper(substr(" + COLUMN_NAME + ", 1, 1)) COLLATE NOCASE";
+
       // creates a Uri for a specific trip
       public static Uri buildTripUri(long id) {
          return ContentUris.withAppendedId(CONTENT_URI, id);
       }
    }
+
+   // nested class defines contents of the drafts table, which holds the
+   // unsaved contents of AddEditFragment; it reuses Trip's column names
+   // for the trip fields
+   public static final class Draft {
+      public static final String TABLE_NAME = "drafts"; // table's name
+
+      // Uri for the drafts table; inserting replaces an existing draft
+      public static final Uri CONTENT_URI =
+         BASE_CONTENT_URI.buildUpon().appendPath(TABLE_NAME).build();
+
+      // id of the trip being edited; the primary key of the drafts table
+      public static final String COLUMN_TRIP_ID = "trip_id";
+
+      // time the draft was last saved, in milliseconds since the epoch
+      public static final String COLUMN_UPDATED = "updated";
+
+      // COLUMN_TRIP_ID of the draft of a trip that hasn't been added yet
+      public static final long NEW_TRIP_ID = 0;
+
+      // creates a Uri for the draft of a specific trip
+      public static Uri buildDraftUri(long tripId) {
+         return ContentUris.withAppendedId(CONTENT_URI, tripId);
+      }
+   }
+
+   // nested class defines the summary table, whose single row holds the
+   // figures the home-screen widget shows; the provider keeps it up to
+   // date so the widget never has to read the trips table
+   public static final class Summary implements BaseColumns {
+      public static final String TABLE_NAME = "summary"; // table's name
+
+      // Uri for the summary row; query it to read the row, which is
+      // recomputed first if it's out of date
+      public static final Uri CONTENT_URI =
+         BASE_CONTENT_URI.buildUpon().appendPath(TABLE_NAME).build();
+
+      // column names for summary table's columns
+      public static final String COLUMN_COMPUTED_ON = "computed_on"; // yyyy-mm-dd
+      public static final String COLUMN_NEXT_NAME = "next_name"; // null if none
+      public static final String COLUMN_NEXT_DEPART = "next_depart";
+      public static final String COLUMN_YEAR = "year";
+      public static final String COLUMN_YEAR_SPEND_CENTS = "year_spend_cents";
+
+      // broadcast to the summary widget alone whenever the shown
+      // figures change
+      public static final String ACTION_CHANGED =
+         "com.inersion.tripex.action.SUMMARY_CHANGED";
+   }
+
+   // nested class defines the budgets table. A budget covers either one
+   // trip (COLUMN_TRIP_ID) or every trip departing in a period
+   // (COLUMN_PERIOD, yyyy-MM or yyyy); the provider keeps its spending
+   // up to date as trips are written, and alerts once it reaches
+   // COLUMN_ALERT_PERCENT of its limit
+   public static final class Budget implements BaseColumns {
+      public static final String TABLE_NAME = "budgets"; // table's name
+
+      // Uri for the budgets table
+      public static final Uri CONTENT_URI =
+         BASE_CONTENT_URI.buildUpon().appendPath(TABLE_NAME).build();
+
+      // column names for budgets table's columns; only the limit and the
+      // alert percentage can be updated, and COLUMN_SPENT_CENTS is read-only
+      public static final String COLUMN_TRIP_ID = "trip_id"; // null for a period
+      public static final String COLUMN_PERIOD = "period"; // null for a trip
+      public static final String COLUMN_LIMIT_CENTS = "limit_cents";
+      public static final String COLUMN_ALERT_PERCENT = "alert_percent";
+      public static final String COLUMN_SPENT_CENTS = "spent_cents";
+
+      // alert when spending reaches the whole limit unless told otherwise
+      public static final int DEFAULT_ALERT_PERCENT = 100;
+
+      // starts the alert service for a budget whose spending just reached
+      // its alert threshold; EXTRA_BUDGET_ID holds the budget's row ID
+      public static final String ACTION_THRESHOLD_REACHED =
+         "com.inersion.tripex.action.BUDGET_THRESHOLD_REACHED";
+      public static final String EXTRA_BUDGET_ID = "budget_id";
+
+      // creates a Uri for a specific budget
+      public static Uri buildBudgetUri(long id) {
+         return ContentUris.withAppendedId(CONTENT_URI, id);
+      }
+   }
+
+   // nested class describes syncing trips with the backend. Every trip
+   // written through the provider is marked dirty until TripSync has
+   // sent it, and a deleted trip the server knows about is kept in the
+   // deletions table until its deletion has been sent
+   public static final class Sync {
+      // query parameter that marks a write as applying the server's
+      // changes, which must not be marked dirty or sent back
+      public static final String CALLER_IS_SYNC_ADAPTER = "caller_is_sync_adapter";
+
+      public static final String DELETIONS_TABLE = "trip_deletions";
+
+      // column names for the deletions table's columns
+      public static final String COLUMN_SYNC_ID = "sync_id";
+      public static final String COLUMN_DELETED = "deleted"; // ms since the epoch
+
+      // uri with the CALLER_IS_SYNC_ADAPTER parameter added
+      public static Uri asSyncAdapter(Uri uri) {
+         return uri.buildUpon()
+            .appendQueryParameter(CALLER_IS_SYNC_ADAPTER, "true").build();
+      }
+   }
+
+   // nested class describes backups of the trips table, which are
+   // compact binary snapshots (see tripex-core's TripSnapshot)
+   public static final class Backup {
+      // ContentResolver.call() methods whose arg is the snapshot file's
+      // path: METHOD_BACKUP writes every trip to it, and METHOD_RESTORE
+      // replaces every trip with the ones it holds, all or nothing. Both
+      // return the number of trips in EXTRA_TRIP_COUNT; call them off the
+      // main thread
+      public static final String METHOD_BACKUP = "backup_trips";
+      public static final String METHOD_RESTORE = "restore_trips";
+      public static final String EXTRA_TRIP_COUNT = "trip_count";
+   }
+
+   // nested class describes batch scopes: while one is open, the provider
+   // holds the change notifications of writes made on the thread that
+   // opened it, and once that thread's last one closes it sends a single
+   // notification for all of them. Open one around a run of separate
+   // writes, e.g. an import that inserts row by row, so the trip list
+   // re-queries once instead of after every row; other threads' writes
+   // notify as usual. Scopes don't make the writes atomic; use applyBatch
+   // or bulkInsert for that
+   public static final class Batch {
+      public static final String PATH = "batch";
+
+      // Uri that opens a scope when inserted into (with null values); the
+      // returned Uri identifies the scope, and deleting it closes the scope
+      public static final Uri CONTENT_URI =
+         BASE_CONTENT_URI.buildUpon().appendPath(PATH).build();
+
+      // ContentResolver.call() methods that do the same: METHOD_BEGIN
+      // returns the scope's id in EXTRA_BATCH_ID, and METHOD_END takes it
+      // as its arg, which mustn't be null
+      public static final String METHOD_BEGIN = "begin_batch";
+      public static final String METHOD_END = "end_batch";
+      public static final String EXTRA_BATCH_ID = "batch_id";
+
+      // creates a Uri for a specific scope
+      public static Uri buildBatchUri(long id) {
+         return ContentUris.withAppendedId(CONTENT_URI, id);
+      }
+   }
+
+   // nested class describes the provider's debug statistics, which are
+   // kept in memory rather than in the database
+   public static final class Stats {
+      public static final String PATH = "stats";
+
+      // Uri for the per-route latency statistics; query it to read them
+      // and delete it to reset them (debug builds only)
+      public static final Uri CONTENT_URI =
+         BASE_CONTENT_URI.buildUpon().appendPath(PATH).build();
+
+      // column names for the rows returned by CONTENT_URI
+      public static final String COLUMN_ROUTE = "route";
+      public static final String COLUMN_OPERATION = "operation";
+      public static final String COLUMN_COUNT = "count";
+      public static final String COLUMN_ROWS = "rows";
+      public static final String COLUMN_MEAN_US = "mean_us";
+      public static final String COLUMN_P50_US = "p50_us";
+      public static final String COLUMN_P90_US = "p90_us";
+      public static final String COLUMN_P99_US = "p99_us";
+      public static final String COLUMN_MAX_US = "max_us";
+
+      public static final String[] COLUMNS = {COLUMN_ROUTE, COLUMN_OPERATION,
+         COLUMN_COUNT, COLUMN_ROWS, COLUMN_MEAN_US, COLUMN_P50_US,
+         COLUMN_P90_US, COLUMN_P99_US, COLUMN_MAX_US};
+   }
+
+   // nested class describes the provider's optional query diagnostics:
+   // captured query plans and a bounded log of slow queries. Like the
+   // statistics, they're only available in debug builds
+   public static final class Diagnostics {
+      public static final String PATH = "diagnostics";
+
+      // Uri for one row per distinct query shape and its EXPLAIN QUERY PLAN
+      public static final Uri PLANS_URI = BASE_CONTENT_URI.buildUpon()
+         .appendPath(PATH).appendPath("plans").build();
+
+      // Uri for the most recent queries that exceeded the threshold;
+      // delete it to clear both the slow log and the captured plans
+      public static final Uri SLOW_QUERIES_URI = BASE_CONTENT_URI.buildUpon()
+         .appendPath(PATH).appendPath("slow_queries").build();
+
+      // ContentResolver.call() method that turns diagnostics on ("true")
+      // or off ("false"); EXTRA_SLOW_QUERY_MILLIS optionally sets the
+      // threshold in milliseconds
+      public static final String METHOD_SET_ENABLED = "set_diagnostics_enabled";
+      public static final String EXTRA_SLOW_QUERY_MILLIS = "slow_query_millis";
+
+      // column names for the rows returned by the Uris above
+      public static final String COLUMN_SHAPE = "shape";
+      public static final String COLUMN_PLAN = "plan";
+      public static final String COLUMN_FULL_SCAN = "full_scan";
+      public static final String COLUMN_TEMP_BTREE = "temp_btree";
+      public static final String COLUMN_TIMESTAMP = "timestamp";
+      public static final String COLUMN_ROUTE = "route";
+      public static final String COLUMN_DURATION_MS = "duration_ms";
+      public static final String COLUMN_ROWS = "rows";
+
+      public static final String[] PLAN_COLUMNS = {COLUMN_SHAPE, COLUMN_PLAN,
+         COLUMN_FULL_SCAN, COLUMN_TEMP_BTREE};
+
+      public static final String[] SLOW_QUERY_COLUMNS = {COLUMN_TIMESTAMP,
+         COLUMN_ROUTE, COLUMN_SHAPE, COLUMN_DURATION_MS, COLUMN_ROWS,
+         COLUMN_FULL_SCAN, COLUMN_TEMP_BTREE};
+   }
 }
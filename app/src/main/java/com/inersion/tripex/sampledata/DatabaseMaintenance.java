@@ -0,0 +1,197 @@
+// DatabaseMaintenance.java
+// Housekeeping for the trips database: ANALYZE, an integrity check and,
+// once enough pages are free, a VACUUM. TripExMaintenanceService runs
+// the tasks a slice at a time, and the next task is remembered so the
+// following slice carries on
+package com.inersion.tripex.sampledata;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+final class DatabaseMaintenance {
+    private static final String TAG = "DatabaseMaintenance";
+
+    // the tasks of a cycle, in the order they run
+    private static final int ANALYZE = 0;
+    private static final int INTEGRITY_CHECK = 1;
+    private static final int VACUUM = 2;
+
+    private static final String[] TASK_NAMES = {"analyze",
+            "integrity check", "vacuum"};
+
+    // VACUUM rewrites the whole file, so it only runs once at least this
+    // fraction of the file's pages are free
+    private static final double VACUUM_FREE_FRACTION = 0.2;
+
+    // progress and timings, kept across slices and process restarts
+    private static final String PREFERENCES = "database_maintenance";
+    private static final String KEY_NEXT_TASK = "next_task";
+    private static final String KEY_CYCLE_MILLIS = "cycle_millis";
+    private static final String KEY_LAST_CYCLE_MILLIS = "last_cycle_millis";
+    private static final String KEY_LAST_SLICE_MILLIS = "last_slice_millis";
+    private static final String KEY_LAST_COMPLETED = "last_completed";
+    private static final String KEY_INTEGRITY = "integrity";
+
+    private final TripExDatabaseHelper dbHelper;
+    private final SharedPreferences preferences;
+
+    // how long each task took in this process
+    private final LatencyHistogram[] durations =
+            new LatencyHistogram[TASK_NAMES.length];
+
+    DatabaseMaintenance(Context context, TripExDatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
+        preferences = context.getSharedPreferences(PREFERENCES,
+                Context.MODE_PRIVATE);
+
+        for (int i = 0; i < durations.length; ++i)
+            durations[i] = new LatencyHistogram();
+    }
+
+    // runs tasks, starting with the one after the last that completed,
+    // until the cycle is done or budgetMillis have passed; returns true
+    // if the cycle is done. Throws OperationCanceledException as soon as
+    // signal is cancelled, abandoning the running task, which the next
+    // slice starts over
+    synchronized boolean runSlice(long budgetMillis, CancellationSignal signal) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long sliceStart = SystemClock.elapsedRealtime();
+        int task = preferences.getInt(KEY_NEXT_TASK, 0);
+
+        try {
+            while (task < TASK_NAMES.length) {
+                if (SystemClock.elapsedRealtime() - sliceStart >= budgetMillis)
+                    return false;
+                signal.throwIfCanceled();
+
+                long taskStart = SystemClock.elapsedRealtimeNanos();
+                runTask(db, task, signal);
+                long taskNanos = SystemClock.elapsedRealtimeNanos() - taskStart;
+                durations[task].record(taskNanos, 1);
+                Log.i(TAG, "Finished " + TASK_NAMES[task] + " in " +
+                        taskNanos / 1000000 + "ms");
+
+                preferences.edit().putInt(KEY_NEXT_TASK, ++task).apply();
+            }
+            return true;
+        }
+        finally {
+            recordSlice(SystemClock.elapsedRealtime() - sliceStart,
+                    task == TASK_NAMES.length);
+        }
+    }
+
+    // adds the slice to the cycle's time; a finished cycle's total becomes
+    // the last cycle's and the next slice starts a new cycle
+    private void recordSlice(long sliceMillis, boolean cycleDone) {
+        long cycleMillis = preferences.getLong(KEY_CYCLE_MILLIS, 0) + sliceMillis;
+        SharedPreferences.Editor editor = preferences.edit()
+                .putLong(KEY_LAST_SLICE_MILLIS, sliceMillis);
+
+        if (cycleDone) {
+            editor.putInt(KEY_NEXT_TASK, 0)
+                    .putLong(KEY_CYCLE_MILLIS, 0)
+                    .putLong(KEY_LAST_CYCLE_MILLIS, cycleMillis)
+                    .putLong(KEY_LAST_COMPLETED, System.currentTimeMillis());
+            Log.i(TAG, "Maintenance cycle done in " + cycleMillis + "ms");
+        }
+        else {
+            editor.putLong(KEY_CYCLE_MILLIS, cycleMillis);
+        }
+        editor.apply();
+    }
+
+    private void runTask(SQLiteDatabase db, int task,
+                         CancellationSignal signal) {
+        switch (task) {
+            case ANALYZE:
+                // every table and index, including ones added later
+                execute(db, "ANALYZE", signal);
+                break;
+            case INTEGRITY_CHECK:
+                checkIntegrity(db, signal);
+                break;
+            case VACUUM:
+                long freePages = Long.parseLong(
+                        pragma(db, "freelist_count", signal));
+                long pages = Long.parseLong(pragma(db, "page_count", signal));
+                if (freePages >= pages * VACUUM_FREE_FRACTION)
+                    execute(db, "VACUUM", signal);
+                break;
+        }
+    }
+
+    // records "ok" or the first problem found, and logs every problem
+    private void checkIntegrity(SQLiteDatabase db, CancellationSignal signal) {
+        Cursor cursor = db.rawQuery("PRAGMA integrity_check", null, signal);
+        try {
+            String result = cursor.moveToFirst() ? cursor.getString(0) : "ok";
+            if (!"ok".equals(result)) {
+                do {
+                    Log.e(TAG, "Integrity check: " + cursor.getString(0));
+                } while (cursor.moveToNext());
+            }
+            preferences.edit().putString(KEY_INTEGRITY, result).apply();
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    // runs sql through a query, the only way to have SQLite interrupt a
+    // statement when signal is cancelled
+    private static void execute(SQLiteDatabase db, String sql,
+                                CancellationSignal signal) {
+        Cursor cursor = db.rawQuery(sql, null, signal);
+        try {
+            cursor.moveToFirst();
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    private static String pragma(SQLiteDatabase db, String name,
+                                 CancellationSignal signal) {
+        Cursor cursor = db.rawQuery("PRAGMA " + name, null, signal);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    // writes the task timings and the state of the current cycle, used by
+    // the provider's dump()
+    void dump(PrintWriter writer) {
+        writer.println("Database maintenance (ms)");
+        writer.println(String.format(Locale.US, "  %-16s %6s %8s %8s",
+                "task", "runs", "mean", "max"));
+        for (int i = 0; i < TASK_NAMES.length; ++i) {
+            writer.println(String.format(Locale.US, "  %-16s %6d %8d %8d",
+                    TASK_NAMES[i], durations[i].getCount(),
+                    durations[i].getMeanMicros() / 1000,
+                    durations[i].getMaxMicros() / 1000));
+        }
+
+        writer.println(String.format(Locale.US,
+                "  next task %d, this cycle %dms, last slice %dms, " +
+                        "last cycle %dms, last completed %tF %<tT, " +
+                        "integrity %s",
+                preferences.getInt(KEY_NEXT_TASK, 0),
+                preferences.getLong(KEY_CYCLE_MILLIS, 0),
+                preferences.getLong(KEY_LAST_SLICE_MILLIS, 0),
+                preferences.getLong(KEY_LAST_CYCLE_MILLIS, 0),
+                preferences.getLong(KEY_LAST_COMPLETED, 0),
+                preferences.getString(KEY_INTEGRITY, "not checked")));
+    }
+}
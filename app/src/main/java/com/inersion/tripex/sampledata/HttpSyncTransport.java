@@ -0,0 +1,96 @@
+// HttpSyncTransport.java
+// Carries SyncBatches to the sync server over HTTP: a push is a POST to
+// <base>/push and a pull a GET of <base>/pull?since=&limit=, and both
+// bodies are batches in SyncBatch's gzipped form
+package com.inersion.tripex.sampledata;
+
+import com.inersion.tripex.core.SyncBatch;
+import com.inersion.tripex.core.SyncTransport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+final class HttpSyncTransport implements SyncTransport {
+    static final String CONTENT_TYPE = "application/vnd.tripex.sync-batch";
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+
+    private final String baseUrl;
+
+    HttpSyncTransport(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ?
+                baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    @Override
+    public SyncBatch push(SyncBatch changes) throws IOException {
+        // encoded up front so the request can give its length instead of
+        // being sent chunked
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        changes.writeTo(body);
+
+        HttpURLConnection connection = open(baseUrl + "/push");
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", CONTENT_TYPE);
+            connection.setFixedLengthStreamingMode(body.size());
+
+            OutputStream out = new BufferedOutputStream(
+                    connection.getOutputStream());
+            try {
+                body.writeTo(out);
+            }
+            finally {
+                out.close();
+            }
+            return readReply(connection);
+        }
+        finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public SyncBatch pull(long since, int limit) throws IOException {
+        HttpURLConnection connection = open(baseUrl + "/pull?since=" + since +
+                "&limit=" + limit);
+        try {
+            return readReply(connection);
+        }
+        finally {
+            connection.disconnect();
+        }
+    }
+
+    private static HttpURLConnection open(String url) throws IOException {
+        HttpURLConnection connection =
+                (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setRequestProperty("Accept", CONTENT_TYPE);
+        return connection;
+    }
+
+    private static SyncBatch readReply(HttpURLConnection connection)
+            throws IOException {
+        int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK)
+            throw new IOException("Sync server replied " + status);
+
+        InputStream in = new BufferedInputStream(connection.getInputStream());
+        try {
+            return SyncBatch.readFrom(in);
+        }
+        finally {
+            in.close();
+        }
+    }
+}
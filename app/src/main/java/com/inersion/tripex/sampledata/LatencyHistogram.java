@@ -0,0 +1,77 @@
+// LatencyHistogram.java
+// Lock-free latency histogram with power-of-two microsecond buckets
+package com.inersion.tripex.sampledata;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+class LatencyHistogram {
+    // bucket i counts samples in [2^(i-1), 2^i) microseconds;
+    // the last bucket also absorbs everything slower than that
+    static final int BUCKET_COUNT = 24;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+
+    // records one operation that took elapsedNanos and touched rowCount rows
+    void record(long elapsedNanos, long rowCount) {
+        long micros = elapsedNanos / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        buckets.incrementAndGet(Math.min(bucket, BUCKET_COUNT - 1));
+        count.incrementAndGet();
+        totalNanos.addAndGet(elapsedNanos);
+        rows.addAndGet(rowCount);
+
+        // raise the maximum if this sample is slower than any seen so far
+        long max;
+        while (elapsedNanos > (max = maxNanos.get()) &&
+                !maxNanos.compareAndSet(max, elapsedNanos)) { }
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    long getRows() {
+        return rows.get();
+    }
+
+    long getMaxMicros() {
+        return maxNanos.get() / 1000;
+    }
+
+    long getMeanMicros() {
+        long n = count.get();
+        return n == 0 ? 0 : totalNanos.get() / n / 1000;
+    }
+
+    // upper bound, in microseconds, of the bucket holding the given
+    // percentile (0-100); accurate to within a factor of two
+    long getPercentileMicros(double percentile) {
+        long n = count.get();
+        if (n == 0)
+            return 0;
+
+        long threshold = (long) Math.ceil(n * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            seen += buckets.get(i);
+            if (seen >= threshold)
+                return 1L << i;
+        }
+        return 1L << (BUCKET_COUNT - 1);
+    }
+
+    // discards all recorded samples
+    void reset() {
+        for (int i = 0; i < BUCKET_COUNT; ++i)
+            buckets.set(i, 0);
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+        rows.set(0);
+    }
+}
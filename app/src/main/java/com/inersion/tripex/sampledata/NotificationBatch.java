@@ -0,0 +1,140 @@
+// NotificationBatch.java
+// Holds TripExContentProvider's change notifications while batch scopes
+// are open and sends a single notification for all of them once the last
+// scope closes, so a run of writes makes observers re-query only once
+package com.inersion.tripex.sampledata;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+// thread safe: scopes may be opened and closed from any thread. A scope
+// holds only the notifications of writes made on the thread that opened
+// it, which for this unexported provider is its caller's, so one
+// caller's scope never delays what observers hear of anyone else's writes
+final class NotificationBatch {
+    private static final String TAG = "NotificationBatch";
+
+    // a scope still open after this long, e.g. because its client died
+    // halfway through an import, is closed so observers hear about the
+    // changes after all
+    static final long SCOPE_TIMEOUT_MILLIS = 30000;
+
+    private final ContentResolver contentResolver;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // an open scope: the thread whose writes it holds, and the Runnable
+    // that times it out
+    private static final class Scope {
+        final Thread owner;
+        final Runnable timeout;
+
+        Scope(Thread owner, Runnable timeout) {
+            this.owner = owner;
+            this.timeout = timeout;
+        }
+    }
+
+    // the open scopes by id, and the Uris changed on each thread that
+    // has one open
+    private final Map<Long, Scope> scopes = new HashMap<Long, Scope>();
+    private final Map<Thread, Set<Uri>> held = new HashMap<Thread, Set<Uri>>();
+    private long nextId = 1;
+
+    NotificationBatch(ContentResolver contentResolver) {
+        this.contentResolver = contentResolver;
+    }
+
+    // opens a scope on the calling thread and returns its id, for close
+    synchronized long open() {
+        final long id = nextId++;
+        Runnable timeout = new Runnable() {
+            @Override
+            public void run() {
+                if (close(id))
+                    Log.w(TAG, "Closed batch " + id + " after " +
+                            SCOPE_TIMEOUT_MILLIS + "ms");
+            }
+        };
+        Thread owner = Thread.currentThread();
+        scopes.put(id, new Scope(owner, timeout));
+        if (!held.containsKey(owner))
+            held.put(owner, new LinkedHashSet<Uri>());
+        handler.postDelayed(timeout, SCOPE_TIMEOUT_MILLIS);
+        return id;
+    }
+
+    // closes the scope, from any thread, sending what it held; returns
+    // false if no such scope is open
+    boolean close(long id) {
+        return close(id, true);
+    }
+
+    // closes the scope; if it was its thread's last one open, sends the
+    // held notifications, or drops them if send is false, e.g. because
+    // the writes they're for were rolled back. Several Uris of the same
+    // table are sent as that table's Uri. Returns false if no such scope
+    // is open
+    boolean close(long id, boolean send) {
+        Set<Uri> changed;
+        synchronized (this) {
+            Scope scope = scopes.remove(id);
+            if (scope == null)
+                return false;
+            handler.removeCallbacks(scope.timeout);
+
+            for (Scope open : scopes.values()) {
+                if (open.owner == scope.owner)
+                    return true;
+            }
+            changed = held.remove(scope.owner);
+        }
+
+        if (send) {
+            for (Uri uri : coalesce(changed))
+                contentResolver.notifyChange(uri, null);
+        }
+        return true;
+    }
+
+    // notifies observers that uri changed, or holds the notification
+    // while the calling thread has a scope open
+    void notifyChange(Uri uri) {
+        synchronized (this) {
+            Set<Uri> uris = held.get(Thread.currentThread());
+            if (uris != null) {
+                uris.add(uri);
+                return;
+            }
+        }
+
+        contentResolver.notifyChange(uri, null);
+    }
+
+    // the Uris to notify for the changed ones: each one, unless several
+    // are in the same table, in which case the table's
+    private static Iterable<Uri> coalesce(Set<Uri> changed) {
+        Map<Uri, Uri> byTable = new LinkedHashMap<Uri, Uri>();
+        for (Uri uri : changed) {
+            Uri table = tableUri(uri);
+            byTable.put(table, byTable.containsKey(table) ? table : uri);
+        }
+        return byTable.values();
+    }
+
+    private static Uri tableUri(Uri uri) {
+        Uri.Builder builder = new Uri.Builder().scheme(uri.getScheme())
+                .authority(uri.getAuthority());
+        if (!uri.getPathSegments().isEmpty())
+            builder.appendPath(uri.getPathSegments().get(0));
+        return builder.build();
+    }
+}
@@ -0,0 +1,107 @@
+// ProviderStats.java
+// Per-route, per-operation latency histograms and row counters
+// collected by the TripExContentProvider
+package com.inersion.tripex.sampledata;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.SystemClock;
+
+import com.inersion.tripex.sampledata.DatabaseDescription.Stats;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+
+class ProviderStats {
+    // operations the provider records
+    static final int QUERY = 0;
+    static final int INSERT = 1;
+    static final int UPDATE = 2;
+    static final int DELETE = 3;
+    static final int BULK_INSERT = 4;
+
+    private static final String[] OPERATION_NAMES =
+            {"query", "insert", "update", "delete", "bulkInsert"};
+
+    private final String[] routeNames; // indexed by UriMatcher code
+    private final LatencyHistogram[][] histograms;
+
+    // routeNames[code] names the UriMatcher route with that code
+    ProviderStats(String[] routeNames) {
+        this.routeNames = routeNames;
+        histograms = new LatencyHistogram[routeNames.length][OPERATION_NAMES.length];
+
+        for (int route = 0; route < routeNames.length; ++route)
+            for (int op = 0; op < OPERATION_NAMES.length; ++op)
+                histograms[route][op] = new LatencyHistogram();
+    }
+
+    // timestamp to pass to record() when the operation finishes
+    static long start() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    // records an operation begun at startNanos on the given route;
+    // unmatched routes are ignored since they never reach the database
+    void record(int route, int operation, long startNanos, long rowCount) {
+        if (route < 0 || route >= routeNames.length)
+            return;
+
+        histograms[route][operation].record(
+                SystemClock.elapsedRealtimeNanos() - startNanos, rowCount);
+    }
+
+    // discards everything recorded so far
+    void reset() {
+        for (LatencyHistogram[] route : histograms)
+            for (LatencyHistogram histogram : route)
+                histogram.reset();
+    }
+
+    // one row per route and operation that has been exercised
+    Cursor toCursor() {
+        MatrixCursor cursor = new MatrixCursor(Stats.COLUMNS);
+
+        for (int route = 0; route < routeNames.length; ++route) {
+            for (int op = 0; op < OPERATION_NAMES.length; ++op) {
+                LatencyHistogram h = histograms[route][op];
+                if (h.getCount() == 0)
+                    continue;
+
+                cursor.newRow()
+                        .add(Stats.COLUMN_ROUTE, routeNames[route])
+                        .add(Stats.COLUMN_OPERATION, OPERATION_NAMES[op])
+                        .add(Stats.COLUMN_COUNT, h.getCount())
+                        .add(Stats.COLUMN_ROWS, h.getRows())
+                        .add(Stats.COLUMN_MEAN_US, h.getMeanMicros())
+                        .add(Stats.COLUMN_P50_US, h.getPercentileMicros(50))
+                        .add(Stats.COLUMN_P90_US, h.getPercentileMicros(90))
+                        .add(Stats.COLUMN_P99_US, h.getPercentileMicros(99))
+                        .add(Stats.COLUMN_MAX_US, h.getMaxMicros());
+            }
+        }
+        return cursor;
+    }
+
+    // writes a human-readable table, used by the provider's dump()
+    void dump(PrintWriter writer) {
+        writer.println("TripExContentProvider latency (us; percentiles are bucket upper bounds)");
+        writer.println(String.format(Locale.US, "  %-10s %-10s %8s %8s %8s %8s %8s %8s %8s",
+                "route", "op", "count", "rows", "mean", "p50", "p90", "p99", "max"));
+
+        for (int route = 0; route < routeNames.length; ++route) {
+            for (int op = 0; op < OPERATION_NAMES.length; ++op) {
+                LatencyHistogram h = histograms[route][op];
+                if (h.getCount() == 0)
+                    continue;
+
+                writer.println(String.format(Locale.US,
+                        "  %-10s %-10s %8d %8d %8d %8d %8d %8d %8d",
+                        routeNames[route], OPERATION_NAMES[op],
+                        h.getCount(), h.getRows(), h.getMeanMicros(),
+                        h.getPercentileMicros(50), h.getPercentileMicros(90),
+                        h.getPercentileMicros(99), h.getMaxMicros()));
+            }
+        }
+    }
+}
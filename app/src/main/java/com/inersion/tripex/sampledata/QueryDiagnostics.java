@@ -0,0 +1,192 @@
+// QueryDiagnostics.java
+// Optional query plan capture and slow-query ring buffer used by the
+// TripExContentProvider while diagnostics mode is enabled
+package com.inersion.tripex.sampledata;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.inersion.tripex.sampledata.DatabaseDescription.Diagnostics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+class QueryDiagnostics {
+    // default threshold above which a query is written to the slow log
+    static final long DEFAULT_SLOW_QUERY_MILLIS = 50;
+
+    private static final int SLOW_LOG_CAPACITY = 64; // ring buffer size
+    private static final int MAX_PLANS = 256; // distinct query shapes kept
+
+    // numeric and quoted literals, which are folded into "?" so that, for
+    // example, every ONE_TRIP query shares one shape regardless of its id
+    private static final Pattern LITERALS =
+            Pattern.compile("'(?:[^']|'')*'|\\b\\d+(?:\\.\\d+)?\\b");
+
+    // the EXPLAIN QUERY PLAN output captured for one query shape
+    private static final class Plan {
+        final String detail;
+        final boolean fullScan;
+        final boolean tempBTree;
+
+        Plan(String detail, boolean fullScan, boolean tempBTree) {
+            this.detail = detail;
+            this.fullScan = fullScan;
+            this.tempBTree = tempBTree;
+        }
+    }
+
+    // one entry in the slow-query log
+    private static final class SlowQuery {
+        final long timestamp;
+        final String route;
+        final String shape;
+        final long millis;
+        final int rows;
+
+        SlowQuery(long timestamp, String route, String shape, long millis,
+                  int rows) {
+            this.timestamp = timestamp;
+            this.route = route;
+            this.shape = shape;
+            this.millis = millis;
+            this.rows = rows;
+        }
+    }
+
+    private volatile boolean enabled = false;
+    private volatile long slowQueryMillis = DEFAULT_SLOW_QUERY_MILLIS;
+
+    // plans keyed by query shape, in first-seen order
+    private final Map<String, Plan> plans = new LinkedHashMap<String, Plan>();
+
+    // slow queries; slowLogNext is where the next entry is written
+    private final SlowQuery[] slowLog = new SlowQuery[SLOW_LOG_CAPACITY];
+    private int slowLogNext = 0;
+    private int slowLogSize = 0;
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    // turns diagnostics on or off; a threshold <= 0 keeps the current one
+    void setEnabled(boolean enabled, long slowQueryMillis) {
+        if (slowQueryMillis > 0)
+            this.slowQueryMillis = slowQueryMillis;
+        this.enabled = enabled;
+    }
+
+    // called after the provider has run sql with args; captures the plan
+    // the first time a shape is seen and logs the query if it was slow
+    void onQuery(SQLiteDatabase db, String route, String sql, String[] args,
+                 long elapsedNanos, int rows) {
+        if (!enabled)
+            return;
+
+        String shape = LITERALS.matcher(sql).replaceAll("?");
+        long millis = elapsedNanos / 1000000;
+
+        boolean needsPlan;
+        synchronized (this) {
+            needsPlan = !plans.containsKey(shape) && plans.size() < MAX_PLANS;
+
+            if (millis >= slowQueryMillis) {
+                slowLog[slowLogNext] = new SlowQuery(System.currentTimeMillis(),
+                        route, shape, millis, rows);
+                slowLogNext = (slowLogNext + 1) % SLOW_LOG_CAPACITY;
+                slowLogSize = Math.min(slowLogSize + 1, SLOW_LOG_CAPACITY);
+            }
+        }
+
+        // explain outside the lock; a racing thread may explain the same
+        // shape too, which is harmless since the first result is kept
+        if (needsPlan) {
+            Plan plan = explain(db, sql, args);
+            synchronized (this) {
+                if (!plans.containsKey(shape))
+                    plans.put(shape, plan);
+            }
+        }
+    }
+
+    // runs EXPLAIN QUERY PLAN and flags full-table scans and temp B-trees
+    private static Plan explain(SQLiteDatabase db, String sql, String[] args) {
+        StringBuilder detail = new StringBuilder();
+        boolean fullScan = false;
+        boolean tempBTree = false;
+
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            int detailIndex = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                String step = cursor.getString(detailIndex);
+
+                // a SCAN visits every row, even one using a covering index;
+                // only a SEARCH ... USING ... is narrowed by an index
+                if (step.startsWith("SCAN"))
+                    fullScan = true;
+                if (step.contains("TEMP B-TREE"))
+                    tempBTree = true;
+
+                if (detail.length() > 0)
+                    detail.append('\n');
+                detail.append(step);
+            }
+        }
+        finally {
+            cursor.close();
+        }
+
+        return new Plan(detail.toString(), fullScan, tempBTree);
+    }
+
+    // one row per captured query shape
+    synchronized Cursor plansCursor() {
+        MatrixCursor cursor = new MatrixCursor(Diagnostics.PLAN_COLUMNS);
+
+        for (Map.Entry<String, Plan> entry : plans.entrySet()) {
+            Plan plan = entry.getValue();
+            cursor.newRow()
+                    .add(Diagnostics.COLUMN_SHAPE, entry.getKey())
+                    .add(Diagnostics.COLUMN_PLAN, plan.detail)
+                    .add(Diagnostics.COLUMN_FULL_SCAN, plan.fullScan ? 1 : 0)
+                    .add(Diagnostics.COLUMN_TEMP_BTREE, plan.tempBTree ? 1 : 0);
+        }
+        return cursor;
+    }
+
+    // the slow-query log, oldest entry first
+    synchronized Cursor slowQueriesCursor() {
+        MatrixCursor cursor = new MatrixCursor(Diagnostics.SLOW_QUERY_COLUMNS);
+        int first = (slowLogNext - slowLogSize + SLOW_LOG_CAPACITY) %
+                SLOW_LOG_CAPACITY;
+
+        for (int i = 0; i < slowLogSize; ++i) {
+            SlowQuery query = slowLog[(first + i) % SLOW_LOG_CAPACITY];
+            Plan plan = plans.get(query.shape);
+
+            cursor.newRow()
+                    .add(Diagnostics.COLUMN_TIMESTAMP, query.timestamp)
+                    .add(Diagnostics.COLUMN_ROUTE, query.route)
+                    .add(Diagnostics.COLUMN_SHAPE, query.shape)
+                    .add(Diagnostics.COLUMN_DURATION_MS, query.millis)
+                    .add(Diagnostics.COLUMN_ROWS, query.rows)
+                    .add(Diagnostics.COLUMN_FULL_SCAN,
+                            plan != null && plan.fullScan ? 1 : 0)
+                    .add(Diagnostics.COLUMN_TEMP_BTREE,
+                            plan != null && plan.tempBTree ? 1 : 0);
+        }
+        return cursor;
+    }
+
+    // forgets captured plans and empties the slow log
+    synchronized void clear() {
+        plans.clear();
+        for (int i = 0; i < SLOW_LOG_CAPACITY; ++i)
+            slowLog[i] = null;
+        slowLogNext = 0;
+        slowLogSize = 0;
+    }
+}
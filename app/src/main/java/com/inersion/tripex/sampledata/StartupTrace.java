@@ -0,0 +1,77 @@
+// StartupTrace.java
+// Marks the milestones of a cold start in logcat and in systrace sections,
+// timed from the first app code that runs in the process
+package com.inersion.tripex.sampledata;
+
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public final class StartupTrace {
+    private static final String TAG = "StartupTrace";
+
+    // milestones, in the order they're normally reached
+    public static final String PROVIDER_CREATED = "provider created";
+    public static final String DATABASE_OPENED = "database opened";
+    public static final String ACTIVITY_CREATED = "activity created";
+    public static final String FIRST_FRAME = "first frame";
+    public static final String FIRST_LIST_ROW = "first list row";
+
+    // the provider is created before the activity, and it touches this
+    // class first, so class loading is close to the start of the process
+    private static final long startMillis = SystemClock.uptimeMillis();
+
+    // milliseconds from startMillis to each milestone reached so far
+    private static final Map<String, Long> milestones =
+            new LinkedHashMap<String, Long>();
+
+    private StartupTrace() {}
+
+    // records the first time milestone is reached; returns false if it
+    // had already been reached, e.g. when the activity is recreated
+    public static boolean mark(String milestone) {
+        long elapsed = SystemClock.uptimeMillis() - startMillis;
+
+        synchronized (milestones) {
+            if (milestones.containsKey(milestone))
+                return false;
+            milestones.put(milestone, elapsed);
+        }
+
+        Log.i(TAG, milestone + ": +" + elapsed + "ms");
+        return true;
+    }
+
+    // milliseconds from process start to milestone, or -1 if not reached
+    public static long getMillis(String milestone) {
+        synchronized (milestones) {
+            Long elapsed = milestones.get(milestone);
+            return (elapsed != null) ? elapsed : -1;
+        }
+    }
+
+    // starts a named section that shows up in systrace; sections must be
+    // ended on the thread that began them
+    public static void beginSection(String section) {
+        Trace.beginSection(section);
+    }
+
+    // ends the innermost section begun on this thread
+    public static void endSection() {
+        Trace.endSection();
+    }
+
+    // writes every milestone reached so far, for dumpsys
+    public static void dump(PrintWriter writer) {
+        writer.println("Startup milestones (ms since process start):");
+        synchronized (milestones) {
+            for (Map.Entry<String, Long> milestone : milestones.entrySet())
+                writer.println("  " + milestone.getKey() + ": " +
+                        milestone.getValue());
+        }
+    }
+}
@@ -0,0 +1,202 @@
+// TripBackup.java
+// Writes the trips table to a TripSnapshot and reads one back into it.
+// A backup pages through the table by _id, a snapshot block at a time,
+// so neither it nor the file is ever held whole. A restore maps the file
+// into memory and inserts its rows with one compiled statement in the
+// caller's transaction
+package com.inersion.tripex.sampledata;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.inersion.tripex.core.TripSnapshot;
+import com.inersion.tripex.core.TripSnapshotReader;
+import com.inersion.tripex.core.TripSnapshotWriter;
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+final class TripBackup {
+    private TripBackup() {}
+
+    // the columns a snapshot holds, in order. Whether a trip is dirty and
+    // when it was modified aren't kept, since a restored trip counts as
+    // edited when it's restored
+    private static final String[] COLUMNS = {Trip._ID, Trip.COLUMN_NAME,
+            Trip.COLUMN_FROM, Trip.COLUMN_TO, Trip.COLUMN_DEPART,
+            Trip.COLUMN_RETURN, Trip.COLUMN_AIRFARE, Trip.COLUMN_HOTEL,
+            Trip.COLUMN_RENTAL, Trip.COLUMN_SYNC_ID, Trip.COLUMN_REVISION};
+
+    private static final TripSnapshot.Type[] TYPES = {
+            TripSnapshot.Type.INTEGER, TripSnapshot.Type.TEXT,
+            TripSnapshot.Type.TEXT, TripSnapshot.Type.TEXT,
+            TripSnapshot.Type.TEXT, TripSnapshot.Type.TEXT,
+            TripSnapshot.Type.TEXT, TripSnapshot.Type.TEXT,
+            TripSnapshot.Type.TEXT, TripSnapshot.Type.TEXT,
+            TripSnapshot.Type.INTEGER};
+
+    // rows read per query while backing up
+    private static final int PAGE_SIZE = 4096;
+
+    // writes every trip to file, replacing it; returns how many. The
+    // trips are read in one transaction, so the snapshot is consistent,
+    // and writes wait until it's done. The snapshot is written to a
+    // temporary file next to file and renamed over it once complete, so
+    // a failed backup leaves an earlier one at file untouched
+    static long backup(SQLiteDatabase db, File file) throws IOException {
+        File temp = File.createTempFile(file.getName(), ".tmp",
+                file.getAbsoluteFile().getParentFile());
+        OutputStream out = null;
+        TripSnapshotWriter writer;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(temp));
+            writer = new TripSnapshotWriter(out, COLUMNS, TYPES);
+        }
+        catch (IOException e) {
+            if (out != null) {
+                try {
+                    out.close();
+                }
+                catch (IOException closeFailed) {
+                    // the backup already failed
+                }
+            }
+            temp.delete();
+            throw e;
+        }
+        boolean written = false;
+        try {
+            db.beginTransactionNonExclusive();
+            try {
+                long lastId = 0;
+                int rows;
+                do {
+                    Cursor cursor = db.query(Trip.TABLE_NAME, COLUMNS,
+                            Trip._ID + ">" + lastId, null, null, null,
+                            Trip._ID, String.valueOf(PAGE_SIZE));
+                    try {
+                        rows = cursor.getCount();
+                        while (cursor.moveToNext()) {
+                            lastId = cursor.getLong(0);
+                            writeRow(writer, cursor);
+                        }
+                    }
+                    finally {
+                        cursor.close();
+                    }
+                } while (rows == PAGE_SIZE);
+                db.setTransactionSuccessful();
+            }
+            finally {
+                db.endTransaction();
+            }
+
+            writer.close();
+            if (!temp.renameTo(file))
+                throw new IOException("Can't replace " + file);
+            written = true;
+            return writer.getRowCount();
+        }
+        finally {
+            // don't leave half a snapshot behind
+            if (!written) {
+                try {
+                    writer.close();
+                }
+                catch (IOException e) {
+                    // the backup already failed
+                }
+                temp.delete();
+            }
+        }
+    }
+
+    private static void writeRow(TripSnapshotWriter writer, Cursor cursor)
+            throws IOException {
+        for (int i = 0; i < COLUMNS.length; ++i) {
+            if (TYPES[i] == TripSnapshot.Type.INTEGER)
+                writer.setLong(i, cursor.getLong(i));
+            else
+                writer.setText(i, cursor.getString(i));
+        }
+        writer.endRow();
+    }
+
+    // replaces every trip with the ones in file; returns how many. Call
+    // within a transaction, which the caller rolls back if this throws.
+    // Throws IOException before changing anything if the file isn't an
+    // intact snapshot
+    static long restore(SQLiteDatabase db, File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            TripSnapshotReader reader = new TripSnapshotReader(channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+
+            // the snapshot's columns that the trips table has; any others,
+            // e.g. from a later version, are skipped
+            int[] snapshotColumns = new int[COLUMNS.length];
+            StringBuilder sql = new StringBuilder("INSERT INTO ")
+                    .append(Trip.TABLE_NAME).append('(')
+                    .append(Trip.COLUMN_MODIFIED).append(',')
+                    .append(Trip.COLUMN_DIRTY);
+            int bound = 0;
+            for (int i = 0; i < COLUMNS.length; ++i) {
+                int column = reader.findColumn(COLUMNS[i]);
+                if (column >= 0 && reader.getColumnType(column) == TYPES[i]) {
+                    snapshotColumns[bound++] = column;
+                    sql.append(',').append(COLUMNS[i]);
+                }
+            }
+            sql.append(") VALUES (?,1");
+            for (int i = 0; i < bound; ++i)
+                sql.append(",?");
+            sql.append(')');
+
+            db.delete(Trip.TABLE_NAME, null, null);
+            SQLiteStatement insert = db.compileStatement(sql.toString());
+            try {
+                long modified = System.currentTimeMillis();
+                long rows = 0;
+                while (reader.nextBlock()) {
+                    for (int row = 0; row < reader.getBlockRows(); ++row) {
+                        insert.clearBindings();
+                        insert.bindLong(1, modified);
+                        for (int i = 0; i < bound; ++i)
+                            bind(insert, i + 2, reader, row, snapshotColumns[i]);
+                        insert.executeInsert();
+                        ++rows;
+                    }
+                }
+                return rows;
+            }
+            finally {
+                insert.close();
+            }
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    private static void bind(SQLiteStatement insert, int index,
+                             TripSnapshotReader reader, int row, int column) {
+        if (reader.getColumnType(column) == TripSnapshot.Type.INTEGER) {
+            insert.bindLong(index, reader.getLong(row, column));
+        }
+        else {
+            String text = reader.getText(row, column);
+            if (text != null)
+                insert.bindString(index, text);
+            else
+                insert.bindNull(index);
+        }
+    }
+}
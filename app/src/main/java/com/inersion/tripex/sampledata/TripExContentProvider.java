@@ -1,20 +1,61 @@
 package com.inersion.tripex.sampledata;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.Process;
+import android.util.Log;
 
+import com.inersion.tripex.BuildConfig;
 import com.inersion.tripex.R;
+import com.inersion.tripex.sampledata.DatabaseDescription.Backup;
+import com.inersion.tripex.sampledata.DatabaseDescription.Batch;
+import com.inersion.tripex.sampledata.DatabaseDescription.Budget;
+import com.inersion.tripex.sampledata.DatabaseDescription.Diagnostics;
+import com.inersion.tripex.sampledata.DatabaseDescription.Draft;
+import com.inersion.tripex.sampledata.DatabaseDescription.Stats;
+import com.inersion.tripex.sampledata.DatabaseDescription.Summary;
+import com.inersion.tripex.sampledata.DatabaseDescription.Sync;
 import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
 public class TripExContentProvider extends ContentProvider {
+    private static final String TAG = "TripExContentProvider";
+
     // used to access the database
     private TripExDatabaseHelper dbHelper;
 
+    // sends change notifications, holding them while batch scopes are open
+    private NotificationBatch notifications;
+
+    // keeps the home-screen widget's summary row up to date
+    private TripSummary summary;
+
+    // keeps the budgets' spending current and sends their alerts
+    private BudgetTracker budgets;
+
+    // marks local writes for syncing and applies the server's changes
+    private TripSync sync;
+
+    // ANALYZE, integrity checks and the like, run by
+    // TripExMaintenanceService while the device is idle
+    private DatabaseMaintenance maintenance;
+
     // UriMatcher helps ContentProvider determine operation to perform
     private static final UriMatcher uriMatcher =
             new UriMatcher(UriMatcher.NO_MATCH);
@@ -22,6 +63,29 @@ public class TripExContentProvider extends ContentProvider {
     // constants used with UriMatcher to determine operation to perform
     private static final int ONE_TRIP = 1; // manipulate one trip
     private static final int TRIPS = 2; // manipulate trips table
+    private static final int STATS = 3; // read or reset latency statistics
+    private static final int PLANS = 4; // read captured query plans
+    private static final int SLOW_QUERIES = 5; // read or clear slow-query log
+    private static final int ONE_DRAFT = 6; // read or discard one trip's draft
+    private static final int DRAFTS = 7; // save a draft
+    private static final int TRIP_SECTIONS = 8; // count trips per section
+    private static final int BATCHES = 9; // open a batch scope
+    private static final int ONE_BATCH = 10; // close a batch scope
+    private static final int SUMMARY = 11; // read the widget's summary
+    private static final int BUDGETS = 12; // read or add budgets
+    private static final int ONE_BUDGET = 13; // read, change or remove one budget
+
+    // names of the routes above, indexed by their UriMatcher codes
+    private static final String[] ROUTE_NAMES = {"-", "ONE_TRIP", "TRIPS",
+            "STATS", "PLANS", "SLOW_QUERIES", "ONE_DRAFT", "DRAFTS",
+            "TRIP_SECTIONS", "BATCHES", "ONE_BATCH", "SUMMARY", "BUDGETS",
+            "ONE_BUDGET"};
+
+    // latency histograms and row counters for each route and operation
+    private final ProviderStats stats = new ProviderStats(ROUTE_NAMES);
+
+    // query plans and slow-query log, recorded only while enabled
+    private final QueryDiagnostics diagnostics = new QueryDiagnostics();
 
     // static block to configure this ContentProvider's UriMatcher
     static {
@@ -32,16 +96,101 @@ public class TripExContentProvider extends ContentProvider {
         // Uri for Trips table
         uriMatcher.addURI(DatabaseDescription.AUTHORITY,
                 Trip.TABLE_NAME, TRIPS);
+
+        // Uri for the number of trips in each list section
+        uriMatcher.addURI(DatabaseDescription.AUTHORITY,
+                Trip.TABLE_NAME + "/sections", TRIP_SECTIONS);
+
+        // Uri for the draft of the trip with the specified id (#)
+        uriMatcher.addURI(DatabaseDescription.AUTHORITY,
+                Draft.TABLE_NAME + "/#", ONE_DRAFT);
+
+        // Uri for Drafts table
+        uriMatcher.addURI(DatabaseDescription.AUTHORITY,
+                Draft.TABLE_NAME, DRAFTS);
+
+        // Uri for the debug statistics
+        uriMatcher.addURI(DatabaseDescription.AUTHORITY,
+                Stats.PATH, STATS);
+
+        // Uris for the query diagnostics
+        uriMatcher.addURI(DatabaseDescription.AUTHORITY,
+                Diagnostics.PATH + "/plans", PLANS);
+        uriMatcher.addURI(DatabaseDescription.AUTHORITY,
+                Diagnostics.PATH + "/slow_queries", SLOW_QUERIES);
+
+        // Uris for opening a batch scope and for closing the one with the
+        // specified id (#)
+        uriMatcher.addURI(DatabaseDescription.AUTHORITY,
+                Batch.PATH, BATCHES);
+        uriMatcher.addURI(DatabaseDescription.AUTHORITY,
+                Batch.PATH + "/#", ONE_BATCH);
+
+        // Uri for the summary row shown by the home-screen widget
+        uriMatcher.addURI(DatabaseDescription.AUTHORITY,
+                Summary.TABLE_NAME, SUMMARY);
+
+        // Uris for the budgets table and the budget with the specified id (#)
+        uriMatcher.addURI(DatabaseDescription.AUTHORITY,
+                Budget.TABLE_NAME, BUDGETS);
+        uriMatcher.addURI(DatabaseDescription.AUTHORITY,
+                Budget.TABLE_NAME + "/#", ONE_BUDGET);
     }
 
     // called when the TripExContentProvider is created
     @Override
     public boolean onCreate() {
-        // create the TripExDatabaseHelper
+        StartupTrace.mark(StartupTrace.PROVIDER_CREATED);
+
+        // create the TripExDatabaseHelper; this doesn't open the database
         dbHelper = new TripExDatabaseHelper(getContext());
+        notifications = new NotificationBatch(getContext().getContentResolver());
+        summary = new TripSummary(getContext(), dbHelper);
+        budgets = new BudgetTracker(getContext());
+        sync = new TripSync(getContext(), dbHelper, this);
+        maintenance = new DatabaseMaintenance(getContext(), dbHelper);
+
+        // onCreate runs on the main thread during launch, so open the
+        // database (creating or upgrading it if needed) in the background;
+        // the list's first query then finds it open, or waits for it there
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                warmUpDatabase();
+                TripExMaintenanceService.schedule(getContext());
+                sync.requestSync(); // pick up other devices' changes
+            }
+        }, "TripExDatabaseWarmUp").start();
+
         return true; // ContentProvider successfully created
     }
 
+    // opens the database and reads the trips table's pages into
+    // SQLite's page cache ahead of the list's first query
+    private void warmUpDatabase() {
+        StartupTrace.beginSection("TripEx.warmUpDatabase");
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            Cursor cursor = db.rawQuery(
+                    "SELECT count(*) FROM " + Trip.TABLE_NAME, null);
+            try {
+                cursor.moveToFirst();
+            }
+            finally {
+                cursor.close();
+            }
+            StartupTrace.mark(StartupTrace.DATABASE_OPENED);
+        }
+        catch (SQLException e) {
+            // the first real query will open the database and report this
+            Log.w(TAG, "Couldn't open the database ahead of time", e);
+        }
+        finally {
+            StartupTrace.endSection();
+        }
+    }
+
     // required method: Not used in this app, so we return null
     @Override
     public String getType(Uri uri) {
@@ -53,78 +202,299 @@ public class TripExContentProvider extends ContentProvider {
     public Cursor query(Uri uri, String[] projection,
                         String selection, String[] selectionArgs, String sortOrder) {
 
+        long start = ProviderStats.start();
+        int route = uriMatcher.match(uri);
+
         // create SQLiteQueryBuilder for querying trips table
         SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
         queryBuilder.setTables(Trip.TABLE_NAME);
+        String groupBy = null;
 
-        switch (uriMatcher.match(uri)) {
+        switch (route) {
             case ONE_TRIP: // trip with specified id will be selected
                 queryBuilder.appendWhere(
                         Trip._ID + "=" + uri.getLastPathSegment());
                 break;
             case TRIPS: // all trips will be selected
                 break;
+            case TRIP_SECTIONS: // one row per section of the trip list
+                groupBy = Trip.COLUMN_SECTION;
+                break;
+            case ONE_DRAFT: // draft of the trip with specified id
+                queryBuilder.setTables(Draft.TABLE_NAME);
+                queryBuilder.appendWhere(
+                        Draft.COLUMN_TRIP_ID + "=" + uri.getLastPathSegment());
+                break;
+            case BUDGETS: // all budgets will be selected
+                queryBuilder.setTables(Budget.TABLE_NAME);
+                break;
+            case ONE_BUDGET: // budget with specified id will be selected
+                queryBuilder.setTables(Budget.TABLE_NAME);
+                queryBuilder.appendWhere(
+                        Budget._ID + "=" + uri.getLastPathSegment());
+                break;
+            case SUMMARY: // the widget's summary, recomputed if out of date
+                Cursor summaryCursor = summary.query();
+                summaryCursor.setNotificationUri(
+                        getContext().getContentResolver(), uri);
+                stats.record(route, ProviderStats.QUERY, start,
+                        summaryCursor.getCount());
+                return summaryCursor;
+            case PLANS: // query plans captured in diagnostics mode
+                if (BuildConfig.DEBUG)
+                    return diagnostics.plansCursor();
+                // fall through
+            case SLOW_QUERIES: // slow-query log recorded in diagnostics mode
+                if (BuildConfig.DEBUG)
+                    return diagnostics.slowQueriesCursor();
+                // fall through
+            case STATS: // statistics are only exposed in debug builds
+                if (BuildConfig.DEBUG)
+                    return stats.toCursor();
+                // fall through
             default:
                 throw new UnsupportedOperationException(
                         getContext().getString(R.string.invalid_query_uri) + uri);
         }
 
         // execute the query to select one or all trips
-        Cursor cursor = queryBuilder.query(dbHelper.getReadableDatabase(),
-                projection, selection, selectionArgs, null, null, sortOrder);
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        Cursor cursor = queryBuilder.query(db,
+                projection, selection, selectionArgs, groupBy, null, sortOrder);
 
         // configure to watch for content changes
         cursor.setNotificationUri(getContext().getContentResolver(), uri);
+
+        // getCount() fills the first CursorWindow, so the recorded time
+        // includes actually running the query, not just preparing it
+        int rows = cursor.getCount();
+        stats.record(route, ProviderStats.QUERY, start, rows);
+
+        if (diagnostics.isEnabled()) {
+            String sql = queryBuilder.buildQuery(projection, selection,
+                    groupBy, null, sortOrder, null);
+            diagnostics.onQuery(db, ROUTE_NAMES[route], sql, selectionArgs,
+                    ProviderStats.start() - start, rows);
+        }
+
         return cursor;
     }
 
     // insert a new trip in the database
     @Override
     public Uri insert(Uri uri, ContentValues values) {
+        long start = ProviderStats.start();
+        int route = uriMatcher.match(uri);
         Uri newTripUri = null;
+        SQLiteDatabase db;
 
-        switch (uriMatcher.match(uri)) {
+        switch (route) {
             case TRIPS:
-                // insert the new trip--success yields new trip's row id
-                long rowId = dbHelper.getWritableDatabase().insert(
-                        Trip.TABLE_NAME, null, values);
+                // a trip added here rather than by a sync is sent next sync
+                boolean fromSync = isSyncAdapter(uri);
+                if (!fromSync)
+                    values = TripSync.markInserted(values);
+
+                // insert the new trip--success yields new trip's row id;
+                // its budgets are charged in the same transaction
+                db = dbHelper.getWritableDatabase();
+                long rowId;
+                boolean budgetsChanged = false;
+                db.beginTransaction();
+                try {
+                    rowId = db.insert(Trip.TABLE_NAME, null, values);
+                    if (rowId > 0)
+                        budgetsChanged = budgets.onTripChanged(db, rowId, null,
+                                BudgetTracker.spendOf(values));
+                    db.setTransactionSuccessful();
+                }
+                finally {
+                    db.endTransaction();
+                }
+                budgetsWritten(db, budgetsChanged);
 
                 // if the trip was inserted, create an appropriate Uri;
                 // otherwise, throw an exception
                 if (rowId > 0) { // SQLite row IDs start at 1
                     newTripUri = Trip.buildTripUri(rowId);
 
-                    // notify observers that the database changed
-                    getContext().getContentResolver().notifyChange(uri, null);
+                    if (TripSummary.isRelevant(
+                            values.getAsString(Trip.COLUMN_DEPART)))
+                        summary.invalidate();
+
+                    // notify observers that the database changed, naming
+                    // the new trip so they can pick up just that one
+                    notifications.notifyChange(newTripUri);
+                    if (!fromSync)
+                        sync.requestSync();
                 }
                 else
                     throw new SQLException(
                             getContext().getString(R.string.insert_failed) + uri);
                 break;
+            case DRAFTS:
+                // a trip has at most one draft, so replace any existing one;
+                // observers aren't notified since nobody watches drafts
+                Long tripId = (values != null) ?
+                        values.getAsLong(Draft.COLUMN_TRIP_ID) : null;
+                if (tripId == null)
+                    throw new IllegalArgumentException(
+                            "A draft needs " + Draft.COLUMN_TRIP_ID);
+                if (dbHelper.getWritableDatabase().insertWithOnConflict(
+                        Draft.TABLE_NAME, null, values,
+                        SQLiteDatabase.CONFLICT_REPLACE) < 0)
+                    throw new SQLException(
+                            getContext().getString(R.string.insert_failed) + uri);
+                newTripUri = Draft.buildDraftUri(tripId);
+                break;
+            case BUDGETS:
+                // add a budget, starting from what it already covers
+                db = dbHelper.getWritableDatabase();
+                long budgetId;
+                db.beginTransaction();
+                try {
+                    budgetId = budgets.insertBudget(db, values);
+                    db.setTransactionSuccessful();
+                }
+                finally {
+                    db.endTransaction();
+                }
+                if (budgetId <= 0)
+                    throw new SQLException(
+                            getContext().getString(R.string.insert_failed) + uri);
+                budgetsWritten(db, true);
+                newTripUri = Budget.buildBudgetUri(budgetId);
+                break;
+            case BATCHES:
+                // open a batch scope; deleting the returned Uri closes it
+                newTripUri = Batch.buildBatchUri(notifications.open());
+                break;
             default:
                 throw new UnsupportedOperationException(
                         getContext().getString(R.string.invalid_insert_uri) + uri);
         }
 
+        stats.record(route, ProviderStats.INSERT, start, 1);
         return newTripUri;
     }
 
+    // insert several trips in a single transaction
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        long start = ProviderStats.start();
+        int route = uriMatcher.match(uri);
+        int numberOfRowsInserted = 0;
+        boolean budgetsChanged = false;
+
+        switch (route) {
+            case TRIPS:
+                boolean fromSync = isSyncAdapter(uri);
+                SQLiteDatabase db = dbHelper.getWritableDatabase();
+                db.beginTransaction();
+                try {
+                    boolean summaryChanged = false;
+                    for (ContentValues tripValues : values) {
+                        if (!fromSync)
+                            tripValues = TripSync.markInserted(tripValues);
+                        long rowId = db.insert(Trip.TABLE_NAME, null, tripValues);
+                        if (rowId > 0) {
+                            ++numberOfRowsInserted;
+                            summaryChanged |= TripSummary.isRelevant(
+                                    tripValues.getAsString(Trip.COLUMN_DEPART));
+                            budgetsChanged |= budgets.onTripChanged(db, rowId,
+                                    null, BudgetTracker.spendOf(tripValues));
+                        }
+                    }
+                    if (summaryChanged)
+                        summary.invalidate();
+                    db.setTransactionSuccessful();
+                }
+                finally {
+                    db.endTransaction();
+                }
+                budgetsWritten(db, budgetsChanged);
+                if (numberOfRowsInserted != 0 && !fromSync)
+                    sync.requestSync();
+                break;
+            default:
+                throw new UnsupportedOperationException(
+                        getContext().getString(R.string.invalid_insert_uri) + uri);
+        }
+
+        // notify observers once for the whole batch
+        if (numberOfRowsInserted != 0) {
+            notifications.notifyChange(uri);
+        }
+
+        stats.record(route, ProviderStats.BULK_INSERT, start, numberOfRowsInserted);
+        return numberOfRowsInserted;
+    }
+
     // update an existing trip in the database
     @Override
     public int update(Uri uri, ContentValues values,
                       String selection, String[] selectionArgs) {
+        long start = ProviderStats.start();
+        int route = uriMatcher.match(uri);
         int numberOfRowsUpdated; // 1 if update successful; 0 otherwise
 
-        switch (uriMatcher.match(uri)) {
+        switch (route) {
             case ONE_TRIP:
                 // get from the uri the id of trip to update
                 String id = uri.getLastPathSegment();
 
-                // update the trip
-                numberOfRowsUpdated = dbHelper.getWritableDatabase().update(
-                        DatabaseDescription.Trip.TABLE_NAME, values, Trip._ID + "=" + id,
-                        selectionArgs);
+                // the summary is affected if the trip's old or new
+                // departure date is
+                boolean summaryChanged = TripSummary.isRelevant(
+                        values.getAsString(Trip.COLUMN_DEPART)) ||
+                        TripSummary.isRelevant(readDepart(id));
+
+                // an edit made here rather than by a sync is sent next sync
+                boolean fromSync = isSyncAdapter(uri);
+                if (!fromSync)
+                    values = TripSync.markUpdated(values);
+
+                // update the trip, moving its spending between budgets in
+                // the same transaction
+                SQLiteDatabase db = dbHelper.getWritableDatabase();
+                boolean budgetsChanged = false;
+                db.beginTransaction();
+                try {
+                    BudgetTracker.Spend before =
+                            BudgetTracker.readSpend(db, Long.parseLong(id));
+                    numberOfRowsUpdated = db.update(
+                            DatabaseDescription.Trip.TABLE_NAME, values, Trip._ID + "=" + id,
+                            selectionArgs);
+                    if (numberOfRowsUpdated != 0)
+                        budgetsChanged = budgets.onTripChanged(db,
+                                Long.parseLong(id), before,
+                                BudgetTracker.readSpend(db, Long.parseLong(id)));
+                    db.setTransactionSuccessful();
+                }
+                finally {
+                    db.endTransaction();
+                }
+                budgetsWritten(db, budgetsChanged);
+
+                if (numberOfRowsUpdated != 0 && summaryChanged)
+                    summary.invalidate();
+                if (numberOfRowsUpdated != 0 && !fromSync)
+                    sync.requestSync();
                 break;
+            case ONE_BUDGET: // change a budget's limit or alert percentage
+                SQLiteDatabase budgetDb = dbHelper.getWritableDatabase();
+                budgetDb.beginTransaction();
+                try {
+                    numberOfRowsUpdated = budgets.updateBudget(budgetDb,
+                            Long.parseLong(uri.getLastPathSegment()), values);
+                    budgetDb.setTransactionSuccessful();
+                }
+                finally {
+                    budgetDb.endTransaction();
+                }
+                budgetsWritten(budgetDb, numberOfRowsUpdated != 0);
+                stats.record(route, ProviderStats.UPDATE, start, numberOfRowsUpdated);
+                return numberOfRowsUpdated;
             default:
                 throw new UnsupportedOperationException(
                         getContext().getString(R.string.invalid_update_uri) + uri);
@@ -132,26 +502,126 @@ public class TripExContentProvider extends ContentProvider {
 
         // if changes were made, notify observers that the database changed
         if (numberOfRowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifications.notifyChange(uri);
         }
 
+        stats.record(route, ProviderStats.UPDATE, start, numberOfRowsUpdated);
         return numberOfRowsUpdated;
     }
 
     // delete an existing trip from the database
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long start = ProviderStats.start();
+        int route = uriMatcher.match(uri);
         int numberOfRowsDeleted;
 
-        switch (uriMatcher.match(uri)) {
+        switch (route) {
             case ONE_TRIP:
                 // get from the uri the id of trip to update
                 String id = uri.getLastPathSegment();
+                boolean summaryChanged = TripSummary.isRelevant(readDepart(id));
 
-                // delete the trip
-                numberOfRowsDeleted = dbHelper.getWritableDatabase().delete(
-                        DatabaseDescription.Trip.TABLE_NAME, Trip._ID + "=" + id, selectionArgs);
+                // delete the trip with its budgets and draft, taking its
+                // spending out of its periods' budgets in the same
+                // transaction; a deletion made here rather than by a sync
+                // is sent next sync
+                boolean fromSync = isSyncAdapter(uri);
+                SQLiteDatabase db = dbHelper.getWritableDatabase();
+                boolean budgetsChanged = false;
+                db.beginTransaction();
+                try {
+                    if (!fromSync)
+                        sync.recordDeletions(db, Trip._ID + "=" + id, null);
+                    BudgetTracker.Spend before =
+                            BudgetTracker.readSpend(db, Long.parseLong(id));
+                    numberOfRowsDeleted = db.delete(
+                            DatabaseDescription.Trip.TABLE_NAME, Trip._ID + "=" + id, selectionArgs);
+                    if (numberOfRowsDeleted != 0) {
+                        budgetsChanged = budgets.onTripChanged(db, 0, before, null);
+                        budgetsChanged |= BudgetTracker.deleteTripBudgets(db,
+                                Long.parseLong(id));
+                        db.delete(Draft.TABLE_NAME,
+                                Draft.COLUMN_TRIP_ID + "=" + id, null);
+                    }
+                    db.setTransactionSuccessful();
+                }
+                finally {
+                    db.endTransaction();
+                }
+                budgetsWritten(db, budgetsChanged);
+
+                if (numberOfRowsDeleted != 0 && summaryChanged)
+                    summary.invalidate();
+                if (numberOfRowsDeleted != 0 && !fromSync)
+                    sync.requestSync();
                 break;
+            case TRIPS:
+                // delete the trips matching the selection in one statement,
+                // e.g. the generated trips of a benchmark run; their
+                // spending leaves their budgets, and their budgets and
+                // drafts go, in the same transaction
+                SQLiteDatabase tripsDb = dbHelper.getWritableDatabase();
+                boolean tripBudgetsChanged = false;
+                tripsDb.beginTransaction();
+                try {
+                    if (!isSyncAdapter(uri))
+                        sync.recordDeletions(tripsDb, selection, selectionArgs);
+                    List<BudgetTracker.Spend> spends = BudgetTracker.readSpends(
+                            tripsDb, selection, selectionArgs);
+                    numberOfRowsDeleted = tripsDb.delete(
+                            Trip.TABLE_NAME, selection, selectionArgs);
+                    for (BudgetTracker.Spend spend : spends)
+                        tripBudgetsChanged |= budgets.onTripChanged(
+                                tripsDb, 0, spend, null);
+                    tripBudgetsChanged |=
+                            BudgetTracker.deleteOrphanedTripBudgets(tripsDb);
+                    deleteOrphanedDrafts(tripsDb);
+                    tripsDb.setTransactionSuccessful();
+                }
+                finally {
+                    tripsDb.endTransaction();
+                }
+                budgetsWritten(tripsDb, tripBudgetsChanged);
+
+                // which trips went is unknown, so assume the summary changed
+                if (numberOfRowsDeleted != 0)
+                    summary.invalidate();
+                if (numberOfRowsDeleted != 0 && !isSyncAdapter(uri))
+                    sync.requestSync();
+                break;
+            case ONE_DRAFT:
+                // discard the draft; nobody watches drafts, so there's
+                // no one to notify
+                numberOfRowsDeleted = dbHelper.getWritableDatabase().delete(
+                        Draft.TABLE_NAME, Draft.COLUMN_TRIP_ID + "=" +
+                                uri.getLastPathSegment(), selectionArgs);
+                stats.record(route, ProviderStats.DELETE, start, numberOfRowsDeleted);
+                return numberOfRowsDeleted;
+            case ONE_BUDGET: // remove a budget
+                SQLiteDatabase budgetDb = dbHelper.getWritableDatabase();
+                numberOfRowsDeleted = budgetDb.delete(Budget.TABLE_NAME,
+                        Budget._ID + "=" + uri.getLastPathSegment(), selectionArgs);
+                budgetsWritten(budgetDb, numberOfRowsDeleted != 0);
+                stats.record(route, ProviderStats.DELETE, start, numberOfRowsDeleted);
+                return numberOfRowsDeleted;
+            case ONE_BATCH: // close the batch scope, sending what it held
+                numberOfRowsDeleted = notifications.close(
+                        Long.parseLong(uri.getLastPathSegment())) ? 1 : 0;
+                stats.record(route, ProviderStats.DELETE, start, numberOfRowsDeleted);
+                return numberOfRowsDeleted;
+            case SLOW_QUERIES: // deleting the slow log also clears the plans
+                if (BuildConfig.DEBUG) {
+                    diagnostics.clear();
+                    return 0;
+                }
+                // fall through
+            case STATS: // deleting the statistics resets them
+                if (BuildConfig.DEBUG) {
+                    stats.reset();
+                    return 0;
+                }
+                // fall through
             default:
                 throw new UnsupportedOperationException(
                         getContext().getString(R.string.invalid_delete_uri) + uri);
@@ -159,9 +629,206 @@ public class TripExContentProvider extends ContentProvider {
 
         // notify observers that the database changed
         if (numberOfRowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifications.notifyChange(uri);
         }
 
+        stats.record(route, ProviderStats.DELETE, start, numberOfRowsDeleted);
         return numberOfRowsDeleted;
     }
+
+    // after a write that may have changed the budgets: tells their
+    // observers, held like any other notification while a batch scope is
+    // open, and sends alerts for budgets that reached their threshold
+    // unless the write is part of a larger transaction, such as
+    // applyBatch's, which sends them once it ends
+    private void budgetsWritten(SQLiteDatabase db, boolean changed) {
+        if (changed)
+            notifications.notifyChange(Budget.CONTENT_URI);
+        if (!db.inTransaction())
+            budgets.sendAlerts();
+    }
+
+    // removes the drafts of trips that no longer exist, after a delete of
+    // many trips or a restore, so that a trip that later reuses an _id
+    // doesn't pick up another's draft. The new trip's draft stays
+    private static void deleteOrphanedDrafts(SQLiteDatabase db) {
+        db.delete(Draft.TABLE_NAME, Draft.COLUMN_TRIP_ID + "<>" +
+                Draft.NEW_TRIP_ID + " AND " + Draft.COLUMN_TRIP_ID +
+                " NOT IN (SELECT " + Trip._ID + " FROM " + Trip.TABLE_NAME +
+                ")", null);
+    }
+
+    // returns the departure date of the trip with the given id, or null
+    // if there is no such trip
+    private String readDepart(String id) {
+        Cursor cursor = dbHelper.getReadableDatabase().query(Trip.TABLE_NAME,
+                new String[] {Trip.COLUMN_DEPART}, Trip._ID + "=" + id,
+                null, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    // the database's housekeeping, for TripExMaintenanceService
+    DatabaseMaintenance getMaintenance() {
+        return maintenance;
+    }
+
+    // the trips' sync engine, for TripExSyncService
+    TripSync getSync() {
+        return sync;
+    }
+
+    // whether the write to uri applies the server's changes (see Sync)
+    private static boolean isSyncAdapter(Uri uri) {
+        return uri.getBooleanQueryParameter(Sync.CALLER_IS_SYNC_ADAPTER, false);
+    }
+
+    // runs work, which writes through this provider, in one transaction;
+    // like applyBatch, it holds observers' notifications and budget
+    // alerts until the transaction ends. Used by TripSync to apply a
+    // batch of the server's changes
+    void applyInTransaction(Runnable work) {
+        long batchId = notifications.open();
+        boolean committed = false;
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                work.run();
+                db.setTransactionSuccessful();
+            }
+            finally {
+                db.endTransaction();
+                budgets.sendAlerts();
+            }
+            committed = true;
+        }
+        finally {
+            notifications.close(batchId, committed);
+        }
+    }
+
+    // apply a batch of operations in a single transaction, so that either
+    // all of them take effect or none do; observers are notified once,
+    // after the transaction commits, rather than after every operation,
+    // and not at all if it's rolled back
+    @Override
+    public ContentProviderResult[] applyBatch(
+            ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        long batchId = notifications.open();
+        boolean committed = false;
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            ContentProviderResult[] results;
+            db.beginTransaction();
+            try {
+                results = super.applyBatch(operations);
+                db.setTransactionSuccessful();
+            }
+            finally {
+                db.endTransaction();
+                budgets.sendAlerts();
+            }
+            committed = true;
+            return results;
+        }
+        finally {
+            notifications.close(batchId, committed);
+        }
+    }
+
+    // handles ContentResolver.call() requests that aren't tied to a Uri
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        // diagnostics, like the statistics, are only exposed in debug builds
+        if (BuildConfig.DEBUG && Diagnostics.METHOD_SET_ENABLED.equals(method)) {
+            long threshold = (extras != null) ?
+                    extras.getLong(Diagnostics.EXTRA_SLOW_QUERY_MILLIS) : 0;
+            diagnostics.setEnabled(Boolean.parseBoolean(arg), threshold);
+            return null;
+        }
+
+        if (Batch.METHOD_BEGIN.equals(method)) {
+            Bundle result = new Bundle();
+            result.putLong(Batch.EXTRA_BATCH_ID, notifications.open());
+            return result;
+        }
+
+        if (Batch.METHOD_END.equals(method)) {
+            if (arg == null)
+                throw new IllegalArgumentException("No batch id to end");
+            notifications.close(Long.parseLong(arg));
+            return null;
+        }
+
+        if (Backup.METHOD_BACKUP.equals(method)) {
+            if (arg == null)
+                throw new IllegalArgumentException("No file to back up to");
+            Bundle result = new Bundle();
+            try {
+                result.putLong(Backup.EXTRA_TRIP_COUNT, TripBackup.backup(
+                        dbHelper.getReadableDatabase(), new File(arg)));
+            }
+            catch (IOException e) {
+                throw new IllegalArgumentException("Can't back up to " + arg, e);
+            }
+            return result;
+        }
+
+        if (Backup.METHOD_RESTORE.equals(method)) {
+            if (arg == null)
+                throw new IllegalArgumentException("No file to restore from");
+            Bundle result = new Bundle();
+            result.putLong(Backup.EXTRA_TRIP_COUNT, restore(new File(arg)));
+            return result;
+        }
+
+        return super.call(method, arg, extras);
+    }
+
+    // replaces every trip with the ones backed up in file, in one
+    // transaction. The old trips are recorded as deleted and the restored
+    // ones as edited, so the next sync makes the server match; budgets
+    // and drafts of trips that are gone go with them, and the remaining
+    // budgets are recomputed
+    private long restore(File file) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long trips;
+        db.beginTransaction();
+        try {
+            sync.recordDeletions(db, null, null);
+            trips = TripBackup.restore(db, file);
+            TripSync.markRestored(db);
+            BudgetTracker.deleteOrphanedTripBudgets(db);
+            deleteOrphanedDrafts(db);
+            budgets.recomputeAll(db);
+            db.setTransactionSuccessful();
+        }
+        catch (IOException e) {
+            throw new IllegalArgumentException("Can't restore from " + file, e);
+        }
+        finally {
+            db.endTransaction();
+        }
+        budgetsWritten(db, true);
+
+        summary.invalidate();
+        notifications.notifyChange(Trip.CONTENT_URI);
+        sync.requestSync();
+        return trips;
+    }
+
+    // include the latency statistics and startup milestones in "adb shell
+    // dumpsys activity provider" output and therefore in bug reports
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        stats.dump(writer);
+        maintenance.dump(writer);
+        StartupTrace.dump(writer);
+    }
 }
@@ -7,7 +7,98 @@ import android.database.sqlite.SQLiteOpenHelper;
 
 class TripExDatabaseHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "TripEx.db";
-    private static final int DATABASE_VERSION = 17;
+    private static final int DATABASE_VERSION = 21;
+
+    // SQL for creating the drafts table, added in version 18
+    private static final String CREATE_DRAFTS_TABLE =
+            "CREATE TABLE " + DatabaseDescription.Draft.TABLE_NAME + "(" +
+                    DatabaseDescription.Draft.COLUMN_TRIP_ID + " integer primary key, " +
+                    DatabaseDescription.Trip.COLUMN_NAME + " TEXT, " +
+                    DatabaseDescription.Trip.COLUMN_FROM + " TEXT, " +
+                    DatabaseDescription.Trip.COLUMN_TO + " TEXT, " +
+                    DatabaseDescription.Trip.COLUMN_DEPART + " TEXT, " +
+                    DatabaseDescription.Trip.COLUMN_RETURN + " TEXT, " +
+                    DatabaseDescription.Trip.COLUMN_AIRFARE + " TEXT, " +
+                    DatabaseDescription.Trip.COLUMN_HOTEL + " TEXT, " +
+                    DatabaseDescription.Trip.COLUMN_RENTAL + " TEXT, " +
+                    DatabaseDescription.Draft.COLUMN_UPDATED + " integer);";
+
+    // SQL for creating the single-row summary table, added in version 19
+    private static final String CREATE_SUMMARY_TABLE =
+            "CREATE TABLE " + DatabaseDescription.Summary.TABLE_NAME + "(" +
+                    DatabaseDescription.Summary._ID + " integer primary key, " +
+                    DatabaseDescription.Summary.COLUMN_COMPUTED_ON + " TEXT, " +
+                    DatabaseDescription.Summary.COLUMN_NEXT_NAME + " TEXT, " +
+                    DatabaseDescription.Summary.COLUMN_NEXT_DEPART + " TEXT, " +
+                    DatabaseDescription.Summary.COLUMN_YEAR + " integer, " +
+                    DatabaseDescription.Summary.COLUMN_YEAR_SPEND_CENTS + " integer);";
+
+    // SQL for indexing trips by departure date, added in version 19 so
+    // the summary finds the next trip and this year's trips without
+    // scanning the table
+    private static final String CREATE_DEPART_INDEX =
+            "CREATE INDEX trips_depart ON " +
+                    DatabaseDescription.Trip.TABLE_NAME + "(" +
+                    DatabaseDescription.Trip.COLUMN_DEPART + ");";
+
+    // SQL for creating the budgets table, added in version 20
+    private static final String CREATE_BUDGETS_TABLE =
+            "CREATE TABLE " + DatabaseDescription.Budget.TABLE_NAME + "(" +
+                    DatabaseDescription.Budget._ID + " integer primary key, " +
+                    DatabaseDescription.Budget.COLUMN_TRIP_ID + " integer, " +
+                    DatabaseDescription.Budget.COLUMN_PERIOD + " TEXT, " +
+                    DatabaseDescription.Budget.COLUMN_LIMIT_CENTS + " integer not null, " +
+                    DatabaseDescription.Budget.COLUMN_ALERT_PERCENT + " integer not null, " +
+                    DatabaseDescription.Budget.COLUMN_SPENT_CENTS + " integer not null);";
+
+    // SQL for indexing budgets by what they cover, added in version 20 so
+    // that a trip write finds the budgets it changes without a scan
+    private static final String CREATE_BUDGET_TRIP_INDEX =
+            "CREATE INDEX budgets_trip ON " +
+                    DatabaseDescription.Budget.TABLE_NAME + "(" +
+                    DatabaseDescription.Budget.COLUMN_TRIP_ID + ");";
+    private static final String CREATE_BUDGET_PERIOD_INDEX =
+            "CREATE INDEX budgets_period ON " +
+                    DatabaseDescription.Budget.TABLE_NAME + "(" +
+                    DatabaseDescription.Budget.COLUMN_PERIOD + ");";
+
+    // SQL for the trips table's sync columns, added in version 21
+    private static final String[] ADD_SYNC_COLUMNS = {
+            "ALTER TABLE " + DatabaseDescription.Trip.TABLE_NAME + " ADD COLUMN " +
+                    DatabaseDescription.Trip.COLUMN_SYNC_ID + " TEXT;",
+            "ALTER TABLE " + DatabaseDescription.Trip.TABLE_NAME + " ADD COLUMN " +
+                    DatabaseDescription.Trip.COLUMN_REVISION + " integer not null default 0;",
+            "ALTER TABLE " + DatabaseDescription.Trip.TABLE_NAME + " ADD COLUMN " +
+                    DatabaseDescription.Trip.COLUMN_MODIFIED + " integer not null default 0;",
+            "ALTER TABLE " + DatabaseDescription.Trip.TABLE_NAME + " ADD COLUMN " +
+                    DatabaseDescription.Trip.COLUMN_DIRTY + " integer not null default 0;"};
+
+    // SQL giving the trips that existed before version 21 a sync id and
+    // marking them modified now and dirty, so the first sync sends them
+    private static final String MARK_TRIPS_FOR_SYNC =
+            "UPDATE " + DatabaseDescription.Trip.TABLE_NAME + " SET " +
+                    DatabaseDescription.Trip.COLUMN_SYNC_ID + "=lower(hex(randomblob(16))), " +
+                    DatabaseDescription.Trip.COLUMN_MODIFIED + "=strftime('%s','now')*1000, " +
+                    DatabaseDescription.Trip.COLUMN_DIRTY + "=1;";
+
+    // SQL for looking trips up by sync id, and for finding the dirty ones
+    // without a scan: the partial index only holds the trips not yet sent.
+    // Both added in version 21
+    private static final String CREATE_SYNC_ID_INDEX =
+            "CREATE UNIQUE INDEX trips_sync_id ON " +
+                    DatabaseDescription.Trip.TABLE_NAME + "(" +
+                    DatabaseDescription.Trip.COLUMN_SYNC_ID + ");";
+    private static final String CREATE_DIRTY_INDEX =
+            "CREATE INDEX trips_dirty ON " +
+                    DatabaseDescription.Trip.TABLE_NAME + "(" +
+                    DatabaseDescription.Trip._ID + ") WHERE " +
+                    DatabaseDescription.Trip.COLUMN_DIRTY + "=1;";
+
+    // SQL for creating the deletions table, added in version 21
+    private static final String CREATE_DELETIONS_TABLE =
+            "CREATE TABLE " + DatabaseDescription.Sync.DELETIONS_TABLE + "(" +
+                    DatabaseDescription.Sync.COLUMN_SYNC_ID + " TEXT primary key, " +
+                    DatabaseDescription.Sync.COLUMN_DELETED + " integer not null);";
 
     // constructor
     public TripExDatabaseHelper(Context context) {
@@ -28,12 +119,48 @@ class TripExDatabaseHelper extends SQLiteOpenHelper {
                         DatabaseDescription.Trip.COLUMN_RETURN + " TEXT, " +
                         DatabaseDescription.Trip.COLUMN_AIRFARE + " TEXT, " +
                         DatabaseDescription.Trip.COLUMN_HOTEL + " TEXT, " +
-                        DatabaseDescription.Trip.COLUMN_RENTAL + " TEXT);";
+                        DatabaseDescription.Trip.COLUMN_RENTAL + " TEXT, " +
+                        DatabaseDescription.Trip.COLUMN_SYNC_ID + " TEXT, " +
+                        DatabaseDescription.Trip.COLUMN_REVISION + " integer not null default 0, " +
+                        DatabaseDescription.Trip.COLUMN_MODIFIED + " integer not null default 0, " +
+                        DatabaseDescription.Trip.COLUMN_DIRTY + " integer not null default 0);";
         db.execSQL(CREATE_TRIPS_TABLE); // create the trips table
+        db.execSQL(CREATE_DRAFTS_TABLE); // create the drafts table
+        db.execSQL(CREATE_SUMMARY_TABLE); // create the summary table
+        db.execSQL(CREATE_DEPART_INDEX);
+        createBudgets(db);
+        createSyncTables(db);
     }
 
-    // normally defines how to upgrade the database when the schema changes
+    // upgrades an existing database one schema change at a time
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion,
-                          int newVersion) { }
+                          int newVersion) {
+        if (oldVersion < 18)
+            db.execSQL(CREATE_DRAFTS_TABLE);
+        if (oldVersion < 19) {
+            db.execSQL(CREATE_SUMMARY_TABLE);
+            db.execSQL(CREATE_DEPART_INDEX);
+        }
+        if (oldVersion < 20)
+            createBudgets(db);
+        if (oldVersion < 21) {
+            for (String addColumn : ADD_SYNC_COLUMNS)
+                db.execSQL(addColumn);
+            db.execSQL(MARK_TRIPS_FOR_SYNC);
+            createSyncTables(db);
+        }
+    }
+
+    private static void createBudgets(SQLiteDatabase db) {
+        db.execSQL(CREATE_BUDGETS_TABLE);
+        db.execSQL(CREATE_BUDGET_TRIP_INDEX);
+        db.execSQL(CREATE_BUDGET_PERIOD_INDEX);
+    }
+
+    private static void createSyncTables(SQLiteDatabase db) {
+        db.execSQL(CREATE_SYNC_ID_INDEX);
+        db.execSQL(CREATE_DIRTY_INDEX);
+        db.execSQL(CREATE_DELETIONS_TABLE);
+    }
 }
@@ -0,0 +1,158 @@
+// TripExMaintenanceService.java
+// JobService that runs DatabaseMaintenance while the device is idle and
+// charging, one time slice per run, and gives way at once when the app
+// comes to the foreground
+package com.inersion.tripex.sampledata;
+
+import android.app.AlarmManager;
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.ContentProviderClient;
+import android.content.Context;
+import android.database.SQLException;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.OperationCanceledException;
+import android.os.Process;
+import android.util.Log;
+
+public class TripExMaintenanceService extends JobService {
+    private static final String TAG = "TripExMaintenance";
+
+    private static final int JOB_ID = 1;
+
+    // a cycle starts at most once a day
+    private static final long CYCLE_INTERVAL_MILLIS = AlarmManager.INTERVAL_DAY;
+
+    // the most one run does before leaving the rest of the cycle to the
+    // next idle window
+    private static final long SLICE_MILLIS = 3000;
+
+    // only touched on the main thread
+    private static boolean appInForeground = false;
+    private static CancellationSignal runningSlice; // null unless running
+
+    private final Handler handler = new Handler();
+
+    // schedules the next cycle if none is pending, e.g. on first launch
+    public static void schedule(Context context) {
+        JobScheduler scheduler = (JobScheduler)
+                context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID)
+                return;
+        }
+        scheduleCycle(context, 0);
+    }
+
+    // the job must wait for an idle, charging device and at least
+    // delayMillis; it persists across reboots
+    private static void scheduleCycle(Context context, long delayMillis) {
+        JobScheduler scheduler = (JobScheduler)
+                context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        scheduler.schedule(new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, TripExMaintenanceService.class))
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .setMinimumLatency(delayMillis)
+                .setPersisted(true)
+                .build());
+    }
+
+    // called by MainActivity as it starts and stops; while the app is in
+    // the foreground no slice runs, and a running one is cancelled
+    public static void setAppInForeground(boolean inForeground) {
+        appInForeground = inForeground;
+        if (inForeground && runningSlice != null)
+            runningSlice.cancel();
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        if (appInForeground) {
+            // try again in the next idle window
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    jobFinished(params, true);
+                }
+            });
+            return true;
+        }
+
+        final CancellationSignal signal = new CancellationSignal();
+        runningSlice = signal;
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                final boolean done = runSlice(signal);
+
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        sliceFinished(params, signal, done);
+                    }
+                });
+            }
+        }, "TripExMaintenance").start();
+
+        return true; // the slice runs on its own thread
+    }
+
+    // the device left idle or charging; the slice ends as soon as SQLite
+    // notices, and the job runs again in a later idle window
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (runningSlice != null) {
+            runningSlice.cancel();
+            runningSlice = null;
+        }
+        return true;
+    }
+
+    // runs one slice in the provider's DatabaseMaintenance; returns true
+    // if the cycle is over, because it completed or failed
+    private boolean runSlice(CancellationSignal signal) {
+        ContentProviderClient client = getContentResolver()
+                .acquireContentProviderClient(DatabaseDescription.AUTHORITY);
+        try {
+            TripExContentProvider provider =
+                    (TripExContentProvider) client.getLocalContentProvider();
+            return provider.getMaintenance().runSlice(SLICE_MILLIS, signal);
+        }
+        catch (OperationCanceledException e) {
+            Log.i(TAG, "Maintenance yielded");
+            return false;
+        }
+        catch (SQLException e) {
+            // don't retry until the next cycle; the failed task runs first
+            Log.e(TAG, "Maintenance failed", e);
+            return true;
+        }
+        finally {
+            client.release();
+        }
+    }
+
+    private void sliceFinished(JobParameters params, CancellationSignal signal,
+                               boolean done) {
+        // onStopJob already ended the job
+        if (runningSlice != signal)
+            return;
+        runningSlice = null;
+
+        if (done) {
+            jobFinished(params, false);
+            scheduleCycle(this, CYCLE_INTERVAL_MILLIS);
+        }
+        else {
+            // the rest of the cycle runs in the next idle window
+            jobFinished(params, true);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+// TripExSyncService.java
+// JobService that runs TripSync once the device has a network. Requests
+// made while one is pending are folded into it, so a run of edits is
+// sent together shortly after the last of them
+package com.inersion.tripex.sampledata;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.ContentProviderClient;
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.OperationCanceledException;
+import android.os.Process;
+import android.util.Log;
+
+import com.inersion.tripex.BuildConfig;
+
+import java.io.IOException;
+
+public class TripExSyncService extends JobService {
+    private static final String TAG = "TripExSync";
+
+    private static final int JOB_ID = 2; // TripExMaintenanceService has 1
+
+    // how long a request waits for more edits to send with it
+    private static final long SYNC_DELAY_MILLIS = 10000;
+
+    // only touched on the main thread
+    private static CancellationSignal runningSync; // null unless running
+
+    private final Handler handler = new Handler();
+
+    // schedules a sync unless one is already pending
+    static void requestSync(Context context) {
+        JobScheduler scheduler = (JobScheduler)
+                context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID)
+                return;
+        }
+
+        scheduler.schedule(new JobInfo.Builder(JOB_ID,
+                new ComponentName(context, TripExSyncService.class))
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setMinimumLatency(SYNC_DELAY_MILLIS)
+                .setPersisted(true)
+                .build());
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        final CancellationSignal signal = new CancellationSignal();
+        runningSync = signal;
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                final boolean synced = sync(signal);
+
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        syncFinished(params, signal, synced);
+                    }
+                });
+            }
+        }, "TripExSync").start();
+
+        return true; // the sync runs on its own thread
+    }
+
+    // the network went away; the sync stops before its next batch, and
+    // the job is retried
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        if (runningSync != null) {
+            runningSync.cancel();
+            runningSync = null;
+        }
+        return true;
+    }
+
+    // runs the provider's TripSync; returns false if it failed or was
+    // cancelled
+    private boolean sync(CancellationSignal signal) {
+        ContentProviderClient client = getContentResolver()
+                .acquireContentProviderClient(DatabaseDescription.AUTHORITY);
+        try {
+            TripExContentProvider provider =
+                    (TripExContentProvider) client.getLocalContentProvider();
+            provider.getSync().sync(
+                    new HttpSyncTransport(BuildConfig.SYNC_URL), signal);
+            return true;
+        }
+        catch (OperationCanceledException e) {
+            Log.i(TAG, "Sync stopped");
+            return false;
+        }
+        catch (IOException e) {
+            Log.w(TAG, "Sync failed", e);
+            return false;
+        }
+        catch (RuntimeException e) {
+            // e.g. a malformed response or a failed write; retried like
+            // any other failure rather than left to crash the process
+            Log.e(TAG, "Sync failed", e);
+            return false;
+        }
+        finally {
+            client.release();
+        }
+    }
+
+    private void syncFinished(JobParameters params, CancellationSignal signal,
+                              boolean synced) {
+        // onStopJob already ended the job
+        if (runningSync != signal)
+            return;
+        runningSync = null;
+
+        // a failed sync is retried with the scheduler's backoff
+        jobFinished(params, !synced);
+    }
+}
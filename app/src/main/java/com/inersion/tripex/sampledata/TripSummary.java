@@ -0,0 +1,247 @@
+// TripSummary.java
+// Maintains the summary table's single row: the next upcoming trip and
+// this year's spending. Writes that may affect it mark it out of date,
+// and it's recomputed once the writes settle; observers and the widget
+// only hear about it when a shown figure actually changed
+package com.inersion.tripex.sampledata;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.text.TextUtils;
+
+import com.inersion.tripex.core.Money;
+import com.inersion.tripex.core.TripDate;
+import com.inersion.tripex.sampledata.DatabaseDescription.Summary;
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// thread safe: recomputes run in a transaction of their own, so they
+// never overlap each other or a write
+final class TripSummary {
+    // how long after a relevant write the summary is recomputed; writes
+    // made meanwhile, e.g. the rest of an import, share the recompute
+    private static final long REFRESH_DELAY_MILLIS = 1000;
+
+    private static final String ROW_ID = "1"; // the summary's only row
+
+    // selects trips whose departure is shaped like yyyy-MM-dd; the rows
+    // are still checked with TripDate.isValid, but this keeps free text
+    // such as "June 1", which sorts after every date, out of the ranges
+    private static final String DATED = Trip.COLUMN_DEPART +
+            " GLOB '[0-9][0-9][0-9][0-9]-[0-9][0-9]-[0-9][0-9]'";
+
+    // the receiver of Summary.ACTION_CHANGED, named rather than referenced
+    // so the data layer doesn't depend on the UI package
+    private static final String WIDGET_CLASS_NAME =
+            "com.inersion.tripex.TripSummaryWidget";
+
+    private final Context context;
+    private final TripExDatabaseHelper dbHelper;
+    private final Handler handler; // runs delayed recomputes
+
+    // a relevant write happened since the last recompute began
+    private final AtomicBoolean invalidated = new AtomicBoolean(false);
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean(false);
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            refreshScheduled.set(false);
+            if (invalidated.get())
+                refresh(today());
+        }
+    };
+
+    TripSummary(Context context, TripExDatabaseHelper dbHelper) {
+        this.context = context;
+        this.dbHelper = dbHelper;
+
+        HandlerThread thread = new HandlerThread("TripExSummary",
+                Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    // whether a trip departing on depart can be the next trip or count
+    // towards this year's spending; only yyyy-MM-dd dates can
+    static boolean isRelevant(String depart) {
+        return TripDate.isValid(depart) &&
+                depart.compareTo(yearStart(today())) >= 0;
+    }
+
+    // marks the summary out of date after a write that may affect it; the
+    // mark is stored, in the write's transaction if it has one, so the
+    // summary is recomputed even if the process dies before the scheduled
+    // recompute runs
+    void invalidate() {
+        if (invalidated.compareAndSet(false, true)) {
+            ContentValues values = new ContentValues();
+            values.putNull(Summary.COLUMN_COMPUTED_ON);
+            dbHelper.getWritableDatabase().update(Summary.TABLE_NAME, values,
+                    null, null);
+        }
+
+        if (refreshScheduled.compareAndSet(false, true))
+            handler.postDelayed(refresh, REFRESH_DELAY_MILLIS);
+    }
+
+    // returns the summary row, recomputing it first if it's out of date,
+    // e.g. because the date changed since it was computed
+    Cursor query() {
+        String today = today();
+        if (!today.equals(readComputedOn()))
+            refresh(today);
+
+        return dbHelper.getReadableDatabase().query(Summary.TABLE_NAME, null,
+                null, null, null, null, null);
+    }
+
+    private String readComputedOn() {
+        Cursor cursor = dbHelper.getReadableDatabase().query(Summary.TABLE_NAME,
+                new String[] {Summary.COLUMN_COMPUTED_ON}, null, null,
+                null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    // recomputes the row for today; stores it, and tells observers and
+    // the widget, only if a shown figure changed
+    private void refresh(String today) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        boolean changed;
+
+        db.beginTransaction();
+        try {
+            // writes can't run until the transaction ends, so any write
+            // that invalidates the summary from here on comes after what
+            // this recompute reads
+            invalidated.set(false);
+
+            ContentValues values = compute(db, today);
+            changed = !sameFigures(db, values);
+            values.put(Summary._ID, ROW_ID);
+            values.put(Summary.COLUMN_COMPUTED_ON, today);
+            db.insertWithOnConflict(Summary.TABLE_NAME, null, values,
+                    SQLiteDatabase.CONFLICT_REPLACE);
+            db.setTransactionSuccessful();
+        }
+        finally {
+            db.endTransaction();
+        }
+
+        if (changed) {
+            context.getContentResolver().notifyChange(Summary.CONTENT_URI, null);
+
+            // sent to the widget alone, so its receiver needn't accept the
+            // action from other apps
+            Intent intent = new Intent(Summary.ACTION_CHANGED);
+            intent.setClassName(context, WIDGET_CLASS_NAME);
+            context.sendBroadcast(intent);
+        }
+    }
+
+    // the next trip departing today or later, and the total cost of the
+    // trips departing this year; both read through the depart index, and
+    // both count only trips with a yyyy-MM-dd date
+    private static ContentValues compute(SQLiteDatabase db, String today) {
+        ContentValues values = new ContentValues();
+        values.putNull(Summary.COLUMN_NEXT_NAME);
+        values.putNull(Summary.COLUMN_NEXT_DEPART);
+
+        Cursor next = db.query(Trip.TABLE_NAME,
+                new String[] {Trip.COLUMN_NAME, Trip.COLUMN_DEPART},
+                Trip.COLUMN_DEPART + " >= ? AND " + DATED, new String[] {today},
+                null, null, Trip.COLUMN_DEPART + ", " + Trip._ID);
+        try {
+            // the first row is the next trip unless its date doesn't exist
+            while (next.moveToNext()) {
+                if (TripDate.isValid(next.getString(1))) {
+                    values.put(Summary.COLUMN_NEXT_NAME, next.getString(0));
+                    values.put(Summary.COLUMN_NEXT_DEPART, next.getString(1));
+                    break;
+                }
+            }
+        }
+        finally {
+            next.close();
+        }
+
+        int year = Integer.parseInt(today.substring(0, 4));
+        Money spend = Money.ZERO;
+        Cursor costs = db.query(Trip.TABLE_NAME,
+                new String[] {Trip.COLUMN_AIRFARE, Trip.COLUMN_HOTEL,
+                        Trip.COLUMN_RENTAL, Trip.COLUMN_DEPART},
+                Trip.COLUMN_DEPART + " >= ? AND " + Trip.COLUMN_DEPART +
+                        " < ? AND " + DATED,
+                new String[] {yearStart(today), (year + 1) + "-01-01"},
+                null, null, null);
+        try {
+            while (costs.moveToNext()) {
+                if (!TripDate.isValid(costs.getString(3)))
+                    continue;
+                spend = spend.plus(Money.parseOrZero(costs.getString(0)))
+                        .plus(Money.parseOrZero(costs.getString(1)))
+                        .plus(Money.parseOrZero(costs.getString(2)));
+            }
+        }
+        finally {
+            costs.close();
+        }
+
+        values.put(Summary.COLUMN_YEAR, year);
+        values.put(Summary.COLUMN_YEAR_SPEND_CENTS, spend.getCents());
+        return values;
+    }
+
+    // whether the stored row already shows the figures in values
+    private static boolean sameFigures(SQLiteDatabase db, ContentValues values) {
+        Cursor cursor = db.query(Summary.TABLE_NAME, null, null, null,
+                null, null, null);
+        try {
+            if (!cursor.moveToFirst())
+                return false;
+
+            return TextUtils.equals(values.getAsString(Summary.COLUMN_NEXT_NAME),
+                    getString(cursor, Summary.COLUMN_NEXT_NAME)) &&
+                    TextUtils.equals(
+                            values.getAsString(Summary.COLUMN_NEXT_DEPART),
+                            getString(cursor, Summary.COLUMN_NEXT_DEPART)) &&
+                    values.getAsInteger(Summary.COLUMN_YEAR) ==
+                            cursor.getInt(cursor.getColumnIndex(
+                                    Summary.COLUMN_YEAR)) &&
+                    values.getAsLong(Summary.COLUMN_YEAR_SPEND_CENTS) ==
+                            cursor.getLong(cursor.getColumnIndex(
+                                    Summary.COLUMN_YEAR_SPEND_CENTS));
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    private static String getString(Cursor cursor, String column) {
+        return cursor.getString(cursor.getColumnIndex(column));
+    }
+
+    // today's date in the yyyy-MM-dd form AddEditFragment stores
+    private static String today() {
+        return new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(new Date());
+    }
+
+    private static String yearStart(String date) {
+        return date.substring(0, 4) + "-01-01";
+    }
+}
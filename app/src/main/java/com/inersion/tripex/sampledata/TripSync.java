@@ -0,0 +1,331 @@
+// TripSync.java
+// Syncs the trips table with the backend a delta at a time. Writes
+// through the provider mark trips dirty and remember deletions; a sync
+// pushes just those, in batches, and then pulls what other devices
+// changed since the last revision it saw. Each batch the server sends
+// back is applied in one transaction. A conflict goes to the later edit,
+// on the server and here alike (see TripChange.supersedes)
+package com.inersion.tripex.sampledata;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import com.inersion.tripex.BuildConfig;
+import com.inersion.tripex.core.SyncBatch;
+import com.inersion.tripex.core.SyncTransport;
+import com.inersion.tripex.core.TripChange;
+import com.inersion.tripex.sampledata.DatabaseDescription.Sync;
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+final class TripSync {
+    private static final String TAG = "TripSync";
+
+    // the most changes sent or asked for in one request
+    static final int BATCH_SIZE = 200;
+
+    // the last revision pulled, kept across process restarts; it's saved
+    // after the batch's transaction commits, so a crash in between only
+    // means pulling that batch again, and applying it twice is harmless
+    private static final String PREFERENCES = "trip_sync";
+    private static final String KEY_REVISION = "revision";
+
+    // set before the first push; until then the server has no trips from
+    // this device, so there are no deletions to tell it about
+    private static final String KEY_STARTED = "started";
+
+    private static final String[] LOCAL_COLUMNS = {Trip._ID,
+            Trip.COLUMN_REVISION, Trip.COLUMN_MODIFIED, Trip.COLUMN_DIRTY};
+
+    private final Context context;
+    private final TripExDatabaseHelper dbHelper;
+    private final TripExContentProvider provider;
+    private final SharedPreferences preferences;
+
+    TripSync(Context context, TripExDatabaseHelper dbHelper,
+             TripExContentProvider provider) {
+        this.context = context;
+        this.dbHelper = dbHelper;
+        this.provider = provider;
+        preferences = context.getSharedPreferences(PREFERENCES,
+                Context.MODE_PRIVATE);
+    }
+
+    // whether this build has a backend to sync with
+    static boolean isEnabled() {
+        return !BuildConfig.SYNC_URL.isEmpty();
+    }
+
+    // the values of a trip being added locally, with a new sync id and
+    // marked dirty; values itself is left alone
+    static ContentValues markInserted(ContentValues values) {
+        ContentValues marked = new ContentValues(values);
+        if (marked.getAsString(Trip.COLUMN_SYNC_ID) == null)
+            marked.put(Trip.COLUMN_SYNC_ID,
+                    UUID.randomUUID().toString().replace("-", ""));
+        marked.put(Trip.COLUMN_REVISION, TripChange.NO_REVISION);
+        marked.put(Trip.COLUMN_MODIFIED, System.currentTimeMillis());
+        marked.put(Trip.COLUMN_DIRTY, 1);
+        return marked;
+    }
+
+    // the values of a trip being edited locally, marked dirty
+    static ContentValues markUpdated(ContentValues values) {
+        ContentValues marked = new ContentValues(values);
+        marked.remove(Trip.COLUMN_SYNC_ID);
+        marked.remove(Trip.COLUMN_REVISION);
+        marked.put(Trip.COLUMN_MODIFIED, System.currentTimeMillis());
+        marked.put(Trip.COLUMN_DIRTY, 1);
+        return marked;
+    }
+
+    // remembers the deletion of the trips matching selection so the next
+    // sync sends it; call in the delete's transaction, before it. Even a
+    // trip whose push wasn't acknowledged may have reached the server, so
+    // each one is remembered once syncing has started
+    void recordDeletions(SQLiteDatabase db, String selection,
+                         String[] selectionArgs) {
+        if (!preferences.getBoolean(KEY_STARTED, false))
+            return;
+
+        List<Object> args = new ArrayList<Object>();
+        args.add(System.currentTimeMillis());
+        if (selectionArgs != null) {
+            for (String arg : selectionArgs)
+                args.add(arg);
+        }
+
+        db.execSQL("INSERT OR REPLACE INTO " + Sync.DELETIONS_TABLE + "(" +
+                Sync.COLUMN_SYNC_ID + ", " + Sync.COLUMN_DELETED + ") SELECT " +
+                Trip.COLUMN_SYNC_ID + ", ? FROM " + Trip.TABLE_NAME +
+                ((selection != null) ? " WHERE " + selection : ""),
+                args.toArray());
+    }
+
+    // after a restore replaced the trips with ones inserted dirty and
+    // modified now, so they're sent as edits: gives any trip without a
+    // sync id one. Together with recordDeletions before the restore, the
+    // server ends up with just the restored trips. Call within the
+    // restore's transaction
+    static void markRestored(SQLiteDatabase db) {
+        db.execSQL("UPDATE " + Trip.TABLE_NAME + " SET " +
+                Trip.COLUMN_SYNC_ID + "=lower(hex(randomblob(16))) WHERE " +
+                Trip.COLUMN_SYNC_ID + " IS NULL");
+
+        // the restored trips aren't deleted after all
+        db.execSQL("DELETE FROM " + Sync.DELETIONS_TABLE + " WHERE " +
+                Sync.COLUMN_SYNC_ID + " IN (SELECT " + Trip.COLUMN_SYNC_ID +
+                " FROM " + Trip.TABLE_NAME + ")");
+    }
+
+    // asks TripExSyncService to sync soon, e.g. after a local write, if
+    // this build has a backend
+    void requestSync() {
+        if (isEnabled())
+            TripExSyncService.requestSync(context);
+    }
+
+    // sends the local changes and then applies the remote ones; stops at
+    // the first failure, and what was applied by then stays applied
+    void sync(SyncTransport transport) throws IOException {
+        sync(transport, new CancellationSignal());
+    }
+
+    // like sync(transport), but throws OperationCanceledException before
+    // the next batch once signal is cancelled; the batches done by then
+    // stay done, and the next sync carries on from there
+    synchronized void sync(SyncTransport transport, CancellationSignal signal)
+            throws IOException {
+        if (!preferences.getBoolean(KEY_STARTED, false))
+            preferences.edit().putBoolean(KEY_STARTED, true).commit();
+
+        int pushed = pushTrips(transport, signal) +
+                pushDeletions(transport, signal);
+        int pulled = pull(transport, signal);
+        Log.i(TAG, "Pushed " + pushed + " and pulled " + pulled + " changes");
+    }
+
+    // sends the dirty trips in batches, in _id order; returns how many
+    private int pushTrips(SyncTransport transport, CancellationSignal signal)
+            throws IOException {
+        int pushed = 0;
+        long lastId = 0;
+        while (true) {
+            signal.throwIfCanceled();
+            List<TripChange> changes = new ArrayList<TripChange>();
+            Cursor cursor = dbHelper.getReadableDatabase().query(
+                    Trip.TABLE_NAME, null, Trip.COLUMN_DIRTY + "=1 AND " +
+                            Trip._ID + ">" + lastId, null, null, null,
+                    Trip._ID, String.valueOf(BATCH_SIZE));
+            try {
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong(cursor.getColumnIndex(Trip._ID));
+                    changes.add(TripChange.update(
+                            getString(cursor, Trip.COLUMN_SYNC_ID),
+                            getLong(cursor, Trip.COLUMN_REVISION),
+                            getLong(cursor, Trip.COLUMN_MODIFIED),
+                            TripValues.fromCursor(cursor)));
+                }
+            }
+            finally {
+                cursor.close();
+            }
+
+            if (changes.isEmpty())
+                return pushed;
+            apply(transport.push(new SyncBatch(TripChange.NO_REVISION, false,
+                    changes)).getChanges());
+            pushed += changes.size();
+        }
+    }
+
+    // sends the remembered deletions in batches; returns how many
+    private int pushDeletions(SyncTransport transport,
+                              CancellationSignal signal) throws IOException {
+        int pushed = 0;
+        long lastRowId = 0;
+        while (true) {
+            signal.throwIfCanceled();
+            List<TripChange> changes = new ArrayList<TripChange>();
+            Cursor cursor = dbHelper.getReadableDatabase().query(
+                    Sync.DELETIONS_TABLE, new String[] {"rowid",
+                            Sync.COLUMN_SYNC_ID, Sync.COLUMN_DELETED},
+                    "rowid>" + lastRowId, null, null, null, "rowid",
+                    String.valueOf(BATCH_SIZE));
+            try {
+                while (cursor.moveToNext()) {
+                    lastRowId = cursor.getLong(0);
+                    changes.add(TripChange.deletion(cursor.getString(1),
+                            TripChange.NO_REVISION, cursor.getLong(2)));
+                }
+            }
+            finally {
+                cursor.close();
+            }
+
+            if (changes.isEmpty())
+                return pushed;
+            apply(transport.push(new SyncBatch(TripChange.NO_REVISION, false,
+                    changes)).getChanges());
+            pushed += changes.size();
+        }
+    }
+
+    // applies the server's changes after the last revision seen, a batch
+    // at a time; returns how many
+    private int pull(SyncTransport transport, CancellationSignal signal)
+            throws IOException {
+        int pulled = 0;
+        long since = preferences.getLong(KEY_REVISION, 0);
+        SyncBatch batch;
+        do {
+            signal.throwIfCanceled();
+            batch = transport.pull(since, BATCH_SIZE);
+            apply(batch.getChanges());
+            pulled += batch.getChanges().size();
+
+            since = batch.getRevision();
+            preferences.edit().putLong(KEY_REVISION, since).apply();
+        } while (batch.hasMore() && !batch.getChanges().isEmpty());
+        return pulled;
+    }
+
+    // applies the server's changes in one transaction, through the
+    // provider so budgets, the summary and observers follow them
+    private void apply(final List<TripChange> changes) {
+        if (changes.isEmpty())
+            return;
+
+        provider.applyInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                SQLiteDatabase db = dbHelper.getWritableDatabase();
+                for (TripChange change : changes)
+                    apply(db, change);
+            }
+        });
+    }
+
+    private void apply(SQLiteDatabase db, TripChange change) {
+        String[] syncId = {change.getSyncId()};
+        Cursor cursor = db.query(Trip.TABLE_NAME, LOCAL_COLUMNS,
+                Trip.COLUMN_SYNC_ID + "=?", syncId, null, null, null);
+        try {
+            if (!cursor.moveToFirst()) {
+                applyToMissingTrip(db, change);
+                return;
+            }
+
+            boolean dirty = cursor.getInt(3) != 0;
+            if (!dirty && change.getRevision() <= cursor.getLong(1))
+                return; // already applied
+
+            // an edit made here that wasn't sent yet, or was edited again
+            // since it was, is newer than the change; it's sent next
+            if (dirty && !change.supersedes(cursor.getLong(2)))
+                return;
+
+            Uri tripUri = Sync.asSyncAdapter(
+                    Trip.buildTripUri(cursor.getLong(0)));
+            if (change.isDeletion())
+                provider.delete(tripUri, null, null);
+            else
+                provider.update(tripUri, toValues(change), null, null);
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    // applies a change to a trip this device doesn't have, either because
+    // it's new or because it was deleted here
+    private void applyToMissingTrip(SQLiteDatabase db, TripChange change) {
+        String[] syncId = {change.getSyncId()};
+        Cursor cursor = db.query(Sync.DELETIONS_TABLE,
+                new String[] {Sync.COLUMN_DELETED},
+                Sync.COLUMN_SYNC_ID + "=?", syncId, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                // the deletion here is newer; it's sent next
+                if (!change.supersedes(cursor.getLong(0)))
+                    return;
+                db.delete(Sync.DELETIONS_TABLE, Sync.COLUMN_SYNC_ID + "=?",
+                        syncId);
+            }
+        }
+        finally {
+            cursor.close();
+        }
+
+        if (!change.isDeletion())
+            provider.insert(Sync.asSyncAdapter(Trip.CONTENT_URI),
+                    toValues(change));
+    }
+
+    private static ContentValues toValues(TripChange change) {
+        ContentValues values = TripValues.toContentValues(change.getTrip());
+        values.put(Trip.COLUMN_SYNC_ID, change.getSyncId());
+        values.put(Trip.COLUMN_REVISION, change.getRevision());
+        values.put(Trip.COLUMN_MODIFIED, change.getModified());
+        values.put(Trip.COLUMN_DIRTY, 0);
+        return values;
+    }
+
+    private static String getString(Cursor cursor, String column) {
+        return cursor.getString(cursor.getColumnIndex(column));
+    }
+
+    private static long getLong(Cursor cursor, String column) {
+        return cursor.getLong(cursor.getColumnIndex(column));
+    }
+}
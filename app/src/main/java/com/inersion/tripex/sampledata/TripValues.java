@@ -0,0 +1,63 @@
+// TripValues.java
+// Converts between the trips table's rows and tripex-core Trip objects
+package com.inersion.tripex.sampledata;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.inersion.tripex.core.Money;
+import com.inersion.tripex.core.Trip;
+
+public final class TripValues {
+    private TripValues() {}
+
+    // the trip the cursor is positioned on; a cursor without an _id column
+    // (e.g. a draft's) yields a trip with Trip.NO_ID, and costs that can't
+    // be read count as zero
+    public static Trip fromCursor(Cursor cursor) {
+        int idIndex = cursor.getColumnIndex(DatabaseDescription.Trip._ID);
+
+        return new Trip(
+                (idIndex >= 0) ? cursor.getLong(idIndex) : Trip.NO_ID,
+                getString(cursor, DatabaseDescription.Trip.COLUMN_NAME),
+                getString(cursor, DatabaseDescription.Trip.COLUMN_FROM),
+                getString(cursor, DatabaseDescription.Trip.COLUMN_TO),
+                getString(cursor, DatabaseDescription.Trip.COLUMN_DEPART),
+                getString(cursor, DatabaseDescription.Trip.COLUMN_RETURN),
+                Money.parseOrZero(getString(cursor,
+                        DatabaseDescription.Trip.COLUMN_AIRFARE)),
+                Money.parseOrZero(getString(cursor,
+                        DatabaseDescription.Trip.COLUMN_HOTEL)),
+                Money.parseOrZero(getString(cursor,
+                        DatabaseDescription.Trip.COLUMN_RENTAL)));
+    }
+
+    // the column's value, or null if the cursor has no such column
+    private static String getString(Cursor cursor, String column) {
+        int index = cursor.getColumnIndex(column);
+        return (index >= 0) ? cursor.getString(index) : null;
+    }
+
+    // the trip's columns for an insert or update; the id is never written,
+    // and zero costs are stored empty, as an untouched cost field would be
+    public static ContentValues toContentValues(Trip trip) {
+        ContentValues values = new ContentValues();
+        values.put(DatabaseDescription.Trip.COLUMN_NAME, trip.getName());
+        values.put(DatabaseDescription.Trip.COLUMN_FROM, trip.getFrom());
+        values.put(DatabaseDescription.Trip.COLUMN_TO, trip.getTo());
+        values.put(DatabaseDescription.Trip.COLUMN_DEPART, trip.getDepart());
+        values.put(DatabaseDescription.Trip.COLUMN_RETURN,
+                trip.getReturnDate());
+        values.put(DatabaseDescription.Trip.COLUMN_AIRFARE,
+                toText(trip.getAirfare()));
+        values.put(DatabaseDescription.Trip.COLUMN_HOTEL,
+                toText(trip.getHotel()));
+        values.put(DatabaseDescription.Trip.COLUMN_RENTAL,
+                toText(trip.getRental()));
+        return values;
+    }
+
+    private static String toText(Money cost) {
+        return cost.isZero() ? "" : cost.toString();
+    }
+}
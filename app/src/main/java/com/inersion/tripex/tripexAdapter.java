@@ -1,9 +1,11 @@
 package com.inersion.tripex;
 
+import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
@@ -11,6 +13,8 @@ import android.widget.TextView;
 import com.inersion.tripex.sampledata.DatabaseDescription;
 import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
 
+import java.util.Arrays;
+
 public class tripexAdapter
         extends RecyclerView.Adapter<tripexAdapter.ViewHolder> {
 
@@ -23,13 +27,19 @@ public class tripexAdapter
     // nested subclass of RecyclerView.ViewHolder used to implement
     // the view-holder pattern in the context of a RecyclerView
     public class ViewHolder extends RecyclerView.ViewHolder {
-        public final TextView textView;
+        public final TextView nameTextView;
+        public final TextView routeTextView;
+        public final TextView datesTextView;
+        public final TextView totalTextView;
         private long rowID;
 
         // configures a RecyclerView item's ViewHolder
         public ViewHolder(View itemView) {
             super(itemView);
-            textView = (TextView) itemView.findViewById(android.R.id.text1);
+            nameTextView = (TextView) itemView.findViewById(R.id.nameTextView);
+            routeTextView = (TextView) itemView.findViewById(R.id.routeTextView);
+            datesTextView = (TextView) itemView.findViewById(R.id.datesTextView);
+            totalTextView = (TextView) itemView.findViewById(R.id.totalTextView);
 
             // attach listener to itemView
             itemView.setOnClickListener(
@@ -41,39 +51,137 @@ public class tripexAdapter
                         }
                     }
             );
+
+            // a touch usually precedes a click by ~100ms, so start loading
+            // the trip's details for DetailFragment right away
+            itemView.setOnTouchListener(
+                    new View.OnTouchListener() {
+                        @Override
+                        public boolean onTouch(View view, MotionEvent event) {
+                            if (event.getActionMasked() == MotionEvent.ACTION_DOWN)
+                                detailPrefetcher.prefetch(new long[] {rowID}, true);
+                            return false; // let the click proceed as usual
+                        }
+                    }
+            );
         }
 
-        // set the database row ID for the trip in this ViewHolder
-        public void setRowID(long rowID) {
-            this.rowID = rowID;
+        // display an already formatted row in this ViewHolder
+        public void bind(TripRow row) {
+            rowID = row.id;
+            nameTextView.setText(row.name);
+            routeTextView.setText(row.route);
+            datesTextView.setText(row.dates);
+            totalTextView.setText(row.total);
         }
     }
 
     // tripexAdapter instance variables
     private Cursor cursor = null;
+    private TripListDiff.Snapshot snapshot = null; // ids of cursor's rows
+    private TripSections sections = null; // cursor's sections, if any
     private final ContactClickListener clickListener;
+    private final TripRowPrefetcher rowPrefetcher; // formats rows ahead
+    private final TripDetailPrefetcher detailPrefetcher; // loads details ahead
+    private boolean paintsSet = false; // rowPrefetcher has the row's paints
+    private FrameMetricsCollector frameMetrics; // null unless measuring
 
     // constructor
-    public tripexAdapter(ContactClickListener clickListener) {
+    public tripexAdapter(Context context, ContactClickListener clickListener) {
         this.clickListener = clickListener;
+        rowPrefetcher = TripRowPrefetcher.getInstance(context);
+        detailPrefetcher = TripDetailPrefetcher.getInstance(context);
+
+        // rows keep their identity across Cursors, so RecyclerView can
+        // track and animate individual items
+        setHasStableIds(true);
+    }
+
+    // reports bind and inflate times to collector (null to stop)
+    public void setFrameMetricsCollector(FrameMetricsCollector collector) {
+        frameMetrics = collector;
     }
 
     // sets up new list item and its ViewHolder
     @Override
     public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
-        // inflate the android.R.layout.simple_list_item_1 layout
+        long start = System.nanoTime();
+
+        // inflate the list_item_trip layout
         View view = LayoutInflater.from(parent.getContext()).inflate(
-                android.R.layout.simple_list_item_1, parent, false);
-        return new ViewHolder(view); // return current item's ViewHolder
+                R.layout.list_item_trip, parent, false);
+        ViewHolder holder = new ViewHolder(view);
+
+        // let the prefetcher measure text exactly as these rows draw it
+        if (!paintsSet) {
+            rowPrefetcher.setPaints(holder.nameTextView.getPaint(),
+                    holder.routeTextView.getPaint());
+            paintsSet = true;
+        }
+
+        if (frameMetrics != null)
+            frameMetrics.recordInflate(System.nanoTime() - start);
+        return holder; // return current item's ViewHolder
     }
 
-    // sets the text of the list item to display the search tag
+    // displays the trip's preformatted strings in the list item
     @Override
     public void onBindViewHolder(ViewHolder holder, int position) {
+        long start = System.nanoTime();
+        TripRow row = null;
+        long hash = 0;
+
+        if (snapshot != null) {
+            hash = snapshot.hashes[position];
+            row = rowPrefetcher.get(snapshot.ids[position], hash);
+        }
+
+        // the prefetcher hasn't reached this row (e.g., after a fling),
+        // so format it now; for a long list the cursor is a
+        // TripWindowCursor, which reads just the block holding this row
+        if (row == null) {
+            cursor.moveToPosition(position);
+            row = rowPrefetcher.format(cursor, hash);
+        }
+
+        holder.bind(row);
+
+        if (frameMetrics != null)
+            frameMetrics.recordBind(System.nanoTime() - start);
+    }
+
+    // loads the details of the trips at positions [start, end) in the
+    // background so that DetailFragment can display them immediately
+    public void prefetchDetails(int start, int end) {
+        if (snapshot == null)
+            return;
+
+        start = Math.max(start, 0);
+        end = Math.min(end, snapshot.size());
+        if (start < end)
+            detailPrefetcher.prefetch(
+                    Arrays.copyOfRange(snapshot.ids, start, end), false);
+    }
+
+    // returns the section index of the current Cursor, or null
+    public TripSections getSections() {
+        return sections;
+    }
+
+    // formats rows [start, end) in the background before they're bound
+    public void prefetch(int start, int end) {
+        if (snapshot != null)
+            rowPrefetcher.prefetch(snapshot, start, end);
+    }
+
+    // returns the trip's database row ID as the item's stable id
+    @Override
+    public long getItemId(int position) {
+        if (snapshot != null)
+            return snapshot.ids[position];
+
         cursor.moveToPosition(position);
-        holder.setRowID(cursor.getLong(cursor.getColumnIndex(DatabaseDescription.Trip._ID)));
-        holder.textView.setText(cursor.getString(cursor.getColumnIndex(
-                Trip.COLUMN_NAME)));
+        return cursor.getLong(cursor.getColumnIndex(Trip._ID));
     }
 
     // returns the number of items that adapter binds
@@ -82,9 +190,30 @@ public class tripexAdapter
         return (cursor != null) ? cursor.getCount() : 0;
     }
 
-    // swap this adapter's current Cursor for a new one
+    // swap this adapter's current Cursor for a new one; a Cursor from
+    // TripListLoader carries a diff, so only the rows that actually
+    // changed are rebound
     public void swapCursor(Cursor cursor) {
+        TripListDiff.Snapshot previous = snapshot;
         this.cursor = cursor;
+
+        if (cursor instanceof TripListLoader.Result) {
+            TripListLoader.Result result = (TripListLoader.Result) cursor;
+            snapshot = result.snapshot;
+            sections = result.sections;
+
+            // the diff is only valid against the rows currently displayed
+            if (result.diff != null && previous != null &&
+                    result.diff.appliesTo(previous)) {
+                result.diff.dispatchTo(this);
+                return;
+            }
+        }
+        else {
+            snapshot = null;
+            sections = null;
+        }
+
         notifyDataSetChanged();
     }
 }
@@ -1,21 +1,34 @@
 package com.inersion.tripex;
 
+import android.app.AlertDialog;
 import android.content.Context;
+import android.content.DialogInterface;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.util.Log;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuInflater;
+import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 
+import com.inersion.tripex.core.Money;
+import com.inersion.tripex.core.SpendDistribution;
+import com.inersion.tripex.core.SpendReport;
+import com.inersion.tripex.core.TripIndex;
 import com.inersion.tripex.sampledata.DatabaseDescription;
+import com.inersion.tripex.sampledata.StartupTrace;
+
+import java.util.concurrent.Future;
 
 public class tripexFragment extends Fragment
         implements LoaderManager.LoaderCallbacks<Cursor> {
@@ -30,11 +43,28 @@ public class tripexFragment extends Fragment
     }
 
     private static final int TRIPS_LOADER = 0; // identifies Loader
+    private static final String SORT_ORDER = "sort_order"; // saved state key
+
+    // rows beyond the visible ones that are formatted ahead of scrolling
+    private static final int PREFETCH_DISTANCE = 24;
 
     // used to inform the MainActivity when a trip is selected
     private TripsFragmentListener listener;
 
     private tripexAdapter tripsAdapter; // adapter for recyclerView
+    private RecyclerView recyclerView; // displays the trips
+    private SectionIndexBar sectionIndexBar; // jumps between sections
+    private View listPlaceholder; // shown until the first trips load
+
+    // the order TripListIndex sorts the list in; null: by name, in sections
+    private TripIndex.SortOrder sortOrder;
+
+    // measures scrolling smoothness; only created in debug builds
+    private FrameMetricsCollector frameMetrics;
+
+    // the spend report being computed and the dialog that shows it
+    private Future<SpendReport> spendReport;
+    private AlertDialog spendReportDialog;
 
     // configures this fragment's GUI
     @Override
@@ -47,15 +77,16 @@ public class tripexFragment extends Fragment
         // inflate GUI and get reference to the RecyclerView
         View view = inflater.inflate(
                 R.layout.fragment_trips, container, false);
-        RecyclerView recyclerView =
-                (RecyclerView) view.findViewById(R.id.recyclerView);
+        recyclerView = (RecyclerView) view.findViewById(R.id.recyclerView);
+        listPlaceholder = view.findViewById(R.id.listPlaceholder);
 
         // recyclerView should display items in a vertical list
-        recyclerView.setLayoutManager(
-                new LinearLayoutManager(getActivity().getBaseContext()));
+        final LinearLayoutManager layoutManager =
+                new LinearLayoutManager(getActivity().getBaseContext());
+        recyclerView.setLayoutManager(layoutManager);
 
         // create recyclerView's adapter and item click listener
-        tripsAdapter = new tripexAdapter(
+        tripsAdapter = new tripexAdapter(getContext(),
                 new tripexAdapter.ContactClickListener() {
                     @Override
                     public void onClick(Uri tripUri) {
@@ -65,12 +96,71 @@ public class tripexFragment extends Fragment
         );
         recyclerView.setAdapter(tripsAdapter); // set the adapter
 
+        // in debug builds, measure frames and binds while scrolling
+        if (BuildConfig.DEBUG) {
+            frameMetrics = new FrameMetricsCollector(getActivity()
+                    .getWindowManager().getDefaultDisplay().getRefreshRate());
+            tripsAdapter.setFrameMetricsCollector(frameMetrics);
+        }
+
         // attach a custom ItemDecorator to draw dividers between list items
-        recyclerView.addItemDecoration(new ItemDivider(getContext()));
+        recyclerView.addItemDecoration(
+                new ItemDivider(getContext(), tripsAdapter));
+
+        // attach another to draw section headers, the current one pinned
+        recyclerView.addItemDecoration(
+                new SectionHeaderDecoration(getContext(), tripsAdapter));
+
+        // jump straight to a section's first row when its title is touched
+        sectionIndexBar =
+                (SectionIndexBar) view.findViewById(R.id.sectionIndexBar);
+        sectionIndexBar.setOnSectionSelectedListener(
+                new SectionIndexBar.OnSectionSelectedListener() {
+                    @Override
+                    public void onSectionSelected(int section) {
+                        TripSections sections = tripsAdapter.getSections();
+                        if (sections != null) {
+                            layoutManager.scrollToPositionWithOffset(
+                                    sections.getPositionForSection(section), 0);
+                        }
+                    }
+                }
+        );
 
         // improves performance if RecyclerView's layout size never changes
         recyclerView.setHasFixedSize(true);
 
+        // format the rows that are about to scroll into view, and load the
+        // details of the visible rows once scrolling stops
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView,
+                                             int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE)
+                    prefetchVisibleDetails();
+
+                if (frameMetrics != null) {
+                    if (newState == RecyclerView.SCROLL_STATE_IDLE)
+                        frameMetrics.stop();
+                    else
+                        frameMetrics.start();
+                }
+            }
+
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (dy >= 0) {
+                    int next = layoutManager.findLastVisibleItemPosition() + 1;
+                    tripsAdapter.prefetch(next, next + PREFETCH_DISTANCE);
+                }
+                else {
+                    int previous = layoutManager.findFirstVisibleItemPosition();
+                    tripsAdapter.prefetch(
+                            previous - PREFETCH_DISTANCE, previous);
+                }
+            }
+        });
+
         // get the FloatingActionButton and configure its listener
         FloatingActionButton addButton =
                 (FloatingActionButton) view.findViewById(R.id.addButton);
@@ -87,6 +177,144 @@ public class tripexFragment extends Fragment
         return view;
     }
 
+    // stop measuring when the view goes away mid-scroll
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (frameMetrics != null)
+            frameMetrics.stop();
+
+        // the dialog goes with the view, and nobody is left to see the report
+        if (spendReportDialog != null)
+            spendReportDialog.dismiss();
+    }
+
+    // display this fragment's menu items; the frame report is debug-only
+    @Override
+    public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
+        super.onCreateOptionsMenu(menu, inflater);
+        inflater.inflate(R.menu.fragment_trips_menu, menu);
+        menu.findItem(R.id.action_frame_report).setVisible(BuildConfig.DEBUG);
+    }
+
+    // check the sort order the list is shown in
+    @Override
+    public void onPrepareOptionsMenu(Menu menu) {
+        super.onPrepareOptionsMenu(menu);
+        int checked = (sortOrder == TripIndex.SortOrder.DEPART) ?
+                R.id.action_sort_depart :
+                (sortOrder == TripIndex.SortOrder.TOTAL) ?
+                        R.id.action_sort_total : R.id.action_sort_name;
+        menu.findItem(checked).setChecked(true);
+    }
+
+    // handle menu item selections
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        switch (item.getItemId()) {
+            case R.id.action_sort_name:
+                sortBy(null);
+                return true;
+            case R.id.action_sort_depart:
+                sortBy(TripIndex.SortOrder.DEPART);
+                return true;
+            case R.id.action_sort_total:
+                sortBy(TripIndex.SortOrder.TOTAL);
+                return true;
+            case R.id.action_spend_report:
+                showSpendReport();
+                return true;
+            case R.id.action_frame_report:
+                showFrameReport();
+                return true;
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    // reloads the list in a new order, or by name if order is null
+    private void sortBy(TripIndex.SortOrder order) {
+        if (order == sortOrder)
+            return;
+        sortOrder = order;
+        getLoaderManager().restartLoader(TRIPS_LOADER, null, this);
+    }
+
+    // shows and logs the scrolling frame report, then starts a new one
+    private void showFrameReport() {
+        String report = frameMetrics.getReport().toString();
+        Log.i("tripexFragment", "Frame report:\n" + report);
+
+        new AlertDialog.Builder(getActivity())
+                .setTitle(R.string.frame_report_title)
+                .setMessage(report)
+                .setPositiveButton(android.R.string.ok, null)
+                .show();
+        frameMetrics.reset();
+    }
+
+    // computes the spend report in the background while a dialog says so;
+    // cancelling or dismissing the dialog stops the report's threads
+    private void showSpendReport() {
+        spendReportDialog = new AlertDialog.Builder(getActivity())
+                .setTitle(R.string.menuitem_spend_report)
+                .setMessage(R.string.spend_report_running)
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+        spendReportDialog.setOnDismissListener(
+                new DialogInterface.OnDismissListener() {
+                    @Override
+                    public void onDismiss(DialogInterface dialog) {
+                        if (spendReport != null)
+                            spendReport.cancel(true);
+                        spendReport = null;
+                        spendReportDialog = null;
+                    }
+                });
+
+        spendReport = TripRepository.getInstance(getActivity()).getSpendReport(
+                new TripRepository.Callback<SpendReport>() {
+                    @Override
+                    public void onResult(SpendReport report) {
+                        spendReport = null;
+                        if (spendReportDialog == null)
+                            return;
+
+                        spendReportDialog.setMessage((report != null) ?
+                                formatSpendReport(report) :
+                                getString(R.string.spend_report_failed));
+                        spendReportDialog.getButton(
+                                DialogInterface.BUTTON_NEGATIVE)
+                                .setText(android.R.string.ok);
+                    }
+                });
+    }
+
+    private String formatSpendReport(SpendReport report) {
+        SpendDistribution overall = report.getOverall();
+        return getString(R.string.spend_report_text, overall.getCount(),
+                cost(overall.getTotal()), cost(overall.getPercentile(50)),
+                cost(overall.getPercentile(90)), cost(overall.getMax()));
+    }
+
+    private String cost(Money money) {
+        return getString(R.string.cost, money.toString());
+    }
+
+    // returns the scrolling frame metrics, or null in release builds
+    public FrameMetricsCollector getFrameMetrics() {
+        return frameMetrics;
+    }
+
+    // loads the details of the visible trips while the list is idle
+    private void prefetchVisibleDetails() {
+        LinearLayoutManager layoutManager =
+                (LinearLayoutManager) recyclerView.getLayoutManager();
+        tripsAdapter.prefetchDetails(
+                layoutManager.findFirstVisibleItemPosition(),
+                layoutManager.findLastVisibleItemPosition() + 1);
+    }
+
     // set TripsFragmentListener when fragment attached
     @Override
     public void onAttach(Context context) {
@@ -105,12 +333,20 @@ public class tripexFragment extends Fragment
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
+        if (savedInstanceState != null &&
+                savedInstanceState.containsKey(SORT_ORDER)) {
+            sortOrder = TripIndex.SortOrder.valueOf(
+                    savedInstanceState.getString(SORT_ORDER));
+        }
         getLoaderManager().initLoader(TRIPS_LOADER, null, this);
     }
 
-    // called from MainActivity when other Fragment's update database
-    public void updateTripList() {
-        tripsAdapter.notifyDataSetChanged();
+    // keep the sort order across configuration changes
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (sortOrder != null)
+            outState.putString(SORT_ORDER, sortOrder.name());
     }
 
     // called by LoaderManager to create a Loader
@@ -120,12 +356,18 @@ public class tripexFragment extends Fragment
         // only one Loader in this fragment, so the switch is unnecessary
         switch (id) {
             case TRIPS_LOADER:
-                return new CursorLoader(getActivity(),
+                if (sortOrder != null) { // sorted in memory, without sections
+                    return new TripListLoader(getActivity(),
+                            DatabaseDescription.Trip.LIST_COLUMNS, sortOrder,
+                            sortOrder == TripIndex.SortOrder.TOTAL); // dearest first
+                }
+                return new TripListLoader(getActivity(),
                         DatabaseDescription.Trip.CONTENT_URI, // Uri of trips table
-                        null, // null projection returns all columns
+                        DatabaseDescription.Trip.LIST_COLUMNS, // shown columns
                         null, // null selection returns all rows
                         null, // no selection arguments
-                        DatabaseDescription.Trip.COLUMN_NAME + " COLLATE NOCASE ASC"); // sort order
+                        DatabaseDescription.Trip.SORT_BY_NAME, // sort order
+                        DatabaseDescription.Trip.SECTION_BY_LETTER); // sections
             default:
                 return null;
         }
@@ -135,11 +377,51 @@ public class tripexFragment extends Fragment
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
         tripsAdapter.swapCursor(data);
+
+        // section starts may have moved, so recompute header offsets
+        TripSections sections = tripsAdapter.getSections();
+        sectionIndexBar.setTitles(
+                sections != null ? sections.getTitles() : new String[0]);
+        recyclerView.invalidateItemDecorations();
+
+        // the first result replaces the placeholder; data is null if the
+        // query failed
+        if (listPlaceholder.getVisibility() == View.VISIBLE) {
+            listPlaceholder.setVisibility(View.GONE);
+            reportDrawnWhenLaidOut(data != null && data.getCount() > 0);
+        }
+
+        // once the new rows are laid out, load the visible trips' details
+        recyclerView.post(new Runnable() {
+            @Override
+            public void run() {
+                prefetchVisibleDetails();
+            }
+        });
+    }
+
+    // once the first rows are about to be drawn, marks the end of startup
+    // for StartupTrace and for the system's "Fully drawn" launch timing
+    private void reportDrawnWhenLaidOut(final boolean hasRows) {
+        recyclerView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        recyclerView.getViewTreeObserver()
+                                .removeOnPreDrawListener(this);
+                        if (hasRows)
+                            StartupTrace.mark(StartupTrace.FIRST_LIST_ROW);
+                        if (getActivity() != null)
+                            getActivity().reportFullyDrawn();
+                        return true;
+                    }
+                });
     }
 
     // called by LoaderManager when the Loader is being reset
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
         tripsAdapter.swapCursor(null);
+        sectionIndexBar.setTitles(new String[0]);
     }
 }
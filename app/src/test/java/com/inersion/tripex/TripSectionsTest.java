@@ -0,0 +1,81 @@
+package com.inersion.tripex;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+import com.inersion.tripex.sampledata.ProviderTest;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.*;
+
+/**
+ * Builds the section index of trips whose names start with letters of
+ * either case and with punctuation, and checks that each section starts
+ * at the list position of its first row.
+ */
+public class TripSectionsTest extends ProviderTest {
+    private static final String[] NAMES = {"zed", "Apple", "_under", "banana",
+            "apple", "[x", "Banana"};
+
+    private ContentResolver contentResolver;
+
+    @Before
+    public void setUp() {
+        contentResolver = RuntimeEnvironment.application.getContentResolver();
+
+        for (String name : NAMES) {
+            ContentValues values = new ContentValues();
+            values.put(Trip.COLUMN_NAME, name);
+            contentResolver.insert(Trip.CONTENT_URI, values);
+        }
+    }
+
+    @Test
+    public void sectionsStartAtTheirFirstRow() {
+        String[] names = listNames();
+        TripSections sections = sections();
+        assertEquals(names.length, sections.getRowCount());
+
+        for (int i = 0; i < sections.getSectionCount(); ++i) {
+            String first = names[sections.getPositionForSection(i)];
+            assertEquals(sections.getTitle(i),
+                    first.substring(0, 1).toUpperCase());
+        }
+        assertArrayEquals(new String[] {"[", "_", "A", "B", "Z"},
+                sections.getTitles());
+    }
+
+    // the trips' names in the list's order
+    private String[] listNames() {
+        Cursor cursor = contentResolver.query(Trip.CONTENT_URI,
+                new String[] {Trip.COLUMN_NAME}, null, null, Trip.SORT_BY_NAME);
+        try {
+            String[] names = new String[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); ++i)
+                names[i] = cursor.getString(0);
+            return names;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    // the section index as TripListLoader builds it
+    private TripSections sections() {
+        Cursor cursor = contentResolver.query(Trip.SECTIONS_URI,
+                new String[] {Trip.SECTION_BY_LETTER + " AS " + Trip.COLUMN_SECTION,
+                        "COUNT(*) AS " + Trip.COLUMN_SECTION_COUNT},
+                null, null, Trip.COLUMN_SECTION);
+        try {
+            return TripSections.from(cursor, "#");
+        }
+        finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.inersion.tripex;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+import com.inersion.tripex.sampledata.ProviderTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reads a trip list several blocks long through a TripWindowCursor and
+ * checks that rows come back in the order of the ids it was given, however
+ * far apart the positions read are.
+ */
+public class TripWindowCursorTest extends ProviderTest {
+    private static final int TRIPS = TripWindowCursor.BLOCK_SIZE * 5 + 7;
+    private static final String[] COLUMNS = {Trip._ID, Trip.COLUMN_NAME};
+
+    private ContentResolver contentResolver;
+    private long[] ids; // in the reverse of insertion order
+    private TripWindowCursor cursor;
+
+    @Before
+    public void setUp() {
+        contentResolver = RuntimeEnvironment.application.getContentResolver();
+
+        ids = new long[TRIPS];
+        for (int i = 0; i < TRIPS; ++i) {
+            ContentValues values = new ContentValues();
+            values.put(Trip.COLUMN_NAME, "Trip " + i);
+            Uri uri = contentResolver.insert(Trip.CONTENT_URI, values);
+            ids[TRIPS - 1 - i] = ContentUris.parseId(uri);
+        }
+
+        cursor = new TripWindowCursor(contentResolver, Trip.CONTENT_URI,
+                COLUMNS, ids);
+    }
+
+    @After
+    public void tearDown() {
+        cursor.close();
+    }
+
+    @Test
+    public void readsRowsInTheGivenOrder() {
+        assertEquals(TRIPS, cursor.getCount());
+
+        int[] positions = {0, TRIPS - 1, 3, TripWindowCursor.BLOCK_SIZE * 3,
+                TripWindowCursor.BLOCK_SIZE - 1, TripWindowCursor.BLOCK_SIZE};
+        for (int position : positions) {
+            assertTrue(cursor.moveToPosition(position));
+            assertEquals(ids[position], cursor.getLong(0));
+            assertEquals("Trip " + (TRIPS - 1 - position), cursor.getString(1));
+        }
+    }
+
+    @Test
+    public void walksTheWholeListInOrder() {
+        int position = 0;
+        while (cursor.moveToNext()) {
+            assertEquals(ids[position], cursor.getLong(0));
+            ++position;
+        }
+        assertEquals(TRIPS, position);
+    }
+
+    @Test
+    public void aDeletedRowReadsAsNulls() {
+        contentResolver.delete(Trip.buildTripUri(ids[10]), null, null);
+
+        assertTrue(cursor.moveToPosition(10));
+        assertEquals(ids[10], cursor.getLong(0));
+        assertTrue(cursor.isNull(1));
+    }
+}
@@ -0,0 +1,153 @@
+package com.inersion.tripex.sampledata;
+
+import android.content.ContentValues;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.inersion.tripex.sampledata.DatabaseDescription.Budget;
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.shadows.ShadowApplication;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the provider keeps each budget's spending current as trips
+ * are added, changed and deleted, and that it starts the alert service
+ * when a budget reaches its threshold.
+ */
+public class BudgetTrackerTest extends ProviderTest {
+    @Test
+    public void periodBudgetsFollowTheirTrips() {
+        provider.insert(Trip.CONTENT_URI, trip("Before", "2017-06-03", "100.00"));
+        Uri month = provider.insert(Budget.CONTENT_URI,
+                periodBudget("2017-06", 100000));
+        Uri year = provider.insert(Budget.CONTENT_URI,
+                periodBudget("2017", 100000));
+        assertEquals(10000, spent(month));
+
+        Uri trip = provider.insert(Trip.CONTENT_URI,
+                trip("Lisbon", "2017-06-20", "250.00"));
+        assertEquals(35000, spent(month));
+        assertEquals(35000, spent(year));
+
+        // moving the trip to another month of the same year
+        provider.update(trip, trip("Lisbon", "2017-07-01", "300.00"),
+                null, null);
+        assertEquals(10000, spent(month));
+        assertEquals(40000, spent(year));
+
+        provider.delete(trip, null, null);
+        assertEquals(10000, spent(year));
+
+        provider.delete(Trip.CONTENT_URI, null, null);
+        assertEquals(0, spent(month));
+        assertEquals(0, spent(year));
+    }
+
+    @Test
+    public void onlyIsoDatesCountTowardsPeriods() {
+        // AddEditFragment stores typed dates as yyyy-MM-dd; anything else,
+        // e.g. an imported "06/01/2017", belongs to no month or year
+        provider.insert(Trip.CONTENT_URI, trip("Typed", "06/01/2017", "100.00"));
+        provider.insert(Trip.CONTENT_URI, trip("No day", "2017-06", "200.00"));
+        Uri month = provider.insert(Budget.CONTENT_URI,
+                periodBudget("2017-06", 100000));
+        assertEquals(0, spent(month));
+
+        provider.insert(Trip.CONTENT_URI, trip("Lisbon", "2017-06-01", "250.00"));
+        provider.insert(Trip.CONTENT_URI, trip("Later", "June 1", "300.00"));
+        assertEquals(25000, spent(month));
+    }
+
+    @Test
+    public void tripBudgetsGoWithTheirTrip() {
+        Uri trip = provider.insert(Trip.CONTENT_URI,
+                trip("Lisbon", "2017-06-20", "250.00"));
+        Uri budget = provider.insert(Budget.CONTENT_URI,
+                tripBudget(Long.parseLong(trip.getLastPathSegment()), 50000));
+        assertEquals(25000, spent(budget));
+
+        provider.delete(trip, null, null);
+        Cursor cursor = provider.query(budget, null, null, null, null);
+        try {
+            assertFalse(cursor.moveToFirst());
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void periodBudgetsOutliveTheTrips() {
+        Uri trip = provider.insert(Trip.CONTENT_URI,
+                trip("Lisbon", "2017-06-20", "250.00"));
+        Uri month = provider.insert(Budget.CONTENT_URI,
+                periodBudget("2017-06", 100000));
+        Uri tripBudget = provider.insert(Budget.CONTENT_URI,
+                tripBudget(Long.parseLong(trip.getLastPathSegment()), 50000));
+
+        provider.delete(Trip.CONTENT_URI, null, null);
+        assertEquals(0, spent(month));
+
+        Cursor cursor = provider.query(tripBudget, null, null, null, null);
+        try {
+            assertFalse(cursor.moveToFirst());
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void reachingTheThresholdStartsTheAlertService() {
+        ContentValues values = periodBudget("2017-06", 100000);
+        values.put(Budget.COLUMN_ALERT_PERCENT, 80);
+        Uri budget = provider.insert(Budget.CONTENT_URI, values);
+        ShadowApplication application = ShadowApplication.getInstance();
+        application.clearStartedServices();
+
+        // 80% of 1000.00 is reached by the second trip only
+        provider.insert(Trip.CONTENT_URI, trip("One", "2017-06-01", "500.00"));
+        assertNull(application.getNextStartedService());
+        provider.insert(Trip.CONTENT_URI, trip("Two", "2017-06-02", "300.00"));
+
+        Intent alert = application.getNextStartedService();
+        assertNotNull(alert);
+        assertEquals(Budget.ACTION_THRESHOLD_REACHED, alert.getAction());
+        assertEquals(Long.parseLong(budget.getLastPathSegment()),
+                alert.getLongExtra(Budget.EXTRA_BUDGET_ID, -1));
+
+        // already over, so spending more doesn't alert again
+        provider.insert(Trip.CONTENT_URI, trip("Three", "2017-06-03", "1.00"));
+        assertNull(application.getNextStartedService());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aBudgetNeedsATripOrAPeriod() {
+        ContentValues values = periodBudget("June", 100000);
+        provider.insert(Budget.CONTENT_URI, values);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aBudgetNeedsALimit() {
+        ContentValues values = periodBudget("2017-06", 100000);
+        values.remove(Budget.COLUMN_LIMIT_CENTS);
+        provider.insert(Budget.CONTENT_URI, values);
+    }
+
+    private long spent(Uri budget) {
+        Cursor cursor = provider.query(budget,
+                new String[] {Budget.COLUMN_SPENT_CENTS}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        }
+        finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.inersion.tripex.sampledata;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import com.inersion.tripex.sampledata.DatabaseDescription.Budget;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the provider's maintenance tasks against Robolectric's SQLite and
+ * checks that slices stop at their budget or when cancelled.
+ */
+public class DatabaseMaintenanceTest extends ProviderTest {
+    private DatabaseMaintenance maintenance;
+
+    @Before
+    public void setUp() {
+        maintenance = provider.getMaintenance();
+    }
+
+    @Test
+    public void aLongEnoughSliceCompletesTheCycle() {
+        assertTrue(maintenance.runSlice(60000, new CancellationSignal()));
+
+        // the next slice starts a new cycle
+        assertTrue(maintenance.runSlice(60000, new CancellationSignal()));
+    }
+
+    @Test
+    public void analyzeCoversEveryTable() {
+        ContentValues budget = new ContentValues();
+        budget.put(Budget.COLUMN_PERIOD, "2017-06");
+        budget.put(Budget.COLUMN_LIMIT_CENTS, 100000);
+        provider.insert(Budget.CONTENT_URI, budget);
+
+        assertTrue(maintenance.runSlice(60000, new CancellationSignal()));
+
+        SQLiteDatabase db = new TripExDatabaseHelper(
+                RuntimeEnvironment.application).getReadableDatabase();
+        Cursor cursor = db.rawQuery("SELECT 1 FROM sqlite_stat1 WHERE tbl=?",
+                new String[] {Budget.TABLE_NAME});
+        try {
+            assertTrue(cursor.moveToFirst());
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void anEmptyBudgetRunsNothing() {
+        assertFalse(maintenance.runSlice(0, new CancellationSignal()));
+    }
+
+    @Test(expected = OperationCanceledException.class)
+    public void aCancelledSliceYields() {
+        CancellationSignal signal = new CancellationSignal();
+        signal.cancel();
+        maintenance.runSlice(60000, signal);
+    }
+}
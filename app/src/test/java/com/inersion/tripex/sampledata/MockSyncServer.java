@@ -0,0 +1,144 @@
+package com.inersion.tripex.sampledata;
+
+import com.inersion.tripex.core.SyncBatch;
+import com.inersion.tripex.core.TripChange;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A stand-in for the sync backend: an HTTP server on a local port that
+ * speaks HttpSyncTransport's protocol, keeps the trips in memory and
+ * resolves conflicts the way the real one does.
+ */
+final class MockSyncServer {
+    private final HttpServer server;
+
+    // each trip's current state, by sync id and by revision
+    private final Map<String, TripChange> trips = new HashMap<String, TripChange>();
+    private final TreeMap<Long, TripChange> log = new TreeMap<Long, TripChange>();
+    private long revision = 0;
+
+    private int pushes = 0;
+    private int pushedChanges = 0;
+
+    MockSyncServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/push", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                reply(exchange, push(SyncBatch.readFrom(
+                        exchange.getRequestBody())));
+            }
+        });
+        server.createContext("/pull", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                Map<String, String> query = parseQuery(
+                        exchange.getRequestURI().getQuery());
+                reply(exchange, pull(Long.parseLong(query.get("since")),
+                        Integer.parseInt(query.get("limit"))));
+            }
+        });
+        server.start();
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+    }
+
+    // stores a change as if another device had pushed it; returns the
+    // trip's state afterwards
+    synchronized TripChange put(TripChange change) {
+        TripChange current = trips.get(change.getSyncId());
+        if (current != null && !change.supersedes(current.getModified()))
+            return current;
+
+        TripChange stored = change.withRevision(++revision);
+        if (current != null)
+            log.remove(current.getRevision());
+        trips.put(stored.getSyncId(), stored);
+        log.put(stored.getRevision(), stored);
+        return stored;
+    }
+
+    synchronized TripChange get(String syncId) {
+        return trips.get(syncId);
+    }
+
+    // how many push requests arrived, and how many changes they held
+    synchronized int getPushCount() {
+        return pushes;
+    }
+
+    synchronized int getPushedChangeCount() {
+        return pushedChanges;
+    }
+
+    private synchronized SyncBatch push(SyncBatch batch) {
+        ++pushes;
+        pushedChanges += batch.getChanges().size();
+
+        List<TripChange> results = new ArrayList<TripChange>();
+        for (TripChange change : batch.getChanges())
+            results.add(put(change));
+        return new SyncBatch(revision, false, results);
+    }
+
+    private synchronized SyncBatch pull(long since, int limit) {
+        SortedMap<Long, TripChange> after = log.tailMap(since + 1);
+        List<TripChange> changes = new ArrayList<TripChange>();
+        long last = since;
+        for (TripChange change : after.values()) {
+            if (changes.size() == limit)
+                break;
+            changes.add(change);
+            last = change.getRevision();
+        }
+        return new SyncBatch(last, after.size() > changes.size(), changes);
+    }
+
+    private static void reply(HttpExchange exchange, SyncBatch batch)
+            throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        batch.writeTo(body);
+
+        exchange.getResponseHeaders().set("Content-Type",
+                HttpSyncTransport.CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, body.size());
+        OutputStream out = exchange.getResponseBody();
+        try {
+            body.writeTo(out);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<String, String>();
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            parameters.put(parameter.substring(0, equals),
+                    parameter.substring(equals + 1));
+        }
+        return parameters;
+    }
+}
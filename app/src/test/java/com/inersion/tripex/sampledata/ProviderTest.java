@@ -0,0 +1,68 @@
+package com.inersion.tripex.sampledata;
+
+import android.content.ContentValues;
+
+import com.inersion.tripex.BuildConfig;
+import com.inersion.tripex.sampledata.DatabaseDescription.Budget;
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+import org.junit.Before;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Base class of the tests that run TripExContentProvider under Robolectric:
+ * sets up a fresh provider before each test and builds the trips and
+ * budgets the tests insert.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public abstract class ProviderTest {
+    protected TripExContentProvider provider;
+
+    @Before
+    public void setUpProvider() {
+        provider = Robolectric.setupContentProvider(
+                TripExContentProvider.class, DatabaseDescription.AUTHORITY);
+    }
+
+    // a trip from Boston to Lisbon that departs and returns on depart,
+    // with only an airfare
+    protected static ContentValues trip(String name, String depart,
+                                        String airfare) {
+        ContentValues values = new ContentValues();
+        values.put(Trip.COLUMN_NAME, name);
+        values.put(Trip.COLUMN_FROM, "Boston");
+        values.put(Trip.COLUMN_TO, "Lisbon");
+        values.put(Trip.COLUMN_DEPART, depart);
+        values.put(Trip.COLUMN_RETURN, depart);
+        values.put(Trip.COLUMN_AIRFARE, airfare);
+        values.put(Trip.COLUMN_HOTEL, "");
+        values.put(Trip.COLUMN_RENTAL, "");
+        return values;
+    }
+
+    // a trip for tests that don't care about its date or cost
+    protected static ContentValues trip(String name) {
+        return trip(name, "2017-06-01", "820.00");
+    }
+
+    // a budget for every trip departing in period, alerting at the
+    // default percentage
+    protected static ContentValues periodBudget(String period,
+                                                long limitCents) {
+        ContentValues values = new ContentValues();
+        values.put(Budget.COLUMN_PERIOD, period);
+        values.put(Budget.COLUMN_LIMIT_CENTS, limitCents);
+        return values;
+    }
+
+    protected static ContentValues tripBudget(long tripId, long limitCents) {
+        ContentValues values = new ContentValues();
+        values.put(Budget.COLUMN_TRIP_ID, tripId);
+        values.put(Budget.COLUMN_LIMIT_CENTS, limitCents);
+        return values;
+    }
+}
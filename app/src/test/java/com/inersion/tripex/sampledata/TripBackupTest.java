@@ -0,0 +1,179 @@
+package com.inersion.tripex.sampledata;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.inersion.tripex.sampledata.DatabaseDescription.Backup;
+import com.inersion.tripex.sampledata.DatabaseDescription.Budget;
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that trips backed up through the provider are restored exactly,
+ * that a restore replaces the trips in place and recomputes the budgets,
+ * and that a damaged backup is rejected without touching the trips.
+ */
+public class TripBackupTest extends ProviderTest {
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("trips", ".backup");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void restoreReturnsTheBackedUpTrips() {
+        provider.insert(Trip.CONTENT_URI, trip("Lisbon", "2017-06-20", "250.00"));
+        ContentValues noHotel = trip("Z\u00fcrich", "2017-07-01", "99.50");
+        noHotel.putNull(Trip.COLUMN_HOTEL);
+        Uri zurich = provider.insert(Trip.CONTENT_URI, noHotel);
+        List<String> before = trips();
+
+        assertEquals(2, call(Backup.METHOD_BACKUP));
+        provider.delete(zurich, null, null);
+        provider.insert(Trip.CONTENT_URI, trip("Oslo", "2017-08-01", "10.00"));
+
+        assertEquals(2, call(Backup.METHOD_RESTORE));
+        assertEquals(before, trips());
+    }
+
+    @Test
+    public void restoreRecomputesTheBudgets() {
+        provider.insert(Trip.CONTENT_URI, trip("Lisbon", "2017-06-20", "100.00"));
+        Uri month = provider.insert(Budget.CONTENT_URI,
+                periodBudget("2017-06", 100000));
+        call(Backup.METHOD_BACKUP);
+
+        Uri oslo = provider.insert(Trip.CONTENT_URI,
+                trip("Oslo", "2017-06-21", "200.00"));
+        Uri osloBudget = provider.insert(Budget.CONTENT_URI,
+                tripBudget(Long.parseLong(oslo.getLastPathSegment()), 50000));
+        assertEquals(30000, spent(month));
+
+        call(Backup.METHOD_RESTORE);
+        assertEquals(10000, spent(month));
+
+        // Oslo isn't in the backup, so neither is its budget
+        Cursor cursor = provider.query(osloBudget, null, null, null, null);
+        try {
+            assertFalse(cursor.moveToFirst());
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void aDamagedBackupIsRejected() throws IOException {
+        provider.insert(Trip.CONTENT_URI, trip("Lisbon", "2017-06-20", "250.00"));
+        call(Backup.METHOD_BACKUP);
+        provider.insert(Trip.CONTENT_URI, trip("Oslo", "2017-08-01", "10.00"));
+        List<String> before = trips();
+
+        RandomAccessFile damaged = new RandomAccessFile(file, "rw");
+        try {
+            damaged.seek(damaged.length() / 2);
+            int b = damaged.read();
+            damaged.seek(damaged.length() / 2);
+            damaged.write(b ^ 0x10);
+        }
+        finally {
+            damaged.close();
+        }
+
+        try {
+            call(Backup.METHOD_RESTORE);
+            fail("A damaged backup was restored");
+        }
+        catch (IllegalArgumentException expected) {
+            // the trips are as they were
+        }
+        assertEquals(before, trips());
+    }
+
+    @Test
+    public void aFailedBackupLeavesTheTargetAlone() {
+        provider.insert(Trip.CONTENT_URI, trip("Lisbon", "2017-06-20", "250.00"));
+
+        // the snapshot can't be renamed over a directory
+        File directory = new File(file.getPath() + ".d");
+        assertTrue(directory.mkdir());
+        try {
+            provider.call(Backup.METHOD_BACKUP, directory.getPath(), null);
+            fail("Backed up over a directory");
+        }
+        catch (IllegalArgumentException expected) {
+            // the target is as it was, and no temporary file is left
+            assertTrue(directory.isDirectory());
+            for (File other : file.getParentFile().listFiles())
+                assertFalse(other.getName().startsWith(directory.getName()) &&
+                        other.getName().endsWith(".tmp"));
+        }
+        finally {
+            directory.delete();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aBackupNeedsAFile() {
+        provider.call(Backup.METHOD_BACKUP, null, null);
+    }
+
+    private long call(String method) {
+        Bundle result = provider.call(method, file.getPath(), null);
+        return result.getLong(Backup.EXTRA_TRIP_COUNT);
+    }
+
+    // every trip as a string of its columns, in _id order
+    private List<String> trips() {
+        String[] columns = {Trip._ID, Trip.COLUMN_NAME, Trip.COLUMN_FROM,
+                Trip.COLUMN_TO, Trip.COLUMN_DEPART, Trip.COLUMN_RETURN,
+                Trip.COLUMN_AIRFARE, Trip.COLUMN_HOTEL, Trip.COLUMN_RENTAL,
+                Trip.COLUMN_SYNC_ID};
+        Cursor cursor = provider.query(Trip.CONTENT_URI, columns, null, null,
+                Trip._ID);
+        try {
+            List<String> trips = new ArrayList<String>();
+            while (cursor.moveToNext()) {
+                StringBuilder trip = new StringBuilder();
+                for (int i = 0; i < columns.length; ++i)
+                    trip.append(cursor.getString(i)).append('|');
+                trips.add(trip.toString());
+            }
+            return trips;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    private long spent(Uri budget) {
+        Cursor cursor = provider.query(budget,
+                new String[] {Budget.COLUMN_SPENT_CENTS}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        }
+        finally {
+            cursor.close();
+        }
+    }
+}
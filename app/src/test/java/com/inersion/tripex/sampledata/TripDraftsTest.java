@@ -0,0 +1,73 @@
+package com.inersion.tripex.sampledata;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.inersion.tripex.sampledata.DatabaseDescription.Draft;
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a trip's draft goes when the trip does, so that no draft
+ * is left behind for a later trip with the same id to pick up.
+ */
+public class TripDraftsTest extends ProviderTest {
+    @Test
+    public void deletingATripDiscardsItsDraft() {
+        long id = insertTrip("Lisbon");
+        provider.insert(Draft.CONTENT_URI, draft(id, "Lisbon, again"));
+
+        provider.delete(Trip.buildTripUri(id), null, null);
+        assertFalse(hasDraft(id));
+    }
+
+    @Test
+    public void deletingTripsKeepsTheNewTripsDraft() {
+        long lisbon = insertTrip("Lisbon");
+        long oslo = insertTrip("Oslo");
+        provider.insert(Draft.CONTENT_URI, draft(lisbon, "Lisbon, again"));
+        provider.insert(Draft.CONTENT_URI, draft(oslo, "Oslo, again"));
+        provider.insert(Draft.CONTENT_URI, draft(Draft.NEW_TRIP_ID, "Porto"));
+
+        provider.delete(Trip.CONTENT_URI,
+                Trip.COLUMN_NAME + "=?", new String[] {"Lisbon"});
+        assertFalse(hasDraft(lisbon));
+        assertTrue(hasDraft(oslo));
+        assertTrue(hasDraft(Draft.NEW_TRIP_ID));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aDraftNeedsATripId() {
+        ContentValues values = draft(1, "Lisbon");
+        values.remove(Draft.COLUMN_TRIP_ID);
+        provider.insert(Draft.CONTENT_URI, values);
+    }
+
+    private long insertTrip(String name) {
+        Uri uri = provider.insert(Trip.CONTENT_URI, trip(name));
+        return Long.parseLong(uri.getLastPathSegment());
+    }
+
+    private boolean hasDraft(long tripId) {
+        Cursor cursor = provider.query(Draft.buildDraftUri(tripId),
+                null, null, null, null);
+        try {
+            return cursor.moveToFirst();
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    private static ContentValues draft(long tripId, String name) {
+        ContentValues values = new ContentValues();
+        values.put(Draft.COLUMN_TRIP_ID, tripId);
+        values.put(Draft.COLUMN_UPDATED, System.currentTimeMillis());
+        values.put(Trip.COLUMN_NAME, name);
+        return values;
+    }
+}
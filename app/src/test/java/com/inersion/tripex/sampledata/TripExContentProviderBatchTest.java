@@ -0,0 +1,193 @@
+package com.inersion.tripex.sampledata;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.inersion.tripex.sampledata.DatabaseDescription.Batch;
+import com.inersion.tripex.sampledata.DatabaseDescription.Budget;
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that the provider holds its change notifications while a batch
+ * scope is open and sends a single one when the scope closes.
+ */
+public class TripExContentProviderBatchTest extends ProviderTest {
+    private ShadowContentResolver contentResolver;
+
+    @Before
+    public void setUp() {
+        contentResolver = shadowOf(
+                RuntimeEnvironment.application.getContentResolver());
+    }
+
+    @Test
+    public void writesOutsideAScopeNotifyEachTime() {
+        provider.insert(Trip.CONTENT_URI, trip("Lisbon"));
+        provider.insert(Trip.CONTENT_URI, trip("Oslo"));
+
+        assertEquals(2, contentResolver.getNotifiedUris().size());
+    }
+
+    @Test
+    public void callScopeNotifiesOnceWhenItEnds() {
+        Bundle begin = provider.call(Batch.METHOD_BEGIN, null, null);
+        long batchId = begin.getLong(Batch.EXTRA_BATCH_ID);
+
+        for (int i = 0; i < 5; ++i)
+            provider.insert(Trip.CONTENT_URI, trip("Trip " + i));
+        assertTrue(contentResolver.getNotifiedUris().isEmpty());
+
+        provider.call(Batch.METHOD_END, String.valueOf(batchId), null);
+        assertNotified(Trip.CONTENT_URI);
+    }
+
+    @Test
+    public void uriScopeNotifiesTheParentWhenSeveralUrisChanged() {
+        Uri tripUri = provider.insert(Trip.CONTENT_URI, trip("Lisbon"));
+        contentResolver.getNotifiedUris().clear();
+
+        Uri batchUri = provider.insert(Batch.CONTENT_URI, null);
+        provider.update(tripUri, trip("Porto"), null, null);
+        provider.insert(Trip.CONTENT_URI, trip("Oslo"));
+        assertTrue(contentResolver.getNotifiedUris().isEmpty());
+
+        assertEquals(1, provider.delete(batchUri, null, null));
+        assertNotified(Trip.CONTENT_URI);
+    }
+
+    @Test
+    public void uriScopeNotifiesTheOneUriThatChanged() {
+        Uri tripUri = provider.insert(Trip.CONTENT_URI, trip("Lisbon"));
+        contentResolver.getNotifiedUris().clear();
+
+        Uri batchUri = provider.insert(Batch.CONTENT_URI, null);
+        provider.update(tripUri, trip("Porto"), null, null);
+        provider.update(tripUri, trip("Faro"), null, null);
+        provider.delete(batchUri, null, null);
+
+        assertNotified(tripUri);
+    }
+
+    @Test
+    public void nestedScopesNotifyWhenTheLastOneEnds() {
+        Uri outer = provider.insert(Batch.CONTENT_URI, null);
+        Uri inner = provider.insert(Batch.CONTENT_URI, null);
+        Uri tripUri = provider.insert(Trip.CONTENT_URI, trip("Lisbon"));
+
+        provider.delete(inner, null, null);
+        assertTrue(contentResolver.getNotifiedUris().isEmpty());
+
+        provider.delete(outer, null, null);
+        assertNotified(tripUri);
+    }
+
+    @Test
+    public void closingAnUnknownScopeDoesNothing() {
+        assertEquals(0, provider.delete(Batch.buildBatchUri(12345), null, null));
+        assertTrue(contentResolver.getNotifiedUris().isEmpty());
+    }
+
+    @Test
+    public void aScopeDoesNotHoldOtherThreadsWrites() throws Exception {
+        Uri batchUri = provider.insert(Batch.CONTENT_URI, null);
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                provider.insert(Trip.CONTENT_URI, trip("Lisbon"));
+            }
+        });
+        writer.start();
+        writer.join();
+        assertEquals(1, contentResolver.getNotifiedUris().size());
+
+        provider.delete(batchUri, null, null);
+        assertEquals(1, contentResolver.getNotifiedUris().size());
+    }
+
+    @Test
+    public void budgetNotificationsAreHeldToo() {
+        Uri batchUri = provider.insert(Batch.CONTENT_URI, null);
+        ContentValues budget = new ContentValues();
+        budget.put(Budget.COLUMN_PERIOD, "2017-06");
+        budget.put(Budget.COLUMN_LIMIT_CENTS, 100000);
+        provider.insert(Budget.CONTENT_URI, budget);
+        Uri tripUri = provider.insert(Trip.CONTENT_URI, trip("Lisbon"));
+        assertTrue(contentResolver.getNotifiedUris().isEmpty());
+
+        provider.delete(batchUri, null, null);
+        List<ShadowContentResolver.NotifiedUri> notified =
+                contentResolver.getNotifiedUris();
+        assertEquals(2, notified.size());
+        assertEquals(Budget.CONTENT_URI, notified.get(0).uri);
+        assertEquals(tripUri, notified.get(1).uri);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void endingAScopeNeedsItsId() {
+        provider.call(Batch.METHOD_END, null, null);
+    }
+
+    @Test
+    public void applyBatchNotifiesOnce() throws Exception {
+        ArrayList<ContentProviderOperation> operations =
+                new ArrayList<ContentProviderOperation>();
+        for (int i = 0; i < 5; ++i)
+            operations.add(ContentProviderOperation.newInsert(Trip.CONTENT_URI)
+                    .withValues(trip("Trip " + i)).build());
+
+        provider.applyBatch(operations);
+        assertNotified(Trip.CONTENT_URI);
+    }
+
+    @Test
+    public void applyBatchThatFailsNotifiesNothing() {
+        ArrayList<ContentProviderOperation> operations =
+                new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(Trip.CONTENT_URI)
+                .withValues(trip("Lisbon")).build());
+        operations.add(ContentProviderOperation.newUpdate(
+                Trip.buildTripUri(12345)).withValues(trip("Porto"))
+                .withExpectedCount(1).build());
+
+        try {
+            provider.applyBatch(operations);
+            fail("The update of a missing trip succeeded");
+        }
+        catch (OperationApplicationException expected) {
+            // the insert was rolled back
+        }
+        assertTrue(contentResolver.getNotifiedUris().isEmpty());
+
+        Cursor cursor = provider.query(Trip.CONTENT_URI, null, null, null, null);
+        try {
+            assertEquals(0, cursor.getCount());
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    // asserts that exactly one notification, of uri, was sent
+    private void assertNotified(Uri uri) {
+        List<ShadowContentResolver.NotifiedUri> notified =
+                contentResolver.getNotifiedUris();
+        assertEquals(1, notified.size());
+        assertEquals(uri, notified.get(0).uri);
+    }
+}
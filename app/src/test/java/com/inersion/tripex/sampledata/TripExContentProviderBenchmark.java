@@ -0,0 +1,166 @@
+package com.inersion.tripex.sampledata;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the real TripExContentProvider and TripExDatabaseHelper against
+ * Robolectric's SQLite, which is the native library on the build host, and
+ * measures single inserts, bulk loads, list queries and ONE_TRIP queries.
+ *
+ * Each benchmark prints its throughput and latency percentiles and fails
+ * only if a percentile exceeds a budget set well above normal results, so
+ * that a gross regression breaks the build but a noisy host doesn't.
+ */
+public class TripExContentProviderBenchmark extends ProviderTest {
+    private static final int TRIPS = 10000; // rows for the query benchmarks
+    private static final int WARMUP = 50; // untimed runs before measuring
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void singleInsert() {
+        LatencyHistogram latency = new LatencyHistogram();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < WARMUP + 1000; ++i) {
+            ContentValues values = trip(i);
+            long insertStart = System.nanoTime();
+            Uri uri = provider.insert(Trip.CONTENT_URI, values);
+            if (i >= WARMUP)
+                latency.record(System.nanoTime() - insertStart, 1);
+            assertNotNull(uri);
+        }
+
+        report("single insert", latency, System.nanoTime() - start);
+        assertBudget(latency, 99, 20000);
+    }
+
+    @Test
+    public void bulkLoad() {
+        LatencyHistogram latency = new LatencyHistogram();
+        long start = System.nanoTime();
+
+        for (int batch = 0; batch < 10; ++batch) {
+            ContentValues[] values = new ContentValues[1000];
+            for (int i = 0; i < values.length; ++i)
+                values[i] = trip(batch * values.length + i);
+
+            long batchStart = System.nanoTime();
+            assertEquals(values.length,
+                    provider.bulkInsert(Trip.CONTENT_URI, values));
+            latency.record(System.nanoTime() - batchStart, values.length);
+        }
+
+        report("bulk load (1000 rows)", latency, System.nanoTime() - start);
+        assertBudget(latency, 50, 2000000);
+        assertEquals(10000, countTrips());
+    }
+
+    @Test
+    public void listQuery() {
+        loadTrips();
+        LatencyHistogram latency = new LatencyHistogram();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < 5 + 50; ++i) {
+            long queryStart = System.nanoTime();
+            Cursor cursor = provider.query(Trip.CONTENT_URI, null, null, null,
+                    Trip.SORT_BY_NAME);
+            // fill the whole window, as the list's snapshot does
+            while (cursor.moveToNext())
+                cursor.getString(1);
+            int count = cursor.getCount();
+            cursor.close();
+            if (i >= 5)
+                latency.record(System.nanoTime() - queryStart, count);
+            assertEquals(TRIPS, count);
+        }
+
+        report("list query (" + TRIPS + " rows)", latency,
+                System.nanoTime() - start);
+        assertBudget(latency, 50, 2000000);
+    }
+
+    @Test
+    public void oneTripQuery() {
+        loadTrips();
+        LatencyHistogram latency = new LatencyHistogram();
+        long start = System.nanoTime();
+
+        for (int i = 0; i < WARMUP + 2000; ++i) {
+            Uri uri = ContentUris.withAppendedId(Trip.CONTENT_URI,
+                    1 + random.nextInt(TRIPS));
+            long queryStart = System.nanoTime();
+            Cursor cursor = provider.query(uri, null, null, null, null);
+            assertTrue(cursor.moveToFirst());
+            cursor.close();
+            if (i >= WARMUP)
+                latency.record(System.nanoTime() - queryStart, 1);
+        }
+
+        report("ONE_TRIP query", latency, System.nanoTime() - start);
+        assertBudget(latency, 99, 20000);
+    }
+
+    private void loadTrips() {
+        ContentValues[] values = new ContentValues[TRIPS];
+        for (int i = 0; i < TRIPS; ++i)
+            values[i] = trip(i);
+        provider.bulkInsert(Trip.CONTENT_URI, values);
+    }
+
+    private int countTrips() {
+        Cursor cursor = provider.query(Trip.CONTENT_URI,
+                new String[] {Trip._ID}, null, null, null);
+        try {
+            return cursor.getCount();
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    private ContentValues trip(int i) {
+        ContentValues values = new ContentValues();
+        values.put(Trip.COLUMN_NAME, "Trip " + random.nextInt(TRIPS) + "-" + i);
+        values.put(Trip.COLUMN_FROM, "Boston");
+        values.put(Trip.COLUMN_TO, "Paris");
+        values.put(Trip.COLUMN_DEPART, "2017-06-01");
+        values.put(Trip.COLUMN_RETURN, "2017-06-10");
+        values.put(Trip.COLUMN_AIRFARE, String.valueOf(random.nextInt(2000)));
+        values.put(Trip.COLUMN_HOTEL, String.valueOf(random.nextInt(3000)));
+        values.put(Trip.COLUMN_RENTAL, "");
+        return values;
+    }
+
+    private static void report(String name, LatencyHistogram latency,
+                               long elapsedNanos) {
+        System.out.println(String.format(Locale.US,
+                "%s: %d ops, %.0f ops/s, %d rows; us mean %d p50 %d p90 %d " +
+                        "p99 %d max %d",
+                name, latency.getCount(),
+                latency.getCount() / (elapsedNanos / 1e9), latency.getRows(),
+                latency.getMeanMicros(), latency.getPercentileMicros(50),
+                latency.getPercentileMicros(90),
+                latency.getPercentileMicros(99), latency.getMaxMicros()));
+    }
+
+    private static void assertBudget(LatencyHistogram latency,
+                                     double percentile, long budgetMicros) {
+        long micros = latency.getPercentileMicros(percentile);
+        assertTrue("p" + (int) percentile + " " + micros + "us exceeds " +
+                budgetMicros + "us", micros <= budgetMicros);
+    }
+}
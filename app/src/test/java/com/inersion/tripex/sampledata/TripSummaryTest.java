@@ -0,0 +1,147 @@
+package com.inersion.tripex.sampledata;
+
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.inersion.tripex.sampledata.DatabaseDescription.Summary;
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that the provider's summary row shows the next trip and this
+ * year's spending, and that it's only announced as changed when one of
+ * those figures changes.
+ */
+public class TripSummaryTest extends ProviderTest {
+    private ShadowContentResolver contentResolver;
+
+    @Before
+    public void setUp() {
+        contentResolver = shadowOf(
+                RuntimeEnvironment.application.getContentResolver());
+    }
+
+    @Test
+    public void showsTheNextTripAndThisYearsSpending() {
+        provider.insert(Trip.CONTENT_URI, trip("Today", daysFromNow(0), "100.50"));
+        provider.insert(Trip.CONTENT_URI, trip("Last year", lastYear(), "999.00"));
+
+        Cursor cursor = querySummary();
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Today", getString(cursor, Summary.COLUMN_NEXT_NAME));
+            assertEquals(daysFromNow(0),
+                    getString(cursor, Summary.COLUMN_NEXT_DEPART));
+            assertEquals(10050, cursor.getLong(cursor.getColumnIndex(
+                    Summary.COLUMN_YEAR_SPEND_CENTS)));
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void showsNoTripWhenNoneIsUpcoming() {
+        provider.insert(Trip.CONTENT_URI, trip("Last year", lastYear(), "999.00"));
+
+        Cursor cursor = querySummary();
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertNull(getString(cursor, Summary.COLUMN_NEXT_NAME));
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void ignoresTripsWithoutAnIsoDate() {
+        // free text sorts after every yyyy-MM-dd date, so it would look
+        // upcoming, and this year's, however old the trip is
+        provider.insert(Trip.CONTENT_URI, trip("Typed", "June 1", "100.00"));
+        provider.insert(Trip.CONTENT_URI, trip("Bad day",
+                Calendar.getInstance().get(Calendar.YEAR) + "-02-30", "200.00"));
+
+        Cursor cursor = querySummary();
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertNull(getString(cursor, Summary.COLUMN_NEXT_NAME));
+            assertEquals(0, cursor.getLong(cursor.getColumnIndex(
+                    Summary.COLUMN_YEAR_SPEND_CENTS)));
+        }
+        finally {
+            cursor.close();
+        }
+        assertFalse(TripSummary.isRelevant("June 1"));
+    }
+
+    @Test
+    public void tripsFromEarlierYearsDontRecomputeTheSummary() {
+        provider.insert(Trip.CONTENT_URI, trip("Today", daysFromNow(0), "100.50"));
+        querySummary().close();
+        contentResolver.getNotifiedUris().clear();
+
+        provider.insert(Trip.CONTENT_URI, trip("Last year", lastYear(), "999.00"));
+        querySummary().close();
+        assertFalse(summaryNotified());
+    }
+
+    @Test
+    public void onlyChangedFiguresAreAnnounced() {
+        Uri today = provider.insert(Trip.CONTENT_URI,
+                trip("Today", daysFromNow(0), "100.50"));
+        querySummary().close();
+        assertTrue(summaryNotified());
+        contentResolver.getNotifiedUris().clear();
+
+        // a later trip with no cost changes neither figure
+        provider.insert(Trip.CONTENT_URI, trip("Later", daysFromNow(1), ""));
+        querySummary().close();
+        assertFalse(summaryNotified());
+
+        // renaming the next trip does
+        provider.update(today, trip("Renamed", daysFromNow(0), "100.50"),
+                null, null);
+        querySummary().close();
+        assertTrue(summaryNotified());
+    }
+
+    private Cursor querySummary() {
+        return provider.query(Summary.CONTENT_URI, null, null, null, null);
+    }
+
+    private boolean summaryNotified() {
+        for (ShadowContentResolver.NotifiedUri notified :
+                contentResolver.getNotifiedUris()) {
+            if (notified.uri.equals(Summary.CONTENT_URI))
+                return true;
+        }
+        return false;
+    }
+
+    private static String getString(Cursor cursor, String column) {
+        return cursor.getString(cursor.getColumnIndex(column));
+    }
+
+    private static String daysFromNow(int days) {
+        Calendar date = Calendar.getInstance();
+        date.add(Calendar.DAY_OF_MONTH, days);
+        return new SimpleDateFormat("yyyy-MM-dd", Locale.US)
+                .format(date.getTime());
+    }
+
+    private static String lastYear() {
+        return (Calendar.getInstance().get(Calendar.YEAR) - 1) + "-06-01";
+    }
+}
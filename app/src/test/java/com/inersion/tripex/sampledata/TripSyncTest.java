@@ -0,0 +1,196 @@
+package com.inersion.tripex.sampledata;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import com.inersion.tripex.core.Money;
+import com.inersion.tripex.core.TripChange;
+import com.inersion.tripex.sampledata.DatabaseDescription.Trip;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Syncs the provider with MockSyncServer over HTTP and checks that only
+ * changed trips travel, that the server's changes are applied, and that
+ * a conflict goes to the later edit.
+ */
+public class TripSyncTest extends ProviderTest {
+    private MockSyncServer server;
+    private HttpSyncTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockSyncServer();
+        transport = new HttpSyncTransport(server.getUrl());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void onlyDirtyTripsArePushed() throws Exception {
+        Uri lisbon = provider.insert(Trip.CONTENT_URI, trip("Lisbon"));
+        provider.insert(Trip.CONTENT_URI, trip("Oslo"));
+        provider.getSync().sync(transport);
+
+        assertEquals(2, server.getPushedChangeCount());
+        TripChange stored = server.get(readString(lisbon, Trip.COLUMN_SYNC_ID));
+        assertEquals("Lisbon", stored.getTrip().getName());
+        assertEquals(0, readLong(lisbon, Trip.COLUMN_DIRTY));
+        assertEquals(stored.getRevision(), readLong(lisbon, Trip.COLUMN_REVISION));
+
+        // nothing changed, so nothing is sent
+        provider.getSync().sync(transport);
+        assertEquals(2, server.getPushedChangeCount());
+
+        provider.update(lisbon, trip("Lisbon again"), null, null);
+        provider.getSync().sync(transport);
+        assertEquals(3, server.getPushedChangeCount());
+        assertEquals("Lisbon again", server.get(readString(lisbon,
+                Trip.COLUMN_SYNC_ID)).getTrip().getName());
+    }
+
+    @Test
+    public void aCancelledSyncStopsBeforeTheNextBatch() throws Exception {
+        provider.insert(Trip.CONTENT_URI, trip("Lisbon"));
+        CancellationSignal signal = new CancellationSignal();
+        signal.cancel();
+
+        try {
+            provider.getSync().sync(transport, signal);
+            fail("A cancelled sync ran");
+        }
+        catch (OperationCanceledException expected) {
+            // nothing was sent
+        }
+        assertEquals(0, server.getPushCount());
+
+        // the next sync sends what this one didn't
+        provider.getSync().sync(transport);
+        assertEquals(1, server.getPushedChangeCount());
+    }
+
+    @Test
+    public void remoteChangesAreApplied() throws Exception {
+        server.put(TripChange.update("remote1", TripChange.NO_REVISION,
+                1000, coreTrip("Rome")));
+        provider.getSync().sync(transport);
+
+        Uri rome = findTrip("remote1");
+        assertNotNull(rome);
+        assertEquals("Rome", readString(rome, Trip.COLUMN_NAME));
+        assertEquals(0, readLong(rome, Trip.COLUMN_DIRTY));
+        assertEquals(0, server.getPushCount()); // applying it isn't an edit
+
+        server.put(TripChange.deletion("remote1", TripChange.NO_REVISION, 2000));
+        provider.getSync().sync(transport);
+        assertNull(findTrip("remote1"));
+    }
+
+    @Test
+    public void pullsComeInBatches() throws Exception {
+        for (int i = 0; i < TripSync.BATCH_SIZE * 2 + 1; ++i)
+            server.put(TripChange.update("remote" + i, TripChange.NO_REVISION,
+                    1000, coreTrip("Trip " + i)));
+        provider.getSync().sync(transport);
+
+        Cursor cursor = provider.query(Trip.CONTENT_URI, null, null, null, null);
+        try {
+            assertEquals(TripSync.BATCH_SIZE * 2 + 1, cursor.getCount());
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void aLaterRemoteEditWins() throws Exception {
+        Uri trip = provider.insert(Trip.CONTENT_URI, trip("Lisbon"));
+        provider.getSync().sync(transport);
+        String syncId = readString(trip, Trip.COLUMN_SYNC_ID);
+
+        provider.update(trip, trip("Local edit"), null, null);
+        server.put(TripChange.update(syncId, TripChange.NO_REVISION,
+                System.currentTimeMillis() + 60000, coreTrip("Remote edit")));
+        provider.getSync().sync(transport);
+
+        assertEquals("Remote edit", readString(trip, Trip.COLUMN_NAME));
+        assertEquals(0, readLong(trip, Trip.COLUMN_DIRTY));
+        assertEquals("Remote edit", server.get(syncId).getTrip().getName());
+    }
+
+    @Test
+    public void aLaterLocalEditWins() throws Exception {
+        Uri trip = provider.insert(Trip.CONTENT_URI, trip("Lisbon"));
+        provider.getSync().sync(transport);
+        String syncId = readString(trip, Trip.COLUMN_SYNC_ID);
+
+        server.put(TripChange.update(syncId, TripChange.NO_REVISION,
+                readLong(trip, Trip.COLUMN_MODIFIED) + 1, coreTrip("Remote edit")));
+        Thread.sleep(5);
+        provider.update(trip, trip("Local edit"), null, null);
+        provider.getSync().sync(transport);
+
+        assertEquals("Local edit", readString(trip, Trip.COLUMN_NAME));
+        assertEquals("Local edit", server.get(syncId).getTrip().getName());
+    }
+
+    @Test
+    public void deletionsArePushedOnce() throws Exception {
+        Uri trip = provider.insert(Trip.CONTENT_URI, trip("Lisbon"));
+        provider.getSync().sync(transport);
+        String syncId = readString(trip, Trip.COLUMN_SYNC_ID);
+
+        provider.delete(trip, null, null);
+        provider.getSync().sync(transport);
+        assertTrue(server.get(syncId).isDeletion());
+
+        int pushed = server.getPushedChangeCount();
+        provider.getSync().sync(transport);
+        assertEquals(pushed, server.getPushedChangeCount());
+    }
+
+    // the local trip with the given sync id, or null
+    private Uri findTrip(String syncId) {
+        Cursor cursor = provider.query(Trip.CONTENT_URI,
+                new String[] {Trip._ID}, Trip.COLUMN_SYNC_ID + "=?",
+                new String[] {syncId}, null);
+        try {
+            return cursor.moveToFirst() ?
+                    Trip.buildTripUri(cursor.getLong(0)) : null;
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    private String readString(Uri trip, String column) {
+        Cursor cursor = provider.query(trip, new String[] {column}, null,
+                null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(0);
+        }
+        finally {
+            cursor.close();
+        }
+    }
+
+    private long readLong(Uri trip, String column) {
+        return Long.parseLong(readString(trip, column));
+    }
+
+    private static com.inersion.tripex.core.Trip coreTrip(String name) {
+        return new com.inersion.tripex.core.Trip(
+                com.inersion.tripex.core.Trip.NO_ID, name, "Boston", "Lisbon",
+                "2017-06-01", "2017-06-10", Money.parse("850"), null, null);
+    }
+}
@@ -0,0 +1,128 @@
+package com.inersion.tripex.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the work the app does per trip: parsing costs, totalling
+ * trips, reporting on their spending and importing them from CSV.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TripBenchmarks {
+    private static final String[] CITIES = {"Boston", "Paris", "Tokyo",
+            "Rome", "Sydney", "Denver", "Lisbon", "Toronto"};
+
+    @Param({"1000", "10000", "100000"})
+    public int trips;
+
+    private String[] costs; // three cost fields per trip, as stored
+    private List<Trip> tripList;
+    private String csv;
+    private TripAnalytics analytics;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        costs = new String[3 * trips];
+        tripList = new ArrayList<Trip>(trips);
+        StringBuilder csvText = new StringBuilder(
+                "name,from,to,depart,return,airfare,hotel,rental\n");
+
+        for (int i = 0; i < trips; ++i) {
+            for (int j = 0; j < 3; ++j) {
+                int cents = random.nextInt(200000);
+                costs[3 * i + j] = (cents % 3 == 0) ? "" :
+                        (cents % 3 == 1) ? String.valueOf(cents / 100) :
+                                Money.ofCents(cents).toString();
+            }
+
+            String to = CITIES[random.nextInt(CITIES.length)];
+            String depart = String.format("20%02d-%02d-%02d",
+                    14 + random.nextInt(5), 1 + random.nextInt(12),
+                    1 + random.nextInt(28));
+            Trip trip = new Trip(i, to + " trip " + i, "Boston", to, depart,
+                    depart, Money.parseOrZero(costs[3 * i]),
+                    Money.parseOrZero(costs[3 * i + 1]),
+                    Money.parseOrZero(costs[3 * i + 2]));
+            tripList.add(trip);
+
+            csvText.append('"').append(trip.getName()).append("\",")
+                    .append(trip.getFrom()).append(',').append(trip.getTo())
+                    .append(',').append(depart).append(',').append(depart)
+                    .append(',').append(costs[3 * i]).append(',')
+                    .append(costs[3 * i + 1]).append(',')
+                    .append(costs[3 * i + 2]).append('\n');
+        }
+        csv = csvText.toString();
+        analytics = new TripAnalytics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        analytics.shutdown();
+    }
+
+    // what the list and detail screens do to show each trip's total
+    @Benchmark
+    public long parseCosts() {
+        long cents = 0;
+        for (String cost : costs)
+            cents += Money.parseOrZero(cost).getCents();
+        return cents;
+    }
+
+    // the same with the double arithmetic the app used before Money
+    @Benchmark
+    public double parseCostsAsDoubles() {
+        double total = 0;
+        for (String cost : costs) {
+            if (!cost.isEmpty())
+                total += Double.parseDouble(cost);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public TripTotals total() {
+        return TripAggregation.total(tripList);
+    }
+
+    @Benchmark
+    public Map<String, TripTotals> totalByMonth() {
+        return TripAggregation.byMonth(tripList);
+    }
+
+    // percentiles per destination and monthly trends on every core
+    @Benchmark
+    public SpendReport spendReport() throws InterruptedException {
+        return analytics.run(tripList);
+    }
+
+    @Benchmark
+    public List<Trip> importCsv() throws IOException, TripImportException {
+        return new TripCsvParser().parse(new StringReader(csv));
+    }
+}
@@ -0,0 +1,173 @@
+// Money.java
+// An exact amount of US dollars, held as a whole number of cents so that
+// adding up costs never accumulates floating-point error
+package com.inersion.tripex.core;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+public final class Money implements Comparable<Money> {
+    public static final Money ZERO = new Money(0);
+
+    private final long cents;
+
+    private Money(long cents) {
+        this.cents = cents;
+    }
+
+    public static Money ofCents(long cents) {
+        return (cents == 0) ? ZERO : new Money(cents);
+    }
+
+    // parses an amount as typed into a cost field: optional surrounding
+    // spaces, an optional '$', digits with optional ',' grouping in
+    // threes and up to two decimals (further decimals are rounded half
+    // up); an empty string is zero
+    public static Money parse(String text) {
+        return parse(text, '.', ',');
+    }
+
+    // like parse, but with the locale's decimal separator: in locales that
+    // write "12,50", ',' is the decimal point and '.' groups thousands
+    public static Money parse(String text, Locale locale) {
+        return usesDecimalComma(locale) ?
+                parse(text, ',', '.') : parse(text, '.', ',');
+    }
+
+    private static Money parse(String text, char point, char grouping) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) == ' ')
+            ++start;
+        while (end > start && text.charAt(end - 1) == ' ')
+            --end;
+
+        if (start == end)
+            return ZERO;
+        if (text.charAt(start) == '$')
+            ++start;
+
+        long dollars = 0;
+        long cents = 0;
+        int digits = 0; // digits seen, before and after the point
+        int decimals = -1; // digits after the point, or -1 before it
+        int group = -1; // digits since the last grouping separator, if any
+
+        for (int i = start; i < end; ++i) {
+            char c = text.charAt(i);
+
+            if (c >= '0' && c <= '9') {
+                ++digits;
+                if (decimals < 0) {
+                    if (group >= 0)
+                        ++group;
+                    if (dollars > (Long.MAX_VALUE / 100 - 9) / 10)
+                        throw new NumberFormatException(
+                                "Amount too large: \"" + text + "\"");
+                    dollars = dollars * 10 + (c - '0');
+                }
+                else if (decimals < 2) {
+                    cents = cents * 10 + (c - '0');
+                    ++decimals;
+                }
+                else if (decimals++ == 2 && c >= '5') {
+                    ++cents; // round half up on the first dropped digit
+                }
+            }
+            else if (c == point && decimals < 0 && (group < 0 || group == 3)) {
+                decimals = 0;
+            }
+            else if (c == grouping && decimals < 0 && digits > 0 &&
+                    (group < 0 || group == 3)) {
+                group = 0; // grouping separator; otherwise ignored
+            }
+            else {
+                throw new NumberFormatException(
+                        "Not an amount: \"" + text + "\"");
+            }
+        }
+
+        // a group must be three digits, so "12,50" typed with the wrong
+        // decimal separator is rejected rather than read as 1250
+        if (digits == 0 || (decimals < 0 && group >= 0 && group != 3))
+            throw new NumberFormatException("Not an amount: \"" + text + "\"");
+
+        if (decimals == 1)
+            cents *= 10; // "12.5" means 50 cents
+        else if (decimals <= 0)
+            cents = 0;
+        return ofCents(dollars * 100 + cents);
+    }
+
+    // like parse, but malformed amounts count as zero, as the app always
+    // has for costs it can't read
+    public static Money parseOrZero(String text) {
+        if (text == null)
+            return ZERO;
+
+        try {
+            return parse(text);
+        }
+        catch (NumberFormatException e) {
+            return ZERO;
+        }
+    }
+
+    // the amount as toString writes it, but with the locale's decimal
+    // separator, so parse with the same locale reads it back
+    public String toString(Locale locale) {
+        String text = toString();
+        return usesDecimalComma(locale) ? text.replace('.', ',') : text;
+    }
+
+    private static boolean usesDecimalComma(Locale locale) {
+        return DecimalFormatSymbols.getInstance(locale)
+                .getDecimalSeparator() == ',';
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    public boolean isZero() {
+        return cents == 0;
+    }
+
+    public Money plus(Money other) {
+        return ofCents(cents + other.cents);
+    }
+
+    public Money minus(Money other) {
+        return ofCents(cents - other.cents);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return (cents < other.cents) ? -1 : (cents == other.cents ? 0 : 1);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Money && ((Money) other).cents == cents;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (cents ^ (cents >>> 32));
+    }
+
+    // the amount with two decimals and no grouping, e.g. "1234.50"; parse
+    // reads non-negative amounts back unchanged
+    @Override
+    public String toString() {
+        long abs = Math.abs(cents);
+        long fraction = abs % 100;
+        StringBuilder text = new StringBuilder(24);
+        if (cents < 0)
+            text.append('-');
+        text.append(abs / 100).append('.');
+        if (fraction < 10)
+            text.append('0');
+        return text.append(fraction).toString();
+    }
+}
@@ -0,0 +1,84 @@
+// SpendDistribution.java
+// The trip totals of a group, kept sorted so that any percentile can be
+// read exactly and two groups merge in linear time
+package com.inersion.tripex.core;
+
+import java.util.Arrays;
+
+public final class SpendDistribution {
+    public static final SpendDistribution EMPTY =
+            new SpendDistribution(new long[0], 0);
+
+    private final long[] sortedCents;
+    private final long totalCents;
+
+    private SpendDistribution(long[] sortedCents, long totalCents) {
+        this.sortedCents = sortedCents;
+        this.totalCents = totalCents;
+    }
+
+    // the distribution of cents[0, count), which it sorts in place
+    static SpendDistribution of(long[] cents, int count) {
+        long[] sorted = (count == cents.length) ? cents :
+                Arrays.copyOf(cents, count);
+        Arrays.sort(sorted);
+
+        long total = 0;
+        for (long value : sorted)
+            total += value;
+        return new SpendDistribution(sorted, total);
+    }
+
+    // the distribution of both groups' trips together
+    static SpendDistribution merge(SpendDistribution first,
+                                   SpendDistribution second) {
+        if (first.sortedCents.length == 0)
+            return second;
+        if (second.sortedCents.length == 0)
+            return first;
+
+        long[] a = first.sortedCents;
+        long[] b = second.sortedCents;
+        long[] merged = new long[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < merged.length; ++k)
+            merged[k] = (j >= b.length || (i < a.length && a[i] <= b[j])) ?
+                    a[i++] : b[j++];
+        return new SpendDistribution(merged, first.totalCents + second.totalCents);
+    }
+
+    public int getCount() {
+        return sortedCents.length;
+    }
+
+    public Money getTotal() {
+        return Money.ofCents(totalCents);
+    }
+
+    // the average total per trip, rounded down to the cent
+    public Money getAverage() {
+        return (sortedCents.length == 0) ? Money.ZERO :
+                Money.ofCents(totalCents / sortedCents.length);
+    }
+
+    public Money getMin() {
+        return getPercentile(0);
+    }
+
+    public Money getMax() {
+        return getPercentile(100);
+    }
+
+    // the nearest-rank percentile, e.g. 50 for the median; zero for an
+    // empty group
+    public Money getPercentile(int percent) {
+        if (percent < 0 || percent > 100)
+            throw new IllegalArgumentException("Not a percentile: " + percent);
+        if (sortedCents.length == 0)
+            return Money.ZERO;
+
+        int rank = (int) Math.ceil(percent / 100.0 * sortedCents.length);
+        return Money.ofCents(sortedCents[Math.max(rank, 1) - 1]);
+    }
+}
@@ -0,0 +1,66 @@
+// SpendReport.java
+// What trips cost overall, per destination and per departure month,
+// as computed by TripAnalytics
+package com.inersion.tripex.core;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+public final class SpendReport {
+    private final SpendDistribution overall;
+    private final SortedMap<String, SpendDistribution> byDestination;
+    private final SortedMap<String, Money> byMonth;
+    private final SortedMap<String, Money> monthOverMonth;
+
+    SpendReport(SpendDistribution overall,
+                SortedMap<String, SpendDistribution> byDestination,
+                SortedMap<String, Money> byMonth) {
+        this.overall = overall;
+        this.byDestination = Collections.unmodifiableSortedMap(byDestination);
+        this.byMonth = Collections.unmodifiableSortedMap(byMonth);
+
+        SortedMap<String, Money> changes = new TreeMap<String, Money>();
+        for (Map.Entry<String, Money> month : byMonth.entrySet()) {
+            Money previous = byMonth.get(previousMonth(month.getKey()));
+            changes.put(month.getKey(), month.getValue().minus(
+                    (previous != null) ? previous : Money.ZERO));
+        }
+        monthOverMonth = Collections.unmodifiableSortedMap(changes);
+    }
+
+    // every trip's total
+    public SpendDistribution getOverall() {
+        return overall;
+    }
+
+    // the totals of the trips to each destination, sorted by destination
+    public SortedMap<String, SpendDistribution> getByDestination() {
+        return byDestination;
+    }
+
+    // total spend per departure month (yyyy-MM), in chronological order;
+    // trips without a readable departure date are only in the other figures
+    public SortedMap<String, Money> getByMonth() {
+        return byMonth;
+    }
+
+    // each month's spend minus the previous calendar month's, which is
+    // zero if no trip departed then
+    public SortedMap<String, Money> getMonthOverMonth() {
+        return monthOverMonth;
+    }
+
+    // the yyyy-MM month before month
+    static String previousMonth(String month) {
+        int year = Integer.parseInt(month.substring(0, 4));
+        int monthOfYear = Integer.parseInt(month.substring(5, 7)) - 1;
+        if (monthOfYear == 0) {
+            --year;
+            monthOfYear = 12;
+        }
+        return String.format(Locale.US, "%04d-%02d", year, monthOfYear);
+    }
+}
@@ -0,0 +1,119 @@
+// SyncBatch.java
+// A batch of TripChanges and the binary form it travels in: a gzipped
+// stream of fixed-order fields, so a batch of trips whose fields repeat
+// (the same cities, dates and blank costs) costs little on a metered or
+// roaming connection
+package com.inersion.tripex.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public final class SyncBatch {
+    // "TXSY" and the format version, read before anything else
+    private static final int MAGIC = 0x54585359;
+    private static final int VERSION = 1;
+
+    private final long revision;
+    private final boolean more;
+    private final List<TripChange> changes;
+
+    // revision and more only mean something in a pull's reply; a batch
+    // of local changes passes TripChange.NO_REVISION and false
+    public SyncBatch(long revision, boolean more, List<TripChange> changes) {
+        this.revision = revision;
+        this.more = more;
+        this.changes = Collections.unmodifiableList(
+                new ArrayList<TripChange>(changes));
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public boolean hasMore() {
+        return more;
+    }
+
+    public List<TripChange> getChanges() {
+        return changes;
+    }
+
+    // writes the batch to out, compressed; out is left open
+    public void writeTo(OutputStream out) throws IOException {
+        GZIPOutputStream zip = new GZIPOutputStream(out);
+        DataOutputStream data = new DataOutputStream(zip);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeLong(revision);
+        data.writeBoolean(more);
+        data.writeInt(changes.size());
+
+        for (TripChange change : changes) {
+            data.writeUTF(change.getSyncId());
+            data.writeLong(change.getRevision());
+            data.writeLong(change.getModified());
+            data.writeBoolean(change.isDeletion());
+            if (!change.isDeletion()) {
+                Trip trip = change.getTrip();
+                data.writeUTF(trip.getName());
+                data.writeUTF(trip.getFrom());
+                data.writeUTF(trip.getTo());
+                data.writeUTF(trip.getDepart());
+                data.writeUTF(trip.getReturnDate());
+                data.writeLong(trip.getAirfare().getCents());
+                data.writeLong(trip.getHotel().getCents());
+                data.writeLong(trip.getRental().getCents());
+            }
+        }
+
+        data.flush();
+        zip.finish();
+    }
+
+    // reads a batch written by writeTo; throws IOException if in holds
+    // something else or ends early
+    public static SyncBatch readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new GZIPInputStream(in));
+        if (data.readInt() != MAGIC)
+            throw new IOException("Not a sync batch");
+        int version = data.readUnsignedByte();
+        if (version != VERSION)
+            throw new IOException("Unsupported sync batch version " + version);
+
+        long revision = data.readLong();
+        boolean more = data.readBoolean();
+        int count = data.readInt();
+        if (count < 0)
+            throw new IOException("Bad change count " + count);
+
+        List<TripChange> changes = new ArrayList<TripChange>(
+                Math.min(count, 1024));
+        for (int i = 0; i < count; ++i) {
+            String syncId = data.readUTF();
+            long changeRevision = data.readLong();
+            long modified = data.readLong();
+            if (data.readBoolean()) {
+                changes.add(TripChange.deletion(syncId, changeRevision,
+                        modified));
+            }
+            else {
+                Trip trip = new Trip(Trip.NO_ID, data.readUTF(),
+                        data.readUTF(), data.readUTF(), data.readUTF(),
+                        data.readUTF(), Money.ofCents(data.readLong()),
+                        Money.ofCents(data.readLong()),
+                        Money.ofCents(data.readLong()));
+                changes.add(TripChange.update(syncId, changeRevision,
+                        modified, trip));
+            }
+        }
+        return new SyncBatch(revision, more, changes);
+    }
+}
@@ -0,0 +1,17 @@
+// SyncTransport.java
+// Carries SyncBatches to and from the sync server
+package com.inersion.tripex.core;
+
+import java.io.IOException;
+
+public interface SyncTransport {
+    // sends local changes; the reply holds the server's state of each of
+    // their trips afterwards, which is the change itself if it was
+    // accepted and the newer edit that beat it if not
+    SyncBatch push(SyncBatch changes) throws IOException;
+
+    // the changes the server accepted after revision since, oldest first
+    // and at most limit of them; the reply's revision is the last one it
+    // covers, and hasMore() says whether to ask again from there
+    SyncBatch pull(long since, int limit) throws IOException;
+}
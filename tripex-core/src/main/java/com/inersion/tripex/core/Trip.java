@@ -0,0 +1,128 @@
+// Trip.java
+// An immutable trip: where and when it goes and what it costs
+package com.inersion.tripex.core;
+
+public final class Trip {
+    // id of a trip that hasn't been stored yet
+    public static final long NO_ID = -1;
+
+    private final long id;
+    private final String name;
+    private final String from;
+    private final String to;
+    private final String depart; // yyyy-MM-dd by convention, or ""
+    private final String returnDate; // yyyy-MM-dd by convention, or ""
+    private final Money airfare;
+    private final Money hotel;
+    private final Money rental;
+
+    // null strings are stored as "" and null costs as zero
+    public Trip(long id, String name, String from, String to, String depart,
+                String returnDate, Money airfare, Money hotel, Money rental) {
+        this.id = id;
+        this.name = orEmpty(name);
+        this.from = orEmpty(from);
+        this.to = orEmpty(to);
+        this.depart = orEmpty(depart);
+        this.returnDate = orEmpty(returnDate);
+        this.airfare = orZero(airfare);
+        this.hotel = orZero(hotel);
+        this.rental = orZero(rental);
+    }
+
+    private static String orEmpty(String value) {
+        return (value != null) ? value : "";
+    }
+
+    private static Money orZero(Money value) {
+        return (value != null) ? value : Money.ZERO;
+    }
+
+    // a copy of this trip with the given id, e.g. once it has been stored
+    public Trip withId(long newId) {
+        return new Trip(newId, name, from, to, depart, returnDate,
+                airfare, hotel, rental);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public String getDepart() {
+        return depart;
+    }
+
+    public String getReturnDate() {
+        return returnDate;
+    }
+
+    public Money getAirfare() {
+        return airfare;
+    }
+
+    public Money getHotel() {
+        return hotel;
+    }
+
+    public Money getRental() {
+        return rental;
+    }
+
+    // airfare, hotel and rental together
+    public Money getTotal() {
+        return Money.ofCents(airfare.getCents() + hotel.getCents() +
+                rental.getCents());
+    }
+
+    // the departure month as yyyy-MM, or "" if the date is too short
+    public String getDepartMonth() {
+        return (depart.length() >= 7) ? depart.substring(0, 7) : "";
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (!(other instanceof Trip))
+            return false;
+
+        Trip trip = (Trip) other;
+        return id == trip.id && name.equals(trip.name) &&
+                from.equals(trip.from) && to.equals(trip.to) &&
+                depart.equals(trip.depart) &&
+                returnDate.equals(trip.returnDate) &&
+                airfare.equals(trip.airfare) && hotel.equals(trip.hotel) &&
+                rental.equals(trip.rental);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = (int) (id ^ (id >>> 32));
+        hash = 31 * hash + name.hashCode();
+        hash = 31 * hash + from.hashCode();
+        hash = 31 * hash + to.hashCode();
+        hash = 31 * hash + depart.hashCode();
+        hash = 31 * hash + returnDate.hashCode();
+        hash = 31 * hash + airfare.hashCode();
+        hash = 31 * hash + hotel.hashCode();
+        return 31 * hash + rental.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Trip{" + id + ", " + name + ", " + from + " - " + to + ", " +
+                depart + " - " + returnDate + ", " + getTotal() + "}";
+    }
+}
@@ -0,0 +1,70 @@
+// TripAggregation.java
+// Totals trips overall and grouped by destination or departure month
+package com.inersion.tripex.core;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+public final class TripAggregation {
+    private TripAggregation() {}
+
+    // running sums for one group; mutable so adding a trip allocates nothing
+    private static final class Sums {
+        int count;
+        long airfareCents;
+        long hotelCents;
+        long rentalCents;
+
+        void add(Trip trip) {
+            ++count;
+            airfareCents += trip.getAirfare().getCents();
+            hotelCents += trip.getHotel().getCents();
+            rentalCents += trip.getRental().getCents();
+        }
+
+        TripTotals toTotals() {
+            return new TripTotals(count, airfareCents, hotelCents, rentalCents);
+        }
+    }
+
+    // totals of all the trips
+    public static TripTotals total(Iterable<Trip> trips) {
+        Sums sums = new Sums();
+        for (Trip trip : trips)
+            sums.add(trip);
+        return sums.toTotals();
+    }
+
+    // totals per destination, sorted by destination
+    public static Map<String, TripTotals> byDestination(Iterable<Trip> trips) {
+        Map<String, Sums> groups = new TreeMap<String, Sums>();
+        for (Trip trip : trips)
+            sumsFor(groups, trip.getTo()).add(trip);
+        return toTotals(groups);
+    }
+
+    // totals per departure month (yyyy-MM), in chronological order; trips
+    // without a departure date are grouped under ""
+    public static Map<String, TripTotals> byMonth(Iterable<Trip> trips) {
+        Map<String, Sums> groups = new TreeMap<String, Sums>();
+        for (Trip trip : trips)
+            sumsFor(groups, trip.getDepartMonth()).add(trip);
+        return toTotals(groups);
+    }
+
+    private static Sums sumsFor(Map<String, Sums> groups, String key) {
+        Sums sums = groups.get(key);
+        if (sums == null) {
+            sums = new Sums();
+            groups.put(key, sums);
+        }
+        return sums;
+    }
+
+    private static Map<String, TripTotals> toTotals(Map<String, Sums> groups) {
+        Map<String, TripTotals> totals = new TreeMap<String, TripTotals>();
+        for (Map.Entry<String, Sums> group : groups.entrySet())
+            totals.put(group.getKey(), group.getValue().toTotals());
+        return totals;
+    }
+}
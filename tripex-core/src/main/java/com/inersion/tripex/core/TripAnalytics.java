@@ -0,0 +1,245 @@
+// TripAnalytics.java
+// Computes SpendReports with fork/join: the trips are split into slices
+// that are aggregated on every core, and the partial aggregates merge
+// pairwise on the way back up. A running report can be cancelled
+package com.inersion.tripex.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public final class TripAnalytics {
+    // slices up to this many trips are aggregated without splitting
+    static final int SLICE_SIZE = 2048;
+
+    // how often a slice checks whether it was cancelled, in trips
+    private static final int CANCEL_CHECK_INTERVAL = 256;
+
+    private final ForkJoinPool pool;
+
+    // runs reports on one thread per core
+    public TripAnalytics() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public TripAnalytics(int parallelism) {
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    // a report being computed
+    public static final class Job {
+        private final ForkJoinTask<SpendReport> task;
+        private final AtomicBoolean cancelled;
+
+        private Job(ForkJoinTask<SpendReport> task, AtomicBoolean cancelled) {
+            this.task = task;
+            this.cancelled = cancelled;
+        }
+
+        // waits for the report; throws CancellationException if the job
+        // was cancelled
+        public SpendReport get() throws InterruptedException,
+                ExecutionException {
+            return task.get();
+        }
+
+        // stops the job; slices still running stop at their next check
+        public void cancel() {
+            cancelled.set(true);
+            task.cancel(false);
+        }
+
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+    }
+
+    // starts computing the report of trips in the background
+    public Job start(List<Trip> trips) {
+        final Trip[] slice = trips.toArray(new Trip[trips.size()]);
+        final AtomicBoolean cancelled = new AtomicBoolean(false);
+
+        ForkJoinTask<SpendReport> task = pool.submit(
+                new RecursiveTask<SpendReport>() {
+                    @Override
+                    protected SpendReport compute() {
+                        return new Aggregate(slice, 0, slice.length, cancelled)
+                                .invoke().toReport();
+                    }
+                });
+        return new Job(task, cancelled);
+    }
+
+    // computes the report of trips on the pool, waiting for it
+    public SpendReport run(List<Trip> trips) throws InterruptedException {
+        Job job = start(trips);
+        try {
+            return job.get();
+        }
+        catch (InterruptedException e) {
+            job.cancel();
+            throw e;
+        }
+        catch (ExecutionException e) {
+            // only a bug gets here; aggregating throws nothing checked
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // stops the pool's threads once running jobs finish
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    // aggregates trips [start, end), splitting it in half while it's
+    // bigger than a slice
+    private static final class Aggregate extends RecursiveTask<Partial> {
+        private final Trip[] trips;
+        private final int start;
+        private final int end;
+        private final AtomicBoolean cancelled;
+
+        Aggregate(Trip[] trips, int start, int end, AtomicBoolean cancelled) {
+            this.trips = trips;
+            this.start = start;
+            this.end = end;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (end - start <= SLICE_SIZE)
+                return aggregate();
+
+            int middle = (start + end) >>> 1;
+            Aggregate left = new Aggregate(trips, start, middle, cancelled);
+            left.fork();
+            Partial right = new Aggregate(trips, middle, end, cancelled)
+                    .compute();
+            return left.join().merge(right);
+        }
+
+        private Partial aggregate() {
+            Cents overall = new Cents();
+            Map<String, Cents> destinations = new HashMap<String, Cents>();
+            Map<String, long[]> months = new HashMap<String, long[]>();
+
+            for (int i = start; i < end; ++i) {
+                if ((i - start) % CANCEL_CHECK_INTERVAL == 0 && cancelled.get())
+                    throw new CancellationException();
+
+                Trip trip = trips[i];
+                long cents = trip.getTotal().getCents();
+                overall.add(cents);
+
+                Cents destination = destinations.get(trip.getTo());
+                if (destination == null) {
+                    destination = new Cents();
+                    destinations.put(trip.getTo(), destination);
+                }
+                destination.add(cents);
+
+                String month = trip.getDepartMonth();
+                if (isMonth(month)) {
+                    long[] sum = months.get(month);
+                    if (sum == null) {
+                        sum = new long[1];
+                        months.put(month, sum);
+                    }
+                    sum[0] += cents;
+                }
+            }
+
+            Partial partial = new Partial(overall.toDistribution());
+            for (Map.Entry<String, Cents> destination : destinations.entrySet())
+                partial.byDestination.put(destination.getKey(),
+                        destination.getValue().toDistribution());
+            partial.byMonth.putAll(months);
+            return partial;
+        }
+    }
+
+    // whether month is yyyy-MM; departure dates are free text, so a
+    // trip may have none or an unreadable one
+    private static boolean isMonth(String month) {
+        if (month.length() != 7 || month.charAt(4) != '-')
+            return false;
+        for (int i = 0; i < 7; ++i) {
+            char c = month.charAt(i);
+            if (i != 4 && (c < '0' || c > '9'))
+                return false;
+        }
+        int monthOfYear = Integer.parseInt(month.substring(5, 7));
+        return monthOfYear >= 1 && monthOfYear <= 12;
+    }
+
+    // a growable array of trip totals, in cents
+    private static final class Cents {
+        private long[] values = new long[16];
+        private int count = 0;
+
+        void add(long cents) {
+            if (count == values.length)
+                values = Arrays.copyOf(values, count * 2);
+            values[count++] = cents;
+        }
+
+        SpendDistribution toDistribution() {
+            return SpendDistribution.of(values, count);
+        }
+    }
+
+    // the aggregate of a slice of trips; merging two gives the aggregate
+    // of both slices
+    private static final class Partial {
+        SpendDistribution overall;
+        final Map<String, SpendDistribution> byDestination =
+                new HashMap<String, SpendDistribution>();
+        final Map<String, long[]> byMonth = new HashMap<String, long[]>();
+
+        Partial(SpendDistribution overall) {
+            this.overall = overall;
+        }
+
+        // adds other into this partial and returns it
+        Partial merge(Partial other) {
+            overall = SpendDistribution.merge(overall, other.overall);
+
+            for (Map.Entry<String, SpendDistribution> destination :
+                    other.byDestination.entrySet()) {
+                SpendDistribution mine = byDestination.get(destination.getKey());
+                byDestination.put(destination.getKey(), (mine != null) ?
+                        SpendDistribution.merge(mine, destination.getValue()) :
+                        destination.getValue());
+            }
+
+            for (Map.Entry<String, long[]> month : other.byMonth.entrySet()) {
+                long[] mine = byMonth.get(month.getKey());
+                if (mine != null)
+                    mine[0] += month.getValue()[0];
+                else
+                    byMonth.put(month.getKey(), month.getValue());
+            }
+            return this;
+        }
+
+        SpendReport toReport() {
+            SortedMap<String, Money> months = new TreeMap<String, Money>();
+            for (Map.Entry<String, long[]> month : byMonth.entrySet())
+                months.put(month.getKey(), Money.ofCents(month.getValue()[0]));
+
+            return new SpendReport(overall,
+                    new TreeMap<String, SpendDistribution>(byDestination),
+                    months);
+        }
+    }
+}
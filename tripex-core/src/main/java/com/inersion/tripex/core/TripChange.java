@@ -0,0 +1,97 @@
+// TripChange.java
+// A trip's state as exchanged with the sync server: its fields, or its
+// deletion. Devices identify a trip by its sync id, since each numbers
+// its rows itself, and the server orders changes by the revision it
+// assigns them
+package com.inersion.tripex.core;
+
+public final class TripChange {
+    // revision of a change the server hasn't accepted yet
+    public static final long NO_REVISION = 0;
+
+    private final String syncId;
+    private final long revision;
+    private final long modified; // when it was made, ms since the epoch
+    private final Trip trip; // null for a deletion
+
+    private TripChange(String syncId, long revision, long modified,
+                       Trip trip) {
+        if (syncId == null || syncId.isEmpty())
+            throw new IllegalArgumentException("A change needs a sync id");
+        this.syncId = syncId;
+        this.revision = revision;
+        this.modified = modified;
+        this.trip = trip;
+    }
+
+    // the trip was added or edited; its id is local, so it's dropped
+    public static TripChange update(String syncId, long revision,
+                                    long modified, Trip trip) {
+        return new TripChange(syncId, revision, modified,
+                trip.withId(Trip.NO_ID));
+    }
+
+    public static TripChange deletion(String syncId, long revision,
+                                      long modified) {
+        return new TripChange(syncId, revision, modified, null);
+    }
+
+    // a copy of this change as accepted by the server under revision
+    public TripChange withRevision(long newRevision) {
+        return new TripChange(syncId, newRevision, modified, trip);
+    }
+
+    // the rule both sides resolve conflicts by: the later edit wins, and
+    // on a tie the incoming change does, so resending one is harmless
+    public boolean supersedes(long currentModified) {
+        return modified >= currentModified;
+    }
+
+    public String getSyncId() {
+        return syncId;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public long getModified() {
+        return modified;
+    }
+
+    public boolean isDeletion() {
+        return trip == null;
+    }
+
+    // the trip's fields with Trip.NO_ID, or null for a deletion
+    public Trip getTrip() {
+        return trip;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other)
+            return true;
+        if (!(other instanceof TripChange))
+            return false;
+
+        TripChange change = (TripChange) other;
+        return syncId.equals(change.syncId) && revision == change.revision &&
+                modified == change.modified &&
+                ((trip != null) ? trip.equals(change.trip) : change.trip == null);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = syncId.hashCode();
+        hash = 31 * hash + (int) (revision ^ (revision >>> 32));
+        hash = 31 * hash + (int) (modified ^ (modified >>> 32));
+        return 31 * hash + ((trip != null) ? trip.hashCode() : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "TripChange{" + syncId + " r" + revision + " @" + modified +
+                ", " + ((trip != null) ? trip : "deleted") + "}";
+    }
+}
@@ -0,0 +1,130 @@
+// TripCsvParser.java
+// Reads trips from comma-separated values with the columns
+// name,from,to,depart,return,airfare,hotel,rental and an optional header
+package com.inersion.tripex.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+// reuses its buffers between lines, so use one parser per thread
+public final class TripCsvParser {
+    private static final String[] HEADER = {"name", "from", "to", "depart",
+            "return", "airfare", "hotel", "rental"};
+
+    private final String[] fields = new String[HEADER.length];
+    private final StringBuilder field = new StringBuilder(64);
+
+    // reads every trip; blank lines are skipped, and quoted fields may
+    // contain commas, doubled quotes and line breaks
+    public List<Trip> parse(Reader reader)
+            throws IOException, TripImportException {
+        BufferedReader lines = (reader instanceof BufferedReader) ?
+                (BufferedReader) reader : new BufferedReader(reader);
+        List<Trip> trips = new ArrayList<Trip>();
+
+        int lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            int firstLine = ++lineNumber;
+            if (line.isEmpty())
+                continue;
+
+            // a quoted field may continue on the following lines
+            int count;
+            while ((count = split(line, firstLine)) < 0) {
+                String next = lines.readLine();
+                if (next == null)
+                    throw new TripImportException(firstLine,
+                            "unterminated quoted field");
+                ++lineNumber;
+                line = line + "\n" + next;
+            }
+
+            if (count != HEADER.length)
+                throw new TripImportException(firstLine, "expected " +
+                        HEADER.length + " fields but found " + count);
+
+            if (firstLine == 1 && isHeader())
+                continue;
+
+            trips.add(toTrip(firstLine));
+        }
+
+        return trips;
+    }
+
+    // splits line into fields, returning how many there were, or -1 if
+    // it ends inside a quoted field
+    private int split(String line, int lineNumber) throws TripImportException {
+        int count = 0;
+        int i = 0;
+        int length = line.length();
+
+        while (true) {
+            field.setLength(0);
+
+            if (i < length && line.charAt(i) == '"') {
+                // quoted field: runs to the next lone quote
+                ++i;
+                while (true) {
+                    if (i >= length)
+                        return -1;
+                    char c = line.charAt(i++);
+                    if (c != '"')
+                        field.append(c);
+                    else if (i < length && line.charAt(i) == '"')
+                        field.append(line.charAt(i++)); // "" is a quote
+                    else
+                        break;
+                }
+                if (i < length && line.charAt(i) != ',')
+                    throw new TripImportException(lineNumber,
+                            "unexpected text after quoted field " + (count + 1));
+            }
+            else {
+                int comma = line.indexOf(',', i);
+                int end = (comma < 0) ? length : comma;
+                field.append(line, i, end);
+                i = end;
+            }
+
+            if (count < fields.length)
+                fields[count] = field.toString().trim();
+            ++count;
+
+            if (i >= length)
+                return count;
+            ++i; // skip the comma
+        }
+    }
+
+    private boolean isHeader() {
+        for (int i = 0; i < HEADER.length; ++i)
+            if (!HEADER[i].equalsIgnoreCase(fields[i]))
+                return false;
+        return true;
+    }
+
+    private Trip toTrip(int lineNumber) throws TripImportException {
+        if (fields[0].isEmpty())
+            throw new TripImportException(lineNumber, "trip has no name");
+
+        return new Trip(Trip.NO_ID, fields[0], fields[1], fields[2],
+                fields[3], fields[4], cost(fields[5], lineNumber),
+                cost(fields[6], lineNumber), cost(fields[7], lineNumber));
+    }
+
+    // unlike cost fields typed in the app, imported costs must be valid
+    private static Money cost(String text, int lineNumber)
+            throws TripImportException {
+        try {
+            return Money.parse(text);
+        }
+        catch (NumberFormatException e) {
+            throw new TripImportException(lineNumber, e.getMessage());
+        }
+    }
+}
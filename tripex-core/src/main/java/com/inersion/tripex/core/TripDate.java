@@ -0,0 +1,61 @@
+// TripDate.java
+// The yyyy-MM-dd form trips' dates are stored in, which sorts like the
+// dates themselves; reads dates as typed into that form
+package com.inersion.tripex.core;
+
+import java.text.DateFormat;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+public final class TripDate {
+    private static final String ISO_PATTERN = "yyyy-MM-dd";
+
+    private TripDate() {}
+
+    // whether date is a real day written as yyyy-MM-dd
+    public static boolean isValid(String date) {
+        if (date == null || date.length() != ISO_PATTERN.length())
+            return false;
+
+        for (int i = 0; i < date.length(); ++i) {
+            char c = date.charAt(i);
+            if ((i == 4 || i == 7) ? c != '-' : (c < '0' || c > '9'))
+                return false;
+        }
+        return parse(date, iso()) != null; // e.g. not 2017-02-30
+    }
+
+    // parses a date as typed into a date field: yyyy-MM-dd, or a full date
+    // in one of the locale's short, medium or long forms (e.g. 6/1/2017 or
+    // Jun 1, 2017 in the US); surrounding spaces are ignored and an empty
+    // string stays empty. Throws IllegalArgumentException for anything
+    // else, including a date without a year
+    public static String parse(String text, Locale locale) {
+        String trimmed = text.trim();
+        if (trimmed.isEmpty() || isValid(trimmed))
+            return trimmed;
+
+        int[] styles = {DateFormat.SHORT, DateFormat.MEDIUM, DateFormat.LONG};
+        for (int style : styles) {
+            Date date = parse(trimmed,
+                    DateFormat.getDateInstance(style, locale));
+            if (date != null)
+                return iso().format(date);
+        }
+        throw new IllegalArgumentException("Not a date: " + text);
+    }
+
+    // the date if format reads the whole of text as a real day, else null
+    private static Date parse(String text, DateFormat format) {
+        format.setLenient(false);
+        ParsePosition position = new ParsePosition(0);
+        Date date = format.parse(text, position);
+        return (position.getIndex() == text.length()) ? date : null;
+    }
+
+    private static DateFormat iso() {
+        return new SimpleDateFormat(ISO_PATTERN, Locale.US);
+    }
+}
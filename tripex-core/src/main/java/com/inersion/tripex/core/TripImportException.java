@@ -0,0 +1,16 @@
+// TripImportException.java
+// Thrown when a line of imported trips can't be read
+package com.inersion.tripex.core;
+
+public class TripImportException extends Exception {
+    private final int line; // 1-based line the problem was found on
+
+    public TripImportException(int line, String message) {
+        super("Line " + line + ": " + message);
+        this.line = line;
+    }
+
+    public int getLine() {
+        return line;
+    }
+}
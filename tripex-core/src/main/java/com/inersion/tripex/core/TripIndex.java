@@ -0,0 +1,378 @@
+// TripIndex.java
+// In-memory index of the trips' sortable and filterable fields, held in
+// parallel primitive arrays so that sorting and filtering the whole list
+// allocates no boxes and touches no database
+package com.inersion.tripex.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class TripIndex {
+    // epoch day of a trip without a (valid) departure date
+    public static final int NO_DAY = Integer.MIN_VALUE;
+
+    // ranges up to this long are sorted by insertion instead of merging
+    private static final int INSERTION_SORT_MAX = 16;
+
+    public enum SortOrder {
+        DEPART, // undated trips first
+        TOTAL,
+        DESTINATION // case-insensitive, ties broken by id
+    }
+
+    // which trips select() returns; matches every trip until narrowed
+    public static final class Filter {
+        private boolean dated = false;
+        private int fromDay;
+        private int toDay;
+        private long minCents = Long.MIN_VALUE;
+        private long maxCents = Long.MAX_VALUE;
+        private String destination; // null for any
+
+        // only trips departing on days [fromDay, toDay], which leaves out
+        // undated trips
+        public Filter departingBetween(int fromDay, int toDay) {
+            dated = true;
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+            return this;
+        }
+
+        // only trips whose total is [minCents, maxCents]
+        public Filter costingBetween(long minCents, long maxCents) {
+            this.minCents = minCents;
+            this.maxCents = maxCents;
+            return this;
+        }
+
+        // only trips to destination, compared as interned: exactly
+        public Filter goingTo(String destination) {
+            this.destination = destination;
+            return this;
+        }
+    }
+
+    // one row per trip, in no particular order; rows [0, size) are used
+    private long[] ids = new long[16];
+    private int[] departDays = new int[16];
+    private long[] totalCents = new long[16];
+    private int[] destinationIds = new int[16];
+    private int size = 0;
+
+    private final IdMap rowsById = new IdMap();
+
+    // interned destinations: ids index names, names map to ids
+    private final List<String> destinations = new ArrayList<String>();
+    private final Map<String, Integer> destinationIdsByName =
+            new HashMap<String, Integer>();
+    private int[] destinationRanks; // alphabetical rank by id; null if stale
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(long id) {
+        return rowsById.get(id) >= 0;
+    }
+
+    // adds trip, or replaces the indexed trip with the same id
+    public void put(Trip trip) {
+        long id = trip.getId();
+        if (id <= 0)
+            throw new IllegalArgumentException("Trip has no id: " + id);
+
+        int row = rowsById.get(id);
+        if (row < 0) {
+            if (size == ids.length)
+                grow();
+            row = size++;
+            ids[row] = id;
+            rowsById.put(id, row);
+        }
+
+        departDays[row] = epochDay(trip.getDepart());
+        totalCents[row] = trip.getTotal().getCents();
+        destinationIds[row] = intern(trip.getTo());
+    }
+
+    // removes the trip with the given id, if it's indexed
+    public void remove(long id) {
+        int row = rowsById.get(id);
+        if (row < 0)
+            return;
+        rowsById.remove(id);
+
+        // move the last row into the hole
+        int last = --size;
+        if (row != last) {
+            ids[row] = ids[last];
+            departDays[row] = departDays[last];
+            totalCents[row] = totalCents[last];
+            destinationIds[row] = destinationIds[last];
+            rowsById.put(ids[row], row);
+        }
+    }
+
+    public void clear() {
+        size = 0;
+        rowsById.clear();
+    }
+
+    // ids of the trips that match filter, in the given order
+    public long[] select(Filter filter, SortOrder order, boolean descending) {
+        int destination = -1;
+        if (filter.destination != null) {
+            Integer interned = destinationIdsByName.get(filter.destination);
+            if (interned == null)
+                return new long[0]; // no trip goes there
+            destination = interned;
+        }
+
+        int[] rows = new int[size];
+        int count = 0;
+        for (int row = 0; row < size; ++row) {
+            int day = departDays[row];
+            long cents = totalCents[row];
+            if (filter.dated && (day == NO_DAY || day < filter.fromDay ||
+                    day > filter.toDay))
+                continue;
+            if (cents < filter.minCents || cents > filter.maxCents)
+                continue;
+            if (destination >= 0 && destinationIds[row] != destination)
+                continue;
+            rows[count++] = row;
+        }
+
+        sort(rows, count, keys(order), descending);
+
+        long[] result = new long[count];
+        for (int i = 0; i < count; ++i)
+            result[i] = ids[rows[i]];
+        return result;
+    }
+
+    // the day number of a yyyy-MM-dd date counted from 1970-01-01, or
+    // NO_DAY if date isn't one
+    public static int epochDay(String date) {
+        if (date == null || date.length() != 10 || date.charAt(4) != '-' ||
+                date.charAt(7) != '-')
+            return NO_DAY;
+
+        int year = digits(date, 0, 4);
+        int month = digits(date, 5, 7);
+        int day = digits(date, 8, 10);
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > 31)
+            return NO_DAY;
+
+        // days from civil, counting years from March so the leap day is
+        // the last of the year
+        if (month <= 2)
+            --year;
+        int era = year / 400;
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 +
+                dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    // the non-negative number in text[start, end), or -1
+    private static int digits(String text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; ++i) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private int intern(String destination) {
+        Integer id = destinationIdsByName.get(destination);
+        if (id == null) {
+            id = destinations.size();
+            destinations.add(destination);
+            destinationIdsByName.put(destination, id);
+            destinationRanks = null;
+        }
+        return id;
+    }
+
+    // each row's sort key for order, indexed by row
+    private long[] keys(SortOrder order) {
+        long[] keys = new long[size];
+        switch (order) {
+            case DEPART:
+                for (int row = 0; row < size; ++row)
+                    keys[row] = departDays[row];
+                break;
+            case TOTAL:
+                System.arraycopy(totalCents, 0, keys, 0, size);
+                break;
+            case DESTINATION:
+                int[] ranks = getDestinationRanks();
+                for (int row = 0; row < size; ++row)
+                    keys[row] = ranks[destinationIds[row]];
+                break;
+        }
+        return keys;
+    }
+
+    // ranks the interned destinations alphabetically, once per new one
+    private int[] getDestinationRanks() {
+        if (destinationRanks == null) {
+            String[] sorted = destinations.toArray(
+                    new String[destinations.size()]);
+            Arrays.sort(sorted, String.CASE_INSENSITIVE_ORDER);
+
+            destinationRanks = new int[sorted.length];
+            for (int rank = 0; rank < sorted.length; ++rank)
+                destinationRanks[destinationIdsByName.get(sorted[rank])] = rank;
+        }
+        return destinationRanks;
+    }
+
+    // sorts rows[0, count) by key, then by id
+    private void sort(int[] rows, int count, long[] keys, boolean descending) {
+        mergeSort(rows, new int[count], 0, count, keys, descending);
+    }
+
+    private void mergeSort(int[] rows, int[] scratch, int start, int end,
+                           long[] keys, boolean descending) {
+        if (end - start <= INSERTION_SORT_MAX) {
+            for (int i = start + 1; i < end; ++i) {
+                int row = rows[i];
+                int j = i;
+                for (; j > start &&
+                        compare(rows[j - 1], row, keys, descending) > 0; --j)
+                    rows[j] = rows[j - 1];
+                rows[j] = row;
+            }
+            return;
+        }
+
+        int middle = (start + end) >>> 1;
+        mergeSort(rows, scratch, start, middle, keys, descending);
+        mergeSort(rows, scratch, middle, end, keys, descending);
+        if (compare(rows[middle - 1], rows[middle], keys, descending) <= 0)
+            return; // already in order
+
+        System.arraycopy(rows, start, scratch, start, end - start);
+        int left = start;
+        int right = middle;
+        for (int i = start; i < end; ++i) {
+            if (right >= end || (left < middle &&
+                    compare(scratch[left], scratch[right], keys, descending) <= 0))
+                rows[i] = scratch[left++];
+            else
+                rows[i] = scratch[right++];
+        }
+    }
+
+    private int compare(int first, int second, long[] keys,
+                        boolean descending) {
+        int result = (keys[first] < keys[second]) ? -1 :
+                (keys[first] > keys[second]) ? 1 : 0;
+        if (descending)
+            result = -result;
+        if (result == 0)
+            result = (ids[first] < ids[second]) ? -1 :
+                    (ids[first] > ids[second]) ? 1 : 0;
+        return result;
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        departDays = Arrays.copyOf(departDays, capacity);
+        totalCents = Arrays.copyOf(totalCents, capacity);
+        destinationIds = Arrays.copyOf(destinationIds, capacity);
+    }
+
+    // open-addressing map from a positive id to its row, so looking a
+    // trip up boxes nothing; 0 marks an empty slot
+    private static final class IdMap {
+        private long[] keys = new long[32];
+        private int[] values = new int[32];
+        private int count = 0;
+
+        // the id's row, or -1
+        int get(long id) {
+            int mask = keys.length - 1;
+            for (int slot = hash(id) & mask; keys[slot] != 0;
+                 slot = (slot + 1) & mask) {
+                if (keys[slot] == id)
+                    return values[slot];
+            }
+            return -1;
+        }
+
+        void put(long id, int row) {
+            if ((count + 1) * 2 > keys.length)
+                resize(keys.length * 2);
+
+            int mask = keys.length - 1;
+            int slot = hash(id) & mask;
+            for (; keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == id) {
+                    values[slot] = row;
+                    return;
+                }
+            }
+            keys[slot] = id;
+            values[slot] = row;
+            ++count;
+        }
+
+        void remove(long id) {
+            int mask = keys.length - 1;
+            int slot = hash(id) & mask;
+            while (keys[slot] != id) {
+                if (keys[slot] == 0)
+                    return;
+                slot = (slot + 1) & mask;
+            }
+
+            // shift later entries of the probe run back into the hole so
+            // that lookups never stop at it too early
+            int hole = slot;
+            for (slot = (slot + 1) & mask; keys[slot] != 0;
+                 slot = (slot + 1) & mask) {
+                int home = hash(keys[slot]) & mask;
+                if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                    keys[hole] = keys[slot];
+                    values[hole] = values[slot];
+                    hole = slot;
+                }
+            }
+            keys[hole] = 0;
+            --count;
+        }
+
+        void clear() {
+            Arrays.fill(keys, 0);
+            count = 0;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[capacity];
+            values = new int[capacity];
+            count = 0;
+            for (int slot = 0; slot < oldKeys.length; ++slot) {
+                if (oldKeys[slot] != 0)
+                    put(oldKeys[slot], oldValues[slot]);
+            }
+        }
+
+        private static int hash(long id) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,33 @@
+// TripSnapshot.java
+// The binary format of a trips backup, written by TripSnapshotWriter and
+// read by TripSnapshotReader. Rows are stored in blocks, and a block
+// stores each column on its own so that similar values sit together:
+//
+//   "TXBK"  varint version  varint columnCount
+//   columnCount x (varint nameLength, UTF-8 name, byte type)
+//   blocks: varint rowCount (> 0), then columnCount x
+//           (varint chunkLength, chunk)
+//   varint 0  varint totalRows  4-byte big-endian CRC32 of all the above
+//
+// An INTEGER chunk holds each row's difference from the row before as a
+// zigzag varint, so ascending ids and timestamps take a byte or two. A
+// TEXT chunk holds each row as a varint of its UTF-8 length plus one (0
+// for null) followed by the bytes. Since chunks are length-prefixed, a
+// reader can skip a column it doesn't know
+package com.inersion.tripex.core;
+
+public final class TripSnapshot {
+    private TripSnapshot() {}
+
+    static final byte[] MAGIC = {'T', 'X', 'B', 'K'};
+    static final int VERSION = 1;
+
+    // the most rows the writer puts in one block, and the most the reader
+    // accepts from a later writer
+    static final int BLOCK_ROWS = 4096;
+    static final int MAX_BLOCK_ROWS = 65536;
+
+    public enum Type {
+        INTEGER, TEXT
+    }
+}
@@ -0,0 +1,206 @@
+// TripSnapshotReader.java
+// Reads a TripSnapshot from a ByteBuffer, typically a file mapped into
+// memory, a block at a time. The checksum is verified before anything
+// is read, and only the current block is decoded onto the heap, so a
+// snapshot of any size can be read in little memory
+package com.inersion.tripex.core;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+// not thread safe
+public final class TripSnapshotReader {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // how much of the buffer is copied at a time to checksum it
+    private static final int CHECKSUM_CHUNK = 64 * 1024;
+
+    private final ByteBuffer buffer;
+    private final String[] columns;
+    private final TripSnapshot.Type[] types;
+
+    // the current block, decoded
+    private final long[][] longs;
+    private final String[][] texts;
+    private byte[] textBytes = new byte[256];
+    private int blockRows = 0;
+    private long rows = 0;
+    private boolean ended = false;
+
+    // throws IOException if buffer doesn't hold a whole, intact snapshot
+    // in a version this reader knows; buffer's position isn't changed
+    public TripSnapshotReader(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.duplicate();
+        verifyChecksum();
+
+        try {
+            for (byte b : TripSnapshot.MAGIC) {
+                if (this.buffer.get() != b)
+                    throw new IOException("Not a trips snapshot");
+            }
+            long version = readVarint();
+            if (version != TripSnapshot.VERSION)
+                throw new IOException("Unsupported snapshot version " + version);
+
+            int columnCount = readCount(Integer.MAX_VALUE);
+            columns = new String[columnCount];
+            types = new TripSnapshot.Type[columnCount];
+            for (int i = 0; i < columnCount; ++i) {
+                columns[i] = readText(readCount(this.buffer.remaining()));
+                int type = this.buffer.get();
+                if (type < 0 || type >= TripSnapshot.Type.values().length)
+                    throw new IOException("Unknown column type " + type);
+                types[i] = TripSnapshot.Type.values()[type];
+            }
+        }
+        catch (BufferUnderflowException e) {
+            throw new IOException("Truncated snapshot header");
+        }
+
+        longs = new long[columns.length][];
+        texts = new String[columns.length][];
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public String getColumnName(int column) {
+        return columns[column];
+    }
+
+    public TripSnapshot.Type getColumnType(int column) {
+        return types[column];
+    }
+
+    // the index of the named column, or -1 if the snapshot hasn't one
+    public int findColumn(String name) {
+        for (int i = 0; i < columns.length; ++i) {
+            if (columns[i].equals(name))
+                return i;
+        }
+        return -1;
+    }
+
+    // decodes the next block; returns false once there are no more
+    public boolean nextBlock() throws IOException {
+        if (ended)
+            return false;
+
+        try {
+            blockRows = readCount(TripSnapshot.MAX_BLOCK_ROWS);
+            if (blockRows == 0) {
+                if (readVarint() != rows)
+                    throw new IOException("Snapshot row count doesn't match");
+                ended = true;
+                return false;
+            }
+
+            for (int i = 0; i < columns.length; ++i) {
+                int chunkEnd = readCount(buffer.remaining()) + buffer.position();
+                if (types[i] == TripSnapshot.Type.INTEGER)
+                    readLongs(i);
+                else
+                    readTexts(i);
+                if (buffer.position() != chunkEnd)
+                    throw new IOException("Bad chunk length in column " +
+                            columns[i]);
+            }
+        }
+        catch (BufferUnderflowException e) {
+            throw new IOException("Truncated snapshot block");
+        }
+
+        rows += blockRows;
+        return true;
+    }
+
+    // the number of rows in the current block
+    public int getBlockRows() {
+        return blockRows;
+    }
+
+    public long getLong(int row, int column) {
+        return longs[column][row];
+    }
+
+    public String getText(int row, int column) {
+        return texts[column][row];
+    }
+
+    private void readLongs(int column) throws IOException {
+        long[] values = longs[column];
+        if (values == null || values.length < blockRows)
+            values = longs[column] = new long[blockRows];
+
+        long value = 0;
+        for (int row = 0; row < blockRows; ++row) {
+            long zigzag = readVarint();
+            value += (zigzag >>> 1) ^ -(zigzag & 1);
+            values[row] = value;
+        }
+    }
+
+    private void readTexts(int column) throws IOException {
+        String[] values = texts[column];
+        if (values == null || values.length < blockRows)
+            values = texts[column] = new String[blockRows];
+
+        for (int row = 0; row < blockRows; ++row) {
+            int length = readCount(buffer.remaining() + 1);
+            values[row] = (length == 0) ? null : readText(length - 1);
+        }
+    }
+
+    private String readText(int length) {
+        if (textBytes.length < length)
+            textBytes = new byte[Math.max(length, textBytes.length * 2)];
+        buffer.get(textBytes, 0, length);
+        return new String(textBytes, 0, length, UTF_8);
+    }
+
+    // a varint that must be a count no bigger than max
+    private int readCount(int max) throws IOException {
+        long count = readVarint();
+        if (count < 0 || count > max)
+            throw new IOException("Bad count " + count + " in snapshot");
+        return (int) count;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new IOException("Bad varint in snapshot");
+    }
+
+    // checks the trailing CRC32 against the rest of the buffer, which is
+    // copied a chunk at a time rather than all at once
+    private void verifyChecksum() throws IOException {
+        int start = buffer.position();
+        int end = buffer.limit() - 4;
+        if (end < start)
+            throw new IOException("Truncated snapshot");
+
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[Math.min(CHECKSUM_CHUNK, end - start)];
+        ByteBuffer data = buffer.duplicate();
+        while (data.position() < end) {
+            int length = Math.min(chunk.length, end - data.position());
+            data.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+
+        long expected = ((data.get() & 0xFFL) << 24) | ((data.get() & 0xFFL) << 16) |
+                ((data.get() & 0xFFL) << 8) | (data.get() & 0xFFL);
+        if (crc.getValue() != expected)
+            throw new IOException("Snapshot checksum doesn't match");
+    }
+}
@@ -0,0 +1,197 @@
+// TripSnapshotWriter.java
+// Writes a TripSnapshot a row at a time. Only the block being filled is
+// held in memory, so a snapshot of any size streams to its output
+package com.inersion.tripex.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+// not thread safe
+public final class TripSnapshotWriter implements Closeable {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final OutputStream out;
+    private final CRC32 crc = new CRC32();
+    private final TripSnapshot.Type[] types;
+
+    // the row being set, and the block's chunk for each column
+    private final long[] rowLongs;
+    private final String[] rowTexts;
+    private final Bytes[] chunks;
+    private final long[] previous; // INTEGER columns' last value in the block
+    private final Bytes header = new Bytes();
+
+    private int blockRows = 0;
+    private long rows = 0;
+    private boolean finished = false;
+
+    // writes the header at once; out is buffered by the caller if needed
+    public TripSnapshotWriter(OutputStream out, String[] columns,
+                              TripSnapshot.Type[] types) throws IOException {
+        if (columns.length != types.length)
+            throw new IllegalArgumentException("Each column needs a type");
+
+        this.out = out;
+        this.types = types.clone();
+        rowLongs = new long[columns.length];
+        rowTexts = new String[columns.length];
+        chunks = new Bytes[columns.length];
+        previous = new long[columns.length];
+        for (int i = 0; i < chunks.length; ++i)
+            chunks[i] = new Bytes();
+
+        header.write(TripSnapshot.MAGIC, 0, TripSnapshot.MAGIC.length);
+        header.writeVarint(TripSnapshot.VERSION);
+        header.writeVarint(columns.length);
+        for (int i = 0; i < columns.length; ++i) {
+            byte[] name = columns[i].getBytes(UTF_8);
+            header.writeVarint(name.length);
+            header.write(name, 0, name.length);
+            header.write(types[i].ordinal());
+        }
+        emit(header);
+    }
+
+    // sets an INTEGER column of the current row; unset ones are 0
+    public void setLong(int column, long value) {
+        if (types[column] != TripSnapshot.Type.INTEGER)
+            throw new IllegalArgumentException("Column " + column + " is TEXT");
+        rowLongs[column] = value;
+    }
+
+    // sets a TEXT column of the current row; unset ones are null
+    public void setText(int column, String value) {
+        if (types[column] != TripSnapshot.Type.TEXT)
+            throw new IllegalArgumentException("Column " + column + " is INTEGER");
+        rowTexts[column] = value;
+    }
+
+    // adds the current row and starts the next one
+    public void endRow() throws IOException {
+        if (finished)
+            throw new IllegalStateException("The snapshot is finished");
+
+        for (int i = 0; i < types.length; ++i) {
+            if (types[i] == TripSnapshot.Type.INTEGER) {
+                chunks[i].writeVarint(zigzag(rowLongs[i] - previous[i]));
+                previous[i] = rowLongs[i];
+            }
+            else if (rowTexts[i] == null) {
+                chunks[i].writeVarint(0);
+            }
+            else {
+                byte[] text = rowTexts[i].getBytes(UTF_8);
+                chunks[i].writeVarint(text.length + 1L);
+                chunks[i].write(text, 0, text.length);
+            }
+        }
+        Arrays.fill(rowLongs, 0);
+        Arrays.fill(rowTexts, null);
+
+        ++rows;
+        if (++blockRows == TripSnapshot.BLOCK_ROWS)
+            writeBlock();
+    }
+
+    public long getRowCount() {
+        return rows;
+    }
+
+    // writes the last block and the trailer; out is left open
+    public void finish() throws IOException {
+        if (finished)
+            return;
+
+        writeBlock();
+        header.reset();
+        header.writeVarint(0);
+        header.writeVarint(rows);
+        emit(header);
+
+        long checksum = crc.getValue();
+        out.write(new byte[] {(byte) (checksum >>> 24), (byte) (checksum >>> 16),
+                (byte) (checksum >>> 8), (byte) checksum});
+        out.flush();
+        finished = true;
+    }
+
+    // finishes the snapshot and closes out
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (blockRows == 0)
+            return;
+
+        header.reset();
+        header.writeVarint(blockRows);
+        emit(header);
+        for (Bytes chunk : chunks) {
+            header.reset();
+            header.writeVarint(chunk.size);
+            emit(header);
+            emit(chunk);
+            chunk.reset();
+        }
+
+        Arrays.fill(previous, 0);
+        blockRows = 0;
+    }
+
+    private void emit(Bytes bytes) throws IOException {
+        crc.update(bytes.data, 0, bytes.size);
+        out.write(bytes.data, 0, bytes.size);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    // a growable byte buffer, reused from block to block
+    private static final class Bytes {
+        byte[] data = new byte[256];
+        int size = 0;
+
+        void write(int b) {
+            ensure(1);
+            data[size++] = (byte) b;
+        }
+
+        void write(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, data, size, length);
+            size += length;
+        }
+
+        // 7 bits a byte, low bits first, with the top bit set on all
+        // but the last
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        void reset() {
+            size = 0;
+        }
+
+        private void ensure(int more) {
+            if (size + more > data.length)
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + more));
+        }
+    }
+}
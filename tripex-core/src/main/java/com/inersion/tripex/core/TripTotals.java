@@ -0,0 +1,81 @@
+// TripTotals.java
+// The number of trips in a group and what they cost, by category
+package com.inersion.tripex.core;
+
+public final class TripTotals {
+    public static final TripTotals EMPTY = new TripTotals(0, 0, 0, 0);
+
+    private final int count;
+    private final long airfareCents;
+    private final long hotelCents;
+    private final long rentalCents;
+
+    TripTotals(int count, long airfareCents, long hotelCents,
+               long rentalCents) {
+        this.count = count;
+        this.airfareCents = airfareCents;
+        this.hotelCents = hotelCents;
+        this.rentalCents = rentalCents;
+    }
+
+    // these totals with one more trip
+    public TripTotals plus(Trip trip) {
+        return new TripTotals(count + 1,
+                airfareCents + trip.getAirfare().getCents(),
+                hotelCents + trip.getHotel().getCents(),
+                rentalCents + trip.getRental().getCents());
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public Money getAirfare() {
+        return Money.ofCents(airfareCents);
+    }
+
+    public Money getHotel() {
+        return Money.ofCents(hotelCents);
+    }
+
+    public Money getRental() {
+        return Money.ofCents(rentalCents);
+    }
+
+    public Money getTotal() {
+        return Money.ofCents(airfareCents + hotelCents + rentalCents);
+    }
+
+    // the average total per trip, rounded down to the cent
+    public Money getAverage() {
+        return (count == 0) ? Money.ZERO :
+                Money.ofCents((airfareCents + hotelCents + rentalCents) / count);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof TripTotals))
+            return false;
+
+        TripTotals totals = (TripTotals) other;
+        return count == totals.count && airfareCents == totals.airfareCents &&
+                hotelCents == totals.hotelCents &&
+                rentalCents == totals.rentalCents;
+    }
+
+    @Override
+    public int hashCode() {
+        long hash = count;
+        hash = 31 * hash + airfareCents;
+        hash = 31 * hash + hotelCents;
+        hash = 31 * hash + rentalCents;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return count + " trips: airfare " + getAirfare() + ", hotel " +
+                getHotel() + ", rental " + getRental() + ", total " +
+                getTotal();
+    }
+}
@@ -0,0 +1,88 @@
+package com.inersion.tripex.core;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class MoneyTest {
+    @Test
+    public void parse_acceptsWhatUsersType() {
+        assertEquals(120000, Money.parse("1200").getCents());
+        assertEquals(1250, Money.parse("12.5").getCents());
+        assertEquals(1205, Money.parse("12.05").getCents());
+        assertEquals(1200, Money.parse("12.").getCents());
+        assertEquals(50, Money.parse(".5").getCents());
+        assertEquals(123456, Money.parse(" $1,234.56 ").getCents());
+        assertEquals(Money.ZERO, Money.parse(""));
+    }
+
+    @Test
+    public void parse_roundsExtraDecimalsHalfUp() {
+        assertEquals(1235, Money.parse("12.345").getCents());
+        assertEquals(1234, Money.parse("12.3449").getCents());
+        assertEquals(1300, Money.parse("12.999").getCents());
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parse_rejectsText() {
+        Money.parse("twelve");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parse_rejectsDollarSignAlone() {
+        Money.parse("$");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parse_rejectsDecimalCommaInDecimalPointLocale() {
+        Money.parse("12,50", Locale.US);
+    }
+
+    @Test
+    public void parse_readsDecimalCommaInDecimalCommaLocale() {
+        assertEquals(1250, Money.parse("12,50", Locale.FRANCE).getCents());
+        assertEquals(1250, Money.parse("12,5", Locale.GERMANY).getCents());
+        assertEquals(123456,
+                Money.parse("1.234,56", Locale.GERMANY).getCents());
+        assertEquals(1250, Money.parse("12.50", Locale.US).getCents());
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parse_rejectsDecimalPointInDecimalCommaLocale() {
+        Money.parse("12.50", Locale.GERMANY);
+    }
+
+    @Test
+    public void toString_usesTheLocalesDecimalSeparator() {
+        Money amount = Money.ofCents(123456);
+        assertEquals("1234,56", amount.toString(Locale.GERMANY));
+        assertEquals("1234.56", amount.toString(Locale.US));
+        assertEquals(amount, Money.parse(amount.toString(Locale.GERMANY),
+                Locale.GERMANY));
+    }
+
+    @Test
+    public void parseOrZero_treatsMalformedAsZero() {
+        assertEquals(Money.ZERO, Money.parseOrZero("1.2.3"));
+        assertEquals(Money.ZERO, Money.parseOrZero(null));
+    }
+
+    @Test
+    public void toString_hasTwoDecimalsAndParsesBack() {
+        assertEquals("0.00", Money.ZERO.toString());
+        assertEquals("12.05", Money.ofCents(1205).toString());
+        assertEquals("-0.50", Money.ofCents(-50).toString());
+        assertEquals(Money.ofCents(987654321),
+                Money.parse(Money.ofCents(987654321).toString()));
+    }
+
+    @Test
+    public void sumsAreExact() {
+        Money sum = Money.ZERO;
+        for (int i = 0; i < 10; ++i)
+            sum = sum.plus(Money.parse("0.10"));
+        assertEquals(Money.parse("1"), sum);
+    }
+}
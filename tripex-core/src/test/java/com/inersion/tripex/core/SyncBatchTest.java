@@ -0,0 +1,79 @@
+package com.inersion.tripex.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SyncBatchTest {
+    private static byte[] encode(SyncBatch batch) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        batch.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static SyncBatch decode(byte[] bytes) throws IOException {
+        return SyncBatch.readFrom(new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    public void readFrom_returnsWhatWasWritten() throws Exception {
+        List<TripChange> changes = Arrays.asList(
+                TripChange.update("a1", 7, 1500000000000L, trip("Lisbon")),
+                TripChange.deletion("b2", 8, 1500000001000L));
+
+        SyncBatch batch = decode(encode(new SyncBatch(8, true, changes)));
+
+        assertEquals(8, batch.getRevision());
+        assertTrue(batch.hasMore());
+        assertEquals(changes, batch.getChanges());
+        assertTrue(batch.getChanges().get(1).isDeletion());
+        assertEquals(Trip.NO_ID, batch.getChanges().get(0).getTrip().getId());
+    }
+
+    @Test
+    public void writeTo_compressesRepetitiveTrips() throws Exception {
+        List<TripChange> changes = new ArrayList<TripChange>();
+        for (int i = 0; i < 500; ++i)
+            changes.add(TripChange.update("trip-" + i, TripChange.NO_REVISION,
+                    1500000000000L + i, trip("Lisbon")));
+
+        byte[] bytes = encode(new SyncBatch(0, false, changes));
+
+        // well under 20 bytes a trip, against some 90 uncompressed
+        assertTrue(bytes.length < 500 * 20);
+        assertEquals(500, decode(bytes).getChanges().size());
+    }
+
+    @Test(expected = IOException.class)
+    public void readFrom_rejectsOtherData() throws Exception {
+        decode(new byte[] {1, 2, 3, 4});
+    }
+
+    @Test(expected = IOException.class)
+    public void readFrom_rejectsATruncatedBatch() throws Exception {
+        byte[] bytes = encode(new SyncBatch(1, false, Arrays.asList(
+                TripChange.update("a1", 1, 1, trip("Oslo")))));
+        decode(Arrays.copyOf(bytes, bytes.length - 12));
+    }
+
+    @Test
+    public void supersedes_letsTheLaterEditWinAndTiesGoToTheIncomingChange() {
+        TripChange change = TripChange.update("a1", 1, 1000, trip("Oslo"));
+
+        assertTrue(change.supersedes(999));
+        assertTrue(change.supersedes(1000));
+        assertFalse(change.supersedes(1001));
+    }
+
+    private static Trip trip(String to) {
+        return new Trip(42, "Summer", "Boston", to, "2017-06-01",
+                "2017-06-10", Money.parse("850"), Money.parse("1200.50"), null);
+    }
+}
@@ -0,0 +1,115 @@
+package com.inersion.tripex.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.*;
+
+public class TripAnalyticsTest {
+    private TripAnalytics analytics;
+
+    @Before
+    public void setUp() {
+        analytics = new TripAnalytics(4);
+    }
+
+    @After
+    public void tearDown() {
+        analytics.shutdown();
+    }
+
+    @Test
+    public void run_reportsPercentilesDestinationsAndMonths() throws Exception {
+        List<Trip> trips = Arrays.asList(
+                trip(1, "Lisbon", "2017-01-10", 10000),
+                trip(2, "Lisbon", "2017-02-03", 30000),
+                trip(3, "Oslo", "2017-02-20", 20000),
+                trip(4, "Oslo", "", 40000));
+
+        SpendReport report = analytics.run(trips);
+
+        SpendDistribution overall = report.getOverall();
+        assertEquals(4, overall.getCount());
+        assertEquals(100000, overall.getTotal().getCents());
+        assertEquals(20000, overall.getPercentile(50).getCents());
+        assertEquals(40000, overall.getMax().getCents());
+
+        SpendDistribution lisbon = report.getByDestination().get("Lisbon");
+        assertEquals(2, lisbon.getCount());
+        assertEquals(10000, lisbon.getMin().getCents());
+        assertEquals(20000, lisbon.getAverage().getCents());
+
+        // the undated trip is in no month
+        assertEquals(Arrays.asList("2017-01", "2017-02"),
+                new ArrayList<String>(report.getByMonth().keySet()));
+        assertEquals(50000, report.getByMonth().get("2017-02").getCents());
+        assertEquals(40000,
+                report.getMonthOverMonth().get("2017-02").getCents());
+    }
+
+    @Test
+    public void run_mergesSlicesLikeOneSequentialPass() throws Exception {
+        List<Trip> trips = new ArrayList<Trip>();
+        long total = 0;
+        for (int i = 0; i < TripAnalytics.SLICE_SIZE * 5 + 3; ++i) {
+            long cents = (i * 7919L) % 100000;
+            total += cents;
+            trips.add(trip(i + 1, (i % 3 == 0) ? "Lisbon" : "Oslo",
+                    String.format("2016-%02d-01", 1 + i % 12), cents));
+        }
+
+        SpendReport report = analytics.run(trips);
+
+        assertEquals(trips.size(), report.getOverall().getCount());
+        assertEquals(total, report.getOverall().getTotal().getCents());
+        assertEquals(trips.size(),
+                report.getByDestination().get("Lisbon").getCount() +
+                        report.getByDestination().get("Oslo").getCount());
+        assertEquals(12, report.getByMonth().size());
+
+        long[] sorted = new long[trips.size()];
+        for (int i = 0; i < sorted.length; ++i)
+            sorted[i] = trips.get(i).getTotal().getCents();
+        Arrays.sort(sorted);
+        assertEquals(sorted[(int) Math.ceil(0.9 * sorted.length) - 1],
+                report.getOverall().getPercentile(90).getCents());
+    }
+
+    @Test
+    public void run_reportsNoTrips() throws Exception {
+        SpendReport report = analytics.run(new ArrayList<Trip>());
+
+        assertEquals(0, report.getOverall().getCount());
+        assertEquals(Money.ZERO, report.getOverall().getPercentile(50));
+        assertTrue(report.getByDestination().isEmpty());
+    }
+
+    @Test
+    public void previousMonth_wrapsToDecember() {
+        assertEquals("2016-12", SpendReport.previousMonth("2017-01"));
+        assertEquals("2017-05", SpendReport.previousMonth("2017-06"));
+    }
+
+    @Test(expected = CancellationException.class)
+    public void cancel_stopsTheJob() throws Exception {
+        List<Trip> trips = new ArrayList<Trip>();
+        for (int i = 0; i < TripAnalytics.SLICE_SIZE * 64; ++i)
+            trips.add(trip(i + 1, "Lisbon", "2017-01-01", i));
+
+        TripAnalytics.Job job = analytics.start(trips);
+        job.cancel();
+        assertTrue(job.isCancelled());
+        job.get();
+    }
+
+    private static Trip trip(long id, String to, String depart, long cents) {
+        return new Trip(id, "Trip " + id, "Boston", to, depart, "",
+                Money.ofCents(cents), null, null);
+    }
+}
@@ -0,0 +1,81 @@
+package com.inersion.tripex.core;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TripCsvParserTest {
+    private static List<Trip> parse(String csv) throws Exception {
+        return new TripCsvParser().parse(new StringReader(csv));
+    }
+
+    @Test
+    public void parse_skipsHeaderAndBlankLines() throws Exception {
+        List<Trip> trips = parse(
+                "Name,From,To,Depart,Return,Airfare,Hotel,Rental\n" +
+                "\n" +
+                "Paris 2017,Boston,Paris,2017-06-01,2017-06-10,850,1200.50,\n");
+
+        assertEquals(1, trips.size());
+        Trip trip = trips.get(0);
+        assertEquals("Paris 2017", trip.getName());
+        assertEquals("2017-06", trip.getDepartMonth());
+        assertEquals(Money.parse("2050.50"), trip.getTotal());
+        assertEquals(Trip.NO_ID, trip.getId());
+    }
+
+    @Test
+    public void parse_readsQuotedFields() throws Exception {
+        List<Trip> trips = parse(
+                "\"Rome, \"\"again\"\"\",Boston,Rome,,,100,,\n" +
+                "\"Two\nlines\",Boston,Tokyo,,,,,\n");
+
+        assertEquals(2, trips.size());
+        assertEquals("Rome, \"again\"", trips.get(0).getName());
+        assertEquals("Two\nlines", trips.get(1).getName());
+    }
+
+    @Test
+    public void parse_reportsTheBadLine() throws Exception {
+        try {
+            parse("A,B,C,,,1,2,3\nB,B,C,,,one,2,3\n");
+            fail();
+        }
+        catch (TripImportException e) {
+            assertEquals(2, e.getLine());
+        }
+
+        try {
+            parse("A,B,C,,,1,2\n");
+            fail();
+        }
+        catch (TripImportException e) {
+            assertEquals(1, e.getLine());
+        }
+    }
+
+    @Test
+    public void aggregation_groupsImportedTrips() throws Exception {
+        List<Trip> trips = parse(
+                "A,Boston,Paris,2017-06-01,,100,,\n" +
+                "B,Boston,Paris,2017-07-01,,50.25,,\n" +
+                "C,Boston,Rome,2017-06-15,,,10,\n");
+
+        assertEquals(Money.parse("160.25"),
+                TripAggregation.total(trips).getTotal());
+
+        Map<String, TripTotals> byDestination =
+                TripAggregation.byDestination(trips);
+        assertEquals(2, byDestination.get("Paris").getCount());
+        assertEquals(Money.parse("150.25"),
+                byDestination.get("Paris").getAirfare());
+
+        Map<String, TripTotals> byMonth = TripAggregation.byMonth(trips);
+        assertEquals(2, byMonth.get("2017-06").getCount());
+        assertEquals(Money.parse("50.25"), byMonth.get("2017-07").getTotal());
+    }
+}
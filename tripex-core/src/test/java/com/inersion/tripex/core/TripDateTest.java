@@ -0,0 +1,52 @@
+package com.inersion.tripex.core;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class TripDateTest {
+    @Test
+    public void isValid_acceptsOnlyRealIsoDays() {
+        assertTrue(TripDate.isValid("2017-06-01"));
+        assertTrue(TripDate.isValid("2016-02-29"));
+        assertFalse(TripDate.isValid("2017-02-29"));
+        assertFalse(TripDate.isValid("2017-13-01"));
+        assertFalse(TripDate.isValid("2017-6-1"));
+        assertFalse(TripDate.isValid("06/01/2017"));
+        assertFalse(TripDate.isValid("June 1"));
+        assertFalse(TripDate.isValid(""));
+        assertFalse(TripDate.isValid(null));
+    }
+
+    @Test
+    public void parse_keepsIsoAndEmptyDates() {
+        assertEquals("2017-06-01", TripDate.parse(" 2017-06-01 ", Locale.US));
+        assertEquals("", TripDate.parse("  ", Locale.US));
+    }
+
+    @Test
+    public void parse_readsTheLocalesDates() {
+        assertEquals("2017-06-01", TripDate.parse("06/01/2017", Locale.US));
+        assertEquals("2017-06-01", TripDate.parse("6/1/17", Locale.US));
+        assertEquals("2017-06-01", TripDate.parse("Jun 1, 2017", Locale.US));
+        assertEquals("2017-06-01", TripDate.parse("June 1, 2017", Locale.US));
+        assertEquals("2017-06-01", TripDate.parse("01/06/2017", Locale.UK));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_rejectsADateWithoutAYear() {
+        TripDate.parse("June 1", Locale.US);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_rejectsADayThatDoesntExist() {
+        TripDate.parse("02/30/2017", Locale.US);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_rejectsText() {
+        TripDate.parse("next week", Locale.US);
+    }
+}
@@ -0,0 +1,104 @@
+package com.inersion.tripex.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TripIndexTest {
+    private TripIndex index;
+
+    @Before
+    public void setUp() {
+        index = new TripIndex();
+        index.put(trip(1, "Lisbon", "2017-06-01", 82000));
+        index.put(trip(2, "oslo", "2017-03-15", 45000));
+        index.put(trip(3, "Berlin", "", 12000));
+        index.put(trip(4, "Lisbon", "2017-09-20", 45000));
+    }
+
+    @Test
+    public void epochDay_countsFrom1970() {
+        assertEquals(0, TripIndex.epochDay("1970-01-01"));
+        assertEquals(11017, TripIndex.epochDay("2000-03-01"));
+        assertEquals(19782, TripIndex.epochDay("2024-02-29"));
+        assertEquals(TripIndex.NO_DAY, TripIndex.epochDay(""));
+        assertEquals(TripIndex.NO_DAY, TripIndex.epochDay("2017-13-01"));
+        assertEquals(TripIndex.NO_DAY, TripIndex.epochDay("June 1st"));
+    }
+
+    @Test
+    public void select_sortsByEachOrder() {
+        assertArrayEquals(new long[] {3, 2, 1, 4}, select(
+                new TripIndex.Filter(), TripIndex.SortOrder.DEPART, false));
+        assertArrayEquals(new long[] {1, 2, 4, 3}, select(
+                new TripIndex.Filter(), TripIndex.SortOrder.TOTAL, true));
+        assertArrayEquals(new long[] {3, 1, 4, 2}, select(
+                new TripIndex.Filter(), TripIndex.SortOrder.DESTINATION, false));
+    }
+
+    @Test
+    public void select_appliesEveryFilter() {
+        assertArrayEquals(new long[] {2, 1}, select(new TripIndex.Filter()
+                        .departingBetween(TripIndex.epochDay("2017-01-01"),
+                                TripIndex.epochDay("2017-06-30")),
+                TripIndex.SortOrder.DEPART, false));
+        assertArrayEquals(new long[] {4}, select(new TripIndex.Filter()
+                        .goingTo("Lisbon").costingBetween(0, 50000),
+                TripIndex.SortOrder.TOTAL, false));
+        assertEquals(0, select(new TripIndex.Filter().goingTo("Paris"),
+                TripIndex.SortOrder.TOTAL, false).length);
+    }
+
+    @Test
+    public void put_replacesATripWithTheSameId() {
+        index.put(trip(3, "Athens", "2016-01-01", 1000));
+
+        assertEquals(4, index.size());
+        assertArrayEquals(new long[] {3, 2, 4, 1}, select(
+                new TripIndex.Filter(), TripIndex.SortOrder.TOTAL, false));
+        assertArrayEquals(new long[] {3, 1, 4, 2}, select(
+                new TripIndex.Filter(), TripIndex.SortOrder.DESTINATION, false));
+    }
+
+    @Test
+    public void remove_keepsTheOtherTrips() {
+        index.remove(1);
+        index.remove(42); // not indexed
+
+        assertEquals(3, index.size());
+        assertFalse(index.contains(1));
+        assertArrayEquals(new long[] {3, 2, 4}, select(
+                new TripIndex.Filter(), TripIndex.SortOrder.DEPART, false));
+    }
+
+    @Test
+    public void manyTrips_surviveGrowthAndRemoval() {
+        index.clear();
+        for (long id = 1; id <= 1000; ++id)
+            index.put(trip(id, "Lisbon", "", id));
+        for (long id = 2; id <= 1000; id += 2)
+            index.remove(id);
+
+        long[] ids = select(new TripIndex.Filter(),
+                TripIndex.SortOrder.TOTAL, false);
+        assertEquals(500, ids.length);
+        for (int i = 0; i < ids.length; ++i)
+            assertEquals(2 * i + 1, ids[i]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void put_rejectsAnUnstoredTrip() {
+        index.put(trip(Trip.NO_ID, "Lisbon", "", 0));
+    }
+
+    private long[] select(TripIndex.Filter filter, TripIndex.SortOrder order,
+                          boolean descending) {
+        return index.select(filter, order, descending);
+    }
+
+    private static Trip trip(long id, String to, String depart, long cents) {
+        return new Trip(id, "Trip " + id, "Boston", to, depart, "",
+                Money.ofCents(cents), null, null);
+    }
+}
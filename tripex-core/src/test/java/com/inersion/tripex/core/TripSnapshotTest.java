@@ -0,0 +1,144 @@
+package com.inersion.tripex.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.*;
+
+public class TripSnapshotTest {
+    private static final String[] COLUMNS = {"_id", "name", "modified"};
+    private static final TripSnapshot.Type[] TYPES = {TripSnapshot.Type.INTEGER,
+            TripSnapshot.Type.TEXT, TripSnapshot.Type.INTEGER};
+
+    // rows i = 0..count-1: id i + 1, name "Trip i" (null every 7th, with
+    // a non-ASCII one every 5th) and a timestamp that goes up and down
+    private static void writeRows(TripSnapshotWriter writer, int count)
+            throws IOException {
+        for (int i = 0; i < count; ++i) {
+            writer.setLong(0, i + 1);
+            writer.setText(1, name(i));
+            writer.setLong(2, modified(i));
+            writer.endRow();
+        }
+    }
+
+    private static String name(int i) {
+        return (i % 7 == 0) ? null : (i % 5 == 0) ? "Z\u00fcrich \u2708 " + i : "Trip " + i;
+    }
+
+    private static long modified(int i) {
+        return 1500000000000L + ((i % 2 == 0) ? i : -i) * 1000L;
+    }
+
+    private static byte[] snapshot(int count) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TripSnapshotWriter writer = new TripSnapshotWriter(out, COLUMNS, TYPES);
+        writeRows(writer, count);
+        writer.close();
+        return out.toByteArray();
+    }
+
+    private static void assertRows(TripSnapshotReader reader, int count)
+            throws IOException {
+        int row = 0;
+        while (reader.nextBlock()) {
+            assertTrue(reader.getBlockRows() <= TripSnapshot.BLOCK_ROWS);
+            for (int i = 0; i < reader.getBlockRows(); ++i, ++row) {
+                assertEquals(row + 1, reader.getLong(i, 0));
+                assertEquals(name(row), reader.getText(i, 1));
+                assertEquals(modified(row), reader.getLong(i, 2));
+            }
+        }
+        assertEquals(count, row);
+        assertFalse(reader.nextBlock());
+    }
+
+    @Test
+    public void read_returnsEveryRowAcrossBlocks() throws Exception {
+        int count = TripSnapshot.BLOCK_ROWS * 2 + 5;
+        TripSnapshotReader reader = new TripSnapshotReader(
+                ByteBuffer.wrap(snapshot(count)));
+
+        assertEquals(3, reader.getColumnCount());
+        assertEquals("name", reader.getColumnName(1));
+        assertEquals(TripSnapshot.Type.TEXT, reader.getColumnType(1));
+        assertEquals(2, reader.findColumn("modified"));
+        assertEquals(-1, reader.findColumn("dirty"));
+        assertRows(reader, count);
+    }
+
+    @Test
+    public void read_worksOnAMappedFile() throws Exception {
+        File file = File.createTempFile("trips", ".snapshot");
+        try {
+            TripSnapshotWriter writer = new TripSnapshotWriter(
+                    new FileOutputStream(file), COLUMNS, TYPES);
+            writeRows(writer, 10000);
+            writer.close();
+
+            RandomAccessFile input = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = input.getChannel();
+                assertRows(new TripSnapshotReader(channel.map(
+                        FileChannel.MapMode.READ_ONLY, 0, channel.size())), 10000);
+            }
+            finally {
+                input.close();
+            }
+        }
+        finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void write_keepsAscendingNumbersSmall() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TripSnapshotWriter writer = new TripSnapshotWriter(out,
+                new String[] {"_id"}, new TripSnapshot.Type[] {
+                        TripSnapshot.Type.INTEGER});
+        for (int i = 0; i < 10000; ++i) {
+            writer.setLong(0, 1000000 + i);
+            writer.endRow();
+        }
+        writer.close();
+
+        // a byte per id once they're under way, against 8 as longs
+        assertTrue(out.size() < 10000 + 100);
+    }
+
+    @Test
+    public void read_handlesAnEmptySnapshot() throws Exception {
+        TripSnapshotReader reader = new TripSnapshotReader(
+                ByteBuffer.wrap(snapshot(0)));
+        assertFalse(reader.nextBlock());
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsACorruptedSnapshot() throws Exception {
+        byte[] bytes = snapshot(100);
+        bytes[bytes.length / 2] ^= 0x10;
+        new TripSnapshotReader(ByteBuffer.wrap(bytes));
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsATruncatedSnapshot() throws Exception {
+        byte[] bytes = snapshot(100);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.limit(bytes.length - 10);
+        new TripSnapshotReader(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setText_rejectsAnIntegerColumn() throws Exception {
+        new TripSnapshotWriter(new ByteArrayOutputStream(), COLUMNS, TYPES)
+                .setText(0, "1");
+    }
+}